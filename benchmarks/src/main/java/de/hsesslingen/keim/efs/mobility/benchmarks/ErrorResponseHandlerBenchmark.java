@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareErrorResponseHandler;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * {@link MiddlewareErrorResponseHandler#handleError(ClientHttpResponse)} with
+ * error bodies of different sizes, compared to reading the whole body into a
+ * string using a {@link Scanner} and parsing that, which is how error bodies
+ * were read before they were parsed from the stream.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ErrorResponseHandlerBenchmark {
+
+    public enum Body {
+        /**
+         * A typical {@link MiddlewareError}.
+         */
+        SMALL_JSON,
+        /**
+         * A {@link MiddlewareError} with many details, about 64 KiB.
+         */
+        LARGE_JSON,
+        /**
+         * An error page of a proxy, about 64 KiB, which is not a
+         * {@link MiddlewareError}.
+         */
+        LARGE_HTML
+    }
+
+    @Param
+    public Body body;
+
+    private final MiddlewareErrorResponseHandler handler = new MiddlewareErrorResponseHandler();
+
+    private byte[] bytes;
+    private HttpStatus status;
+
+    @Setup
+    public void setup() {
+        switch (body) {
+            case SMALL_JSON:
+                bytes = bytes("{\"code\":\"TOKEN_INVALID\",\"message\":\"The token you have provided is invalid.\"}");
+                status = HttpStatus.UNAUTHORIZED;
+                break;
+            case LARGE_JSON:
+                var json = new StringBuilder("{\"code\":\"REMOTE_SERVICE_REQUEST_FAILED\",\"message\":\"A request to a remote service failed.\",\"details\":{");
+
+                for (int i = 0; json.length() < 64 * 1024; ++i) {
+                    json.append(i == 0 ? "" : ",").append("\"field").append(i).append("\":\"The value of field ").append(i).append(" is invalid.\"");
+                }
+
+                bytes = bytes(json.append("}}").toString());
+                status = HttpStatus.BAD_REQUEST;
+                break;
+            case LARGE_HTML:
+                var html = new StringBuilder("<html><head><title>502 Bad Gateway</title></head><body>");
+
+                while (html.length() < 64 * 1024) {
+                    html.append("<p>The upstream server did not respond in time. Please try again later.</p>");
+                }
+
+                bytes = bytes(html.append("</body></html>").toString());
+                status = HttpStatus.BAD_GATEWAY;
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    @Benchmark
+    public RemoteMiddlewareException handleError() throws IOException {
+        try {
+            handler.handleError(new BytesResponse(status, bytes));
+            throw new IllegalStateException("No exception was thrown.");
+        } catch (RemoteMiddlewareException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public MiddlewareError parseFromStream() throws IOException {
+        return MiddlewareErrorResponseHandler.parseErrorBody(new ByteArrayInputStream(bytes), status);
+    }
+
+    @Benchmark
+    public MiddlewareError parseFromScannerString() {
+        var response = new Scanner(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).useDelimiter("\\A").next();
+        return MiddlewareErrorResponseHandler.parseErrorBody(response, status);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static final class BytesResponse implements ClientHttpResponse {
+
+        private final HttpStatus status;
+        private final byte[] body;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        BytesResponse(HttpStatus status, byte[] body) {
+            this.status = status;
+            this.body = body;
+            this.headers.setContentType(MediaType.APPLICATION_JSON);
+            this.headers.setContentLength(body.length);
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return status.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return status.getReasonPhrase();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import de.hsesslingen.keim.efs.mobility.exception.ExpectedErrors;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareServiceExceptionHandler;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * {@link MiddlewareServiceExceptionHandler#handleMiddlewareException(MiddlewareException)}
+ * for an exception with a known code and for one whose code is an HTTP
+ * status. Logging is switched off (see {@code logback.xml}), so only the
+ * handling itself is measured. {@link #createAndHandle()} includes the
+ * creation of the exception, with and without the stackless mode of
+ * {@link ExpectedErrors}.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ExceptionHandlerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean stackless;
+
+    private final MiddlewareServiceExceptionHandler handler = new MiddlewareServiceExceptionHandler();
+
+    private MiddlewareException tokenInvalid;
+    private MiddlewareException notFound;
+
+    @Setup
+    public void setup() {
+        ExpectedErrors.getDefault().setStackless(stackless);
+
+        tokenInvalid = MiddlewareException.tokenInvalidException();
+        notFound = new MiddlewareException("404", "Booking 4711 does not exist.");
+    }
+
+    @Benchmark
+    public ResponseEntity<MiddlewareError> handleKnownCode() {
+        return handler.handleMiddlewareException(tokenInvalid);
+    }
+
+    @Benchmark
+    public ResponseEntity<MiddlewareError> handleStatusCode() {
+        return handler.handleMiddlewareException(notFound);
+    }
+
+    @Benchmark
+    public ResponseEntity<MiddlewareError> createAndHandle() {
+        return handler.handleMiddlewareException(MiddlewareException.tokenInvalidException());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import de.hsesslingen.keim.efs.mobility.config.HttpClientProperties;
+import de.hsesslingen.keim.efs.mobility.requests.PooledClientHttpRequestFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Throughput and latency percentiles of requests to a local stub server using
+ * the {@link PooledClientHttpRequestFactory} compared to Springs default
+ * {@link SimpleClientHttpRequestFactory}, with several concurrent callers.
+ * <p>
+ * The {@link Mode#SampleTime} results include the p99 latency.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class HttpClientBenchmark {
+
+    private static final byte[] RESPONSE = "{\"id\":\"bikesharing-esslingen\",\"providerName\":\"Esslingen Bikes\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    public enum Factory {
+        POOLED,
+        SIMPLE
+    }
+
+    @Param
+    public Factory factory;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ClientHttpRequestFactory requestFactory;
+    private RestTemplate restTemplate;
+    private URI uri;
+
+    @Setup
+    public void setup() throws IOException {
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/services", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+
+            try ( var body = exchange.getResponseBody()) {
+                body.write(RESPONSE);
+            }
+        });
+        server.start();
+
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/api/services");
+        requestFactory = factory == Factory.POOLED
+                ? new PooledClientHttpRequestFactory(new HttpClientProperties())
+                : new SimpleClientHttpRequestFactory();
+        restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (requestFactory instanceof PooledClientHttpRequestFactory) {
+            ((PooledClientHttpRequestFactory) requestFactory).destroy();
+        }
+
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String get() {
+        return restTemplate.getForObject(uri, String.class);
+    }
+}
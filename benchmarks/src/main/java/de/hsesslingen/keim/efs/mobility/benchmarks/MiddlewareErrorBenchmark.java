@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import de.hsesslingen.keim.efs.mobility.exception.ExpectedErrors;
+import de.hsesslingen.keim.efs.mobility.exception.HttpException;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation of {@link MiddlewareError}s, {@link MiddlewareException}s and
+ * {@link HttpException}s and the conversion between them, with and without
+ * the stackless mode of {@link ExpectedErrors}. The exceptions are created
+ * for expected errors, so the mode applies to all of them.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MiddlewareErrorBenchmark {
+
+    @Param({"false", "true"})
+    public boolean stackless;
+
+    private MiddlewareError error;
+    private MiddlewareException exception;
+
+    @Setup
+    public void setup() {
+        ExpectedErrors.getDefault().setStackless(stackless);
+
+        error = MiddlewareError.tokenInvalid("Token of user %s expired.", "4711");
+        exception = MiddlewareException.tokenInvalidException("Token of user %s expired.", "4711");
+    }
+
+    @Benchmark
+    public MiddlewareError createError() {
+        return MiddlewareError.tokenInvalid();
+    }
+
+    @Benchmark
+    public MiddlewareError createFormattedError() {
+        return MiddlewareError.tokenInvalid("Token of user %s expired.", "4711");
+    }
+
+    @Benchmark
+    public MiddlewareException createException() {
+        return MiddlewareException.tokenInvalidException();
+    }
+
+    @Benchmark
+    public MiddlewareException createFormattedException() {
+        return MiddlewareException.tokenInvalidException("Token of user %s expired.", "4711");
+    }
+
+    @Benchmark
+    public String createFormattedExceptionAndGetMessage() {
+        return MiddlewareException.tokenInvalidException("Token of user %s expired.", "4711").getMessage();
+    }
+
+    @Benchmark
+    public HttpException createHttpException() {
+        return HttpException.notFound("Booking %s does not exist.", "4711");
+    }
+
+    @Benchmark
+    public MiddlewareException toException() {
+        return error.toException();
+    }
+
+    @Benchmark
+    public MiddlewareError toError() {
+        return exception.toError();
+    }
+}
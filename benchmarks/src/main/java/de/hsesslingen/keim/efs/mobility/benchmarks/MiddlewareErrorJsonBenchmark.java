@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareErrorModule;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Jackson (de)serialization of {@link MiddlewareError}s, as done for every
+ * error response, with the bean (de)serializers and with the
+ * {@link MiddlewareErrorModule}. {@link #writeConstantError()} writes an error
+ * with a registered code and its default message, whose JSON is pre-encoded
+ * by the module.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MiddlewareErrorJsonBenchmark {
+
+    @Param({"false", "true"})
+    public boolean handWritten;
+
+    private ObjectReader reader;
+    private ObjectWriter writer;
+    private MiddlewareError constantError;
+    private MiddlewareError formattedError;
+    private MiddlewareError errorWithDetails;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        if (handWritten) {
+            mapper.registerModule(new MiddlewareErrorModule());
+        }
+
+        reader = mapper.readerFor(MiddlewareError.class);
+        writer = mapper.writerFor(MiddlewareError.class);
+
+        constantError = MiddlewareError.tokenInvalid();
+        formattedError = MiddlewareError.tokenInvalid("Token of user %s expired.", "4711");
+        errorWithDetails = new MiddlewareError(400, Map.of("from", "must not be null", "to", "must be after from"), "Validation failed");
+
+        json = writer.writeValueAsBytes(errorWithDetails);
+    }
+
+    @Benchmark
+    public byte[] writeConstantError() throws IOException {
+        return writer.writeValueAsBytes(constantError);
+    }
+
+    @Benchmark
+    public byte[] writeFormattedError() throws IOException {
+        return writer.writeValueAsBytes(formattedError);
+    }
+
+    @Benchmark
+    public byte[] writeErrorWithDetails() throws IOException {
+        return writer.writeValueAsBytes(errorWithDetails);
+    }
+
+    @Benchmark
+    public MiddlewareError readError() throws IOException {
+        return reader.readValue(json);
+    }
+}
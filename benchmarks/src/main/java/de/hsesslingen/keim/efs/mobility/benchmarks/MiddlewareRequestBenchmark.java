@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestAdapter.Phase;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestAdapterPipeline;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.tracing.InMemorySpanExporter;
+import de.hsesslingen.keim.efs.mobility.tracing.Sampler;
+import de.hsesslingen.keim.efs.mobility.tracing.Tracer;
+import de.hsesslingen.keim.efs.mobility.tracing.TracingRequestAdapter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.springframework.http.HttpMethod.GET;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Building a {@link MiddlewareRequest} through its fluent methods and calling
+ * the request adapters, without sending it.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MiddlewareRequestBenchmark {
+
+    private RestTemplate restTemplate;
+    private MiddlewareRequestAdapterPipeline adapters;
+    private MiddlewareRequestAdapterPipeline unsampledTracing;
+    private MiddlewareRequestAdapterPipeline sampledTracing;
+
+    @Setup
+    public void setup() {
+        restTemplate = new RestTemplate();
+
+        adapters = MiddlewareRequestAdapterPipeline.EMPTY
+                .with(Phase.AUTH, request -> request.header("x-api-key", "0123456789abcdef"))
+                .with(request -> request.header("x-client", "benchmark"));
+
+        unsampledTracing = adapters.with(new TracingRequestAdapter(new Tracer(Sampler.never(), new InMemorySpanExporter())));
+        sampledTracing = adapters.with(new TracingRequestAdapter(new Tracer(Sampler.always(), new InMemorySpanExporter())));
+    }
+
+    @Benchmark
+    public MiddlewareRequest<MobilityService> build() {
+        return request(MiddlewareRequestAdapterPipeline.EMPTY);
+    }
+
+    @Benchmark
+    public MiddlewareRequest<MobilityService> buildAndCallAdapters() {
+        return request(adapters).callRequestAdapters();
+    }
+
+    @Benchmark
+    public MiddlewareRequest<MobilityService> buildAndCallAdaptersWithUnsampledTracing() {
+        return request(unsampledTracing).callRequestAdapters();
+    }
+
+    @Benchmark
+    public MiddlewareRequest<MobilityService> buildAndCallAdaptersWithSampledTracing() {
+        return request(sampledTracing).callRequestAdapters();
+    }
+
+    private MiddlewareRequest<MobilityService> request(MiddlewareRequestAdapterPipeline pipeline) {
+        return new MiddlewareRequest<>(GET, "http://service-directory:8080/api/services/{id}", restTemplate)
+                .serviceId("service-directory")
+                .uriVariables("benchmark-service")
+                .query("mode", "BICYCLE")
+                .header("accept-language", "de")
+                .token("benchmark-token")
+                .requestAdapters(pipeline)
+                .expect(MobilityService.class);
+    }
+}
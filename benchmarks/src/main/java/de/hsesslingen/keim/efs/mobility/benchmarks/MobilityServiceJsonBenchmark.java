@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry;
+import de.hsesslingen.keim.efs.mobility.service.Mode;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService.API;
+import de.hsesslingen.keim.efs.mobility.service.UsersApiProperties;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Jackson round trips of a {@link MobilityService} using the cached readers
+ * and writers of the {@link ObjectMapperRegistry}, with and without the
+ * bytecode module, compared to calling the object mapper directly.
+ *
+ * @author ben
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MobilityServiceJsonBenchmark {
+
+    @Param({"false", "true"})
+    public boolean bytecodeModule;
+
+    private ObjectMapper mapper;
+    private ObjectReader reader;
+    private ObjectWriter writer;
+    private MobilityService service;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        var registry = new ObjectMapperRegistry(ObjectMapperRegistry.createObjectMapper(Jackson2ObjectMapperBuilder.json(), bytecodeModule));
+
+        mapper = registry.getObjectMapper();
+        reader = registry.reader(MobilityService.class);
+        writer = registry.writer(MobilityService.class);
+
+        var usersApi = new UsersApiProperties();
+        usersApi.setSupportsUserRegistration(true);
+        usersApi.setRequiredCustomerPropertiesForRegistration(List.of("firstName", "lastName", "email", "phone"));
+
+        service = new MobilityService()
+                .setId("bikesharing-esslingen")
+                .setProviderName("Esslingen Bikes")
+                .setServiceName("Bike Sharing")
+                .setServiceUrl("http://bikesharing-esslingen:8080/api")
+                .setServiceLogoUrl("http://bikesharing-esslingen:8080/logo.png")
+                .setServiceArea("POLYGON((9.28 48.72, 9.34 48.72, 9.34 48.76, 9.28 48.76, 9.28 48.72))")
+                .setModes(Set.of(Mode.BICYCLE, Mode.KICK_SCOOTER))
+                .setApis(Set.of(API.PLACES_API, API.OPTIONS_API, API.BOOKING_API, API.USERS_API))
+                .setUsersApiProperties(usersApi);
+
+        json = writer.writeValueAsBytes(service);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(service);
+    }
+
+    @Benchmark
+    public MobilityService deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public MobilityService roundTrip() throws IOException {
+        return reader.readValue(writer.writeValueAsBytes(service));
+    }
+
+    @Benchmark
+    public MobilityService roundTripWithMapper() throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(service), MobilityService.class);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the bulkheads that isolate outgoing requests to different
+ * remote services from each other. Can be configured using the properties
+ * prefixed with {@code efs.bulkhead}. The settings of single services can be
+ * overridden using {@code efs.bulkhead.services.<service-id>.*}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.bulkhead")
+public class BulkheadProperties {
+
+    /**
+     * Whether bulkheads are used at all.
+     */
+    private boolean enabled = true;
+
+    /**
+     * The default settings of all bulkheads.
+     */
+    private Settings defaults = new Settings();
+
+    /**
+     * Settings of single services, mapped by service ID or host and port.
+     */
+    private Map<String, Settings> services = new HashMap<>();
+
+    /**
+     * The maximum number of bulkheads, i.e. of remote services whose requests
+     * are isolated. Once exceeded, the bulkheads that were used least
+     * recently are removed.
+     */
+    private int maxBulkheads = 1000;
+
+    /**
+     * Returns the settings for the given service.
+     *
+     * @param name
+     * @return
+     */
+    public Settings getSettings(String name) {
+        return services.getOrDefault(name, defaults);
+    }
+
+    @Data
+    public static class Settings {
+
+        /**
+         * The maximum number of concurrent requests to a service.
+         */
+        private int maxConcurrentCalls = 50;
+
+        /**
+         * The maximum number of requests that wait for one of the concurrent
+         * requests to complete. Further requests are rejected immediately.
+         */
+        private int maxQueuedCalls = 100;
+
+        /**
+         * The maximum time a request waits. Requests that waited for longer
+         * are rejected. Requests with a shorter deadline or timeout wait at
+         * most that long.
+         */
+        private Duration maxWait = Duration.ofSeconds(2);
+
+    }
+}
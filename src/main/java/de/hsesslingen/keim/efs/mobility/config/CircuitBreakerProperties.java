@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the circuit breakers that protect outgoing requests to remote
+ * services. Can be configured using the properties prefixed with
+ * {@code efs.circuit-breaker}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.circuit-breaker")
+public class CircuitBreakerProperties {
+
+    /**
+     * Whether circuit breakers are used at all.
+     */
+    private boolean enabled = true;
+
+    /**
+     * The percentage of failed calls at which a breaker opens.
+     */
+    private float failureRateThreshold = 50;
+
+    /**
+     * The percentage of slow calls at which a breaker opens.
+     */
+    private float slowCallRateThreshold = 100;
+
+    /**
+     * Calls that take longer than this are considered slow.
+     */
+    private Duration slowCallDuration = Duration.ofSeconds(10);
+
+    /**
+     * The number of most recent calls from which the failure and slow call
+     * rates are calculated. Changes only apply to breakers created afterwards.
+     */
+    private int slidingWindowSize = 50;
+
+    /**
+     * The minimum number of calls in the sliding window before the rates are
+     * evaluated.
+     */
+    private int minimumNumberOfCalls = 20;
+
+    /**
+     * How long a breaker stays open before it lets trial calls pass.
+     */
+    private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+
+    /**
+     * The number of trial calls a half-open breaker lets pass. If their
+     * failure and slow call rates are below the thresholds, the breaker
+     * closes again, otherwise it opens again.
+     */
+    private int permittedCallsInHalfOpenState = 5;
+
+    /**
+     * The maximum number of breakers, i.e. of remote services whose calls are
+     * tracked. Once exceeded, the breakers that were used least recently are
+     * removed.
+     */
+    private int maxBreakers = 1000;
+
+}
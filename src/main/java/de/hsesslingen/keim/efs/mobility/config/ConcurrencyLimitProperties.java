@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the adaptive concurrency limits for outgoing requests to remote
+ * services. Can be configured using the properties prefixed with
+ * {@code efs.concurrency-limit}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    /**
+     * Whether concurrency limits are used at all. They only apply to request
+     * templates that enable them.
+     */
+    private boolean enabled = true;
+
+    /**
+     * The limit of concurrent requests to a remote service that was not yet
+     * contacted.
+     */
+    private int initialLimit = 50;
+
+    /**
+     * The lower bound of the limit.
+     */
+    private int minLimit = 1;
+
+    /**
+     * The upper bound of the limit.
+     */
+    private int maxLimit = 200;
+
+    /**
+     * The factor by which the limit is reduced when a request failed or the
+     * latency increased.
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * The limit is reduced if the smoothed latency exceeds the lowest recently
+     * observed latency by this factor.
+     */
+    private double latencyTolerance = 2.0;
+
+    /**
+     * The maximum number of limits, i.e. of remote services whose requests
+     * are limited. Once exceeded, the limits that were used least recently
+     * are removed.
+     */
+    private int maxLimits = 1000;
+
+}
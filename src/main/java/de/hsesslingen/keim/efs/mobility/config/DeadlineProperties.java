@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the deadline propagation. Can be configured using the
+ * properties prefixed with {@code efs.deadline}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.deadline")
+public class DeadlineProperties {
+
+    /**
+     * Whether deadlines of incoming requests are read and propagated to
+     * outgoing requests. Disabled by default, as the deadline header is sent
+     * by the caller and can cut the requests of this service short.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Addresses of the callers whose deadline header is honored, e.g. the
+     * other services of the middleware. If empty, the header of every caller
+     * is honored.
+     */
+    private List<String> trustedAddresses = new ArrayList<>();
+
+    /**
+     * Deadline for incoming requests that do not carry one. If not set, such
+     * requests have no deadline.
+     */
+    private Duration defaultBudget;
+
+    /**
+     * Upper bound for deadlines of incoming requests, to protect this service
+     * from callers that send very long deadlines. If not set, deadlines are
+     * not limited.
+     */
+    private Duration maxBudget;
+
+    /**
+     * Lower bound for deadlines of incoming requests. Shorter deadlines sent
+     * by callers are raised to this, so that they cannot reject or cut short
+     * the requests of this service. Does not apply to the default budget.
+     */
+    private Duration minBudget = Duration.ofMillis(100);
+
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.logging.LogLevel;
+
+/**
+ * Settings of the {@link de.hsesslingen.keim.efs.mobility.exception.handler.ErrorLogPolicy}
+ * that limits the logging of the error handlers. Can be configured using the
+ * properties prefixed with {@code efs.error-logging}. Limits and levels of
+ * single errors can be set by error code, e.g. {@code TOKEN_INVALID} or
+ * {@code 404}, or by the simple name of the exception class, e.g.
+ * {@code MethodArgumentNotValidException}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.error-logging")
+public class ErrorLoggingProperties {
+
+    /**
+     * Maximum number of log entries per second for each combination of
+     * exception class and error code. Further errors are only counted and
+     * reported in the periodic summary. Zero or less disables the limit.
+     */
+    private int maxPerSecond = 10;
+
+    /**
+     * Limits for single error codes or exception classes, overriding
+     * {@code max-per-second}.
+     */
+    private Map<String, Integer> limits = new HashMap<>();
+
+    /**
+     * Interval of the summaries of errors that were not logged because of the
+     * limits.
+     */
+    private Duration summaryInterval = Duration.ofSeconds(60);
+
+    /**
+     * Level of errors with a 4xx status.
+     */
+    private LogLevel clientErrorLevel = LogLevel.WARN;
+
+    /**
+     * Level of errors with a 5xx or unknown status.
+     */
+    private LogLevel serverErrorLevel = LogLevel.ERROR;
+
+    /**
+     * Levels of single error codes or exception classes, overriding the
+     * levels above. Use {@code OFF} to silence an error completely.
+     */
+    private Map<String, LogLevel> levels = new HashMap<>();
+
+}
@@ -0,0 +1,57 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the {@link de.hsesslingen.keim.efs.mobility.exception.ExpectedErrors}.
+ * Can be configured using the properties prefixed with {@code efs.exceptions}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.exceptions")
+public class ExceptionProperties {
+
+    /**
+     * Whether exceptions for expected, business-level errors, like invalid
+     * tokens or client errors of remote services, are created without a stack
+     * trace. Filling in the stack trace is usually the most expensive part of
+     * creating an exception, and the stack trace of such errors is hardly
+     * ever looked at.
+     */
+    private boolean stacklessExpectedErrors = false;
+
+    /**
+     * Error codes that are considered expected in addition to the codes
+     * registered as expected in the ErrorCodeRegistry and to HTTP 4xx status
+     * codes.
+     */
+    private List<String> expectedCodes = new ArrayList<>();
+
+}
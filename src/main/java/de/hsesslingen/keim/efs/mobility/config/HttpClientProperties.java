@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the pooled HTTP client that is used for outgoing requests. Can
+ * be configured using the properties prefixed with {@code efs.http}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.http")
+public class HttpClientProperties {
+
+    /**
+     * Maximum number of pooled connections in total.
+     */
+    private int maxConnections = 200;
+
+    /**
+     * Maximum number of pooled connections per remote host.
+     */
+    private int maxConnectionsPerRoute = 50;
+
+    /**
+     * Timeout for establishing a connection.
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Timeout for waiting on data, i.e. the maximum period of inactivity
+     * between two data packets.
+     */
+    private Duration readTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Timeout for obtaining a connection from the pool.
+     */
+    private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+
+    /**
+     * How long idle connections are kept alive if the remote server does not
+     * specify a keep-alive duration itself. Longer durations sent by the
+     * remote server are capped to this value.
+     */
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    /**
+     * Connections that have been idle for longer than this are evicted from
+     * the pool by a background thread.
+     */
+    private Duration idleEviction = Duration.ofSeconds(60);
+
+    /**
+     * Pooled connections that have been idle for longer than this are
+     * validated before they are reused.
+     */
+    private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+    /**
+     * Whether rest templates built with Spring's RestTemplateBuilder use the
+     * pooled request factory as well. Disabled by default, because the
+     * builder cannot tell its own default factory apart from one an
+     * application configured with custom SSL, proxy or timeout settings.
+     */
+    private boolean useForRestTemplateBuilder = false;
+
+}
@@ -23,14 +23,46 @@
  */
 package de.hsesslingen.keim.efs.mobility.config;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.AutoConfigureOrder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.Ordered;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.client.ResponseErrorHandler;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
+import de.hsesslingen.keim.efs.mobility.exception.ErrorCode;
+import de.hsesslingen.keim.efs.mobility.exception.ErrorCodeRegistry;
+import de.hsesslingen.keim.efs.mobility.exception.ExpectedErrors;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareErrorModule;
+import de.hsesslingen.keim.efs.mobility.exception.handler.ErrorLogPolicy;
 import de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareServiceExceptionHandler;
 import de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareErrorResponseHandler;
+import de.hsesslingen.keim.efs.mobility.requests.BulkheadRegistry;
+import de.hsesslingen.keim.efs.mobility.requests.CircuitBreakerRegistry;
+import de.hsesslingen.keim.efs.mobility.requests.ConcurrencyLimiterRegistry;
+import de.hsesslingen.keim.efs.mobility.requests.DeadlineFilter;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestMetrics;
+import de.hsesslingen.keim.efs.mobility.requests.PooledClientHttpRequestFactory;
+import de.hsesslingen.keim.efs.mobility.requests.ResilienceEndpoint;
+import de.hsesslingen.keim.efs.mobility.tracing.InMemorySpanExporter;
+import de.hsesslingen.keim.efs.mobility.tracing.Sampler;
+import de.hsesslingen.keim.efs.mobility.tracing.SpanExporter;
+import de.hsesslingen.keim.efs.mobility.tracing.Tracer;
+import de.hsesslingen.keim.efs.mobility.tracing.TracingFilter;
 
 /**
  * @author k.sivarasah
@@ -39,6 +71,7 @@ import de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareErrorRespons
 
 @Configuration
 @AutoConfigureOrder(value = Ordered.HIGHEST_PRECEDENCE)
+@EnableConfigurationProperties({HttpClientProperties.class, CircuitBreakerProperties.class, ConcurrencyLimitProperties.class, BulkheadProperties.class, JsonProperties.class, DeadlineProperties.class, TracingProperties.class, ExceptionProperties.class, ErrorLoggingProperties.class})
 public class MobilityCommonsAutoConfiguration {
 
 	@Bean
@@ -50,4 +83,218 @@ public class MobilityCommonsAutoConfiguration {
 	public MiddlewareServiceExceptionHandler efsExceptionHandler() {
 		return new MiddlewareServiceExceptionHandler();
 	}
+
+	/**
+	 * The object mapper used by the error handlers and request templates,
+	 * built from the spring.jackson.* and efs.json.* properties.
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public ObjectMapperRegistry objectMapperRegistry(ObjectProvider<Jackson2ObjectMapperBuilder> builder, JsonProperties properties) {
+		var mapper = ObjectMapperRegistry.createObjectMapper(builder.getIfAvailable(Jackson2ObjectMapperBuilder::json), properties.isBytecodeModule());
+		var registry = new ObjectMapperRegistry(mapper);
+		ObjectMapperRegistry.setDefault(registry);
+		return registry;
+	}
+
+	/**
+	 * Lets the object mapper of Spring MVC write the responses of the
+	 * exception handler with the hand-written MiddlewareError serializer.
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public MiddlewareErrorModule middlewareErrorModule() {
+		return new MiddlewareErrorModule();
+	}
+
+	/**
+	 * The pooled request factory configured with the efs.http.* properties.
+	 * It is also used by all MiddlewareRequestTemplates that create their own
+	 * rest template.
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public PooledClientHttpRequestFactory pooledClientHttpRequestFactory(HttpClientProperties properties) {
+		var factory = new PooledClientHttpRequestFactory(properties);
+		PooledClientHttpRequestFactory.setDefault(factory);
+		return factory;
+	}
+
+	/**
+	 * Lets rest templates built with the RestTemplateBuilder use the pooled
+	 * request factory, if enabled with efs.http.use-for-rest-template-builder.
+	 * Only the default factories are replaced, but a factory of the same
+	 * class configured by the application would be replaced as well, which
+	 * is why this is opt-in.
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "efs.http", name = "use-for-rest-template-builder", havingValue = "true")
+	public RestTemplateCustomizer pooledClientHttpRequestFactoryCustomizer(PooledClientHttpRequestFactory factory) {
+		return restTemplate -> {
+			var current = restTemplate.getRequestFactory().getClass();
+
+			if (current == SimpleClientHttpRequestFactory.class || current == HttpComponentsClientHttpRequestFactory.class) {
+				restTemplate.setRequestFactory(factory);
+			}
+		};
+	}
+
+	/**
+	 * The error codes known to the error handlers, extended by all ErrorCode
+	 * beans of the application.
+	 */
+	@Bean
+	public ErrorCodeRegistry errorCodeRegistry(ObjectProvider<ErrorCode> codes) {
+		var registry = ErrorCodeRegistry.getDefault();
+		codes.orderedStream().forEach(registry::register);
+		return registry;
+	}
+
+	/**
+	 * Decides which exceptions are created without a stack trace, configured
+	 * with the efs.exceptions.* properties.
+	 */
+	@Bean
+	public ExpectedErrors expectedErrors(ExceptionProperties properties) {
+		return ExpectedErrors.getDefault().setProperties(properties);
+	}
+
+	/**
+	 * Limits the logging of the error handlers, configured with the
+	 * efs.error-logging.* properties. Its summary stops with the context.
+	 */
+	@Bean(destroyMethod = "close")
+	public ErrorLogPolicy errorLogPolicy(ErrorLoggingProperties properties) {
+		return ErrorLogPolicy.getDefault().setProperties(properties);
+	}
+
+	/**
+	 * The circuit breakers used by request templates that enable them,
+	 * configured with the efs.circuit-breaker.* properties.
+	 */
+	@Bean
+	public CircuitBreakerRegistry circuitBreakerRegistry(CircuitBreakerProperties properties) {
+		return CircuitBreakerRegistry.getDefault().setProperties(properties);
+	}
+
+	/**
+	 * The concurrency limits used by request templates that enable them,
+	 * configured with the efs.concurrency-limit.* properties.
+	 */
+	@Bean
+	public ConcurrencyLimiterRegistry concurrencyLimiterRegistry(ConcurrencyLimitProperties properties) {
+		return ConcurrencyLimiterRegistry.getDefault().setProperties(properties);
+	}
+
+	/**
+	 * The bulkheads used by request templates that enable them, configured
+	 * with the efs.bulkhead.* properties.
+	 */
+	@Bean
+	public BulkheadRegistry bulkheadRegistry(BulkheadProperties properties) {
+		return BulkheadRegistry.getDefault().setProperties(properties);
+	}
+
+	/**
+	 * The tracer used by the TracingFilter and request templates that enable
+	 * tracing, configured with the efs.tracing.* properties. Spans are passed
+	 * to the SpanExporter bean, if any, otherwise they are only kept in memory
+	 * if efs.tracing.in-memory-capacity is set.
+	 */
+	@Bean
+	public Tracer efsTracer(TracingProperties properties, ObjectProvider<SpanExporter> exporter) {
+		var sampler = Sampler.probability(properties.getSampleProbability());
+
+		if (properties.getMaxTracesPerSecond() > 0) {
+			sampler = sampler.and(Sampler.rateLimited(properties.getMaxTracesPerSecond()));
+		}
+
+		return Tracer.getDefault()
+				.setEnabled(properties.isEnabled())
+				.setSampler(sampler)
+				.setExporter(exporter.getIfAvailable(() -> properties.getInMemoryCapacity() > 0
+						? new InMemorySpanExporter(properties.getInMemoryCapacity())
+						: SpanExporter.NONE));
+	}
+
+	/**
+	 * Resets the static defaults when the context is closed, so that they do
+	 * not keep using the beans above afterwards, e.g. when a test starts the
+	 * next context. The pooled request factory resets its default itself.
+	 */
+	@Bean
+	public DisposableBean efsDefaultsReset(ObjectMapperRegistry objectMapperRegistry, ErrorCodeRegistry errorCodeRegistry,
+			ExpectedErrors expectedErrors, ErrorLogPolicy errorLogPolicy, CircuitBreakerRegistry circuitBreakerRegistry,
+			ConcurrencyLimiterRegistry concurrencyLimiterRegistry, BulkheadRegistry bulkheadRegistry, Tracer efsTracer) {
+		return () -> {
+			ObjectMapperRegistry.clearDefault(objectMapperRegistry);
+			ErrorCodeRegistry.clearDefault(errorCodeRegistry);
+			ExpectedErrors.clearDefault(expectedErrors);
+			ErrorLogPolicy.clearDefault(errorLogPolicy);
+			CircuitBreakerRegistry.clearDefault(circuitBreakerRegistry);
+			ConcurrencyLimiterRegistry.clearDefault(concurrencyLimiterRegistry);
+			BulkheadRegistry.clearDefault(bulkheadRegistry);
+			Tracer.clearDefault(efsTracer);
+		};
+	}
+
+	/**
+	 * Continues the traces of incoming requests and records a span for each
+	 * of them, if enabled with efs.tracing.filter-enabled.
+	 */
+	@Configuration
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+	@ConditionalOnProperty(prefix = "efs.tracing", name = "filter-enabled", havingValue = "true")
+	static class TracingConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public TracingFilter tracingFilter(Tracer tracer, TracingProperties properties) {
+			return new TracingFilter(tracer, properties);
+		}
+	}
+
+	/**
+	 * Binds the deadlines of incoming requests to the handling threads, so
+	 * they are propagated to outgoing requests, if enabled with
+	 * efs.deadline.enabled. Configured with the efs.deadline.* properties.
+	 */
+	@Configuration
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+	@ConditionalOnProperty(prefix = "efs.deadline", name = "enabled", havingValue = "true")
+	static class DeadlineConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DeadlineFilter deadlineFilter(DeadlineProperties properties) {
+			return new DeadlineFilter(properties);
+		}
+	}
+
+	/**
+	 * Records metrics for all MiddlewareRequests once a MeterRegistry is
+	 * available. Without one, requests are not instrumented at all.
+	 */
+	@Configuration
+	@ConditionalOnClass(MeterRegistry.class)
+	static class MetricsConfiguration {
+
+		@Bean
+		public SmartInitializingSingleton middlewareRequestMetricsInstaller(ObjectProvider<MeterRegistry> registry) {
+			// Looked up after all singletons were created, as the registry is configured after this class.
+			return () -> registry.ifUnique(r -> MiddlewareRequestMetrics.install(new MiddlewareRequestMetrics(r)));
+		}
+	}
+
+	@Configuration
+	@ConditionalOnClass(Endpoint.class)
+	static class ResilienceEndpointConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ResilienceEndpoint resilienceEndpoint(CircuitBreakerRegistry circuitBreakers,
+				ConcurrencyLimiterRegistry concurrencyLimits, BulkheadRegistry bulkheads) {
+			return new ResilienceEndpoint(circuitBreakers, concurrencyLimits, bulkheads);
+		}
+	}
 }
@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareErrorModule;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import de.hsesslingen.keim.efs.mobility.service.UsersApiProperties;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Holds the {@link ObjectMapper} that is used for all JSON processing of the
+ * commons, i.e. by the error handlers and the request templates, together
+ * with a cache of {@link ObjectReader}s and {@link ObjectWriter}s per type.
+ * Readers and writers are immutable and look up their (de)serializers only
+ * once, so using them instead of calling {@code mapper.readValue(...)} avoids
+ * repeating the type introspection on every call.
+ * <p>
+ * Readers and writers for the commons model types, e.g.
+ * {@link MiddlewareError} and {@link MobilityService}, are built up front.
+ * <p>
+ * The default registry is published by the auto configuration, which builds
+ * the mapper from the {@code spring.jackson.*} properties and optionally
+ * registers a bytecode module (see {@link JsonProperties}).
+ *
+ * @author ben
+ */
+public class ObjectMapperRegistry {
+
+    private static final Logger logger = getLogger(ObjectMapperRegistry.class);
+
+    private static final String[] BYTECODE_MODULES = {
+        "com.fasterxml.jackson.module.blackbird.BlackbirdModule",
+        "com.fasterxml.jackson.module.afterburner.AfterburnerModule"
+    };
+
+    private static final List<Class<?>> COMMONS_TYPES = List.of(
+            MiddlewareError.class,
+            MobilityService.class,
+            UsersApiProperties.class
+    );
+
+    private static volatile ObjectMapperRegistry defaultRegistry;
+
+    private final ObjectMapper mapper;
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry for the given mapper. The mapper must not be
+     * reconfigured afterwards, because already cached readers and writers
+     * would not see the changes.
+     *
+     * @param mapper
+     */
+    public ObjectMapperRegistry(ObjectMapper mapper) {
+        this.mapper = mapper;
+
+        for (var type : COMMONS_TYPES) {
+            reader(type);
+            writer(type);
+        }
+    }
+
+    /**
+     * The registry used by the error handlers and request templates. If none
+     * has been set, a registry with the default Spring settings is created.
+     *
+     * @return
+     */
+    public static ObjectMapperRegistry getDefault() {
+        var registry = defaultRegistry;
+
+        if (registry == null) {
+            synchronized (ObjectMapperRegistry.class) {
+                registry = defaultRegistry;
+
+                if (registry == null) {
+                    registry = new ObjectMapperRegistry(createObjectMapper(Jackson2ObjectMapperBuilder.json(), false));
+                    defaultRegistry = registry;
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    /**
+     * Replaces the default registry. Rest templates that were already created
+     * keep using the mapper of the previous registry.
+     *
+     * @param registry
+     */
+    public static void setDefault(ObjectMapperRegistry registry) {
+        defaultRegistry = registry;
+    }
+
+    /**
+     * Removes the given registry if it is the default, e.g. once the
+     * application context that created it is closed. The next call of
+     * {@link #getDefault()} then creates a new one.
+     *
+     * @param registry
+     */
+    public static void clearDefault(ObjectMapperRegistry registry) {
+        synchronized (ObjectMapperRegistry.class) {
+            if (defaultRegistry == registry) {
+                defaultRegistry = null;
+            }
+        }
+    }
+
+    /**
+     * Builds an object mapper from the given builder that tolerates unknown
+     * properties and empty beans, so that the remote services can extend
+     * their models without breaking the clients. {@link MiddlewareError}s are
+     * (de)serialized by the {@link MiddlewareErrorModule}.
+     *
+     * @param builder
+     * @param bytecodeModule Whether the Blackbird or Afterburner module should
+     * be registered if it is on the classpath.
+     * @return
+     */
+    public static ObjectMapper createObjectMapper(Jackson2ObjectMapperBuilder builder, boolean bytecodeModule) {
+        var mapper = builder.build()
+                .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(new MiddlewareErrorModule());
+
+        if (bytecodeModule) {
+            registerBytecodeModule(mapper);
+        }
+
+        return mapper;
+    }
+
+    private static void registerBytecodeModule(ObjectMapper mapper) {
+        var classLoader = ObjectMapperRegistry.class.getClassLoader();
+
+        for (var name : BYTECODE_MODULES) {
+            if (ClassUtils.isPresent(name, classLoader)) {
+                try {
+                    var module = (Module) ClassUtils.forName(name, classLoader).getDeclaredConstructor().newInstance();
+                    mapper.registerModule(module);
+                    logger.info("Registered {} on the commons object mapper.", module.getModuleName());
+                    return;
+                } catch (ReflectiveOperationException | LinkageError ex) {
+                    logger.warn("Could not register {}: {}", name, ex.toString());
+                }
+            }
+        }
+
+        logger.warn("efs.json.bytecode-module is enabled, but neither Blackbird nor Afterburner is on the classpath.");
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    /**
+     * A reader for the given type, which can be a class or a parameterized
+     * type, e.g. taken from a {@code ParameterizedTypeReference}.
+     *
+     * @param type
+     * @return
+     */
+    public ObjectReader reader(Type type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(mapper.constructType(t)));
+    }
+
+    /**
+     * A writer for the given type.
+     *
+     * @param type
+     * @return
+     */
+    public ObjectWriter writer(Type type) {
+        return writers.computeIfAbsent(type, t -> mapper.writerFor(mapper.constructType(t)));
+    }
+
+}
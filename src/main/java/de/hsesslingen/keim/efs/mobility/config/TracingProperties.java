@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the default {@link de.hsesslingen.keim.efs.mobility.tracing.Tracer}.
+ * Can be configured using the properties prefixed with {@code efs.tracing}.
+ *
+ * @author ben
+ */
+@Data
+@ConfigurationProperties(prefix = "efs.tracing")
+public class TracingProperties {
+
+    /**
+     * Whether W3C trace contexts are propagated and spans are recorded.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Whether the {@link de.hsesslingen.keim.efs.mobility.tracing.TracingFilter}
+     * is registered, which continues the traces of incoming requests.
+     * Disabled by default, like the tracing of request templates.
+     */
+    private boolean filterEnabled = false;
+
+    /**
+     * Addresses of the callers whose sampling decision is kept, e.g. the
+     * other services of the middleware. Incoming requests of all other
+     * callers continue the trace, but whether it is recorded is decided by
+     * the sampler, so that callers cannot force the recording of their
+     * requests.
+     */
+    private List<String> trustedAddresses = new ArrayList<>();
+
+    /**
+     * Fraction of the new traces, i.e. of incoming requests without a
+     * {@code traceparent} or from callers that are not trusted, that are
+     * recorded.
+     */
+    private double sampleProbability = 0.1;
+
+    /**
+     * Upper bound for the number of new traces recorded per second. Zero or
+     * less disables the limit.
+     */
+    private double maxTracesPerSecond = 10;
+
+    /**
+     * Number of spans kept by an in-memory exporter, which is used if no
+     * other {@link de.hsesslingen.keim.efs.mobility.tracing.SpanExporter}
+     * bean is present. Zero or less disables it, in which case spans are not
+     * recorded without an exporter bean, only the trace context is
+     * propagated.
+     */
+    private int inMemoryCapacity = 0;
+
+}
@@ -0,0 +1,211 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.*;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.http.HttpStatus;
+import static org.springframework.http.HttpStatus.*;
+
+/**
+ * An error code together with the HTTP status, the default message and the
+ * log policy of the errors with this code. The codes known to the error
+ * handlers are held by the {@link ErrorCodeRegistry}. Services can define
+ * their own codes like this:
+ * <pre>{@code
+ * public static final ErrorCode VEHICLE_NOT_FOUND = new ErrorCode("VEHICLE_NOT_FOUND", NOT_FOUND, "The vehicle was not found.");
+ *
+ * ErrorCodeRegistry.getDefault().register(VEHICLE_NOT_FOUND);
+ * throw VEHICLE_NOT_FOUND.toException("No vehicle with id %s.", id);
+ * }</pre> In Spring applications, {@code ErrorCode} beans are registered by
+ * the auto configuration.
+ *
+ * @author ben
+ */
+public final class ErrorCode {
+
+    public static final ErrorCode UNKNOWN = new ErrorCode(UNKNOWN_ERROR_CODE, INTERNAL_SERVER_ERROR, "An unknown error occurred.");
+    public static final ErrorCode TOKEN_INVALID = new ErrorCode(TOKEN_INVALID_ERROR_CODE, UNAUTHORIZED, TOKEN_INVALID_ERROR_MESSAGE);
+    public static final ErrorCode REMOTE_AUTHENTICATION_FAILED = new ErrorCode(REMOTE_AUTHENTICATION_FAILED_ERROR_CODE, UNAUTHORIZED, REMOTE_AUTHENTICATION_FAILED_ERROR_MESSAGE);
+    public static final ErrorCode REMOTE_SERVICE_UNAVAILABLE = new ErrorCode(REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE, BAD_GATEWAY, REMOTE_SERVICE_UNAVAILABLE_ERROR_MESSAGE);
+    public static final ErrorCode REMOTE_SERVICE_REQUEST_FAILED = new ErrorCode(REMOTE_SERVICE_REQUEST_FAILED_ERROR_CODE, INTERNAL_SERVER_ERROR, REMOTE_SERVICE_REQUEST_FAILED_ERROR_MESSAGE);
+    public static final ErrorCode BOOKING_ACTION_NOT_SUPPORTED = new ErrorCode(BOOKING_ACTION_NOT_SUPPORTED_ERROR_CODE, NOT_IMPLEMENTED, BOOKING_ACTION_NOT_SUPPORTED_ERROR_MESSAGE, true);
+    public static final ErrorCode DEADLINE_EXCEEDED = new ErrorCode(DEADLINE_EXCEEDED_ERROR_CODE, GATEWAY_TIMEOUT, DEADLINE_EXCEEDED_ERROR_MESSAGE, true);
+    public static final ErrorCode LOCAL_SATURATED = new ErrorCode(LOCAL_SATURATED_ERROR_CODE, SERVICE_UNAVAILABLE, LOCAL_SATURATED_ERROR_MESSAGE);
+
+    private final String code;
+    private final HttpStatus status;
+    private final String message;
+    private final boolean expected;
+    private final LogLevel logLevel;
+
+    /**
+     * The exception returned by {@link #toException()} if stack traces of
+     * expected errors are omitted. Created on first use.
+     */
+    private volatile MiddlewareException shared;
+
+    /**
+     * The JSON of {@link #toError()}, see {@link MiddlewareErrorSerializer}.
+     * Created on first use.
+     */
+    private volatile SerializedString json;
+
+    /**
+     * Creates a code that is expected if the status is a client error.
+     *
+     * @param code
+     * @param status
+     * @param message
+     */
+    public ErrorCode(String code, HttpStatus status, String message) {
+        this(code, status, message, status.is4xxClientError());
+    }
+
+    public ErrorCode(String code, HttpStatus status, String message, boolean expected) {
+        this(code, status, message, expected, null);
+    }
+
+    /**
+     * @param code
+     * @param status The status of the responses for errors with this code.
+     * @param message The message used if none is given.
+     * @param expected Whether the code denotes an expected, business-level
+     * error, see {@link ExpectedErrors}.
+     * @param logLevel The level the error handlers log errors with this code
+     * at, or {@code null} to derive it from the status.
+     */
+    public ErrorCode(String code, HttpStatus status, String message, boolean expected, LogLevel logLevel) {
+        this.code = Objects.requireNonNull(code);
+        this.status = Objects.requireNonNull(status);
+        this.message = message;
+        this.expected = expected;
+        this.logLevel = logLevel;
+    }
+
+    /**
+     * The code for the given HTTP status, i.e. the status value as string.
+     *
+     * @param status
+     * @return
+     */
+    public static ErrorCode forStatus(HttpStatus status) {
+        return new ErrorCode(Integer.toString(status.value()), status, status.getReasonPhrase());
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isExpected() {
+        return expected;
+    }
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    SerializedString getJson() {
+        var result = json;
+
+        if (result == null) {
+            result = MiddlewareErrorSerializer.encode(toError());
+            json = result;
+        }
+
+        return result;
+    }
+
+    private static String format(String format, Object... variables) {
+        return variables.length <= 0 ? format : String.format(format, variables);
+    }
+
+    public MiddlewareError toError() {
+        return new MiddlewareError(code, message);
+    }
+
+    public MiddlewareError toError(String format, Object... variables) {
+        return toError(null, format, variables);
+    }
+
+    public MiddlewareError toError(Map<String, Object> details, String format, Object... variables) {
+        return new MiddlewareError(code, details, format(format, variables));
+    }
+
+    /**
+     * An exception with the default message. If stack traces of expected
+     * errors are omitted and this code is expected, the same immutable
+     * instance is returned on every call.
+     *
+     * @return
+     */
+    public MiddlewareException toException() {
+        if (!ExpectedErrors.getDefault().omitStackTrace(this)) {
+            return MiddlewareException.create(code, null, true, message);
+        }
+
+        var result = shared;
+
+        if (result == null) {
+            // Racing threads may create more than one instance, which is harmless.
+            result = MiddlewareException.shared(code, message);
+            shared = result;
+        }
+
+        return result;
+    }
+
+    public MiddlewareException toException(String format, Object... variables) {
+        return toException(null, format, variables);
+    }
+
+    /**
+     * An exception whose message is formatted lazily from the given format
+     * and variables.
+     *
+     * @param details
+     * @param format
+     * @param variables
+     * @return
+     */
+    public MiddlewareException toException(Map<String, Object> details, String format, Object... variables) {
+        return MiddlewareException.create(code, details, !ExpectedErrors.getDefault().omitStackTrace(this), format, variables);
+    }
+
+    @Override
+    public String toString() {
+        return code + " (" + status.value() + ")";
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Maps error codes to their {@link ErrorCode}, i.e. to the HTTP status and
+ * log policy used by the error handlers. Lookups are a single hash map access
+ * and never throw, so unknown codes cost no more than known ones.
+ * <p>
+ * Besides the built-in codes, like {@link ErrorCode#TOKEN_INVALID}, the
+ * registry knows the codes of all {@link HttpStatus} values, e.g. {@code 404}.
+ * The code {@code 503} is mapped to {@code 502 Bad Gateway}, because a service
+ * that reports it is unavailable from the point of view of our clients.
+ * Further codes can be registered at any time.
+ *
+ * @author ben
+ */
+public class ErrorCodeRegistry {
+
+    private static final List<ErrorCode> BUILT_IN_CODES = List.of(
+            ErrorCode.UNKNOWN,
+            ErrorCode.TOKEN_INVALID,
+            ErrorCode.REMOTE_AUTHENTICATION_FAILED,
+            ErrorCode.REMOTE_SERVICE_UNAVAILABLE,
+            ErrorCode.REMOTE_SERVICE_REQUEST_FAILED,
+            ErrorCode.BOOKING_ACTION_NOT_SUPPORTED,
+            ErrorCode.DEADLINE_EXCEEDED,
+            ErrorCode.LOCAL_SATURATED
+    );
+
+    private static volatile ErrorCodeRegistry defaultRegistry;
+
+    private final ConcurrentMap<String, ErrorCode> codes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry with the built-in codes and those of the HTTP status
+     * values.
+     */
+    public ErrorCodeRegistry() {
+        for (var status : HttpStatus.values()) {
+            // Deprecated aliases share the value of their replacement, which comes first.
+            codes.putIfAbsent(Integer.toString(status.value()), ErrorCode.forStatus(status));
+        }
+
+        var unavailable = HttpStatus.SERVICE_UNAVAILABLE;
+        register(new ErrorCode(Integer.toString(unavailable.value()), HttpStatus.BAD_GATEWAY, unavailable.getReasonPhrase()));
+
+        BUILT_IN_CODES.forEach(this::register);
+    }
+
+    /**
+     * The registry used by the error handlers. If none has been set, a
+     * registry with the built-in codes is created.
+     *
+     * @return
+     */
+    public static ErrorCodeRegistry getDefault() {
+        var registry = defaultRegistry;
+
+        if (registry == null) {
+            synchronized (ErrorCodeRegistry.class) {
+                registry = defaultRegistry;
+
+                if (registry == null) {
+                    registry = new ErrorCodeRegistry();
+                    defaultRegistry = registry;
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    public static void setDefault(ErrorCodeRegistry registry) {
+        defaultRegistry = registry;
+    }
+
+    /**
+     * Removes the given registry if it is the default, so that the codes
+     * registered by a closed application context are dropped.
+     *
+     * @param registry
+     */
+    public static void clearDefault(ErrorCodeRegistry registry) {
+        synchronized (ErrorCodeRegistry.class) {
+            if (defaultRegistry == registry) {
+                defaultRegistry = null;
+            }
+        }
+    }
+
+    /**
+     * Registers the given code, replacing a code with the same name.
+     *
+     * @param code
+     * @return
+     */
+    public ErrorCodeRegistry register(ErrorCode code) {
+        codes.put(code.getCode(), code);
+        return this;
+    }
+
+    /**
+     * The registered code with the given name.
+     *
+     * @param code
+     * @return The code or {@code null} if it is unknown.
+     */
+    public ErrorCode get(String code) {
+        return code != null ? codes.get(code) : null;
+    }
+
+    /**
+     * The status of the responses for errors with the given code. Numeric
+     * codes that are not registered, e.g. {@code 0404}, are parsed as status
+     * value, as the error handlers always did.
+     *
+     * @param code
+     * @param fallback The status used if the code is unknown and no known
+     * status value, e.g. {@code 499}.
+     * @return
+     */
+    public HttpStatus statusOf(String code, HttpStatus fallback) {
+        var registered = get(code);
+
+        if (registered != null) {
+            return registered.getStatus();
+        }
+
+        var parsed = parseStatus(code);
+        return parsed != null ? parsed : fallback;
+    }
+
+    private static HttpStatus parseStatus(String code) {
+        // Checked first, so that the usual non-numeric codes do not cost an exception.
+        if (code == null || code.isEmpty() || code.length() > 9) {
+            return null;
+        }
+
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) < '0' || code.charAt(i) > '9') {
+                return null;
+            }
+        }
+
+        return HttpStatus.resolve(Integer.parseInt(code));
+    }
+
+    /**
+     * Whether the given code is registered as expected.
+     *
+     * @param code
+     * @return
+     */
+    public boolean isExpected(String code) {
+        var registered = get(code);
+        return registered != null && registered.isExpected();
+    }
+
+    public Collection<ErrorCode> getAll() {
+        return codes.values();
+    }
+}
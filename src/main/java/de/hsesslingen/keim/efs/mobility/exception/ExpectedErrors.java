@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import de.hsesslingen.keim.efs.mobility.config.ExceptionProperties;
+import java.util.Set;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Decides which errors are expected, business-level errors, e.g. invalid
+ * tokens, unsupported booking actions or client errors of remote services,
+ * as opposed to bugs or failures of the infrastructure. If enabled, the
+ * {@link MiddlewareException}s and {@link HttpException}s for expected errors
+ * are created without a stack trace, and the factory methods without
+ * arguments, like {@link MiddlewareException#tokenInvalidException()}, return
+ * shared, pre-built instances.
+ * <p>
+ * Expected are the codes registered as expected in the
+ * {@link ErrorCodeRegistry}, e.g. {@code TOKEN_INVALID} or
+ * {@code DEADLINE_EXCEEDED}, HTTP 4xx status codes and the codes configured
+ * in {@code efs.exceptions.expected-codes}.
+ * <p>
+ * The mode is disabled by default and is enabled using
+ * {@code efs.exceptions.stackless-expected-errors}. It only affects exceptions
+ * created afterwards.
+ *
+ * @author ben
+ */
+public class ExpectedErrors {
+
+    private static volatile ExpectedErrors defaultInstance;
+
+    private volatile boolean stackless = false;
+    private volatile Set<String> codes = Set.of();
+
+    /**
+     * The settings used by all exceptions of the commons. If none have been
+     * set, the defaults are used, i.e. stack traces are always filled in.
+     *
+     * @return
+     */
+    public static ExpectedErrors getDefault() {
+        var instance = defaultInstance;
+
+        if (instance == null) {
+            synchronized (ExpectedErrors.class) {
+                instance = defaultInstance;
+
+                if (instance == null) {
+                    instance = new ExpectedErrors();
+                    defaultInstance = instance;
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    public static void setDefault(ExpectedErrors instance) {
+        defaultInstance = instance;
+    }
+
+    /**
+     * Removes the given instance if it is the default, so that the next
+     * call of {@link #getDefault()} starts with the default settings again.
+     *
+     * @param instance
+     */
+    public static void clearDefault(ExpectedErrors instance) {
+        synchronized (ExpectedErrors.class) {
+            if (defaultInstance == instance) {
+                defaultInstance = null;
+            }
+        }
+    }
+
+    public ExpectedErrors setProperties(ExceptionProperties properties) {
+        this.codes = Set.copyOf(properties.getExpectedCodes());
+        this.stackless = properties.isStacklessExpectedErrors();
+        return this;
+    }
+
+    public boolean isStackless() {
+        return stackless;
+    }
+
+    public ExpectedErrors setStackless(boolean stackless) {
+        this.stackless = stackless;
+        return this;
+    }
+
+    /**
+     * Whether the given error code denotes an expected error.
+     *
+     * @param code
+     * @return
+     */
+    public boolean isExpected(String code) {
+        return code != null
+                && (ErrorCodeRegistry.getDefault().isExpected(code) || codes.contains(code) || isClientErrorStatus(code));
+    }
+
+    /**
+     * Whether the given code denotes an expected error, either because it was
+     * created as expected or because it is configured as such.
+     *
+     * @param code
+     * @return
+     */
+    public boolean isExpected(ErrorCode code) {
+        return code.isExpected() || codes.contains(code.getCode());
+    }
+
+    /**
+     * Whether an exception with the given code should be created without a
+     * stack trace.
+     *
+     * @param code
+     * @return
+     */
+    public boolean omitStackTrace(String code) {
+        return stackless && isExpected(code);
+    }
+
+    public boolean omitStackTrace(ErrorCode code) {
+        return stackless && isExpected(code);
+    }
+
+    /**
+     * Whether an exception for the given HTTP status should be created
+     * without a stack trace.
+     *
+     * @param status
+     * @return
+     */
+    public boolean omitStackTrace(HttpStatus status) {
+        return stackless && status != null && status.is4xxClientError();
+    }
+
+    private static boolean isClientErrorStatus(String code) {
+        return code.length() == 3
+                && code.charAt(0) == '4'
+                && Character.isDigit(code.charAt(1))
+                && Character.isDigit(code.charAt(2));
+    }
+}
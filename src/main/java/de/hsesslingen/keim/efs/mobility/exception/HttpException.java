@@ -23,11 +23,17 @@
  */
 package de.hsesslingen.keim.efs.mobility.exception;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import org.springframework.http.HttpStatus;
 
 /**
  * Serves as an exception class that corresponds to an HTTP error response.
  * Therefore this class always contains a non-null HttpStatus value.
+ * <p>
+ * The message is formatted on the first call of {@link #getMessage()}.
+ * Exceptions with a 4xx status are created without a stack trace if that
+ * mode of {@link ExpectedErrors} is enabled.
  *
  * @author keim
  */
@@ -40,6 +46,10 @@ public class HttpException extends RuntimeException {
      */
     protected final HttpStatus httpStatus;
 
+    private final String format;
+    private final transient Object[] variables;
+    private volatile String message;
+
     /**
      * @param format The message either as simple string or as a
      * String.format(...) format string. If no variables are given, the format
@@ -49,8 +59,7 @@ public class HttpException extends RuntimeException {
      * @param httpStatus
      */
     public HttpException(HttpStatus httpStatus, String format, Object... variables) {
-        super(variables.length > 0 ? String.format(format, variables) : format);
-        this.httpStatus = httpStatus;
+        this(httpStatus, null, format, variables);
     }
 
     /**
@@ -63,8 +72,35 @@ public class HttpException extends RuntimeException {
      * @param cause
      */
     public HttpException(HttpStatus httpStatus, Throwable cause, String format, Object... variables) {
-        super(variables.length > 0 ? String.format(format, variables) : format, cause);
+        super(null, cause, true, !ExpectedErrors.getDefault().omitStackTrace(httpStatus));
         this.httpStatus = httpStatus;
+
+        if (variables == null || variables.length == 0) {
+            this.format = null;
+            this.variables = null;
+            this.message = format;
+        } else {
+            this.format = format;
+            this.variables = variables;
+        }
+    }
+
+    @Override
+    public String getMessage() {
+        var result = message;
+
+        if (result == null && format != null) {
+            result = String.format(format, variables);
+            message = result;
+        }
+
+        return result;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // The variables are not serialized, so the message has to be.
+        getMessage();
+        out.defaultWriteObject();
     }
 
     public boolean isClientError() {
@@ -70,6 +70,12 @@ public class MiddlewareError implements Serializable {
     public static final String BOOKING_ACTION_NOT_SUPPORTED_ERROR_CODE = "BOOKING_ACTION_NOT_SUPPORTED";
     public static final String BOOKING_ACTION_NOT_SUPPORTED_ERROR_MESSAGE = "The requested booking action is not supported.";
 
+    public static final String DEADLINE_EXCEEDED_ERROR_CODE = "DEADLINE_EXCEEDED";
+    public static final String DEADLINE_EXCEEDED_ERROR_MESSAGE = "The deadline of the original request was exceeded.";
+
+    public static final String LOCAL_SATURATED_ERROR_CODE = "LOCAL_SATURATED";
+    public static final String LOCAL_SATURATED_ERROR_MESSAGE = "This service is overloaded and cannot handle the request right now.";
+
     /**
      * A human readable error message.
      */
@@ -119,20 +125,16 @@ public class MiddlewareError implements Serializable {
         return new MiddlewareException(code, details, message);
     }
 
-    private static String format(String format, Object... variables) {
-        return variables.length <= 0 ? format : String.format(format, variables);
-    }
-
     public static MiddlewareError unknown(String format, Object... variables) {
         return unknown(null, format, variables);
     }
 
     public static MiddlewareError unknown(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareError(UNKNOWN_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.UNKNOWN.toError(details, format, variables);
     }
 
     public static MiddlewareError tokenInvalid() {
-        return tokenInvalid(TOKEN_INVALID_ERROR_MESSAGE);
+        return ErrorCode.TOKEN_INVALID.toError();
     }
 
     public static MiddlewareError tokenInvalid(String format, Object... variables) {
@@ -140,11 +142,11 @@ public class MiddlewareError implements Serializable {
     }
 
     public static MiddlewareError tokenInvalid(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareError(TOKEN_INVALID_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.TOKEN_INVALID.toError(details, format, variables);
     }
 
     public static MiddlewareError remoteAuthenticationFailed() {
-        return remoteAuthenticationFailed(REMOTE_AUTHENTICATION_FAILED_ERROR_MESSAGE);
+        return ErrorCode.REMOTE_AUTHENTICATION_FAILED.toError();
     }
 
     public static MiddlewareError remoteAuthenticationFailed(String format, Object... variables) {
@@ -152,11 +154,11 @@ public class MiddlewareError implements Serializable {
     }
 
     public static MiddlewareError remoteAuthenticationFailed(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareError(REMOTE_AUTHENTICATION_FAILED_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.REMOTE_AUTHENTICATION_FAILED.toError(details, format, variables);
     }
 
     public static MiddlewareError remoteServiceUnavailable() {
-        return remoteServiceUnavailable(REMOTE_SERVICE_UNAVAILABLE_ERROR_MESSAGE);
+        return ErrorCode.REMOTE_SERVICE_UNAVAILABLE.toError();
     }
 
     public static MiddlewareError remoteServiceUnavailable(String format, Object... variables) {
@@ -164,11 +166,11 @@ public class MiddlewareError implements Serializable {
     }
 
     public static MiddlewareError remoteServiceUnavailable(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareError(REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.REMOTE_SERVICE_UNAVAILABLE.toError(details, format, variables);
     }
 
     public static MiddlewareError remoteServiceRequestFailed() {
-        return remoteServiceRequestFailed(REMOTE_SERVICE_REQUEST_FAILED_ERROR_MESSAGE);
+        return ErrorCode.REMOTE_SERVICE_REQUEST_FAILED.toError();
     }
 
     public static MiddlewareError remoteServiceRequestFailed(String format, Object... variables) {
@@ -176,11 +178,11 @@ public class MiddlewareError implements Serializable {
     }
 
     public static MiddlewareError remoteServiceRequestFailed(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareError(REMOTE_SERVICE_REQUEST_FAILED_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.REMOTE_SERVICE_REQUEST_FAILED.toError(details, format, variables);
     }
 
     public static MiddlewareError bookingActionNotSupported() {
-        return bookingActionNotSupported(BOOKING_ACTION_NOT_SUPPORTED_ERROR_MESSAGE);
+        return ErrorCode.BOOKING_ACTION_NOT_SUPPORTED.toError();
     }
 
     public static MiddlewareError bookingActionNotSupported(String format, Object... variables) {
@@ -188,6 +190,18 @@ public class MiddlewareError implements Serializable {
     }
 
     public static MiddlewareError bookingActionNotSupported(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareError(BOOKING_ACTION_NOT_SUPPORTED_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.BOOKING_ACTION_NOT_SUPPORTED.toError(details, format, variables);
+    }
+
+    public static MiddlewareError deadlineExceeded() {
+        return ErrorCode.DEADLINE_EXCEEDED.toError();
+    }
+
+    public static MiddlewareError deadlineExceeded(String format, Object... variables) {
+        return deadlineExceeded(null, format, variables);
+    }
+
+    public static MiddlewareError deadlineExceeded(Map<String, Object> details, String format, Object... variables) {
+        return ErrorCode.DEADLINE_EXCEEDED.toError(details, format, variables);
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads {@link MiddlewareError}s without reflection. Unknown properties are
+ * skipped, so remote services can extend their errors, scalar codes and
+ * messages are read as strings, e.g. {@code "code": 404}, and a plain JSON
+ * string is read as message, like the bean deserializer would.
+ *
+ * @author ben
+ * @see MiddlewareErrorModule
+ */
+public class MiddlewareErrorDeserializer extends StdDeserializer<MiddlewareError> implements ContextualDeserializer {
+
+    public static final MiddlewareErrorDeserializer INSTANCE = new MiddlewareErrorDeserializer();
+
+    /**
+     * The deserializer of the details, resolved once per object mapper.
+     */
+    private final JsonDeserializer<Object> detailsDeserializer;
+
+    public MiddlewareErrorDeserializer() {
+        this(null);
+    }
+
+    private MiddlewareErrorDeserializer(JsonDeserializer<Object> detailsDeserializer) {
+        super(MiddlewareError.class);
+        this.detailsDeserializer = detailsDeserializer;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property) throws JsonMappingException {
+        if (detailsDeserializer != null) {
+            return this;
+        }
+
+        var detailsType = ctxt.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+        return new MiddlewareErrorDeserializer(ctxt.findRootValueDeserializer(detailsType));
+    }
+
+    @Override
+    public MiddlewareError deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        var token = p.currentToken();
+
+        if (token == JsonToken.VALUE_STRING) {
+            return new MiddlewareError(p.getText());
+        }
+
+        if (token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        } else if (token != JsonToken.FIELD_NAME) {
+            return (MiddlewareError) ctxt.handleUnexpectedToken(MiddlewareError.class, p);
+        }
+
+        var error = new MiddlewareError();
+
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            var name = p.currentName();
+            p.nextToken();
+
+            switch (name) {
+                case "message":
+                    error.setMessage(readString(p, ctxt));
+                    break;
+                case "code":
+                    error.setCode(readString(p, ctxt));
+                    break;
+                case "details":
+                    error.setDetails(readDetails(p, ctxt));
+                    break;
+                default:
+                    p.skipChildren();
+                    break;
+            }
+        }
+
+        return error;
+    }
+
+    private static String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        var token = p.currentToken();
+
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        if (token.isScalarValue()) {
+            return p.getValueAsString();
+        }
+
+        return (String) ctxt.handleUnexpectedToken(String.class, p);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readDetails(JsonParser p, DeserializationContext ctxt) throws IOException {
+        var token = p.currentToken();
+
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        if (token == JsonToken.START_OBJECT) {
+            return (Map<String, Object>) (detailsDeserializer != null
+                    ? detailsDeserializer.deserialize(p, ctxt)
+                    : ctxt.readValue(p, Map.class));
+        }
+
+        return (Map<String, Object>) ctxt.handleUnexpectedToken(Map.class, p);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+
+/**
+ * Registers the {@link MiddlewareErrorSerializer} and the
+ * {@link MiddlewareErrorDeserializer}. Both apply only to
+ * {@link MiddlewareError} itself, subclasses with additional properties are
+ * handled by the bean (de)serializers as before.
+ * <p>
+ * The module is registered on the mapper of the
+ * {@link de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry} and,
+ * by the auto configuration, on the object mapper of Spring MVC, so it is used
+ * for the responses of the {@code MiddlewareServiceExceptionHandler}.
+ *
+ * @author ben
+ */
+public class MiddlewareErrorModule extends SimpleModule {
+
+    public MiddlewareErrorModule() {
+        super(MiddlewareErrorModule.class.getSimpleName());
+
+        addDeserializer(MiddlewareError.class, MiddlewareErrorDeserializer.INSTANCE);
+        setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+                return beanDesc.getBeanClass() == MiddlewareError.class ? MiddlewareErrorSerializer.INSTANCE : serializer;
+            }
+        });
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * Writes {@link MiddlewareError}s without reflection, in the same format as
+ * the bean serializer would, i.e. {@code message}, {@code code} and
+ * {@code details} with {@code null} values omitted.
+ * <p>
+ * Errors that consist only of a registered code and its default message,
+ * e.g. {@link MiddlewareError#tokenInvalid()}, are identical byte for byte.
+ * Their JSON is encoded once per {@link ErrorCode} and then copied to the
+ * output as is, unless the output is pretty printed.
+ *
+ * @author ben
+ * @see MiddlewareErrorModule
+ */
+public class MiddlewareErrorSerializer extends StdSerializer<MiddlewareError> {
+
+    public static final MiddlewareErrorSerializer INSTANCE = new MiddlewareErrorSerializer();
+
+    private static final SerializedString MESSAGE = new SerializedString("message");
+    private static final SerializedString CODE = new SerializedString("code");
+    private static final SerializedString DETAILS = new SerializedString("details");
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    public MiddlewareErrorSerializer() {
+        super(MiddlewareError.class);
+    }
+
+    @Override
+    public void serialize(MiddlewareError value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (value.getDetails() == null && gen.getPrettyPrinter() == null) {
+            var registered = ErrorCodeRegistry.getDefault().get(value.getCode());
+
+            if (registered != null && Objects.equals(registered.getMessage(), value.getMessage())) {
+                gen.writeRawValue(registered.getJson());
+                return;
+            }
+        }
+
+        gen.writeStartObject(value);
+        writeFields(value, gen, provider);
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(MiddlewareError value, JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+        WritableTypeId typeId = typeSer.writeTypePrefix(gen, typeSer.typeId(value, JsonToken.START_OBJECT));
+        writeFields(value, gen, provider);
+        typeSer.writeTypeSuffix(gen, typeId);
+    }
+
+    private static void writeFields(MiddlewareError value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        writeScalarFields(value, gen);
+
+        if (value.getDetails() != null) {
+            gen.writeFieldName(DETAILS);
+            provider.defaultSerializeValue(value.getDetails(), gen);
+        }
+    }
+
+    private static void writeScalarFields(MiddlewareError value, JsonGenerator gen) throws IOException {
+        if (value.getMessage() != null) {
+            gen.writeFieldName(MESSAGE);
+            gen.writeString(value.getMessage());
+        }
+
+        if (value.getCode() != null) {
+            gen.writeFieldName(CODE);
+            gen.writeString(value.getCode());
+        }
+    }
+
+    /**
+     * Encodes an error without details. The UTF-8 bytes of the result are
+     * computed up front, so writing it to a byte stream is a plain copy.
+     *
+     * @param value
+     * @return
+     */
+    static SerializedString encode(MiddlewareError value) {
+        var writer = new StringWriter();
+
+        try ( var gen = FACTORY.createGenerator(writer)) {
+            gen.writeStartObject();
+            writeScalarFields(value, gen);
+            gen.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        var result = new SerializedString(writer.toString());
+        result.asUnquotedUTF8();
+        return result;
+    }
+}
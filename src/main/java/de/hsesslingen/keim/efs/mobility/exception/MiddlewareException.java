@@ -24,11 +24,21 @@
 package de.hsesslingen.keim.efs.mobility.exception;
 
 import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.*;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Map;
 
 /**
  * This class is the throwable counterpart of {@link MiddlewareError} and is
  * used for transporting exception data through JVM exception handling system.
+ * <p>
+ * Messages passed to the factory methods as format string and variables are
+ * formatted on the first call of {@link #getMessage()}, so exceptions that
+ * are handled without looking at their message never pay for it. Exceptions
+ * for expected errors can be created without a stack trace, see
+ * {@link ExpectedErrors}. The factory methods are backed by the built-in
+ * {@link ErrorCode}s, codes of other services are created the same way using
+ * {@link ErrorCode#toException(String, Object...)}.
  *
  * @author ben
  */
@@ -36,29 +46,85 @@ public class MiddlewareException extends RuntimeException {
 
     private final String code;
     private final Map<String, Object> details;
+    private final String format;
+    private final transient Object[] variables;
+    private volatile String message;
 
     public MiddlewareException(String code, String message) {
-        super(message);
-        this.code = code;
-        this.details = null;
+        this(code, null, null, message, null, writableStackTrace(code), true);
     }
 
     public MiddlewareException(String code, Throwable cause, String message) {
-        super(message, cause);
-        this.code = code;
-        this.details = null;
+        this(code, null, cause, message, null, writableStackTrace(code), true);
     }
 
     public MiddlewareException(String code, Map<String, Object> details, String message) {
-        super(message);
-        this.code = code;
-        this.details = details;
+        this(code, details, null, message, null, writableStackTrace(code), true);
     }
 
     public MiddlewareException(String code, Map<String, Object> details, Throwable cause, String message) {
-        super(message, cause);
+        this(code, details, cause, message, null, writableStackTrace(code), true);
+    }
+
+    /**
+     * For subclasses that decide themselves whether the stack trace is
+     * filled in.
+     *
+     * @param code
+     * @param details
+     * @param cause
+     * @param message
+     * @param writableStackTrace
+     */
+    protected MiddlewareException(String code, Map<String, Object> details, Throwable cause, String message, boolean writableStackTrace) {
+        this(code, details, cause, message, null, writableStackTrace, true);
+    }
+
+    private MiddlewareException(String code, Map<String, Object> details, Throwable cause, String format, Object[] variables,
+            boolean writableStackTrace, boolean enableSuppression) {
+        super(null, cause, enableSuppression, writableStackTrace);
         this.code = code;
         this.details = details;
+
+        if (variables == null || variables.length == 0) {
+            this.format = null;
+            this.variables = null;
+            this.message = format;
+        } else {
+            this.format = format;
+            this.variables = variables;
+        }
+    }
+
+    private static boolean writableStackTrace(String code) {
+        return !ExpectedErrors.getDefault().omitStackTrace(code);
+    }
+
+    /**
+     * Creates an exception whose message is formatted lazily.
+     */
+    static MiddlewareException create(String code, Map<String, Object> details, boolean writableStackTrace, String format, Object... variables) {
+        return new MiddlewareException(code, details, null, format, variables, writableStackTrace, true);
+    }
+
+    /**
+     * Creates an immutable exception without stack trace that can be thrown
+     * any number of times.
+     */
+    static MiddlewareException shared(String code, String message) {
+        return new MiddlewareException(code, null, null, message, null, false, false);
+    }
+
+    @Override
+    public String getMessage() {
+        var result = message;
+
+        if (result == null && format != null) {
+            result = String.format(format, variables);
+            message = result;
+        }
+
+        return result;
     }
 
     public String getCode() {
@@ -73,8 +139,10 @@ public class MiddlewareException extends RuntimeException {
         return new MiddlewareError(code, details, getMessage());
     }
 
-    private static String format(String format, Object... variables) {
-        return variables.length <= 0 ? format : String.format(format, variables);
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // The variables are not serialized, so the message has to be.
+        getMessage();
+        out.defaultWriteObject();
     }
 
     public static MiddlewareException unknownException(String format, Object... variables) {
@@ -82,11 +150,11 @@ public class MiddlewareException extends RuntimeException {
     }
 
     public static MiddlewareException unknownException(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareException(UNKNOWN_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.UNKNOWN.toException(details, format, variables);
     }
 
     public static MiddlewareException tokenInvalidException() {
-        return tokenInvalidException(TOKEN_INVALID_ERROR_MESSAGE);
+        return ErrorCode.TOKEN_INVALID.toException();
     }
 
     public static MiddlewareException tokenInvalidException(String format, Object... variables) {
@@ -94,11 +162,11 @@ public class MiddlewareException extends RuntimeException {
     }
 
     public static MiddlewareException tokenInvalidException(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareException(TOKEN_INVALID_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.TOKEN_INVALID.toException(details, format, variables);
     }
 
     public static MiddlewareException remoteAuthenticationFailedException() {
-        return remoteAuthenticationFailedException(REMOTE_AUTHENTICATION_FAILED_ERROR_MESSAGE);
+        return ErrorCode.REMOTE_AUTHENTICATION_FAILED.toException();
     }
 
     public static MiddlewareException remoteAuthenticationFailedException(String format, Object... variables) {
@@ -106,11 +174,11 @@ public class MiddlewareException extends RuntimeException {
     }
 
     public static MiddlewareException remoteAuthenticationFailedException(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareException(REMOTE_AUTHENTICATION_FAILED_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.REMOTE_AUTHENTICATION_FAILED.toException(details, format, variables);
     }
 
     public static MiddlewareException remoteServiceUnavailableException() {
-        return remoteServiceUnavailableException(REMOTE_SERVICE_UNAVAILABLE_ERROR_MESSAGE);
+        return ErrorCode.REMOTE_SERVICE_UNAVAILABLE.toException();
     }
 
     public static MiddlewareException remoteServiceUnavailableException(String format, Object... variables) {
@@ -118,11 +186,11 @@ public class MiddlewareException extends RuntimeException {
     }
 
     public static MiddlewareException remoteServiceUnavailableException(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareException(REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.REMOTE_SERVICE_UNAVAILABLE.toException(details, format, variables);
     }
 
     public static MiddlewareException remoteServiceRequestFailedException() {
-        return remoteServiceRequestFailedException(REMOTE_SERVICE_REQUEST_FAILED_ERROR_MESSAGE);
+        return ErrorCode.REMOTE_SERVICE_REQUEST_FAILED.toException();
     }
 
     public static MiddlewareException remoteServiceRequestFailedException(String format, Object... variables) {
@@ -130,11 +198,11 @@ public class MiddlewareException extends RuntimeException {
     }
 
     public static MiddlewareException remoteServiceRequestFailedException(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareException(REMOTE_SERVICE_REQUEST_FAILED_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.REMOTE_SERVICE_REQUEST_FAILED.toException(details, format, variables);
     }
 
     public static MiddlewareException bookingActionNotSupportedException() {
-        return bookingActionNotSupportedException(BOOKING_ACTION_NOT_SUPPORTED_ERROR_MESSAGE);
+        return ErrorCode.BOOKING_ACTION_NOT_SUPPORTED.toException();
     }
 
     public static MiddlewareException bookingActionNotSupportedException(String format, Object... variables) {
@@ -142,7 +210,31 @@ public class MiddlewareException extends RuntimeException {
     }
 
     public static MiddlewareException bookingActionNotSupportedException(Map<String, Object> details, String format, Object... variables) {
-        return new MiddlewareException(BOOKING_ACTION_NOT_SUPPORTED_ERROR_CODE, details, format(format, variables));
+        return ErrorCode.BOOKING_ACTION_NOT_SUPPORTED.toException(details, format, variables);
+    }
+
+    public static MiddlewareException deadlineExceededException() {
+        return ErrorCode.DEADLINE_EXCEEDED.toException();
+    }
+
+    public static MiddlewareException deadlineExceededException(String format, Object... variables) {
+        return deadlineExceededException(null, format, variables);
+    }
+
+    public static MiddlewareException deadlineExceededException(Map<String, Object> details, String format, Object... variables) {
+        return ErrorCode.DEADLINE_EXCEEDED.toException(details, format, variables);
+    }
+
+    public static MiddlewareException localSaturatedException() {
+        return ErrorCode.LOCAL_SATURATED.toException();
+    }
+
+    public static MiddlewareException localSaturatedException(String format, Object... variables) {
+        return localSaturatedException(null, format, variables);
+    }
+
+    public static MiddlewareException localSaturatedException(Map<String, Object> details, String format, Object... variables) {
+        return ErrorCode.LOCAL_SATURATED.toException(details, format, variables);
     }
 
 }
@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+/**
+ * A {@link MiddlewareException} that was created from an error response of a
+ * remote service. Besides the error, it carries the HTTP status and headers of
+ * that response, e.g. to decide whether a request can be retried.
+ * <p>
+ * Client errors are expected errors in the sense of {@link ExpectedErrors},
+ * so they are created without a stack trace if that mode is enabled.
+ *
+ * @author ben
+ */
+public class RemoteMiddlewareException extends MiddlewareException {
+
+    private final HttpStatus status;
+    private final HttpHeaders headers;
+
+    public RemoteMiddlewareException(MiddlewareError error, HttpStatus status, HttpHeaders headers) {
+        super(error.getCode(), error.getDetails(), null, error.getMessage(), writableStackTrace(error, status));
+        this.status = status;
+        this.headers = headers != null ? HttpHeaders.readOnlyHttpHeaders(headers) : HttpHeaders.EMPTY;
+    }
+
+    private static boolean writableStackTrace(MiddlewareError error, HttpStatus status) {
+        var expected = ExpectedErrors.getDefault();
+        return !expected.omitStackTrace(error.getCode()) && !expected.omitStackTrace(status);
+    }
+
+    /**
+     * The HTTP status of the error response.
+     *
+     * @return
+     */
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * The headers of the error response.
+     *
+     * @return
+     */
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception.handler;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The body of an error response, read up to a limit of {@link #MAX_BYTES}
+ * bytes. This avoids reading arbitrarily large error bodies into memory and
+ * allows parsing them without allocating a string first.
+ * <p>
+ * The buffer starts small and grows only as far as the body needs, so that
+ * the usual short error bodies do not cost the full limit.
+ *
+ * @author ben
+ */
+public final class ErrorBody {
+
+    /**
+     * The maximum number of bytes that are read from an error body.
+     */
+    public static final int MAX_BYTES = 16 * 1024;
+
+    /**
+     * The initial size of the buffer, enough for most error bodies.
+     */
+    private static final int INITIAL_BYTES = 512;
+
+    private static final String TRUNCATION_MARKER = "...";
+
+    private final byte[] bytes;
+    private final int length;
+    private final boolean truncated;
+
+    private ErrorBody(byte[] bytes, int length, boolean truncated) {
+        this.bytes = bytes;
+        this.length = length;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Reads at most {@link #MAX_BYTES} bytes from the given stream. The
+     * stream is not closed.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static ErrorBody read(InputStream in) throws IOException {
+        if (in == null) {
+            return new ErrorBody(new byte[0], 0, false);
+        }
+
+        var buffer = new byte[INITIAL_BYTES];
+        int length = 0;
+        int read;
+
+        while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+            length += read;
+
+            if (length == buffer.length) {
+                if (buffer.length == MAX_BYTES) {
+                    break;
+                }
+
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_BYTES));
+            }
+        }
+
+        boolean truncated = length == MAX_BYTES && in.read() >= 0;
+
+        return new ErrorBody(buffer, length, truncated);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Whether the body was longer than {@link #MAX_BYTES}.
+     *
+     * @return
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Parses the body using the given reader, directly from the buffer.
+     *
+     * @param <T>
+     * @param reader
+     * @return
+     * @throws IOException If the body is not valid for the reader, e.g.
+     * because it was truncated.
+     */
+    public <T> T parse(ObjectReader reader) throws IOException {
+        return reader.readValue(bytes, 0, length);
+    }
+
+    /**
+     * Decodes the body as UTF-8. If it was truncated, "..." is appended.
+     *
+     * @return
+     */
+    public String asString() {
+        return decode(bytes, length, truncated);
+    }
+
+    /**
+     * Decodes the given bytes of a body as UTF-8, appending "..." if the body
+     * was truncated.
+     *
+     * @param bytes
+     * @param length
+     * @param truncated
+     * @return
+     */
+    public static String decode(byte[] bytes, int length, boolean truncated) {
+        var string = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        return truncated ? string + TRUNCATION_MARKER : string;
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception.handler;
+
+import de.hsesslingen.keim.efs.mobility.config.ErrorLoggingProperties;
+import de.hsesslingen.keim.efs.mobility.exception.ErrorCode;
+import de.hsesslingen.keim.efs.mobility.exception.ErrorCodeRegistry;
+import de.hsesslingen.keim.efs.mobility.exception.ExpectedErrors;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestExecutors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Decides how the error handlers log the errors they handle, so that a flood
+ * of errors, e.g. during an outage of a remote service, does not flood the
+ * logs as well:
+ * <ul>
+ * <li>Each combination of exception class and error code is logged at most
+ * {@code efs.error-logging.max-per-second} times per second. Further errors
+ * are counted and reported in a periodic summary, e.g.
+ * {@code TOKEN_INVALID (RemoteMiddlewareException) x 4,312 in last 60 s}.</li>
+ * <li>Stack traces are logged only for unexpected server errors, i.e. errors
+ * with a 5xx or unknown status whose code is not expected in the sense of
+ * {@link ExpectedErrors}.</li>
+ * <li>Client errors are logged at WARN, server errors at ERROR. The levels can
+ * be changed per error code or exception class, or by registering an
+ * {@link ErrorCode} with a log level.</li>
+ * </ul>
+ * The default policy is configured by the auto configuration using the
+ * properties prefixed with {@code efs.error-logging}.
+ *
+ * @author ben
+ */
+public class ErrorLogPolicy {
+
+    private static final Logger logger = getLogger(ErrorLogPolicy.class);
+
+    private static final String CAUGHT_MSG = "{} caught with message {}";
+    private static final String RESPONSE_MSG = "Error Response: {} {}";
+    private static final String NO_CODE = "";
+
+    private static volatile ErrorLogPolicy defaultPolicy;
+
+    private final ConcurrentMap<Key, Counter> counters = new ConcurrentHashMap<>();
+    private volatile ErrorLoggingProperties properties;
+    private ScheduledFuture<?> summary;
+
+    public ErrorLogPolicy() {
+        this(new ErrorLoggingProperties());
+    }
+
+    public ErrorLogPolicy(ErrorLoggingProperties properties) {
+        setProperties(properties);
+    }
+
+    /**
+     * The policy used by the error handlers of the commons. If none has been
+     * set, a policy with the default settings is created.
+     *
+     * @return
+     */
+    public static ErrorLogPolicy getDefault() {
+        var policy = defaultPolicy;
+
+        if (policy == null) {
+            synchronized (ErrorLogPolicy.class) {
+                policy = defaultPolicy;
+
+                if (policy == null) {
+                    policy = new ErrorLogPolicy();
+                    defaultPolicy = policy;
+                }
+            }
+        }
+
+        return policy;
+    }
+
+    /**
+     * Replaces the policy used by the error handlers of the commons. The
+     * previous policy is closed, so its summaries are not logged anymore.
+     *
+     * @param policy
+     */
+    public static void setDefault(ErrorLogPolicy policy) {
+        ErrorLogPolicy previous;
+
+        synchronized (ErrorLogPolicy.class) {
+            previous = defaultPolicy;
+            defaultPolicy = policy;
+        }
+
+        if (previous != null && previous != policy) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Removes the given policy if it is the default, without closing it. The
+     * next call of {@link #getDefault()} creates a new one.
+     *
+     * @param policy
+     */
+    public static void clearDefault(ErrorLogPolicy policy) {
+        synchronized (ErrorLogPolicy.class) {
+            if (defaultPolicy == policy) {
+                defaultPolicy = null;
+            }
+        }
+    }
+
+    public ErrorLoggingProperties getProperties() {
+        return properties;
+    }
+
+    public synchronized ErrorLogPolicy setProperties(ErrorLoggingProperties properties) {
+        this.properties = Objects.requireNonNull(properties);
+
+        cancelSummary();
+
+        long interval = Math.max(properties.getSummaryInterval().toMillis(), 1000);
+        summary = MiddlewareRequestExecutors.getScheduler().scheduleAtFixedRate(this::logSummary, interval, interval, TimeUnit.MILLISECONDS);
+
+        return this;
+    }
+
+    /**
+     * Stops the periodic summary and logs the errors counted since the last
+     * one. The policy still logs errors afterwards, setting new properties
+     * starts the summary again.
+     */
+    public void close() {
+        synchronized (this) {
+            if (summary == null) {
+                return;
+            }
+
+            cancelSummary();
+        }
+
+        logSummary();
+    }
+
+    private synchronized void cancelSummary() {
+        if (summary != null) {
+            summary.cancel(false);
+            summary = null;
+        }
+    }
+
+    /**
+     * Logs an exception that was handled by an exception handler and turned
+     * into an error response.
+     *
+     * @param logger The logger of the handler.
+     * @param ex
+     * @param code The error code of the response.
+     * @param status The status of the response.
+     */
+    public void logHandled(Logger logger, Throwable ex, String code, HttpStatus status) {
+        log(logger, ex.getClass(), code, status, ex, CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage());
+    }
+
+    /**
+     * Logs an error response received from a remote service.
+     *
+     * @param logger The logger of the response error handler.
+     * @param error The parsed error.
+     * @param status The status of the response.
+     */
+    public void logResponse(Logger logger, MiddlewareError error, HttpStatus status) {
+        log(logger, MiddlewareError.class, error.getCode(), status, null, RESPONSE_MSG, error.getCode(), error.getMessage());
+    }
+
+    private void log(Logger target, Class<?> type, String code, HttpStatus status, Throwable ex, String format, Object first, Object second) {
+        var settings = properties;
+        var level = levelOf(settings, type, code, status);
+
+        if (!isEnabled(target, level)) {
+            return;
+        }
+
+        var counter = counters.computeIfAbsent(new Key(type, code != null ? code : NO_CODE), key -> new Counter());
+
+        if (!counter.tryAcquire(limitOf(settings, type, code))) {
+            return;
+        }
+
+        if (ex != null && isUnexpectedServerError(code, status)) {
+            write(target, level, format, first, second, ex);
+        } else {
+            write(target, level, format, first, second);
+        }
+    }
+
+    private static LogLevel levelOf(ErrorLoggingProperties settings, Class<?> type, String code, HttpStatus status) {
+        var levels = settings.getLevels();
+
+        if (!levels.isEmpty()) {
+            var level = code != null ? levels.get(code) : null;
+
+            if (level == null) {
+                level = levels.get(type.getSimpleName());
+            }
+
+            if (level != null) {
+                return level;
+            }
+        }
+
+        var registered = ErrorCodeRegistry.getDefault().get(code);
+
+        if (registered != null && registered.getLogLevel() != null) {
+            return registered.getLogLevel();
+        }
+
+        return status != null && status.is4xxClientError() ? settings.getClientErrorLevel() : settings.getServerErrorLevel();
+    }
+
+    private static int limitOf(ErrorLoggingProperties settings, Class<?> type, String code) {
+        var limits = settings.getLimits();
+
+        if (!limits.isEmpty()) {
+            var limit = code != null ? limits.get(code) : null;
+
+            if (limit == null) {
+                limit = limits.get(type.getSimpleName());
+            }
+
+            if (limit != null) {
+                return limit;
+            }
+        }
+
+        return settings.getMaxPerSecond();
+    }
+
+    private static boolean isUnexpectedServerError(String code, HttpStatus status) {
+        return (status == null || status.is5xxServerError()) && !ExpectedErrors.getDefault().isExpected(code);
+    }
+
+    private static boolean isEnabled(Logger target, LogLevel level) {
+        switch (level) {
+            case TRACE:
+                return target.isTraceEnabled();
+            case DEBUG:
+                return target.isDebugEnabled();
+            case INFO:
+                return target.isInfoEnabled();
+            case WARN:
+                return target.isWarnEnabled();
+            case ERROR:
+            case FATAL:
+                return target.isErrorEnabled();
+            default:
+                return false;
+        }
+    }
+
+    private static void write(Logger target, LogLevel level, String format, Object... arguments) {
+        switch (level) {
+            case TRACE:
+                target.trace(format, arguments);
+                break;
+            case DEBUG:
+                target.debug(format, arguments);
+                break;
+            case INFO:
+                target.info(format, arguments);
+                break;
+            case WARN:
+                target.warn(format, arguments);
+                break;
+            case ERROR:
+            case FATAL:
+                target.error(format, arguments);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void logSummary() {
+        long seconds = Math.max(properties.getSummaryInterval().toSeconds(), 1);
+
+        for (Map.Entry<Key, Counter> entry : counters.entrySet()) {
+            var counter = entry.getValue();
+            long occurrences = counter.occurrences.sumThenReset();
+            long suppressed = counter.suppressed.sumThenReset();
+
+            if (occurrences == 0) {
+                // Forget idle errors, so codes that were seen once do not pile up.
+                counters.remove(entry.getKey(), counter);
+            } else if (suppressed > 0) {
+                var key = entry.getKey();
+                logger.warn("{} ({}) x {} in last {} s, {} of them not logged individually.",
+                        key.code.isEmpty() ? "No code" : key.code, key.type.getSimpleName(),
+                        String.format("%,d", occurrences), seconds, String.format("%,d", suppressed));
+            }
+        }
+    }
+
+    private static final class Key {
+
+        final Class<?> type;
+        final String code;
+
+        Key(Class<?> type, String code) {
+            this.type = type;
+            this.code = code;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            var other = (Key) obj;
+            return type == other.type && code.equals(other.code);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + code.hashCode();
+        }
+    }
+
+    private static final class Counter {
+
+        private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        final LongAdder occurrences = new LongAdder();
+        final LongAdder suppressed = new LongAdder();
+        final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        final AtomicInteger inWindow = new AtomicInteger();
+
+        boolean tryAcquire(int limit) {
+            occurrences.increment();
+
+            if (limit <= 0) {
+                return true;
+            }
+
+            long now = System.nanoTime();
+            long start = windowStart.get();
+
+            if (now - start >= SECOND_NANOS && windowStart.compareAndSet(start, now)) {
+                inWindow.set(0);
+            }
+
+            if (inWindow.incrementAndGet() <= limit) {
+                return true;
+            }
+
+            suppressed.increment();
+            return false;
+        }
+    }
+}
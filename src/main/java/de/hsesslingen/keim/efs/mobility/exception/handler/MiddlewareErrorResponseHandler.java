@@ -24,8 +24,7 @@
 package de.hsesslingen.keim.efs.mobility.exception.handler;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Scanner;
+import java.io.InputStream;
 
 import org.slf4j.Logger;
 import org.springframework.http.HttpStatus;
@@ -34,11 +33,11 @@ import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry;
 import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -52,13 +51,6 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class MiddlewareErrorResponseHandler implements ResponseErrorHandler {
 
     private static final Logger logger = getLogger(MiddlewareErrorResponseHandler.class);
-    private static final ObjectMapper mapper;
-
-    static {
-        mapper = new ObjectMapper()
-                .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
-                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    }
 
     @Override
     public boolean hasError(ClientHttpResponse response) throws IOException {
@@ -70,23 +62,73 @@ public class MiddlewareErrorResponseHandler implements ResponseErrorHandler {
     public void handleError(ClientHttpResponse response) throws IOException {
         HttpStatus httpStatus = response.getStatusCode();
 
-        String responseBody;
+        MiddlewareError error = parseErrorBody(response.getBody(), httpStatus);
 
-        try ( Scanner scanner = new Scanner(response.getBody(), Charset.forName("UTF-8").name())) {
-            responseBody = scanner.useDelimiter("\\A").next();
-        }
+        ErrorLogPolicy.getDefault().logResponse(logger, error, httpStatus);
 
-        MiddlewareError error;
+        throw new RemoteMiddlewareException(error, httpStatus, response.getHeaders());
+    }
 
+    /**
+     * Parses the body of an error response into a {@link MiddlewareError}. If
+     * the body is not a valid {@link MiddlewareError}, the HTTP status is used
+     * as code and the raw body as message.
+     *
+     * @param responseBody
+     * @param httpStatus
+     * @return
+     */
+    public static MiddlewareError parseErrorBody(String responseBody, HttpStatus httpStatus) {
         try {
-            error = mapper.readValue(responseBody, MiddlewareError.class);
+            return errorReader().readValue(responseBody);
         } catch (IOException e1) {
-            error = new MiddlewareError(httpStatus.value(), responseBody);
+            return new MiddlewareError(httpStatus.value(), responseBody);
+        }
+    }
+
+    /**
+     * Parses the body of an error response into a {@link MiddlewareError},
+     * reading at most {@link ErrorBody#MAX_BYTES} bytes from the stream. If
+     * the body is not a valid {@link MiddlewareError}, the HTTP status is used
+     * as code and the raw body, truncated if necessary, as message.
+     *
+     * @param responseBody
+     * @param httpStatus
+     * @return
+     * @throws IOException If the body could not be read.
+     */
+    public static MiddlewareError parseErrorBody(InputStream responseBody, HttpStatus httpStatus) throws IOException {
+        return parseErrorBody(ErrorBody.read(responseBody), httpStatus);
+    }
+
+    /**
+     * Parses an error body that was already read.
+     *
+     * @param body
+     * @param httpStatus
+     * @return
+     * @see #parseErrorBody(InputStream, HttpStatus)
+     */
+    public static MiddlewareError parseErrorBody(ErrorBody body, HttpStatus httpStatus) {
+        if (body.isEmpty()) {
+            return new MiddlewareError(httpStatus.value(), httpStatus.getReasonPhrase());
         }
 
-        logger.error("Error Response: {}", responseBody);
+        try {
+            MiddlewareError error = body.parse(errorReader());
+
+            if (error != null) {
+                return error;
+            }
+        } catch (IOException ex) {
+            // Not a MiddlewareError, fall back to the raw body.
+        }
+
+        return new MiddlewareError(httpStatus.value(), body.asString());
+    }
 
-        throw error.toException();
+    private static ObjectReader errorReader() {
+        return ObjectMapperRegistry.getDefault().reader(MiddlewareError.class);
     }
 
 }
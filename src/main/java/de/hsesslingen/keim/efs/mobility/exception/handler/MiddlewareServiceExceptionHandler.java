@@ -48,11 +48,12 @@ import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import de.hsesslingen.keim.efs.mobility.exception.ErrorCodeRegistry;
 import de.hsesslingen.keim.efs.mobility.exception.HttpException;
 import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
-import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.*;
 import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
-import static java.lang.Integer.parseInt;
+import de.hsesslingen.keim.efs.mobility.tracing.Span;
+import de.hsesslingen.keim.efs.mobility.tracing.Tracer;
 import static java.util.stream.Collectors.toMap;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.http.HttpStatus.*;
@@ -71,53 +72,59 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
     @SuppressWarnings("FieldNameHidesFieldInSuperclass")
     private static final Logger logger = getLogger(MiddlewareServiceExceptionHandler.class);
 
-    private static final String CAUGHT_MSG = "{} caught with message {}";
+    private static final String SPAN_NAME = "MiddlewareServiceExceptionHandler";
 
-    private HttpStatus tryParseHttpStatusFromExceptionCode(String middlewareExceptionCode, HttpStatus fallback) {
-        try {
-            return HttpStatus.valueOf(parseInt(middlewareExceptionCode));
-        } catch (Exception ex) {
-            return fallback;
-        }
+    /**
+     * Logs the given exception as limited by the {@link ErrorLogPolicy}.
+     */
+    private static void logHandled(Exception e, String code, HttpStatus status) {
+        ErrorLogPolicy.getDefault().logHandled(logger, e, code, status);
+    }
+
+    private static void logHandled(Exception e, HttpStatus status) {
+        logHandled(e, Integer.toString(status.value()), status);
+    }
+
+    /**
+     * Starts a span for the handling of the given exception as child of the
+     * span of the request, if it is traced.
+     */
+    private static Span startSpan(Exception e) {
+        return Tracer.getDefault().startSpan(SPAN_NAME, Span.Kind.INTERNAL).recordError(e);
     }
 
     @ExceptionHandler(MiddlewareException.class)
     public ResponseEntity<MiddlewareError> handleMiddlewareException(MiddlewareException e) {
-        logger.error(CAUGHT_MSG, e.getClass().getSimpleName(), e.getMessage(), e);
-
-        HttpStatus httpStatus;
-
-        switch (e.getCode()) {
-            case TOKEN_INVALID_ERROR_CODE:
-            case REMOTE_AUTHENTICATION_FAILED_ERROR_CODE:
-                httpStatus = UNAUTHORIZED;
-                break;
-            case "503": // Service-Unavailable HTTP status code.
-            case REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE:
-                httpStatus = BAD_GATEWAY;
-                break;
-            case BOOKING_ACTION_NOT_SUPPORTED_ERROR_CODE:
-                httpStatus = NOT_IMPLEMENTED;
-                break;
-            default:
-                httpStatus = tryParseHttpStatusFromExceptionCode(e.getCode(), INTERNAL_SERVER_ERROR);
-                break;
+        try ( var span = startSpan(e)) {
+            var response = createResponse(e);
+            span.setAttribute("efs.code", e.getCode());
+            span.setAttribute("http.status_code", response.getStatusCodeValue());
+            return response;
         }
+    }
+
+    private ResponseEntity<MiddlewareError> createResponse(MiddlewareException e) {
+        var httpStatus = ErrorCodeRegistry.getDefault().statusOf(e.getCode(), INTERNAL_SERVER_ERROR);
+
+        logHandled(e, e.getCode(), httpStatus);
 
         return new ResponseEntity<>(e.toError(), httpStatus);
     }
 
     @ExceptionHandler(HttpException.class)
     public ResponseEntity<MiddlewareError> handleHttpException(HttpException e) {
-        logger.error(CAUGHT_MSG, e.getClass().getSimpleName(), e.getMessage(), e);
-        var error = new MiddlewareError(e.getHttpStatus().value(), e.getMessage());
-        return new ResponseEntity<>(error, e.getHttpStatus());
+        try ( var span = startSpan(e)) {
+            logHandled(e, e.getHttpStatus());
+            var error = new MiddlewareError(e.getHttpStatus().value(), e.getMessage());
+            span.setAttribute("http.status_code", e.getHttpStatus().value());
+            return new ResponseEntity<>(error, e.getHttpStatus());
+        }
     }
 
     @ExceptionHandler(ConstraintViolationException.class)
     @ResponseStatus(BAD_REQUEST)
     public MiddlewareError handleMethodArgumentNotValid(ConstraintViolationException e, WebRequest request) {
-        logger.error(CAUGHT_MSG, e.getClass().getSimpleName(), e.getMessage(), e);
+        logHandled(e, BAD_REQUEST);
 
         var details = new HashMap<String, Object>();
 
@@ -131,15 +138,21 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
     @ExceptionHandler(IllegalStateException.class)
     @ResponseStatus(INTERNAL_SERVER_ERROR)
     public MiddlewareError handleIllegalState(IllegalStateException e, WebRequest request) {
-        logger.error(CAUGHT_MSG, e.getClass().getSimpleName(), e.getMessage(), e);
-        return new MiddlewareError(INTERNAL_SERVER_ERROR.value(), e.getMessage());
+        try ( var span = startSpan(e)) {
+            logHandled(e, INTERNAL_SERVER_ERROR);
+            span.setAttribute("http.status_code", INTERNAL_SERVER_ERROR.value());
+            return new MiddlewareError(INTERNAL_SERVER_ERROR.value(), e.getMessage());
+        }
     }
 
     @ExceptionHandler({ResourceAccessException.class, ConnectException.class})
     @ResponseStatus(SERVICE_UNAVAILABLE)
     public MiddlewareError handleConnectException(Exception e, WebRequest request) {
-        logger.error(CAUGHT_MSG, e.getClass().getSimpleName(), e.getMessage(), e);
-        return new MiddlewareError(SERVICE_UNAVAILABLE.value(), "A depending service is unavailable: " + e.getMessage());
+        try ( var span = startSpan(e)) {
+            logHandled(e, SERVICE_UNAVAILABLE);
+            span.setAttribute("http.status_code", SERVICE_UNAVAILABLE.value());
+            return new MiddlewareError(SERVICE_UNAVAILABLE.value(), "A depending service is unavailable: " + e.getMessage());
+        }
     }
 
     @Override
@@ -149,7 +162,7 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
             HttpStatus status,
             WebRequest request
     ) {
-        logger.error(CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage(), ex);
+        logHandled(ex, BAD_REQUEST);
 
         // Collect error details from field errors to put them as details into the retunred MiddlewareError.
         Map<String, Object> details = ex.getBindingResult().getFieldErrors().stream()
@@ -167,7 +180,7 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
             HttpStatus status,
             WebRequest request
     ) {
-        logger.error(CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage(), ex);
+        logHandled(ex, BAD_REQUEST);
 
         // Collect error details from field errors to put them as details into the retunred MiddlewareError.
         Map<String, Object> details = ex.getBindingResult().getFieldErrors().stream()
@@ -185,7 +198,7 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
             HttpStatus status,
             WebRequest request
     ) {
-        logger.error(CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage(), ex);
+        logHandled(ex, BAD_REQUEST);
 
         var error = new MiddlewareError(BAD_REQUEST.value(), ex.getMostSpecificCause().getMessage());
 
@@ -199,7 +212,7 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
             HttpStatus status,
             WebRequest request
     ) {
-        logger.error(CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage(), ex);
+        logHandled(ex, BAD_REQUEST);
 
         var error = new MiddlewareError(BAD_REQUEST.value(), ex.getMostSpecificCause().getMessage());
 
@@ -213,7 +226,7 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
             HttpStatus status,
             WebRequest request
     ) {
-        logger.error(CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage(), ex);
+        logHandled(ex, BAD_REQUEST);
 
         var error = new MiddlewareError(BAD_REQUEST.value(), ex.getMessage());
 
@@ -227,7 +240,7 @@ public class MiddlewareServiceExceptionHandler extends ResponseEntityExceptionHa
             HttpStatus status,
             WebRequest request
     ) {
-        logger.error(CAUGHT_MSG, ex.getClass().getSimpleName(), ex.getMessage(), ex);
+        logHandled(ex, METHOD_NOT_ALLOWED);
 
         String message = String.format("%s. Allowed methods are: %s", ex.getMessage(), ex.getSupportedHttpMethods());
 
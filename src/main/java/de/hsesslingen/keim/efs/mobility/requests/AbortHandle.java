@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets one thread abort the HTTP request that another thread is sending, e.g.
+ * the copy of a request that lost against its hedge, see
+ * {@link HedgingPolicy}, or an asynchronous request whose future was
+ * cancelled, see {@link MiddlewareRequest#goAsync()}. The handle is bound to
+ * the sending thread, and request factories that support aborting, like the
+ * {@link PooledClientHttpRequestFactory}, register the HTTP requests they
+ * create on that thread with it.
+ * <p>
+ * Once aborted, a handle stays aborted, so HTTP requests registered later are
+ * aborted immediately.
+ *
+ * @author ben
+ */
+final class AbortHandle {
+
+    private static final ThreadLocal<AbortHandle> CURRENT = new ThreadLocal<>();
+
+    private Runnable abort;
+    private boolean aborted;
+    private List<AbortHandle> children;
+
+    /**
+     * The handle bound to the current thread, if any.
+     *
+     * @return
+     */
+    static AbortHandle current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the given handle to the current thread.
+     *
+     * @param handle The handle or {@code null} to remove it.
+     * @return The handle that was bound before, which should be restored
+     * afterwards.
+     */
+    static AbortHandle bind(AbortHandle handle) {
+        var previous = CURRENT.get();
+
+        if (handle != null) {
+            CURRENT.set(handle);
+        } else {
+            CURRENT.remove();
+        }
+
+        return previous;
+    }
+
+    /**
+     * Tells whether the HTTP request sent on the current thread was aborted,
+     * in which case its failure says nothing about the remote service.
+     *
+     * @return
+     */
+    static boolean isCurrentAborted() {
+        var handle = CURRENT.get();
+        return handle != null && handle.isAborted();
+    }
+
+    /**
+     * Registers the action that aborts the HTTP request that is sent next on
+     * the bound thread, replacing the previous one. Runs it immediately if
+     * this handle was already aborted.
+     *
+     * @param abort
+     */
+    void register(Runnable abort) {
+        synchronized (this) {
+            if (!aborted) {
+                this.abort = abort;
+                return;
+            }
+        }
+
+        abort.run();
+    }
+
+    /**
+     * Creates a handle for an HTTP request that is sent on behalf of the
+     * request of this handle, e.g. one of the copies sent by the
+     * {@link HedgingPolicy}. It is aborted together with this handle.
+     *
+     * @return
+     */
+    AbortHandle newChild() {
+        var child = new AbortHandle();
+
+        synchronized (this) {
+            if (!aborted) {
+                if (children == null) {
+                    children = new ArrayList<>(2);
+                }
+
+                children.add(child);
+                return child;
+            }
+        }
+
+        child.abort();
+        return child;
+    }
+
+    void abort() {
+        Runnable action;
+        List<AbortHandle> toAbort;
+
+        synchronized (this) {
+            if (aborted) {
+                return;
+            }
+
+            aborted = true;
+            action = abort;
+            abort = null;
+            toAbort = children;
+            children = null;
+        }
+
+        if (action != null) {
+            action.run();
+        }
+
+        if (toAbort != null) {
+            toAbort.forEach(AbortHandle::abort);
+        }
+    }
+
+    synchronized boolean isAborted() {
+        return aborted;
+    }
+}
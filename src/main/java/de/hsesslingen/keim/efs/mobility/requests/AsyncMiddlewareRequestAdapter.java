@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A request adapter that completes asynchronously, e.g. because it has to
+ * fetch a token first. The request is sent once the returned stage has
+ * completed, without blocking the calling thread if the request is sent using
+ * {@link MiddlewareRequest#goAsync()} or a {@link ReactiveMiddlewareRequest}.
+ * <p>
+ * {@link #adaptAsync(MiddlewareRequest)} is called on the calling thread in
+ * the order of the pipeline, but adapters after it do not wait for the
+ * returned stage. The stage must therefore not modify the request itself.
+ * Instead it completes with an adapter that applies the result, e.g. sets a
+ * header. These adapters are called in pipeline order once all stages have
+ * completed. If a stage completes exceptionally, the request is not sent and
+ * fails with that exception.
+ *
+ * @author ben
+ */
+public interface AsyncMiddlewareRequestAdapter extends MiddlewareRequestAdapter {
+
+    /**
+     * Starts adapting the given request.
+     *
+     * @param request
+     * @return A stage that completes with the adapter that applies the result
+     * to the request or with {@code null} if there is nothing to apply.
+     */
+    public CompletionStage<? extends MiddlewareRequestAdapter> adaptAsync(MiddlewareRequest<?> request);
+
+    /**
+     * Calls {@link #adaptAsync(MiddlewareRequest)}, waits for it and applies
+     * the result.
+     *
+     * @param request
+     */
+    @Override
+    public default void adapt(MiddlewareRequest<?> request) {
+        var result = MiddlewareRequestAdapterPipeline.await(adaptAsync(request).toCompletableFuture());
+
+        if (result != null) {
+            result.adapt(request);
+        }
+    }
+
+}
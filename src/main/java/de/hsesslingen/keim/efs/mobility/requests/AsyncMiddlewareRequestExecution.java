@@ -0,0 +1,50 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * The next step in the interceptor chain of a {@link MiddlewareRequest} sent
+ * using {@link MiddlewareRequest#goAsync()}.
+ *
+ * @author ben
+ * @param <T>
+ * @see AsyncMiddlewareRequestInterceptor
+ */
+@FunctionalInterface
+public interface AsyncMiddlewareRequestExecution<T> {
+
+    /**
+     * Passes the request to the next interceptor or, if there is none,
+     * actually sends it. Does not block, the request is handed to the
+     * executor of the request once an interceptor follows that can only
+     * intercept synchronously. May be called several times, e.g. for retries.
+     *
+     * @return A future that completes with the response or with the
+     * exception the request failed with.
+     */
+    public CompletableFuture<ResponseEntity<T>> executeAsync();
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * An interceptor that can also intercept requests sent using
+ * {@link MiddlewareRequest#goAsync()} without blocking a thread, e.g. while
+ * waiting for the backoff before a retry.
+ * <p>
+ * Asynchronous requests pass the interceptors in the same order as
+ * synchronous ones. {@link #interceptAsync(MiddlewareRequest, AsyncMiddlewareRequestExecution)}
+ * is called as long as the interceptors implement this interface, starting on
+ * the calling thread. The request is handed to its executor at the first
+ * interceptor that does not and passes the rest of the chain there
+ * synchronously. Implementations must therefore not block and must not rely
+ * on the thread they are called on, neither for thread bound state nor for
+ * the thread that completes the returned future.
+ *
+ * @author ben
+ */
+public interface AsyncMiddlewareRequestInterceptor extends MiddlewareRequestInterceptor {
+
+    /**
+     * Intercepts the sending of the given request. To proceed with sending,
+     * call {@link AsyncMiddlewareRequestExecution#executeAsync()}, which may
+     * be called several times or not at all. Must behave like
+     * {@link #intercept(MiddlewareRequest, MiddlewareRequestExecution)}.
+     *
+     * @param <T>
+     * @param request
+     * @param execution
+     * @return A future that completes with the response or with the
+     * exception the request failed with.
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution);
+}
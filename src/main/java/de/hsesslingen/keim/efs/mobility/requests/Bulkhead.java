@@ -0,0 +1,220 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.BulkheadProperties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of threads that can be occupied by requests to a single
+ * remote service. Requests beyond the limit wait in a bounded queue for a
+ * limited time and are rejected if the queue is full or the wait time
+ * elapsed. This way, a remote service that hangs can only block its own
+ * partition of threads.
+ * <p>
+ * Bulkheads are created and used by the {@link BulkheadRegistry}.
+ *
+ * @author ben
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final int maxQueuedCalls;
+    private final long maxWaitNanos;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queuedTotal = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    private volatile long lastUsed = System.nanoTime();
+
+    Bulkhead(String name, BulkheadProperties.Settings settings) {
+        this.name = name;
+        this.maxConcurrentCalls = settings.getMaxConcurrentCalls();
+        this.maxQueuedCalls = settings.getMaxQueuedCalls();
+        this.maxWaitNanos = settings.getMaxWait().toNanos();
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Tries to enter this bulkhead, waiting in the queue if necessary. If true
+     * is returned, {@link #release()} must be called once the request
+     * completed.
+     *
+     * @return Whether the request may be sent.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(maxWaitNanos);
+    }
+
+    /**
+     * Same as {@link #tryAcquire()}, but waits at most for the given time, if
+     * it is shorter than the maximum wait of this bulkhead, e.g. for the
+     * remaining time of the deadline of a request.
+     *
+     * @param waitNanos
+     * @return Whether the request may be sent.
+     */
+    public boolean tryAcquire(long waitNanos) {
+        lastUsed = System.nanoTime();
+
+        if (permits.tryAcquire()) {
+            return true;
+        }
+
+        if (queued.incrementAndGet() > maxQueuedCalls) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+
+        queuedTotal.increment();
+        long start = System.nanoTime();
+        boolean acquired = false;
+
+        try {
+            acquired = permits.tryAcquire(Math.min(waitNanos, maxWaitNanos), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queued.decrementAndGet();
+
+            long waited = System.nanoTime() - start;
+            queueWaitNanos.add(waited);
+            maxQueueWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+
+        if (!acquired) {
+            rejected.increment();
+        }
+
+        return acquired;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * The time of the last attempt to enter this bulkhead, as given by
+     * {@link System#nanoTime()}.
+     *
+     * @return
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Returns a snapshot of the occupancy of this bulkhead.
+     *
+     * @return
+     */
+    public Snapshot getSnapshot() {
+        long queuedCount = queuedTotal.sum();
+
+        return new Snapshot(
+                maxConcurrentCalls,
+                maxConcurrentCalls - permits.availablePermits(),
+                queued.get(),
+                rejected.sum(),
+                queuedCount > 0 ? queueWaitNanos.sum() / queuedCount / 1_000_000 : 0,
+                maxQueueWaitNanos.get() / 1_000_000
+        );
+    }
+
+    /**
+     * The occupancy of a {@link Bulkhead} at a point in time.
+     */
+    public static class Snapshot {
+
+        private final int maxConcurrentCalls;
+        private final int activeCalls;
+        private final int queuedCalls;
+        private final long rejectedCalls;
+        private final long averageQueueWaitMillis;
+        private final long maxQueueWaitMillis;
+
+        Snapshot(int maxConcurrentCalls, int activeCalls, int queuedCalls, long rejectedCalls, long averageQueueWaitMillis, long maxQueueWaitMillis) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            this.activeCalls = activeCalls;
+            this.queuedCalls = queuedCalls;
+            this.rejectedCalls = rejectedCalls;
+            this.averageQueueWaitMillis = averageQueueWaitMillis;
+            this.maxQueueWaitMillis = maxQueueWaitMillis;
+        }
+
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public int getActiveCalls() {
+            return activeCalls;
+        }
+
+        public int getQueuedCalls() {
+            return queuedCalls;
+        }
+
+        /**
+         * The total number of rejected requests.
+         *
+         * @return
+         */
+        public long getRejectedCalls() {
+            return rejectedCalls;
+        }
+
+        /**
+         * The average time requests waited in the queue.
+         *
+         * @return
+         */
+        public long getAverageQueueWaitMillis() {
+            return averageQueueWaitMillis;
+        }
+
+        /**
+         * The longest time a request waited in the queue.
+         *
+         * @return
+         */
+        public long getMaxQueueWaitMillis() {
+            return maxQueueWaitMillis;
+        }
+    }
+}
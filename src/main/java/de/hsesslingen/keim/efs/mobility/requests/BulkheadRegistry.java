@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.BulkheadProperties;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.core.Ordered;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Holds one {@link Bulkhead} per remote service and applies them to outgoing
+ * requests. Remote services are identified by
+ * {@link MiddlewareRequest#remoteId()}, which is the ID of the
+ * {@link de.hsesslingen.keim.efs.mobility.service.MobilityService} if it was
+ * set on the request.
+ * <p>
+ * Requests that can not enter the bulkhead of their remote service fail with
+ * a {@link MiddlewareException} with code
+ * {@link de.hsesslingen.keim.efs.mobility.exception.MiddlewareError#REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE}.
+ * Requests wait in the queue of a bulkhead at most until their deadline or
+ * timeout, see {@link MiddlewareRequest#attemptTimeout()}. If their deadline
+ * expires while waiting, they fail with {@code DEADLINE_EXCEEDED}.
+ * <p>
+ * At most {@code efs.bulkhead.max-bulkheads} bulkheads are kept. Once there
+ * are more, the least recently used ones are removed.
+ *
+ * @author ben
+ */
+public class BulkheadRegistry implements MiddlewareRequestInterceptor, Ordered {
+
+    private static volatile BulkheadRegistry defaultRegistry;
+
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private volatile BulkheadProperties properties;
+
+    public BulkheadRegistry() {
+        this(new BulkheadProperties());
+    }
+
+    public BulkheadRegistry(BulkheadProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the shared registry for request templates, see
+     * {@link MiddlewareRequestTemplate#enableBulkheads(BulkheadRegistry)}. It
+     * is configured with the {@code efs.bulkhead.*} properties once the
+     * application context is started.
+     *
+     * @return
+     */
+    public static BulkheadRegistry getDefault() {
+        var registry = defaultRegistry;
+
+        if (registry == null) {
+            synchronized (BulkheadRegistry.class) {
+                registry = defaultRegistry;
+
+                if (registry == null) {
+                    registry = new BulkheadRegistry();
+                    defaultRegistry = registry;
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    /**
+     * Removes the given registry if it is the default, e.g. once the
+     * application context that configured it is closed. The next call of
+     * {@link #getDefault()} creates a new one with the default settings and
+     * without the bulkheads of the old one.
+     *
+     * @param registry
+     */
+    public static void clearDefault(BulkheadRegistry registry) {
+        synchronized (BulkheadRegistry.class) {
+            if (defaultRegistry == registry) {
+                defaultRegistry = null;
+            }
+        }
+    }
+
+    public BulkheadProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Replaces the settings of this registry. The sizes only apply to
+     * bulkheads of remote services that were not yet contacted.
+     *
+     * @param properties
+     * @return
+     */
+    public BulkheadRegistry setProperties(BulkheadProperties properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    @Override
+    public int getOrder() {
+        return BULKHEAD_ORDER;
+    }
+
+    /**
+     * Returns the bulkhead for the given remote service, creating it if
+     * necessary.
+     *
+     * @param name The service ID or host and port of the remote service.
+     * @return
+     */
+    public Bulkhead getBulkhead(String name) {
+        var bulkhead = bulkheads.get(name);
+
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+
+        if (bulkheads.size() >= properties.getMaxBulkheads()) {
+            evictLeastRecentlyUsed();
+        }
+
+        return bulkheads.computeIfAbsent(name, n -> new Bulkhead(n, properties.getSettings(n)));
+    }
+
+    /**
+     * Removes the bulkhead that was used least recently. Only runs when a
+     * bulkhead for a new remote service is created while the registry is
+     * full, e.g. if requests are sent to many hosts.
+     */
+    private void evictLeastRecentlyUsed() {
+        Bulkhead oldest = null;
+
+        for (var bulkhead : bulkheads.values()) {
+            if (oldest == null || bulkhead.getLastUsed() - oldest.getLastUsed() < 0) {
+                oldest = bulkhead;
+            }
+        }
+
+        if (oldest != null) {
+            bulkheads.remove(oldest.getName(), oldest);
+        }
+    }
+
+    /**
+     * Returns snapshots of all bulkheads, sorted by name.
+     *
+     * @return
+     */
+    public Map<String, Bulkhead.Snapshot> getSnapshots() {
+        var snapshots = new TreeMap<String, Bulkhead.Snapshot>();
+
+        for (var bulkhead : bulkheads.values()) {
+            snapshots.put(bulkhead.getName(), bulkhead.getSnapshot());
+        }
+
+        return snapshots;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (!properties.isEnabled()) {
+            return execution.execute();
+        }
+
+        var name = request.remoteId();
+
+        if (name == null) {
+            return execution.execute();
+        }
+
+        var bulkhead = getBulkhead(name);
+        // Includes the remaining time of the deadline, if any.
+        var budget = request.attemptTimeout();
+
+        if (!bulkhead.tryAcquire(budget != null ? budget.toNanos() : Long.MAX_VALUE)) {
+            var deadline = request.deadline();
+
+            if (deadline != null && deadline.isExpired()) {
+                throw MiddlewareException.deadlineExceededException(
+                        "The deadline expired while %s %s was waiting for the bulkhead of %s.", request.method(), request.expandUri(), name
+                );
+            }
+
+            throw MiddlewareException.remoteServiceUnavailableException(
+                    "The remote service %s is unavailable. Too many requests are waiting for it.", name
+            );
+        }
+
+        try {
+            return execution.execute();
+        } finally {
+            bulkhead.release();
+        }
+    }
+}
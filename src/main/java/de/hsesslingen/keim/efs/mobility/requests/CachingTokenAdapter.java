@@ -0,0 +1,539 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.TOKEN_INVALID_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest.TOKEN_HEADER;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest.USER_ID_HEADER;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import org.springframework.core.Ordered;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Adds tokens to internal requests (see {@link MiddlewareRequest#isInternal()})
+ * and caches them per remote service and user, so that the tokens API is not
+ * called for every request.
+ * <p>
+ * Tokens are fetched from a {@link TokenSource}. Concurrent requests for the
+ * same remote service and user share a single fetch. Tokens that are still in
+ * use are refreshed in the background shortly before they expire, so requests
+ * do not have to wait for a token once it has been fetched. Tokens that have
+ * not been used for {@link #getIdleTimeout()} are dropped instead.
+ * <p>
+ * If a remote service rejects a token with {@code TOKEN_INVALID}, the token is
+ * invalidated and the request is retried once with a new token. This only
+ * works if the adapter is also registered as interceptor, which
+ * {@link MiddlewareRequestTemplate#enableTokenCache(CachingTokenAdapter)}
+ * does. Reactive requests do not use interceptors and are therefore not
+ * retried.
+ * <p>
+ * Requests that already have a token, e.g. set using
+ * {@link MiddlewareRequest#token(String)}, are not changed.
+ *
+ * @author ben
+ */
+public class CachingTokenAdapter implements AsyncMiddlewareRequestAdapter, AsyncMiddlewareRequestInterceptor, Ordered {
+
+    private static final Logger logger = getLogger(CachingTokenAdapter.class);
+
+    private static final CompletableFuture<MiddlewareRequestAdapter> NOTHING_TO_DO = CompletableFuture.completedFuture(null);
+
+    /**
+     * Fetches new tokens, usually from the tokens API of the remote service.
+     */
+    @FunctionalInterface
+    public static interface TokenSource {
+
+        /**
+         * Fetches a new token.
+         *
+         * @param serviceId The remote service, see
+         * {@link MiddlewareRequest#remoteId()}.
+         * @param userId The user the token is fetched for. May be null.
+         * @return
+         */
+        public CompletionStage<Token> fetchToken(String serviceId, String userId);
+    }
+
+    /**
+     * A token together with its expiry.
+     */
+    public static final class Token {
+
+        private final String value;
+        private final Instant expiresAt;
+
+        /**
+         * @param value
+         * @param expiresAt When the token expires or {@code null} if unknown.
+         * Tokens without expiry are only replaced if a remote service rejects
+         * them.
+         */
+        public Token(String value, Instant expiresAt) {
+            this.value = Objects.requireNonNull(value);
+            this.expiresAt = expiresAt;
+        }
+
+        public static Token of(String value, Duration validFor) {
+            return new Token(value, Instant.now().plus(validFor));
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public Instant getExpiresAt() {
+            return expiresAt;
+        }
+
+        boolean isExpired() {
+            return expiresAt != null && !Instant.now().isBefore(expiresAt);
+        }
+    }
+
+    private final TokenSource source;
+    private final ConcurrentMap<TokenKey, CachedToken> tokens = new ConcurrentHashMap<>();
+
+    private volatile Duration refreshAhead = Duration.ofSeconds(60);
+    private volatile Duration idleTimeout = Duration.ofMinutes(10);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CachingTokenAdapter(TokenSource source) {
+        this.source = Objects.requireNonNull(source);
+    }
+
+    public Duration getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * How long before their expiry tokens are refreshed. Tokens that are valid
+     * for less than twice this time are refreshed after half of their
+     * lifetime. Defaults to 60 seconds.
+     *
+     * @param refreshAhead
+     * @return
+     */
+    public CachingTokenAdapter setRefreshAhead(Duration refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        return this;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Tokens that have not been used for this time are not refreshed anymore
+     * but removed from the cache. Defaults to 10 minutes.
+     *
+     * @param idleTimeout
+     * @return
+     */
+    public CachingTokenAdapter setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    @Override
+    public Phase phase() {
+        return Phase.AUTH;
+    }
+
+    @Override
+    public int getOrder() {
+        return TOKEN_REFRESH_ORDER;
+    }
+
+    @Override
+    public CompletionStage<MiddlewareRequestAdapter> adaptAsync(MiddlewareRequest<?> request) {
+        if (!request.isInternal() || hasToken(request)) {
+            return NOTHING_TO_DO;
+        }
+
+        var cached = tokens.computeIfAbsent(TokenKey.of(request), CachedToken::new);
+        cached.lastUsed = System.nanoTime();
+
+        var token = cached.token;
+
+        if (token != null && !token.isExpired()) {
+            hits.increment();
+            request.header(TOKEN_HEADER, token.getValue());
+            return NOTHING_TO_DO;
+        }
+
+        return cached.fetch().<MiddlewareRequestAdapter>thenApply(fetched -> r -> r.header(TOKEN_HEADER, fetched.getValue()));
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (!request.isInternal()) {
+            return execution.execute();
+        }
+
+        try {
+            return execution.execute();
+        } catch (RemoteMiddlewareException ex) {
+            var replacement = replaceRejected(request, ex);
+
+            if (replacement == null) {
+                throw ex;
+            }
+
+            request.headers().set(TOKEN_HEADER, MiddlewareRequestAdapterPipeline.await(replacement).getValue());
+
+            return execution.execute();
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution) {
+        if (!request.isInternal()) {
+            return execution.executeAsync();
+        }
+
+        return execution.executeAsync().<CompletableFuture<ResponseEntity<T>>>handle((response, ex) -> {
+            if (ex == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            var cause = MiddlewareRequestAdapterPipeline.unwrap(ex);
+            var replacement = cause instanceof RemoteMiddlewareException ? replaceRejected(request, (RemoteMiddlewareException) cause) : null;
+
+            if (replacement == null) {
+                return CompletableFuture.failedFuture(cause);
+            }
+
+            return replacement.thenCompose(token -> {
+                request.headers().set(TOKEN_HEADER, token.getValue());
+                return execution.executeAsync();
+            });
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Replaces the token of the given request if the remote service rejected
+     * it and it was added by this adapter.
+     *
+     * @return The new token or {@code null} if the request must not be
+     * retried.
+     */
+    private CompletableFuture<Token> replaceRejected(MiddlewareRequest<?> request, RemoteMiddlewareException ex) {
+        if (!TOKEN_INVALID_ERROR_CODE.equals(ex.getCode())) {
+            return null;
+        }
+
+        var headers = request.headers();
+        var used = headers != null ? headers.getFirst(TOKEN_HEADER) : null;
+        var cached = tokens.get(TokenKey.of(request));
+
+        // Only retry with tokens that were added by this adapter.
+        if (used == null || cached == null || !cached.issued(used)) {
+            return null;
+        }
+
+        invalidations.increment();
+        logger.debug("Token for {} was rejected. Retrying with a new token.", cached.key);
+
+        return cached.replace(used);
+    }
+
+    private static boolean hasToken(MiddlewareRequest<?> request) {
+        var headers = request.headers();
+        return headers != null && headers.containsKey(TOKEN_HEADER);
+    }
+
+    /**
+     * Removes all cached tokens.
+     */
+    public void invalidateAll() {
+        tokens.values().forEach(CachedToken::cancelRefresh);
+        tokens.clear();
+    }
+
+    /**
+     * Number of requests that were served from the cache without waiting.
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of tokens fetched from the {@link TokenSource}, including
+     * background refreshes.
+     *
+     * @return
+     */
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    /**
+     * Number of tokens that were rejected by a remote service.
+     *
+     * @return
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Number of remote service and user combinations with a cached token.
+     *
+     * @return
+     */
+    public int getSize() {
+        return tokens.size();
+    }
+
+    private final class CachedToken {
+
+        final TokenKey key;
+
+        volatile Token token;
+        volatile long lastUsed = System.nanoTime();
+
+        // Guarded by this.
+        private String replacedValue;
+        private CompletableFuture<Token> fetching;
+        private ScheduledFuture<?> refresh;
+
+        CachedToken(TokenKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Fetches a new token, or joins the fetch that is already running.
+         */
+        synchronized CompletableFuture<Token> fetch() {
+            if (fetching != null) {
+                return fetching;
+            }
+
+            var future = new CompletableFuture<Token>();
+            fetching = future;
+            fetches.increment();
+
+            CompletionStage<Token> stage;
+
+            try {
+                stage = source.fetchToken(key.serviceId, key.userId);
+            } catch (RuntimeException ex) {
+                stage = CompletableFuture.failedFuture(ex);
+            }
+
+            stage.whenComplete((fetched, ex) -> completed(future, fetched, ex));
+
+            return future;
+        }
+
+        private void completed(CompletableFuture<Token> future, Token fetched, Throwable ex) {
+            synchronized (this) {
+                fetching = null;
+
+                if (ex == null && fetched != null) {
+                    if (token != null) {
+                        replacedValue = token.getValue();
+                    }
+
+                    token = fetched;
+                    scheduleRefresh();
+                } else if (token == null || token.isExpired()) {
+                    // Nothing left to serve, the next request fetches again.
+                    cancelRefresh();
+                    tokens.remove(key, this);
+                } else {
+                    // The next request fetches a token itself, once the current one expired.
+                    scheduleIdleCheck();
+                }
+            }
+
+            if (ex != null) {
+                future.completeExceptionally(MiddlewareRequestAdapterPipeline.unwrap(ex));
+            } else if (fetched == null) {
+                future.completeExceptionally(new IllegalStateException("The token source returned no token for " + key + "."));
+            } else {
+                future.complete(fetched);
+            }
+        }
+
+        /**
+         * Replaces the given rejected token. If it was already replaced by
+         * another request, the current token is used.
+         */
+        synchronized CompletableFuture<Token> replace(String rejected) {
+            var current = token;
+
+            if (current != null && !current.getValue().equals(rejected) && !current.isExpired()) {
+                return CompletableFuture.completedFuture(current);
+            }
+
+            if (current != null && current.getValue().equals(rejected)) {
+                replacedValue = rejected;
+                token = null;
+                cancelRefresh();
+            }
+
+            return fetch();
+        }
+
+        synchronized boolean issued(String value) {
+            return value.equals(replacedValue) || (token != null && value.equals(token.getValue()));
+        }
+
+        /**
+         * Schedules the refresh of the current token. Tokens without expiry or
+         * that are too short-lived to be refreshed are checked for idleness
+         * instead, so that every entry is eventually removed once it is not
+         * used anymore.
+         */
+        private synchronized void scheduleRefresh() {
+            cancelRefresh();
+
+            var current = token;
+            long delay = -1;
+
+            if (current != null && current.getExpiresAt() != null) {
+                long lifetime = Duration.between(Instant.now(), current.getExpiresAt()).toMillis();
+                delay = lifetime - Math.min(refreshAhead.toMillis(), lifetime / 2);
+            }
+
+            if (delay > 0) {
+                refresh = MiddlewareRequestExecutors.getScheduler().schedule(this::refreshInBackground, delay, TimeUnit.MILLISECONDS);
+            } else {
+                scheduleIdleCheck();
+            }
+        }
+
+        private synchronized void scheduleIdleCheck() {
+            cancelRefresh();
+            refresh = MiddlewareRequestExecutors.getScheduler().schedule(this::removeIfIdle, idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private boolean isIdle() {
+            return System.nanoTime() - lastUsed > idleTimeout.toNanos();
+        }
+
+        private synchronized void removeIfIdle() {
+            if (fetching != null || tokens.get(key) != this) {
+                // A running fetch schedules again once it completes.
+                return;
+            }
+
+            if (isIdle()) {
+                refresh = null;
+                tokens.remove(key, this);
+            } else if (token != null && !token.isExpired()) {
+                scheduleRefresh();
+            } else {
+                scheduleIdleCheck();
+            }
+        }
+
+        synchronized void cancelRefresh() {
+            if (refresh != null) {
+                refresh.cancel(false);
+                refresh = null;
+            }
+        }
+
+        private void refreshInBackground() {
+            if (tokens.get(key) != this) {
+                // Removed while the refresh was pending.
+                return;
+            }
+
+            if (isIdle()) {
+                // Not used anymore, so do not keep it alive.
+                tokens.remove(key, this);
+                return;
+            }
+
+            fetch().whenComplete((fetched, ex) -> {
+                if (ex != null) {
+                    logger.warn("Refreshing the token for {} failed: {}", key, ex.toString());
+                }
+            });
+        }
+    }
+
+    private static final class TokenKey {
+
+        final String serviceId;
+        final String userId;
+
+        private TokenKey(String serviceId, String userId) {
+            this.serviceId = serviceId;
+            this.userId = userId;
+        }
+
+        static TokenKey of(MiddlewareRequest<?> request) {
+            var headers = request.headers();
+            var userId = headers != null ? headers.getFirst(USER_ID_HEADER) : null;
+            return new TokenKey(request.remoteId(), userId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof TokenKey)) {
+                return false;
+            }
+
+            var other = (TokenKey) obj;
+            return Objects.equals(serviceId, other.serviceId) && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceId, userId);
+        }
+
+        @Override
+        public String toString() {
+            return userId != null ? serviceId + " (user " + userId + ")" : String.valueOf(serviceId);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.CircuitBreakerProperties;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A circuit breaker for the calls to a single remote service. It is
+ * {@link State#CLOSED} as long as the failure and slow call rates of the most
+ * recent calls are below the configured thresholds. Otherwise it opens and
+ * rejects all calls until the configured wait duration passed. It then lets a
+ * few trial calls pass ({@link State#HALF_OPEN}), whose outcome decides
+ * whether it closes or opens again.
+ * <p>
+ * Circuit breakers are created and used by the {@link CircuitBreakerRegistry}.
+ *
+ * @author ben
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = getLogger(CircuitBreaker.class);
+
+    /**
+     * Returned by {@link #tryAcquire()} if a call is not permitted.
+     */
+    public static final long NOT_PERMITTED = -1;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final Supplier<CircuitBreakerProperties> properties;
+
+    private State state = State.CLOSED;
+
+    /**
+     * Incremented on each state transition, so results of calls that were
+     * permitted in a previous state are ignored.
+     */
+    private long generation = 0;
+
+    private long openUntil;
+
+    // Sliding window of the most recent calls in closed state.
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    // Trial calls in half-open state.
+    private int trialsPermitted;
+    private int trialsCompleted;
+    private int trialFailures;
+    private int trialSlowCalls;
+
+    private long notPermittedCalls;
+
+    private volatile long lastUsed = System.nanoTime();
+
+    CircuitBreaker(String name, Supplier<CircuitBreakerProperties> properties) {
+        this.name = name;
+        this.properties = properties;
+
+        int windowSize = Math.max(1, properties.get().getSlidingWindowSize());
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Asks for permission to make a call. Returns a permit that must be
+     * passed to {@link #onResult(long, long, boolean)} or
+     * {@link #release(long)} once the call completed, or
+     * {@link #NOT_PERMITTED} if the call must not be made.
+     *
+     * @return
+     */
+    public synchronized long tryAcquire() {
+        lastUsed = System.nanoTime();
+
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntil < 0) {
+                ++notPermittedCalls;
+                return NOT_PERMITTED;
+            }
+
+            transitionTo(State.HALF_OPEN);
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (trialsPermitted >= properties.get().getPermittedCallsInHalfOpenState()) {
+                ++notPermittedCalls;
+                return NOT_PERMITTED;
+            }
+
+            ++trialsPermitted;
+        }
+
+        return generation;
+    }
+
+    /**
+     * When this breaker was last asked for permission, as returned by
+     * {@link System#nanoTime()}.
+     *
+     * @return
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     *
+     * @param permit The permit returned by {@link #tryAcquire()}.
+     * @param durationNanos The duration of the call.
+     * @param failure Whether the call failed.
+     */
+    public synchronized void onResult(long permit, long durationNanos, boolean failure) {
+        if (permit != generation) {
+            return;
+        }
+
+        var config = properties.get();
+        boolean isSlow = durationNanos > config.getSlowCallDuration().toNanos();
+
+        if (state == State.HALF_OPEN) {
+            ++trialsCompleted;
+            trialFailures += failure ? 1 : 0;
+            trialSlowCalls += isSlow ? 1 : 0;
+
+            if (trialsCompleted >= config.getPermittedCallsInHalfOpenState()) {
+                if (exceedsThresholds(trialFailures, trialSlowCalls, trialsCompleted, config)) {
+                    transitionTo(State.OPEN);
+                } else {
+                    transitionTo(State.CLOSED);
+                }
+            }
+
+            return;
+        }
+
+        if (recorded == failed.length) {
+            // Window is full, drop the oldest call.
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            ++recorded;
+        }
+
+        failed[next] = failure;
+        slow[next] = isSlow;
+        failures += failure ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        if (recorded >= Math.min(config.getMinimumNumberOfCalls(), failed.length)
+                && exceedsThresholds(failures, slowCalls, recorded, config)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * Returns a permit without recording a result, e.g. if the call could not
+     * be made for reasons unrelated to the remote service.
+     *
+     * @param permit
+     */
+    public synchronized void release(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            --trialsPermitted;
+        }
+    }
+
+    private static boolean exceedsThresholds(int failures, int slowCalls, int calls, CircuitBreakerProperties config) {
+        return failures * 100f / calls >= config.getFailureRateThreshold()
+                || slowCalls * 100f / calls >= config.getSlowCallRateThreshold();
+    }
+
+    private void transitionTo(State newState) {
+        logger.info("Circuit breaker {} changes from {} to {}.", name, state, newState);
+
+        state = newState;
+        ++generation;
+
+        switch (newState) {
+            case OPEN:
+                openUntil = System.nanoTime() + properties.get().getWaitDurationInOpenState().toNanos();
+                break;
+            case HALF_OPEN:
+                trialsPermitted = 0;
+                trialsCompleted = 0;
+                trialFailures = 0;
+                trialSlowCalls = 0;
+                break;
+            case CLOSED:
+                next = 0;
+                recorded = 0;
+                failures = 0;
+                slowCalls = 0;
+                break;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the state and rates of this breaker.
+     *
+     * @return
+     */
+    public synchronized Snapshot getSnapshot() {
+        // An open breaker whose wait duration passed is reported as half-open, although it only changes on the next call.
+        var reported = state == State.OPEN && System.nanoTime() - openUntil >= 0 ? State.HALF_OPEN : state;
+
+        return new Snapshot(
+                reported,
+                recorded > 0 ? failures * 100f / recorded : -1,
+                recorded > 0 ? slowCalls * 100f / recorded : -1,
+                recorded,
+                notPermittedCalls
+        );
+    }
+
+    /**
+     * The state and rates of a {@link CircuitBreaker} at a point in time.
+     */
+    public static class Snapshot {
+
+        private final State state;
+        private final float failureRate;
+        private final float slowCallRate;
+        private final int bufferedCalls;
+        private final long notPermittedCalls;
+
+        Snapshot(State state, float failureRate, float slowCallRate, int bufferedCalls, long notPermittedCalls) {
+            this.state = state;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
+            this.bufferedCalls = bufferedCalls;
+            this.notPermittedCalls = notPermittedCalls;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * The percentage of failed calls in the sliding window, or -1 if no
+         * calls were recorded yet.
+         *
+         * @return
+         */
+        public float getFailureRate() {
+            return failureRate;
+        }
+
+        /**
+         * The percentage of slow calls in the sliding window, or -1 if no
+         * calls were recorded yet.
+         *
+         * @return
+         */
+        public float getSlowCallRate() {
+            return slowCallRate;
+        }
+
+        /**
+         * The number of calls in the sliding window.
+         *
+         * @return
+         */
+        public int getBufferedCalls() {
+            return bufferedCalls;
+        }
+
+        /**
+         * The total number of calls that were rejected.
+         *
+         * @return
+         */
+        public long getNotPermittedCalls() {
+            return notPermittedCalls;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.CircuitBreakerProperties;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.core.Ordered;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Holds one {@link CircuitBreaker} per remote service and applies them to
+ * outgoing requests. Remote services are identified by
+ * {@link MiddlewareRequest#remoteId()}.
+ * <p>
+ * While the breaker of a remote service is open, requests to it fail
+ * immediately with a {@link MiddlewareException} with code
+ * {@link de.hsesslingen.keim.efs.mobility.exception.MiddlewareError#REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE}.
+ * <p>
+ * Calls count as failed if the remote service could not be reached, did not
+ * respond in time or responded with a 5xx status. Other errors, e.g. 4xx
+ * responses, show that the remote service is working and count as successful.
+ * So do {@code REMOTE_SERVICE_UNAVAILABLE} errors relayed by other services
+ * of the middleware, whose own remote service is unavailable, i.e. those of
+ * requests that {@link MiddlewareRequest#sendsInternalHeaders() send the
+ * internal headers}.
+ * <p>
+ * At most {@code efs.circuit-breaker.max-breakers} breakers are kept. Once
+ * there are more, the least recently used ones are removed.
+ *
+ * @author ben
+ */
+public class CircuitBreakerRegistry implements MiddlewareRequestInterceptor, Ordered {
+
+    private static volatile CircuitBreakerRegistry defaultRegistry;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private volatile CircuitBreakerProperties properties;
+
+    public CircuitBreakerRegistry() {
+        this(new CircuitBreakerProperties());
+    }
+
+    public CircuitBreakerRegistry(CircuitBreakerProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the shared registry for request templates, see
+     * {@link MiddlewareRequestTemplate#enableCircuitBreakers(CircuitBreakerRegistry)}.
+     * It is configured with the {@code efs.circuit-breaker.*} properties once the application context
+     * is started.
+     *
+     * @return
+     */
+    public static CircuitBreakerRegistry getDefault() {
+        var registry = defaultRegistry;
+
+        if (registry == null) {
+            synchronized (CircuitBreakerRegistry.class) {
+                registry = defaultRegistry;
+
+                if (registry == null) {
+                    registry = new CircuitBreakerRegistry();
+                    defaultRegistry = registry;
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    /**
+     * Removes the given registry if it is the default, e.g. once the
+     * application context that configured it is closed. The next call of
+     * {@link #getDefault()} creates a new one with the default settings and
+     * without the breakers of the old one.
+     *
+     * @param registry
+     */
+    public static void clearDefault(CircuitBreakerRegistry registry) {
+        synchronized (CircuitBreakerRegistry.class) {
+            if (defaultRegistry == registry) {
+                defaultRegistry = null;
+            }
+        }
+    }
+
+    public CircuitBreakerProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Replaces the settings of this registry. They apply to existing breakers
+     * as well, except for the size of the sliding window.
+     *
+     * @param properties
+     * @return
+     */
+    public CircuitBreakerRegistry setProperties(CircuitBreakerProperties properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    @Override
+    public int getOrder() {
+        return CIRCUIT_BREAKER_ORDER;
+    }
+
+    /**
+     * Returns the breaker for the given remote service, creating it if
+     * necessary.
+     *
+     * @param name The service ID or host and port of the remote service.
+     * @return
+     */
+    public CircuitBreaker getBreaker(String name) {
+        var breaker = breakers.get(name);
+
+        if (breaker != null) {
+            return breaker;
+        }
+
+        if (breakers.size() >= properties.getMaxBreakers()) {
+            evictLeastRecentlyUsed();
+        }
+
+        return breakers.computeIfAbsent(name, n -> new CircuitBreaker(n, this::getProperties));
+    }
+
+    /**
+     * Removes the breaker that was asked for permission least recently. Only
+     * runs when a breaker for a new remote service is created while the
+     * registry is full, e.g. if requests are sent to many hosts.
+     */
+    private void evictLeastRecentlyUsed() {
+        CircuitBreaker oldest = null;
+
+        for (var breaker : breakers.values()) {
+            if (oldest == null || breaker.getLastUsed() - oldest.getLastUsed() < 0) {
+                oldest = breaker;
+            }
+        }
+
+        if (oldest != null) {
+            breakers.remove(oldest.getName(), oldest);
+        }
+    }
+
+    /**
+     * Returns snapshots of all breakers, sorted by name.
+     *
+     * @return
+     */
+    public Map<String, CircuitBreaker.Snapshot> getSnapshots() {
+        var snapshots = new TreeMap<String, CircuitBreaker.Snapshot>();
+
+        for (var breaker : breakers.values()) {
+            snapshots.put(breaker.getName(), breaker.getSnapshot());
+        }
+
+        return snapshots;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (!properties.isEnabled()) {
+            return execution.execute();
+        }
+
+        var name = request.remoteId();
+
+        if (name == null) {
+            return execution.execute();
+        }
+
+        var breaker = getBreaker(name);
+        long permit = breaker.tryAcquire();
+
+        if (permit == CircuitBreaker.NOT_PERMITTED) {
+            throw MiddlewareException.remoteServiceUnavailableException(
+                    "The remote service %s is unavailable. Circuit breaker is open.", name
+            );
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            var response = execution.execute();
+            breaker.onResult(permit, System.nanoTime() - start, false);
+            return response;
+        } catch (ResourceAccessException | RemoteMiddlewareException ex) {
+            if (AbortHandle.isCurrentAborted()) {
+                // E.g. a copy that lost against its hedge, which says nothing about the remote service.
+                breaker.release(permit);
+            } else {
+                breaker.onResult(permit, System.nanoTime() - start, isFailure(request, ex));
+            }
+
+            throw ex;
+        } catch (Throwable ex) {
+            breaker.release(permit);
+            throw ex;
+        }
+    }
+
+    /**
+     * Tells whether the given exception shows that the remote service is not
+     * working properly. Plain {@link MiddlewareException}s were raised
+     * locally, e.g. by a concurrency limit, and do not count as failures.
+     * Requests aborted on purpose, see {@link HedgingPolicy}, do not count
+     * either.
+     * <p>
+     * For requests to other services of the middleware, i.e. those that
+     * {@link MiddlewareRequest#sendsInternalHeaders() send the internal
+     * headers}, neither do exceeded deadlines, because the budget of the original
+     * caller ran out, not the remote service, nor relayed
+     * {@code REMOTE_SERVICE_UNAVAILABLE} errors, because the responding
+     * service works, but its own remote service does not. Remote APIs outside
+     * of the middleware do not relay these codes, so request templates that
+     * map their errors to them still open the breaker.
+     *
+     * @param request
+     * @param ex
+     * @return
+     */
+    static boolean isFailure(MiddlewareRequest<?> request, RuntimeException ex) {
+        if (AbortHandle.isCurrentAborted()) {
+            return false;
+        }
+
+        if (ex instanceof ResourceAccessException) {
+            return true;
+        }
+
+        if (ex instanceof RemoteMiddlewareException) {
+            var remote = (RemoteMiddlewareException) ex;
+
+            if (request.sendsInternalHeaders()
+                    && (DEADLINE_EXCEEDED_ERROR_CODE.equals(remote.getCode())
+                    || REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE.equals(remote.getCode()))) {
+                return false;
+            }
+
+            return remote.getStatus().is5xxServerError();
+        }
+
+        return false;
+    }
+}
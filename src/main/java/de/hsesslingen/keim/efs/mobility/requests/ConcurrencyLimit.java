@@ -0,0 +1,256 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.ConcurrencyLimitProperties;
+import java.util.function.Supplier;
+
+/**
+ * An adaptive limit for the number of concurrent requests to a single remote
+ * service. It follows the AIMD (additive increase, multiplicative decrease)
+ * scheme: The limit grows by one for each successful request that was sent
+ * while at least half of the limit was in use, and shrinks by a factor if a
+ * request failed or the latency of the remote service increased noticeably
+ * above the lowest recently observed latency.
+ * <p>
+ * The limit shrinks at most once per round trip, i.e. once per smoothed
+ * latency, so the requests that were already in flight when the latency rose
+ * or the first failure occurred do not shrink it again before the smaller
+ * limit had an effect.
+ * <p>
+ * Limits are created and used by the {@link ConcurrencyLimiterRegistry}.
+ *
+ * @author ben
+ */
+public class ConcurrencyLimit {
+
+    /**
+     * The lowest latency is taken from the last one or two windows of this
+     * many samples, so the limit adapts if a remote service becomes
+     * permanently slower.
+     */
+    private static final int MIN_LATENCY_WINDOW = 250;
+
+    /**
+     * Weight of a new sample in the smoothed latency.
+     */
+    private static final double SMOOTHING = 0.1;
+
+    private final String name;
+    private final Supplier<ConcurrencyLimitProperties> properties;
+
+    private double limit;
+    private int inFlight;
+    private long rejected;
+
+    private double smoothedLatency = -1;
+    private long previousMinLatency = Long.MAX_VALUE;
+    private long currentMinLatency = Long.MAX_VALUE;
+    private int samples;
+    private long lastDecrease;
+    private boolean decreased;
+
+    private volatile long lastUsed = System.nanoTime();
+
+    ConcurrencyLimit(String name, Supplier<ConcurrencyLimitProperties> properties) {
+        this.name = name;
+        this.properties = properties;
+        this.limit = properties.get().getInitialLimit();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Tries to start a request. If true is returned,
+     * {@link #onSuccess(long)}, {@link #onFailure()} or {@link #release()}
+     * must be called once the request completed.
+     *
+     * @return Whether the request may be sent.
+     */
+    public synchronized boolean tryAcquire() {
+        lastUsed = System.nanoTime();
+
+        if (inFlight >= (int) limit) {
+            ++rejected;
+            return false;
+        }
+
+        ++inFlight;
+        return true;
+    }
+
+    /**
+     * Records a successful request with the given latency.
+     *
+     * @param latencyNanos
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        var config = properties.get();
+        boolean wasSaturated = inFlight * 2 >= limit;
+        --inFlight;
+
+        smoothedLatency = smoothedLatency < 0 ? latencyNanos : smoothedLatency + SMOOTHING * (latencyNanos - smoothedLatency);
+        currentMinLatency = Math.min(currentMinLatency, latencyNanos);
+
+        if (++samples >= MIN_LATENCY_WINDOW) {
+            previousMinLatency = currentMinLatency;
+            currentMinLatency = Long.MAX_VALUE;
+            samples = 0;
+        }
+
+        if (smoothedLatency > minLatency() * config.getLatencyTolerance()) {
+            decrease(config);
+        } else if (wasSaturated) {
+            limit = Math.min(config.getMaxLimit(), limit + 1);
+        }
+    }
+
+    /**
+     * Records a request that failed because the remote service is overloaded
+     * or unavailable.
+     */
+    public synchronized void onFailure() {
+        --inFlight;
+        decrease(properties.get());
+    }
+
+    /**
+     * Ends a request without adjusting the limit, e.g. if it failed for
+     * reasons unrelated to the load of the remote service.
+     */
+    public synchronized void release() {
+        --inFlight;
+    }
+
+    /**
+     * The time of the last call of {@link #tryAcquire()}, as given by
+     * {@link System#nanoTime()}.
+     *
+     * @return
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    private void decrease(ConcurrencyLimitProperties config) {
+        long now = System.nanoTime();
+
+        if (decreased && now - lastDecrease < smoothedLatency) {
+            // Already decreased within the current round trip.
+            return;
+        }
+
+        limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+        lastDecrease = now;
+        decreased = true;
+    }
+
+    /**
+     * The lowest latency of the current and the previous window.
+     */
+    private long minLatency() {
+        return Math.min(previousMinLatency, currentMinLatency);
+    }
+
+    /**
+     * Returns a snapshot of the state of this limit.
+     *
+     * @return
+     */
+    public synchronized Snapshot getSnapshot() {
+        long minLatency = minLatency();
+
+        return new Snapshot(
+                (int) limit,
+                inFlight,
+                rejected,
+                smoothedLatency < 0 ? -1 : (long) smoothedLatency / 1_000_000,
+                minLatency == Long.MAX_VALUE ? -1 : minLatency / 1_000_000
+        );
+    }
+
+    /**
+     * The state of a {@link ConcurrencyLimit} at a point in time.
+     */
+    public static class Snapshot {
+
+        private final int limit;
+        private final int inFlight;
+        private final long rejected;
+        private final long latencyMillis;
+        private final long minLatencyMillis;
+
+        Snapshot(int limit, int inFlight, long rejected, long latencyMillis, long minLatencyMillis) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.rejected = rejected;
+            this.latencyMillis = latencyMillis;
+            this.minLatencyMillis = minLatencyMillis;
+        }
+
+        /**
+         * The current maximum number of concurrent requests.
+         *
+         * @return
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * The total number of rejected requests.
+         *
+         * @return
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * The smoothed latency of successful requests, or -1 if there were
+         * none yet.
+         *
+         * @return
+         */
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        /**
+         * The lowest recently observed latency, or -1 if there were no
+         * successful requests yet.
+         *
+         * @return
+         */
+        public long getMinLatencyMillis() {
+            return minLatencyMillis;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.ConcurrencyLimitProperties;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.core.Ordered;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Holds one {@link ConcurrencyLimit} per remote service and applies them to
+ * outgoing requests. Remote services are identified by
+ * {@link MiddlewareRequest#remoteId()}.
+ * <p>
+ * Requests that exceed the current limit of a remote service are not queued
+ * but fail immediately with a {@link MiddlewareException} with code
+ * {@link de.hsesslingen.keim.efs.mobility.exception.MiddlewareError#REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE}.
+ * Failures are classified like in the {@link CircuitBreakerRegistry}, so
+ * errors relayed by other services of the middleware do not shrink the limit.
+ * <p>
+ * At most {@code efs.concurrency-limit.max-limits} limits are kept. Once
+ * there are more, the least recently used ones are removed.
+ *
+ * @author ben
+ */
+public class ConcurrencyLimiterRegistry implements MiddlewareRequestInterceptor, Ordered {
+
+    private static volatile ConcurrencyLimiterRegistry defaultRegistry;
+
+    private final ConcurrentMap<String, ConcurrencyLimit> limits = new ConcurrentHashMap<>();
+    private volatile ConcurrencyLimitProperties properties;
+
+    public ConcurrencyLimiterRegistry() {
+        this(new ConcurrencyLimitProperties());
+    }
+
+    public ConcurrencyLimiterRegistry(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the shared registry for request templates, see
+     * {@link MiddlewareRequestTemplate#enableConcurrencyLimits(ConcurrencyLimiterRegistry)}.
+     * It is configured with the {@code efs.concurrency-limit.*} properties
+     * once the application context is started.
+     *
+     * @return
+     */
+    public static ConcurrencyLimiterRegistry getDefault() {
+        var registry = defaultRegistry;
+
+        if (registry == null) {
+            synchronized (ConcurrencyLimiterRegistry.class) {
+                registry = defaultRegistry;
+
+                if (registry == null) {
+                    registry = new ConcurrencyLimiterRegistry();
+                    defaultRegistry = registry;
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    /**
+     * Removes the given registry if it is the default, e.g. once the
+     * application context that configured it is closed. The next call of
+     * {@link #getDefault()} creates a new one with the default settings and
+     * without the limits of the old one.
+     *
+     * @param registry
+     */
+    public static void clearDefault(ConcurrencyLimiterRegistry registry) {
+        synchronized (ConcurrencyLimiterRegistry.class) {
+            if (defaultRegistry == registry) {
+                defaultRegistry = null;
+            }
+        }
+    }
+
+    public ConcurrencyLimitProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Replaces the settings of this registry. The initial limit only applies
+     * to remote services that were not yet contacted.
+     *
+     * @param properties
+     * @return
+     */
+    public ConcurrencyLimiterRegistry setProperties(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    @Override
+    public int getOrder() {
+        return CONCURRENCY_LIMIT_ORDER;
+    }
+
+    /**
+     * Returns the limit for the given remote service, creating it if
+     * necessary.
+     *
+     * @param name The service ID or host and port of the remote service.
+     * @return
+     */
+    public ConcurrencyLimit getLimit(String name) {
+        var limit = limits.get(name);
+
+        if (limit != null) {
+            return limit;
+        }
+
+        if (limits.size() >= properties.getMaxLimits()) {
+            evictLeastRecentlyUsed();
+        }
+
+        return limits.computeIfAbsent(name, n -> new ConcurrencyLimit(n, this::getProperties));
+    }
+
+    /**
+     * Removes the limit that was used least recently. Only runs when a limit
+     * for a new remote service is created while the registry is full, e.g. if
+     * requests are sent to many hosts.
+     */
+    private void evictLeastRecentlyUsed() {
+        ConcurrencyLimit oldest = null;
+
+        for (var limit : limits.values()) {
+            if (oldest == null || limit.getLastUsed() - oldest.getLastUsed() < 0) {
+                oldest = limit;
+            }
+        }
+
+        if (oldest != null) {
+            limits.remove(oldest.getName(), oldest);
+        }
+    }
+
+    /**
+     * Returns snapshots of all limits, sorted by name.
+     *
+     * @return
+     */
+    public Map<String, ConcurrencyLimit.Snapshot> getSnapshots() {
+        var snapshots = new TreeMap<String, ConcurrencyLimit.Snapshot>();
+
+        for (var limit : limits.values()) {
+            snapshots.put(limit.getName(), limit.getSnapshot());
+        }
+
+        return snapshots;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (!properties.isEnabled()) {
+            return execution.execute();
+        }
+
+        var name = request.remoteId();
+
+        if (name == null) {
+            return execution.execute();
+        }
+
+        var limit = getLimit(name);
+
+        if (!limit.tryAcquire()) {
+            throw MiddlewareException.remoteServiceUnavailableException(
+                    "The remote service %s is unavailable. Too many concurrent requests.", name
+            );
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            var response = execution.execute();
+            limit.onSuccess(System.nanoTime() - start);
+            return response;
+        } catch (ResourceAccessException | RemoteMiddlewareException ex) {
+            if (CircuitBreakerRegistry.isFailure(request, ex)) {
+                limit.onFailure();
+            } else {
+                limit.release();
+            }
+
+            throw ex;
+        } catch (Throwable ex) {
+            limit.release();
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which the original caller expects a response. A
+ * deadline is set for incoming requests by the {@link DeadlineFilter} and
+ * bound to the handling thread, so all {@link MiddlewareRequest}s sent while
+ * handling the request shrink their timeout to the remaining time and
+ * forward it to the next service in the {@link MiddlewareRequest#DEADLINE_HEADER}.
+ * <p>
+ * The header carries the remaining time in milliseconds instead of an
+ * absolute point in time, so the clocks of the services do not have to be
+ * synchronized. Deadlines are measured using {@link System#nanoTime()}.
+ *
+ * @author ben
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Longer budgets are cut to this, about 146 years. Deadlines are compared
+     * by the difference of their {@link System#nanoTime()} values, which only
+     * works for points in time less than 2^63 ns apart.
+     */
+    private static final long MAX_BUDGET_NANOS = Long.MAX_VALUE / 2;
+    private static final long MAX_BUDGET_MILLIS = MAX_BUDGET_NANOS / 1_000_000;
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * A deadline that expires after the given time from now. Budgets longer
+     * than about 146 years are cut to that.
+     *
+     * @param budget
+     * @return
+     */
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + toNanos(budget));
+    }
+
+    private static long toNanos(Duration budget) {
+        if (budget.getSeconds() >= MAX_BUDGET_NANOS / 1_000_000_000) {
+            return MAX_BUDGET_NANOS;
+        }
+
+        if (budget.getSeconds() <= -MAX_BUDGET_NANOS / 1_000_000_000) {
+            return -MAX_BUDGET_NANOS;
+        }
+
+        return budget.toNanos();
+    }
+
+    /**
+     * Parses the value of the {@link MiddlewareRequest#DEADLINE_HEADER}.
+     *
+     * @param value
+     * @return The deadline or {@code null} if the value is missing or invalid.
+     */
+    public static Deadline fromHeader(String value) {
+        return fromHeader(value, null);
+    }
+
+    /**
+     * Parses the value of the {@link MiddlewareRequest#DEADLINE_HEADER} and
+     * limits it to the given budget.
+     *
+     * @param value
+     * @param maxBudget The longest accepted budget or {@code null} for no
+     * limit.
+     * @return The deadline or {@code null} if the value is missing or invalid.
+     */
+    public static Deadline fromHeader(String value, Duration maxBudget) {
+        return fromHeader(value, null, maxBudget);
+    }
+
+    /**
+     * Parses the value of the {@link MiddlewareRequest#DEADLINE_HEADER} and
+     * limits it to the given budgets. Raising short budgets to a minimum
+     * keeps callers from cutting every request of this service short, e.g.
+     * by sending {@code 0}.
+     *
+     * @param value
+     * @param minBudget The shortest accepted budget or {@code null} for no
+     * limit.
+     * @param maxBudget The longest accepted budget or {@code null} for no
+     * limit.
+     * @return The deadline or {@code null} if the value is missing or invalid.
+     */
+    public static Deadline fromHeader(String value, Duration minBudget, Duration maxBudget) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        long millis;
+
+        try {
+            millis = Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        // Clamp before converting, callers may send absurdly long deadlines.
+        long maxMillis = maxBudget != null ? toNanos(maxBudget) / 1_000_000 : MAX_BUDGET_MILLIS;
+        long minMillis = minBudget != null ? Math.min(toNanos(minBudget) / 1_000_000, maxMillis) : -MAX_BUDGET_MILLIS;
+        return after(Duration.ofMillis(Math.max(minMillis, Math.min(millis, maxMillis))));
+    }
+
+    /**
+     * The deadline bound to the current thread, usually the one of the
+     * incoming request that is currently handled.
+     *
+     * @return The deadline or {@code null} if there is none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the given deadline to the current thread.
+     *
+     * @param deadline The deadline or {@code null} to remove it.
+     * @return The deadline that was bound before, which should be restored
+     * afterwards.
+     */
+    public static Deadline setCurrent(Deadline deadline) {
+        var previous = CURRENT.get();
+
+        if (deadline != null) {
+            CURRENT.set(deadline);
+        } else {
+            CURRENT.remove();
+        }
+
+        return previous;
+    }
+
+    /**
+     * The remaining time, never negative.
+     *
+     * @return
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Returns the earlier of this and the given deadline.
+     *
+     * @param other May be null.
+     * @return
+     */
+    public Deadline min(Deadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+    }
+
+    /**
+     * Returns the later of this and the given deadline.
+     *
+     * @param other May be null.
+     * @return
+     */
+    public Deadline max(Deadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos >= 0 ? this : other;
+    }
+
+    /**
+     * The remaining time in milliseconds, as sent in the
+     * {@link MiddlewareRequest#DEADLINE_HEADER}.
+     *
+     * @return
+     */
+    public String toHeaderValue() {
+        return Long.toString(remaining().toMillis());
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline in " + remaining().toMillis() + " ms";
+    }
+}
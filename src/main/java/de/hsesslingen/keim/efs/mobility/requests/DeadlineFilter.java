@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.DeadlineProperties;
+import de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest.DEADLINE_HEADER;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Reads the {@link MiddlewareRequest#DEADLINE_HEADER} of incoming requests and
+ * binds the {@link Deadline} to the handling thread, so that outgoing
+ * {@link MiddlewareRequest}s honor and forward it. Requests whose deadline has
+ * already expired are rejected right away with {@code 504 Gateway Timeout} and
+ * a {@code DEADLINE_EXCEEDED} error, as nobody waits for their response
+ * anymore.
+ * <p>
+ * Registered by the auto configuration if {@code efs.deadline.enabled} is
+ * true. As the header is sent by the caller, it is only honored for callers
+ * listed in {@code efs.deadline.trusted-addresses}, if any are, and raised to
+ * at least {@code efs.deadline.min-budget}.
+ * <p>
+ * Requests that are handled asynchronously, e.g. using a
+ * {@code DeferredResult}, have to pass the deadline to their requests
+ * themselves using {@link MiddlewareRequest#deadline(Deadline)}.
+ *
+ * @author ben
+ */
+public class DeadlineFilter extends OncePerRequestFilter implements Ordered {
+
+    private static final Logger logger = getLogger(DeadlineFilter.class);
+
+    private final DeadlineProperties properties;
+
+    public DeadlineFilter(DeadlineProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public int getOrder() {
+        // Early, so that the deadline is bound before any other filter sends requests.
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        var deadline = deadlineOf(request);
+
+        if (deadline == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (deadline.isExpired()) {
+            logger.debug("Rejecting {} {}, its deadline has already expired.", request.getMethod(), request.getRequestURI());
+            reject(response);
+            return;
+        }
+
+        var previous = Deadline.setCurrent(deadline);
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Deadline.setCurrent(previous);
+        }
+    }
+
+    private Deadline deadlineOf(HttpServletRequest request) {
+        var maxBudget = properties.getMaxBudget();
+        var deadline = isTrusted(request)
+                ? Deadline.fromHeader(request.getHeader(DEADLINE_HEADER), properties.getMinBudget(), maxBudget)
+                : null;
+
+        if (deadline == null && properties.getDefaultBudget() != null) {
+            var budget = properties.getDefaultBudget();
+            deadline = Deadline.after(maxBudget != null && budget.compareTo(maxBudget) > 0 ? maxBudget : budget);
+        }
+
+        return deadline;
+    }
+
+    private boolean isTrusted(HttpServletRequest request) {
+        var trusted = properties.getTrustedAddresses();
+        return trusted == null || trusted.isEmpty() || trusted.contains(request.getRemoteAddr());
+    }
+
+    private static void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        ObjectMapperRegistry.getDefault()
+                .writer(MiddlewareError.class)
+                .writeValue(response.getOutputStream(), MiddlewareError.deadlineExceeded());
+    }
+}
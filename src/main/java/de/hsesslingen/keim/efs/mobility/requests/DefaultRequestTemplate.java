@@ -30,6 +30,10 @@ import org.springframework.web.client.RestTemplate;
  * This request template sets an instance of
  * {@link MiddlewareErrorResponseHandler} as error handler and is used by all
  * internal beans that request stuff from services within the middleware.
+ * <p>
+ * Circuit breakers, concurrency limits, bulkheads and tracing are opt-in, e.g.
+ * using {@link #enableCircuitBreakers(CircuitBreakerRegistry)} with
+ * {@link CircuitBreakerRegistry#getDefault()}.
  *
  * @author ben
  */
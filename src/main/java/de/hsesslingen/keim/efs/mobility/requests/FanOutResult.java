@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * The result of a {@link MobilityServiceFanOut}. Contains one
+ * {@link ServiceResult} per queried service, which is either successful or
+ * carries a {@link MiddlewareError}.
+ *
+ * @author ben
+ * @param <T>
+ */
+public class FanOutResult<T> {
+
+    private final List<ServiceResult<T>> results;
+    private final Duration duration;
+
+    FanOutResult(List<ServiceResult<T>> results, Duration duration) {
+        this.results = Collections.unmodifiableList(results);
+        this.duration = duration;
+    }
+
+    /**
+     * The results of all queried services, in the order of the services
+     * given to the fan-out.
+     *
+     * @return
+     */
+    public List<ServiceResult<T>> getResults() {
+        return results;
+    }
+
+    /**
+     * The time it took from starting the first request until this result was
+     * assembled.
+     *
+     * @return
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * The response bodies of all successful requests.
+     *
+     * @return
+     */
+    public List<T> getBodies() {
+        var bodies = new ArrayList<T>(results.size());
+
+        for (var result : results) {
+            if (result.isSuccessful() && result.getResponse().getBody() != null) {
+                bodies.add(result.getResponse().getBody());
+            }
+        }
+
+        return bodies;
+    }
+
+    /**
+     * The errors of all failed requests, mapped by the ID of the service.
+     *
+     * @return
+     */
+    public Map<String, MiddlewareError> getErrors() {
+        var errors = new LinkedHashMap<String, MiddlewareError>();
+
+        for (var result : results) {
+            if (!result.isSuccessful()) {
+                errors.put(result.getService().getId(), result.getError());
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Whether all requests were successful.
+     *
+     * @return
+     */
+    public boolean isComplete() {
+        return results.stream().allMatch(ServiceResult::isSuccessful);
+    }
+
+    /**
+     * The outcome of the request to a single {@link MobilityService}.
+     *
+     * @param <T>
+     */
+    public static class ServiceResult<T> {
+
+        private final MobilityService service;
+        private final ResponseEntity<T> response;
+        private final MiddlewareError error;
+        private final Duration duration;
+        private final boolean timedOut;
+
+        ServiceResult(MobilityService service, ResponseEntity<T> response, MiddlewareError error, Duration duration, boolean timedOut) {
+            this.service = service;
+            this.response = response;
+            this.error = error;
+            this.duration = duration;
+            this.timedOut = timedOut;
+        }
+
+        public MobilityService getService() {
+            return service;
+        }
+
+        /**
+         * The response, if the request was successful, null otherwise.
+         *
+         * @return
+         */
+        public ResponseEntity<T> getResponse() {
+            return response;
+        }
+
+        /**
+         * The error, if the request failed or timed out, null otherwise.
+         *
+         * @return
+         */
+        public MiddlewareError getError() {
+            return error;
+        }
+
+        /**
+         * The time this request took. For requests that timed out this is the
+         * time until the deadline was reached.
+         *
+         * @return
+         */
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        /**
+         * Whether the request did not complete before the deadline.
+         *
+         * @return
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.tracing.TraceContext;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Sends a second copy of a request, if no response arrived within a
+ * percentile of the recently observed latencies of the same remote service.
+ * The first response wins and the HTTP request of the other copy is aborted.
+ * This cuts the latency tail of remote services with occasional slow
+ * responses.
+ * <p>
+ * Hedging is opt-in and only applies to idempotent methods. Enable it on a
+ * {@link MiddlewareRequestTemplate} using
+ * {@link MiddlewareRequestTemplate#enableHedging(HedgingPolicy)}. Remote
+ * services are identified by {@link MiddlewareRequest#remoteId()}. No hedges
+ * are sent to a remote service until enough latencies were observed.
+ * <p>
+ * The number of hedges is capped at a ratio of the number of requests using a
+ * {@link RetryBudget}. Once hedging applies to a remote service, both the
+ * original request and its hedge are sent on an executor, with the deadline
+ * and trace context of the calling thread bound to the sending thread, and
+ * the calling thread returns as soon as the first copy succeeded. A hedge is
+ * a copy of the original request, see {@link MiddlewareRequest#copyForResend()},
+ * which passes the interceptors that follow this policy.
+ * <p>
+ * Aborting requires a request factory that supports it, like the
+ * {@link PooledClientHttpRequestFactory}. With other factories, the losing
+ * copy runs to completion in the background.
+ * <p>
+ * Latencies are kept for at most {@link #setMaxRemotes(int)} remote
+ * services. Once there are more, those of the least recently used ones are
+ * removed.
+ *
+ * @author ben
+ */
+public class HedgingPolicy implements MiddlewareRequestInterceptor, Ordered {
+
+    private volatile double percentile = 0.95;
+    private volatile int minSamples = 20;
+    private volatile int windowSize = 100;
+    private volatile int maxRemotes = 1000;
+    private volatile Duration minDelay = Duration.ofMillis(10);
+    private volatile Set<HttpMethod> methods = Collections.unmodifiableSet(EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS));
+    private volatile RetryBudget budget = new RetryBudget(0.1, 10);
+    private volatile Executor executor;
+
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Sets the percentile of the recent latencies after which a hedge is sent,
+     * e.g. 0.95 to hedge the slowest 5 % of the requests. Defaults to 0.95.
+     *
+     * @param percentile
+     * @return
+     */
+    public HedgingPolicy setPercentile(double percentile) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1.");
+        }
+
+        this.percentile = percentile;
+        return this;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Sets the number of latencies that must have been observed for a remote
+     * service, before hedges are sent to it. Defaults to 20.
+     *
+     * @param minSamples
+     * @return
+     */
+    public HedgingPolicy setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the number of most recent latencies per remote service from which
+     * the percentile is calculated. Defaults to 100. Changes only apply to
+     * remote services that were not yet contacted.
+     *
+     * @param windowSize
+     * @return
+     */
+    public HedgingPolicy setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    public int getMaxRemotes() {
+        return maxRemotes;
+    }
+
+    /**
+     * Sets the maximum number of remote services whose latencies are kept.
+     * Defaults to 1000.
+     *
+     * @param maxRemotes
+     * @return
+     */
+    public HedgingPolicy setMaxRemotes(int maxRemotes) {
+        this.maxRemotes = maxRemotes;
+        return this;
+    }
+
+    public Duration getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * Sets the minimum time to wait before a hedge is sent. Defaults to 10
+     * ms.
+     *
+     * @param minDelay
+     * @return
+     */
+    public HedgingPolicy setMinDelay(Duration minDelay) {
+        this.minDelay = minDelay;
+        return this;
+    }
+
+    public Set<HttpMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Sets the methods of the requests that are hedged. Defaults to GET, HEAD
+     * and OPTIONS. Only idempotent methods should be used.
+     *
+     * @param methods
+     * @return
+     */
+    public HedgingPolicy setMethods(Set<HttpMethod> methods) {
+        this.methods = Collections.unmodifiableSet(EnumSet.copyOf(methods));
+        return this;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the budget that caps the number of hedges. Defaults to one hedge
+     * per ten requests with a reserve of ten hedges.
+     *
+     * @param budget
+     * @return
+     */
+    public HedgingPolicy setBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Sets the executor on which hedged requests and their hedges are sent.
+     * Defaults to the executor of {@link MiddlewareRequestExecutors}.
+     *
+     * @param executor
+     * @return
+     */
+    public HedgingPolicy setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    @Override
+    public int getOrder() {
+        return HEDGING_ORDER;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        var remoteId = request.remoteId();
+
+        if (remoteId == null || !methods.contains(request.method()) || request.isStreaming()) {
+            return execution.execute();
+        }
+
+        var window = getWindow(remoteId);
+        long delay = window.percentile(percentile, minSamples);
+
+        requests.increment();
+        budget.deposit();
+
+        if (delay < 0) {
+            // Not enough samples yet.
+            long start = System.nanoTime();
+            var response = execution.execute();
+            window.record(System.nanoTime() - start);
+            return response;
+        }
+
+        return hedge(request, execution, window, Math.max(delay, minDelay.toNanos()));
+    }
+
+    private LatencyWindow getWindow(String remoteId) {
+        var window = latencies.get(remoteId);
+
+        if (window == null) {
+            if (latencies.size() >= maxRemotes) {
+                evictLeastRecentlyUsed();
+            }
+
+            window = latencies.computeIfAbsent(remoteId, id -> new LatencyWindow(windowSize));
+        }
+
+        window.lastUsed = System.nanoTime();
+        return window;
+    }
+
+    /**
+     * Removes the latencies of the remote service that was used least
+     * recently. Only runs when a new remote service is contacted while the
+     * map is full, e.g. if requests are sent to many hosts.
+     */
+    private void evictLeastRecentlyUsed() {
+        Map.Entry<String, LatencyWindow> oldest = null;
+
+        for (var entry : latencies.entrySet()) {
+            if (oldest == null || entry.getValue().lastUsed - oldest.getValue().lastUsed < 0) {
+                oldest = entry;
+            }
+        }
+
+        if (oldest != null) {
+            latencies.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private <T> ResponseEntity<T> hedge(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution, LatencyWindow window, long delay) {
+        var result = new CompletableFuture<ResponseEntity<T>>();
+        var running = new AtomicInteger(1);
+        var primary = newAbortHandle();
+        var hedge = newAbortHandle();
+        // Taken from the calling thread, as both copies are sent on other ones.
+        var trace = TraceContext.current();
+
+        var timer = MiddlewareRequestExecutors.getScheduler().schedule(
+                () -> startHedge(request, trace, window, result, running, hedge, primary),
+                delay, TimeUnit.NANOSECONDS
+        );
+
+        try {
+            try {
+                // Not sent on the calling thread, which could not return before it completed, even if the hedge won.
+                getExecutor().execute(() -> sendOn(request.deadline(), trace,
+                        () -> send(execution, window, result, running, false, primary, hedge)));
+            } catch (RejectedExecutionException ex) {
+                send(execution, window, result, running, false, primary, hedge);
+            }
+
+            return result.get();
+        } catch (ExecutionException ex) {
+            throw rethrow(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a response.");
+        } finally {
+            timer.cancel(false);
+
+            if (!result.isDone()) {
+                // Nobody waits for the response anymore. Otherwise the winner aborted the other copy.
+                primary.abort();
+                hedge.abort();
+            }
+        }
+    }
+
+    /**
+     * A handle for one copy of a request, which is aborted as well if the
+     * request itself is, e.g. because its asynchronous caller cancelled it.
+     */
+    private static AbortHandle newAbortHandle() {
+        var outer = AbortHandle.current();
+        return outer != null ? outer.newChild() : new AbortHandle();
+    }
+
+    private static void sendOn(Deadline deadline, TraceContext trace, Runnable send) {
+        var previousDeadline = Deadline.setCurrent(deadline);
+        var previousTrace = TraceContext.setCurrent(trace);
+
+        try {
+            send.run();
+        } finally {
+            TraceContext.setCurrent(previousTrace);
+            Deadline.setCurrent(previousDeadline);
+        }
+    }
+
+    private Executor getExecutor() {
+        var target = executor;
+        return target != null ? target : MiddlewareRequestExecutors.getDefault();
+    }
+
+    private <T> void startHedge(
+            MiddlewareRequest<T> request,
+            TraceContext trace,
+            LatencyWindow window,
+            CompletableFuture<ResponseEntity<T>> result,
+            AtomicInteger running,
+            AbortHandle hedge,
+            AbortHandle primary
+    ) {
+        if (result.isDone()) {
+            return;
+        }
+
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.increment();
+            return;
+        }
+
+        hedges.increment();
+        running.incrementAndGet();
+
+        try {
+            // The original request is still being sent, only read from it.
+            var copy = request.copyForResend();
+
+            getExecutor().execute(() -> sendOn(copy.deadline(), trace,
+                    () -> send(() -> copy.sendAfter(this), window, result, running, true, hedge, primary)));
+        } catch (RuntimeException ex) {
+            if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Sends one copy of the request on the current thread. The HTTP request
+     * is registered with the given handle, so the other copy can abort it if
+     * it wins.
+     */
+    private <T> void send(
+            MiddlewareRequestExecution<T> execution,
+            LatencyWindow window,
+            CompletableFuture<ResponseEntity<T>> result,
+            AtomicInteger running,
+            boolean isHedge,
+            AbortHandle own,
+            AbortHandle other
+    ) {
+        var previous = AbortHandle.bind(own);
+        long start = System.nanoTime();
+
+        try {
+            var response = execution.execute();
+            window.record(System.nanoTime() - start);
+
+            if (result.complete(response)) {
+                if (isHedge) {
+                    hedgeWins.increment();
+                }
+
+                other.abort();
+            }
+        } catch (Throwable ex) {
+            // Only fail if no other copy can still succeed.
+            if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        } finally {
+            AbortHandle.bind(previous);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * The number of requests that were eligible for hedging.
+     *
+     * @return
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * The number of hedges that were sent.
+     *
+     * @return
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * The number of hedges that responded before the original request, i.e.
+     * how often hedging helped.
+     *
+     * @return
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * The number of hedges that were not sent because the budget was
+     * exhausted.
+     *
+     * @return
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * The number of remote services whose latencies are kept.
+     *
+     * @return
+     */
+    public int getRemoteCount() {
+        return latencies.size();
+    }
+
+    /**
+     * The most recent latencies of a remote service.
+     */
+    private static class LatencyWindow {
+
+        /**
+         * The cached percentile is recalculated after this many new samples.
+         */
+        private static final int RECALCULATE_EVERY = 10;
+
+        private final long[] samples;
+        volatile long lastUsed = System.nanoTime();
+        private int next;
+        private int size;
+        private int sinceCalculation = Integer.MAX_VALUE;
+        private double cachedFor = -1;
+        private long cached = -1;
+
+        LatencyWindow(int windowSize) {
+            this.samples = new long[Math.max(1, windowSize)];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+
+            if (sinceCalculation < Integer.MAX_VALUE) {
+                ++sinceCalculation;
+            }
+        }
+
+        /**
+         * Returns the given percentile of the recorded latencies, or -1 if
+         * there are fewer than minSamples.
+         */
+        synchronized long percentile(double percentile, int minSamples) {
+            if (size < Math.min(minSamples, samples.length)) {
+                return -1;
+            }
+
+            if (sinceCalculation >= RECALCULATE_EVERY || cachedFor != percentile) {
+                var sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                cached = sorted[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)];
+                cachedFor = percentile;
+                sinceCalculation = 0;
+            }
+
+            return cached;
+        }
+    }
+}
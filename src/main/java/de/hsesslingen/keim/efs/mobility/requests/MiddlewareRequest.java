@@ -23,17 +23,40 @@
  */
 package de.hsesslingen.keim.efs.mobility.requests;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.LOCAL_SATURATED_ERROR_CODE;
 import de.hsesslingen.keim.restutils.AbstractRequest;
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
 /**
@@ -56,8 +79,35 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
     public static final String SECRET_HEADER = "x-secret";
     public static final String TOKEN_HEADER = "x-token";
 
+    /**
+     * Carries the time in milliseconds the original caller is still willing to
+     * wait for a response. See {@link Deadline}.
+     */
+    public static final String DEADLINE_HEADER = "x-deadline-ms";
+
+    /**
+     * The request that is currently sent on the current thread. Used by lower
+     * layers like request factories to access request specific settings.
+     */
+    private static final ThreadLocal<MiddlewareRequest<?>> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The {@link MiddlewareRequestMetrics} installed for all requests, if any.
+     * Typed as plain interceptor, so this class does not depend on Micrometer.
+     */
+    static volatile MiddlewareRequestInterceptor installedMetrics;
+
     private RestTemplate template;
-    private List<MiddlewareRequestAdapter> requestAdapters;
+    private MiddlewareRequestAdapterPipeline requestAdapters = MiddlewareRequestAdapterPipeline.EMPTY;
+    private MiddlewareRequestInterceptorChain interceptors = MiddlewareRequestInterceptorChain.EMPTY;
+    private List<MiddlewareRequestInterceptor> ownInterceptors;
+    private Executor asyncExecutor;
+    private Duration timeout;
+    private Deadline deadline;
+    private String serviceId;
+    private RetryPolicy retryPolicy;
+    private boolean streaming;
+    private boolean sendInternalHeaders = true;
 
     private String token;
     private String userId;
@@ -76,6 +126,8 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
      */
     private boolean isInternal = false;
 
+    private Map<String, Object> attributes;
+
     public MiddlewareRequest() {
     }
     
@@ -114,10 +166,221 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
     }
 
     public MiddlewareRequest<T> requestAdapters(List<MiddlewareRequestAdapter> adapters) {
-        this.requestAdapters = adapters;
+        this.requestAdapters = MiddlewareRequestAdapterPipeline.of(adapters);
+        return this;
+    }
+
+    /**
+     * Sets the adapters that are called before this request is sent, usually
+     * those of the {@link MiddlewareRequestTemplate} that created this
+     * request.
+     *
+     * @param adapters
+     * @return
+     */
+    public MiddlewareRequest<T> requestAdapters(MiddlewareRequestAdapterPipeline adapters) {
+        this.requestAdapters = adapters != null ? adapters : MiddlewareRequestAdapterPipeline.EMPTY;
+        return this;
+    }
+
+    public MiddlewareRequest<T> interceptors(List<MiddlewareRequestInterceptor> interceptors) {
+        this.interceptors = MiddlewareRequestInterceptorChain.of(interceptors);
+        return this;
+    }
+
+    /**
+     * Sets the interceptors that are shared with other requests, usually those
+     * of the {@link MiddlewareRequestTemplate} that created this request.
+     *
+     * @param interceptors
+     * @return
+     */
+    public MiddlewareRequest<T> interceptors(MiddlewareRequestInterceptorChain interceptors) {
+        this.interceptors = interceptors != null ? interceptors : MiddlewareRequestInterceptorChain.EMPTY;
+        return this;
+    }
+
+    /**
+     * Adds an interceptor that is only used for this request, in addition to
+     * those set using {@link #interceptors(MiddlewareRequestInterceptorChain)}.
+     *
+     * @param interceptor
+     * @return
+     */
+    public MiddlewareRequest<T> interceptor(MiddlewareRequestInterceptor interceptor) {
+        if (ownInterceptors == null) {
+            ownInterceptors = new ArrayList<>(2);
+        }
+
+        ownInterceptors.add(interceptor);
+        return this;
+    }
+
+    /**
+     * Sets the policy for retrying this request if it fails for transient
+     * reasons. Set to null to not retry this request.
+     *
+     * @param retryPolicy
+     * @return
+     */
+    public MiddlewareRequest<T> retryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the executor on which this request is sent when using
+     * {@link #goAsync()}. If none is set, the default executor of
+     * {@link MiddlewareRequestExecutors} is used.
+     *
+     * @param executor
+     * @return
+     */
+    public MiddlewareRequest<T> asyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Sets a timeout for this request. It is used as connect timeout, as
+     * timeout for obtaining a pooled connection and as read timeout and
+     * overrides the defaults of the request factory.
+     * <p>
+     * The timeout is honored by {@link PooledClientHttpRequestFactory} and by
+     * {@link ReactiveMiddlewareRequest}s. Other request factories ignore it.
+     *
+     * @param timeout
+     * @return
+     */
+    public MiddlewareRequest<T> timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the deadline of this request. If none is set, the deadline bound to
+     * the calling thread by the {@link DeadlineFilter} is used, if any.
+     * <p>
+     * Before the request is sent, its timeout is shrunk to the remaining time
+     * and the remaining time is forwarded in the {@link #DEADLINE_HEADER},
+     * unless {@link #sendInternalHeaders(boolean)} is disabled. If the
+     * deadline has already expired, the request is not sent but fails
+     * with a {@code DEADLINE_EXCEEDED}
+     * {@link de.hsesslingen.keim.efs.mobility.exception.MiddlewareException}.
+     *
+     * @param deadline
+     * @return
+     */
+    public MiddlewareRequest<T> deadline(Deadline deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    public Deadline deadline() {
+        return deadline;
+    }
+
+    /**
+     * Sets whether the headers meant for other services of the middleware are
+     * sent, i.e. the {@link #DEADLINE_HEADER} and the trace context of the
+     * {@link de.hsesslingen.keim.efs.mobility.tracing.TracingRequestAdapter}.
+     * Enabled by default, disabled for requests to remote APIs outside of the
+     * middleware, see {@link RemoteApiRequestTemplate}. The deadline still
+     * applies to the request itself.
+     *
+     * @param sendInternalHeaders
+     * @return
+     */
+    public MiddlewareRequest<T> sendInternalHeaders(boolean sendInternalHeaders) {
+        this.sendInternalHeaders = sendInternalHeaders;
+        return this;
+    }
+
+    public boolean sendsInternalHeaders() {
+        return sendInternalHeaders;
+    }
+
+    /**
+     * The timeout for the next attempt to send this request, which is the
+     * timeout of this request shrunk to the remaining time of its deadline.
+     *
+     * @return The timeout or {@code null} if neither a timeout nor a deadline
+     * is set.
+     */
+    Duration attemptTimeout() {
+        if (deadline == null) {
+            return timeout;
+        }
+
+        var remaining = deadline.remaining();
+
+        if (remaining.toMillis() < 1) {
+            // Zero would disable the timeouts of the request factory.
+            remaining = Duration.ofMillis(1);
+        }
+
+        return timeout == null || remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    /**
+     * Sets the ID of the {@link de.hsesslingen.keim.efs.mobility.service.MobilityService}
+     * this request is sent to. Interceptors that keep state per remote
+     * service, like the {@link CircuitBreakerRegistry}, use it instead of the
+     * host of the URI if set.
+     *
+     * @param serviceId
+     * @return
+     */
+    public MiddlewareRequest<T> serviceId(String serviceId) {
+        this.serviceId = serviceId;
         return this;
     }
 
+    public String serviceId() {
+        return serviceId;
+    }
+
+    /**
+     * Identifies the remote service this request is sent to. This is the
+     * {@link #serviceId()} if set, otherwise the host and port of the URI.
+     * Returns null for relative URIs.
+     *
+     * @return
+     */
+    public String remoteId() {
+        if (serviceId != null) {
+            return serviceId;
+        }
+
+        var uri = expandUri();
+
+        if (uri.getHost() == null) {
+            return null;
+        }
+
+        return uri.getPort() >= 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+    }
+
+    /**
+     * Returns the request that is currently being sent on the calling thread,
+     * or null if there is none. This is meant for lower layers like request
+     * factories or {@link org.springframework.http.client.ClientHttpRequestInterceptor}s
+     * that need access to request specific settings.
+     *
+     * @return
+     */
+    public static MiddlewareRequest<?> current() {
+        return CURRENT.get();
+    }
+
     @Override
     public RestTemplate getRestTemplate() {
         return template;
@@ -170,7 +433,41 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
         return this;
     }
 
+    /**
+     * Attaches a value to this request that is not sent, but can be read by
+     * later adapters and interceptors, e.g. to pass state from a request
+     * adapter, which runs on the calling thread, to an interceptor, which may
+     * run on another one.
+     *
+     * @param name
+     * @param value The value or {@code null} to remove it.
+     * @return
+     */
+    public MiddlewareRequest<T> attribute(String name, Object value) {
+        if (value == null) {
+            if (attributes != null) {
+                attributes.remove(name);
+            }
+        } else {
+            if (attributes == null) {
+                attributes = new HashMap<>(4);
+            }
+
+            attributes.put(name, value);
+        }
+
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> A attribute(String name) {
+        return attributes != null ? (A) attributes.get(name) : null;
+    }
+
     private boolean requestAdaptersCalled = false;
+    private boolean credentialsAdded = false;
+    private boolean deadlineApplied = false;
+    private CompletableFuture<Void> pendingAdapters;
 
     /**
      * This function calls the registered request adapters with this request.
@@ -180,6 +477,9 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
      * If this function is not called manually if will be called automatically
      * before the request is sent.
      * <p>
+     * {@link AsyncMiddlewareRequestAdapter}s may not have completed when this
+     * function returns. The request is sent only after they completed.
+     * <p>
      * Request adapters can be registered using
      * {@link EfsRequest.addOutgoingRequestAdapter}.
      *
@@ -192,17 +492,51 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
         }
 
         requestAdaptersCalled = true;
+        pendingAdapters = requestAdapters.apply(this);
 
-        if (requestAdapters != null) {
-            for (var adapter : requestAdapters) {
-                adapter.adapt(this);
-            }
+        return this;
+    }
+
+    private void applyDeadline() {
+        if (deadlineApplied) {
+            return;
         }
 
-        return this;
+        deadlineApplied = true;
+
+        // Taken from the calling thread, as the request may be sent on another one.
+        var current = Deadline.current();
+        deadline = deadline != null ? deadline.min(current) : current;
+
+        if (deadline == null) {
+            return;
+        }
+
+        checkDeadline();
+
+        timeout = attemptTimeout();
+
+        if (sendInternalHeaders) {
+            super.header(DEADLINE_HEADER, deadline.toHeaderValue());
+        }
+    }
+
+    private void checkDeadline() {
+        if (deadline != null && deadline.isExpired()) {
+            throw MiddlewareException.deadlineExceededException(
+                    "The deadline expired before %s %s could be sent.", method(), expandUri()
+            );
+        }
     }
 
     private void addCredentialsToHeader() {
+        // Add the credentials only once, even if the request is sent multiple times.
+        if (credentialsAdded) {
+            return;
+        }
+
+        credentialsAdded = true;
+
         if (token != null) {
             super.header(TOKEN_HEADER, token);
         }
@@ -301,19 +635,614 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
         return (MiddlewareRequest<T>) super.method(method);
     }
 
-    @Override
-    public ResponseEntity<T> go() {
+    /**
+     * Adds the credentials to the headers and calls the request adapters.
+     * Must be called on the calling thread before the request is sent. Waits
+     * for asynchronous adapters.
+     */
+    void beforeSend() {
+        var pending = beforeSendAsync();
+
+        if (pending != null) {
+            MiddlewareRequestAdapterPipeline.await(pending);
+        }
+    }
+
+    /**
+     * Same as {@link #beforeSend()}, but does not wait for asynchronous
+     * adapters.
+     *
+     * @return A future that completes once the asynchronous adapters have
+     * completed or {@code null} if the request can be sent right away.
+     */
+    CompletableFuture<Void> beforeSendAsync() {
+        applyDeadline();
+
         // Before we send the request, lets add our credentials...
         addCredentialsToHeader();
         callRequestAdapters();
+        return pendingAdapters;
+    }
+
+    /**
+     * Sends this request and blocks until the response is received. Before
+     * sending, the credentials are added and the request adapters are called.
+     * The request then passes all interceptors, ordered by
+     * {@link org.springframework.core.Ordered}, before it is actually sent.
+     *
+     * @return
+     */
+    @Override
+    public ResponseEntity<T> go() {
+        beforeSend();
+        return send();
+    }
+
+    private ResponseEntity<T> send() {
+        return send(this::execute);
+    }
+
+    private ResponseEntity<T> send(MiddlewareRequestExecution<T> terminal) {
+        var chain = collectInterceptors();
+
+        if (chain.length == 0) {
+            return withCurrent(terminal);
+        }
+
+        return proceed(chain, 0, terminal);
+    }
+
+    private ResponseEntity<T> proceed(MiddlewareRequestInterceptor[] chain, int index, MiddlewareRequestExecution<T> terminal) {
+        if (index >= chain.length) {
+            return withCurrent(terminal);
+        }
+
+        return chain[index].intercept(this, () -> proceed(chain, index + 1, terminal));
+    }
+
+    private MiddlewareRequestInterceptor[] collectInterceptors() {
+        // Compiled once per chain, retry policy and metrics, not per attempt.
+        var chain = interceptors.compile(retryPolicy, installedMetrics);
+
+        if (ownInterceptors == null || ownInterceptors.isEmpty()) {
+            return chain;
+        }
+
+        return MiddlewareRequestInterceptorChain.merge(chain, ownInterceptors);
+    }
+
+    /**
+     * Sends this request through the interceptors that follow the given one,
+     * i.e. continues the chain where the given interceptor would call its
+     * {@link MiddlewareRequestExecution}. Used for copies made by
+     * {@link #copyForResend()}, which must not pass the interceptors before
+     * the given one again.
+     *
+     * @param interceptor
+     * @return
+     */
+    ResponseEntity<T> sendAfter(MiddlewareRequestInterceptor interceptor) {
+        var chain = collectInterceptors();
+        return proceed(chain, indexAfter(chain, interceptor), this::execute);
+    }
+
+    /**
+     * Same as {@link #sendAfter(MiddlewareRequestInterceptor)}, but sends
+     * this request like {@link #goAsync()}, e.g. for copies sent by an
+     * {@link AsyncMiddlewareRequestInterceptor}.
+     *
+     * @param interceptor
+     * @return
+     */
+    CompletableFuture<ResponseEntity<T>> sendAfterAsync(MiddlewareRequestInterceptor interceptor) {
+        var future = new CompletableFuture<ResponseEntity<T>>();
+        var chain = collectInterceptors();
+
+        sendAsync(asyncExecutor(), future, abortOnCancel(future), chain, indexAfter(chain, interceptor));
+
+        return future;
+    }
+
+    private static int indexAfter(MiddlewareRequestInterceptor[] chain, MiddlewareRequestInterceptor interceptor) {
+        int index = 0;
+
+        while (index < chain.length && chain[index] != interceptor) {
+            ++index;
+        }
+
+        return index + 1;
+    }
+
+    /**
+     * Actually sends this request, bypassing all interceptors.
+     */
+    private ResponseEntity<T> execute() {
         return super.go();
     }
 
+    private ResponseEntity<T> withCurrent(MiddlewareRequestExecution<T> terminal) {
+        // Do not start another attempt, e.g. a retry, if nobody waits for the response anymore.
+        checkDeadline();
+
+        var previous = CURRENT.get();
+        CURRENT.set(this);
+
+        try {
+            return terminal.execute();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Sends this request and passes the elements of the response body to the
+     * given consumer as soon as they are parsed. The body is expected to be a
+     * JSON array, a single JSON value or a sequence of JSON values, e.g.
+     * newline delimited JSON. It is read directly from the response stream,
+     * element by element, so the memory usage does not depend on the size of
+     * the body.
+     * <p>
+     * The returned entity contains the status and headers of the response, but
+     * no body. Interceptors that would have to buffer or replay the response,
+     * like the {@link MiddlewareResponseCache}, the
+     * {@link MiddlewareRequestCoalescer}, the {@link HedgingPolicy} and the
+     * {@link RetryPolicy}, are skipped for streamed requests.
+     *
+     * @param <E>
+     * @param elementClass
+     * @param consumer
+     * @return
+     */
+    public <E> ResponseEntity<Void> stream(Class<E> elementClass, Consumer<? super E> consumer) {
+        return stream(reader(elementClass), consumer);
+    }
+
+    /**
+     * Same as {@link #stream(Class, Consumer)} for generic element types.
+     *
+     * @param <E>
+     * @param elementType
+     * @param consumer
+     * @return
+     */
+    public <E> ResponseEntity<Void> stream(ParameterizedTypeReference<E> elementType, Consumer<? super E> consumer) {
+        return stream(reader(elementType.getType()), consumer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E> ResponseEntity<Void> stream(ObjectReader reader, Consumer<? super E> consumer) {
+        var restTemplate = getRestTemplate();
+
+        if (restTemplate == null) {
+            throw new IllegalStateException("No RestTemplate was set for this request.");
+        }
+
+        streaming = true;
+        beforeSend();
+
+        return (ResponseEntity<Void>) send(() -> (ResponseEntity<T>) restTemplate.execute(
+                expandUri(),
+                method(),
+                restTemplate.httpEntityCallback(buildEntity()),
+                response -> readElements(response, reader, consumer)
+        ));
+    }
+
+    private static <E> ResponseEntity<?> readElements(ClientHttpResponse response, ObjectReader reader, Consumer<? super E> consumer) throws IOException {
+        try ( JsonParser parser = reader.getFactory().createParser(response.getBody())) {
+            var token = parser.nextToken();
+
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    consumer.accept(reader.readValue(parser));
+                }
+            } else if (token != null) {
+                try ( var values = reader.<E>readValues(parser)) {
+                    while (values.hasNext()) {
+                        consumer.accept(values.next());
+                    }
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            // Do not let parse errors look like network failures.
+            throw new RestClientException("Could not parse the streamed response body: " + ex.getOriginalMessage(), ex);
+        }
+
+        return new ResponseEntity<>(response.getHeaders(), response.getStatusCode());
+    }
+
+    /**
+     * A reader for the given type using the object mapper of the rest
+     * template. Readers of the shared {@link ObjectMapperRegistry} are reused
+     * if the rest template uses its mapper, which is the case for all
+     * templates created by a {@link MiddlewareRequestTemplate}.
+     */
+    private ObjectReader reader(Type type) {
+        var registry = ObjectMapperRegistry.getDefault();
+        var mapper = objectMapper(registry);
+
+        if (mapper == registry.getObjectMapper()) {
+            return registry.reader(type);
+        }
+
+        return mapper.readerFor(mapper.constructType(type));
+    }
+
+    private ObjectMapper objectMapper(ObjectMapperRegistry registry) {
+        var restTemplate = getRestTemplate();
+
+        if (restTemplate != null) {
+            for (var converter : restTemplate.getMessageConverters()) {
+                if (converter instanceof MappingJackson2HttpMessageConverter) {
+                    return ((MappingJackson2HttpMessageConverter) converter).getObjectMapper();
+                }
+            }
+        }
+
+        return registry.getObjectMapper();
+    }
+
+    /**
+     * Whether this request is sent using {@link #stream(Class, Consumer)}.
+     * Interceptors must not buffer or replay the responses of such requests.
+     *
+     * @return
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Builds the entity that is sent, merging the entity, headers, content
+     * type and body set on this request.
+     *
+     * @return
+     */
+    HttpEntity<Object> buildEntity() {
+        var entity = entity();
+        var headers = new HttpHeaders();
+
+        if (entity != null) {
+            headers.addAll(entity.getHeaders());
+        }
+
+        if (headers() != null) {
+            headers.addAll(headers());
+        }
+
+        if (contentType() != null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, contentType());
+        }
+
+        var body = body() != null ? body() : entity != null ? entity.getBody() : null;
+
+        return new HttpEntity<>(body, headers);
+    }
+
     public ResponseEntity<T> go(RestTemplate template) {
         this.template = template;
         return this.go();
     }
 
+    /**
+     * Sends this request asynchronously on the executor set with
+     * {@link #asyncExecutor(Executor)} or, if none is set, on the default
+     * executor of {@link MiddlewareRequestExecutors}.
+     *
+     * @return
+     * @see #goAsync(Executor)
+     */
+    public CompletableFuture<ResponseEntity<T>> goAsync() {
+        return goAsync(asyncExecutor());
+    }
+
+    /**
+     * The executor set with {@link #asyncExecutor(Executor)} or, if none is
+     * set, the default executor of {@link MiddlewareRequestExecutors}.
+     *
+     * @return
+     */
+    Executor asyncExecutor() {
+        return asyncExecutor != null ? asyncExecutor : MiddlewareRequestExecutors.getDefault();
+    }
+
+    /**
+     * The executor set with {@link #asyncExecutor(Executor)}, if any.
+     *
+     * @return
+     */
+    Executor ownAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sends this request asynchronously on the given executor.
+     * <p>
+     * The credentials are added and the request adapters are called on the
+     * calling thread, before the request is handed to the executor. This way
+     * adapters can still access thread bound state like the security context
+     * of the original caller. The request is handed to the executor once all
+     * {@link AsyncMiddlewareRequestAdapter}s have completed, without blocking
+     * the calling thread.
+     * <p>
+     * The request passes the same interceptors in the same order as with
+     * {@link #go()}. Interceptors that implement
+     * {@link AsyncMiddlewareRequestInterceptor}, like the {@link RetryPolicy},
+     * do so without occupying a thread of the executor, e.g. while waiting
+     * for the backoff before a retry.
+     * <p>
+     * Exceptions thrown by the adapters or while sending the request, e.g. a
+     * {@link de.hsesslingen.keim.efs.mobility.exception.MiddlewareException}
+     * raised by the error handler of the rest template, are not thrown but
+     * complete the returned future exceptionally. If the executor rejects the
+     * request, the future completes with a {@code LOCAL_SATURATED} exception,
+     * as the remote service itself was never asked.
+     * <p>
+     * Cancelling the returned future stops the request: it is not sent or
+     * retried anymore if it is still queued or waiting and the HTTP request
+     * in flight is aborted, if the request factory supports it, like the
+     * {@link PooledClientHttpRequestFactory}.
+     *
+     * @param executor
+     * @return
+     */
+    public CompletableFuture<ResponseEntity<T>> goAsync(Executor executor) {
+        var future = new CompletableFuture<ResponseEntity<T>>();
+        var abort = abortOnCancel(future);
+
+        try {
+            var pending = beforeSendAsync();
+
+            if (pending == null) {
+                sendAsync(executor, future, abort);
+            } else {
+                pending.whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(MiddlewareRequestAdapterPipeline.unwrap(ex));
+                    } else {
+                        sendAsync(executor, future, abort);
+                    }
+                });
+            }
+        } catch (Throwable ex) {
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
+    /**
+     * Creates the handle that aborts the HTTP requests of the given future
+     * once it is cancelled.
+     */
+    private static AbortHandle abortOnCancel(CompletableFuture<?> future) {
+        var abort = new AbortHandle();
+
+        future.whenComplete((response, ex) -> {
+            if (ex instanceof CancellationException) {
+                abort.abort();
+            }
+        });
+
+        return abort;
+    }
+
+    private void sendAsync(Executor executor, CompletableFuture<ResponseEntity<T>> future, AbortHandle abort) {
+        sendAsync(executor, future, abort, collectInterceptors(), 0);
+    }
+
+    private void sendAsync(Executor executor, CompletableFuture<ResponseEntity<T>> future, AbortHandle abort,
+            MiddlewareRequestInterceptor[] chain, int index) {
+        if (future.isDone()) {
+            // Cancelled while waiting for the adapters.
+            return;
+        }
+
+        proceedAsync(chain, index, executor, future, abort).whenComplete((response, ex) -> {
+            if (ex != null) {
+                future.completeExceptionally(MiddlewareRequestAdapterPipeline.unwrap(ex));
+            } else {
+                future.complete(response);
+            }
+        });
+    }
+
+    /**
+     * Passes the interceptors that can intercept asynchronously, see
+     * {@link AsyncMiddlewareRequestInterceptor}, without blocking and hands
+     * the request to the executor at the first one that can not. This way
+     * asynchronous requests pass the interceptors in the same order as
+     * synchronous ones, e.g. retries do not pass the tracing or the cache
+     * again, while the {@link RetryPolicy} waits for the backoff on a timer
+     * instead of a thread.
+     */
+    private CompletableFuture<ResponseEntity<T>> proceedAsync(MiddlewareRequestInterceptor[] chain, int index, Executor executor,
+            CompletableFuture<ResponseEntity<T>> caller, AbortHandle abort) {
+        if (index < chain.length && chain[index] instanceof AsyncMiddlewareRequestInterceptor) {
+            try {
+                return ((AsyncMiddlewareRequestInterceptor) chain[index]).interceptAsync(this,
+                        () -> proceedAsync(chain, index + 1, executor, caller, abort)
+                );
+            } catch (Throwable ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        return sendOn(executor, caller, abort, () -> proceed(chain, index, this::execute));
+    }
+
+    /**
+     * Runs the rest of the interceptor chain on the given executor, unless
+     * the caller stopped waiting for the response.
+     */
+    private CompletableFuture<ResponseEntity<T>> sendOn(Executor executor, CompletableFuture<ResponseEntity<T>> caller, AbortHandle abort,
+            MiddlewareRequestExecution<T> execution) {
+        var result = new CompletableFuture<ResponseEntity<T>>();
+
+        if (caller.isDone()) {
+            // Cancelled while waiting, e.g. for a retry.
+            result.cancel(false);
+            return result;
+        }
+
+        try {
+            executor.execute(() -> {
+                if (caller.isDone()) {
+                    // Cancelled while queued, nobody waits for the response anymore.
+                    result.cancel(false);
+                    return;
+                }
+
+                var previous = AbortHandle.bind(abort);
+
+                try {
+                    result.complete(execution.execute());
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    AbortHandle.bind(previous);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(new MiddlewareException(LOCAL_SATURATED_ERROR_CODE, ex,
+                    "The executor for asynchronous requests is saturated."));
+        } catch (Throwable ex) {
+            result.completeExceptionally(ex);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a new GET request for the same URI and response type, with the
+     * same template, interceptors, retry policy, service id,
+     * {@link #sendInternalHeaders(boolean)} setting and headers, including
+     * those of the entity, so that it has the same {@link RequestKey}. The
+     * {@link RequestKey#IGNORED_HEADERS}, the body, request adapters,
+     * attributes, timeout and deadline are not copied. Used for requests that
+     * are sent independently of this one, e.g. the background revalidations
+     * of the {@link MiddlewareResponseCache}.
+     *
+     * @return
+     */
+    MiddlewareRequest<T> copyForGet() {
+        var copy = new MiddlewareRequest<T>(HttpMethod.GET, template);
+        copy.uri(uriBuilder().cloneBuilder().build().toUriString());
+
+        if (uriVariablesMap() != null) {
+            copy.uriVariables(uriVariablesMap());
+        } else if (uriVariables() != null) {
+            copy.uriVariables(uriVariables());
+        }
+
+        if (responseTypeReference() != null) {
+            copy.expect(responseTypeReference());
+        } else if (responseTypeClass() != null) {
+            copy.expect(responseTypeClass());
+        }
+
+        if (entity() != null) {
+            copyHeadersForGet(entity().getHeaders(), copy);
+        }
+
+        copyHeadersForGet(headers(), copy);
+
+        copy.interceptors = interceptors;
+        copy.ownInterceptors = ownInterceptors != null ? new ArrayList<>(ownInterceptors) : null;
+        copy.retryPolicy = retryPolicy;
+        copy.serviceId = serviceId;
+        copy.isInternal = isInternal;
+        copy.sendInternalHeaders = sendInternalHeaders;
+
+        return copy;
+    }
+
+    private static void copyHeadersForGet(HttpHeaders headers, MiddlewareRequest<?> copy) {
+        if (headers == null) {
+            return;
+        }
+
+        headers.forEach((name, values) -> {
+            if (values != null && !RequestKey.IGNORED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                copy.headers(name, new ArrayList<>(values));
+            }
+        });
+    }
+
+    /**
+     * Creates a copy of this request that sends exactly the same HTTP request,
+     * including the headers added by the request adapters, with the same
+     * template, interceptors, timeout, deadline and attributes. Used for
+     * requests that are sent concurrently with this one, e.g. the hedges of
+     * the {@link HedgingPolicy}, as a request must not be sent by two threads
+     * at once.
+     * <p>
+     * Must only be called after {@link #beforeSend()}. The request adapters
+     * are not called again for the copy and it shares no mutable state with
+     * this request.
+     *
+     * @return
+     */
+    MiddlewareRequest<T> copyForResend() {
+        var copy = new MiddlewareRequest<T>(method(), template);
+        copy.uri(uriBuilder().cloneBuilder().build().toUriString());
+
+        if (uriVariablesMap() != null) {
+            copy.uriVariables(uriVariablesMap());
+        } else if (uriVariables() != null) {
+            copy.uriVariables(uriVariables());
+        }
+
+        if (responseTypeReference() != null) {
+            copy.expect(responseTypeReference());
+        } else if (responseTypeClass() != null) {
+            copy.expect(responseTypeClass());
+        }
+
+        if (entity() != null) {
+            copy.entity(entity());
+        }
+
+        if (body() != null) {
+            copy.body(body());
+        }
+
+        if (contentType() != null) {
+            copy.contentType(contentType());
+        }
+
+        var headers = headers();
+
+        if (headers != null) {
+            headers.forEach((name, values) -> copy.headers(name, new ArrayList<>(values)));
+        }
+
+        copy.interceptors = interceptors;
+        copy.ownInterceptors = ownInterceptors != null ? new ArrayList<>(ownInterceptors) : null;
+        copy.retryPolicy = retryPolicy;
+        copy.asyncExecutor = asyncExecutor;
+        copy.timeout = timeout;
+        copy.deadline = deadline;
+        copy.serviceId = serviceId;
+        copy.isInternal = isInternal;
+        copy.sendInternalHeaders = sendInternalHeaders;
+        copy.token = token;
+        copy.userId = userId;
+        copy.secret = secret;
+        copy.attributes = attributes != null ? new HashMap<>(attributes) : null;
+
+        // Everything these steps add is already part of the copied headers.
+        copy.deadlineApplied = true;
+        copy.credentialsAdded = true;
+        copy.requestAdaptersCalled = true;
+
+        return copy;
+    }
+
     public MiddlewareRequest<T> toInternal() {
         this.isInternal = true;
         return this;
@@ -373,4 +1302,33 @@ public class MiddlewareRequest<T> extends AbstractRequest<T> {
         return super.uriBuilder();
     }
 
+    /**
+     * Builds the URI of this request, including the query parameters, with all
+     * URI variables expanded and encoded.
+     *
+     * @return
+     */
+    public URI expandUri() {
+        var builder = uriBuilder();
+
+        if (builder == null) {
+            throw new IllegalStateException("No URI was specified for this request.");
+        }
+
+        var variablesMap = uriVariablesMap();
+        var variables = uriVariables();
+
+        UriComponents components;
+
+        if (variablesMap != null && !variablesMap.isEmpty()) {
+            components = builder.cloneBuilder().buildAndExpand(variablesMap);
+        } else if (variables != null && variables.length > 0) {
+            components = builder.cloneBuilder().buildAndExpand(variables);
+        } else {
+            components = builder.cloneBuilder().build();
+        }
+
+        return components.encode().toUri();
+    }
+
 }
@@ -24,11 +24,46 @@
 package de.hsesslingen.keim.efs.mobility.requests;
 
 /**
+ * Adapts outgoing requests before they are sent, e.g. to add credentials or
+ * tracing headers. Adapters are registered on a request template using
+ * {@link MiddlewareRequestTemplate#addRequestAdapter(MiddlewareRequestAdapter)}
+ * and are called in the order of their {@link #phase()} and, within the same
+ * phase, in the order they were added.
+ * <p>
+ * Adapters that have to wait for something, e.g. a token, should implement
+ * {@link AsyncMiddlewareRequestAdapter} instead of blocking.
  *
  * @author ben
  */
 public interface MiddlewareRequestAdapter {
 
+    /**
+     * The phases in which adapters are called, in order.
+     */
+    public enum Phase {
+        /**
+         * Adds credentials, e.g. tokens.
+         */
+        AUTH,
+        /**
+         * Adds tracing or correlation information.
+         */
+        TRACING,
+        /**
+         * All other adapters.
+         */
+        CUSTOM
+    }
+
     public void adapt(MiddlewareRequest<?> request);
 
+    /**
+     * The phase this adapter is called in. Defaults to {@link Phase#CUSTOM}.
+     *
+     * @return
+     */
+    public default Phase phase() {
+        return Phase.CUSTOM;
+    }
+
 }
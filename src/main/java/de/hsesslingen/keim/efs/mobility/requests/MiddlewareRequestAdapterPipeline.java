@@ -0,0 +1,230 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestAdapter.Phase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * An immutable, ordered list of {@link MiddlewareRequestAdapter}s. The
+ * adapters are sorted by {@link Phase} once when the pipeline is built, so
+ * calling them is a plain loop over an array.
+ * <p>
+ * Adding or removing adapters returns a new pipeline. Request templates
+ * replace their pipeline this way, so requests that were already created keep
+ * the adapters they were created with and adapters can be added safely while
+ * requests are in flight.
+ *
+ * @author ben
+ */
+public final class MiddlewareRequestAdapterPipeline {
+
+    public static final MiddlewareRequestAdapterPipeline EMPTY = new MiddlewareRequestAdapterPipeline(new MiddlewareRequestAdapter[0], new Phase[0]);
+
+    private final MiddlewareRequestAdapter[] adapters;
+    private final Phase[] phases;
+    private final boolean async;
+
+    private MiddlewareRequestAdapterPipeline(MiddlewareRequestAdapter[] adapters, Phase[] phases) {
+        this.adapters = adapters;
+        this.phases = phases;
+        this.async = Arrays.stream(adapters).anyMatch(a -> a instanceof AsyncMiddlewareRequestAdapter);
+    }
+
+    /**
+     * Builds a pipeline of the given adapters, each in its own
+     * {@link MiddlewareRequestAdapter#phase()}.
+     *
+     * @param adapters
+     * @return
+     */
+    public static MiddlewareRequestAdapterPipeline of(List<? extends MiddlewareRequestAdapter> adapters) {
+        var pipeline = EMPTY;
+
+        if (adapters != null) {
+            for (var adapter : adapters) {
+                pipeline = pipeline.with(adapter);
+            }
+        }
+
+        return pipeline;
+    }
+
+    /**
+     * Returns a new pipeline with the given adapter added in its own
+     * {@link MiddlewareRequestAdapter#phase()}.
+     *
+     * @param adapter
+     * @return
+     */
+    public MiddlewareRequestAdapterPipeline with(MiddlewareRequestAdapter adapter) {
+        return with(adapter.phase(), adapter);
+    }
+
+    /**
+     * Returns a new pipeline with the given adapter added after all other
+     * adapters of the given phase.
+     *
+     * @param phase
+     * @param adapter
+     * @return
+     */
+    public MiddlewareRequestAdapterPipeline with(Phase phase, MiddlewareRequestAdapter adapter) {
+        if (adapter == null || phase == null) {
+            throw new IllegalArgumentException("Adapter and phase must not be null.");
+        }
+
+        int index = 0;
+
+        while (index < phases.length && phases[index].compareTo(phase) <= 0) {
+            ++index;
+        }
+
+        var newAdapters = new MiddlewareRequestAdapter[adapters.length + 1];
+        var newPhases = new Phase[phases.length + 1];
+
+        System.arraycopy(adapters, 0, newAdapters, 0, index);
+        System.arraycopy(phases, 0, newPhases, 0, index);
+        newAdapters[index] = adapter;
+        newPhases[index] = phase;
+        System.arraycopy(adapters, index, newAdapters, index + 1, adapters.length - index);
+        System.arraycopy(phases, index, newPhases, index + 1, phases.length - index);
+
+        return new MiddlewareRequestAdapterPipeline(newAdapters, newPhases);
+    }
+
+    /**
+     * Returns a new pipeline without the given adapter.
+     *
+     * @param adapter
+     * @return
+     */
+    public MiddlewareRequestAdapterPipeline without(MiddlewareRequestAdapter adapter) {
+        var newAdapters = new ArrayList<MiddlewareRequestAdapter>(adapters.length);
+        var newPhases = new ArrayList<Phase>(phases.length);
+
+        for (int i = 0; i < adapters.length; ++i) {
+            if (adapters[i] != adapter) {
+                newAdapters.add(adapters[i]);
+                newPhases.add(phases[i]);
+            }
+        }
+
+        if (newAdapters.size() == adapters.length) {
+            return this;
+        }
+
+        return new MiddlewareRequestAdapterPipeline(
+                newAdapters.toArray(MiddlewareRequestAdapter[]::new),
+                newPhases.toArray(Phase[]::new)
+        );
+    }
+
+    /**
+     * The adapters in the order they are called.
+     *
+     * @return
+     */
+    public List<MiddlewareRequestAdapter> getAdapters() {
+        return List.of(adapters);
+    }
+
+    public boolean isEmpty() {
+        return adapters.length == 0;
+    }
+
+    /**
+     * Calls all adapters with the given request on the calling thread.
+     *
+     * @param request
+     * @return A future that completes once all asynchronous adapters have
+     * completed and their results were applied or {@code null} if there are
+     * none, so the request can be sent right away.
+     */
+    CompletableFuture<Void> apply(MiddlewareRequest<?> request) {
+        if (!async) {
+            for (var adapter : adapters) {
+                adapter.adapt(request);
+            }
+
+            return null;
+        }
+
+        var pending = new ArrayList<CompletableFuture<? extends MiddlewareRequestAdapter>>(adapters.length);
+
+        for (var adapter : adapters) {
+            if (adapter instanceof AsyncMiddlewareRequestAdapter) {
+                pending.add(((AsyncMiddlewareRequestAdapter) adapter).adaptAsync(request).toCompletableFuture());
+            } else {
+                adapter.adapt(request);
+            }
+        }
+
+        // Registered only now, so the results are never applied while the loop above still modifies the request.
+        return CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            for (var result : pending) {
+                var adapter = result.join();
+
+                if (adapter != null) {
+                    adapter.adapt(request);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the given future and rethrows the original exception if it
+     * failed, e.g. a MiddlewareException of a token adapter.
+     *
+     * @param <T>
+     * @param future
+     * @return
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            var cause = unwrap(ex);
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw ex;
+        }
+    }
+
+    static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+}
@@ -0,0 +1,366 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Lets identical requests that are sent concurrently share a single call to
+ * the remote service. The first request is sent, all others that arrive
+ * while it is in flight wait for it and receive the same response or the
+ * same exception. Once the call completed, the next request is sent again, so
+ * no stale responses are returned.
+ * <p>
+ * Waiting requests wait at most until their own deadline expires or, without
+ * one, for their own timeout. They then fail like a request that timed out,
+ * while the shared call continues for the others. The shared call itself runs
+ * with the deadline and timeout of the request that sent it. If it times out
+ * or its deadline expires, waiting requests with a longer budget send the
+ * request again once, instead of failing with the budget of another caller.
+ * <p>
+ * Only safe methods ({@code GET}, {@code HEAD} and {@code OPTIONS}) are
+ * coalesced. Requests are considered identical if they have the same
+ * {@link RequestKey}, which includes all headers, e.g. the credentials.
+ * <p>
+ * Enable it on a {@link MiddlewareRequestTemplate} using
+ * {@link MiddlewareRequestTemplate#enableCoalescing(MiddlewareRequestCoalescer)}.
+ * The response bodies are shared between all waiting callers and must
+ * therefore not be modified.
+ *
+ * @author ben
+ */
+public class MiddlewareRequestCoalescer implements AsyncMiddlewareRequestInterceptor, Ordered {
+
+    private final ConcurrentMap<RequestKey, Call> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    @Override
+    public int getOrder() {
+        return COALESCING_ORDER;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (!isCoalescable(request.method()) || request.isStreaming()) {
+            return execution.execute();
+        }
+
+        var key = RequestKey.of(request);
+        var call = new Call(budgetOf(request));
+        var existing = inFlight.putIfAbsent(key, call);
+
+        if (existing == null) {
+            return lead(key, call, execution);
+        }
+
+        coalesced.increment();
+
+        try {
+            return await(existing, request);
+        } catch (RuntimeException ex) {
+            if (!failedFromLeaderBudget(existing, ex, call.budget)) {
+                throw ex;
+            }
+
+            // Sent again only once, so the new call either leads or is sent on its own.
+            return inFlight.putIfAbsent(key, call) == null ? lead(key, call, execution) : sendAlone(execution);
+        }
+    }
+
+    private <T> ResponseEntity<T> lead(RequestKey key, Call call, MiddlewareRequestExecution<T> execution) {
+        sent.increment();
+
+        try {
+            var response = execution.execute();
+            call.complete(response);
+            return response;
+        } catch (Throwable ex) {
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private <T> ResponseEntity<T> sendAlone(MiddlewareRequestExecution<T> execution) {
+        sent.increment();
+        return execution.execute();
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution) {
+        if (!isCoalescable(request.method()) || request.isStreaming()) {
+            return execution.executeAsync();
+        }
+
+        var key = RequestKey.of(request);
+        var call = new Call(budgetOf(request));
+        var existing = inFlight.putIfAbsent(key, call);
+
+        if (existing == null) {
+            return leadAsync(key, call, execution);
+        }
+
+        coalesced.increment();
+
+        return awaitAsync(existing, request).<CompletableFuture<ResponseEntity<T>>>handle((response, ex) -> {
+            if (ex == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            var cause = MiddlewareRequestAdapterPipeline.unwrap(ex);
+
+            if (!failedFromLeaderBudget(existing, cause, call.budget)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+
+            if (inFlight.putIfAbsent(key, call) == null) {
+                return leadAsync(key, call, execution);
+            }
+
+            sent.increment();
+            return execution.executeAsync();
+        }).thenCompose(Function.identity());
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> leadAsync(RequestKey key, Call call, AsyncMiddlewareRequestExecution<T> execution) {
+        sent.increment();
+        CompletableFuture<ResponseEntity<T>> result;
+
+        try {
+            result = execution.executeAsync();
+        } catch (Throwable ex) {
+            call.completeExceptionally(ex);
+            inFlight.remove(key, call);
+            throw ex;
+        }
+
+        return result.whenComplete((response, ex) -> {
+            if (ex == null) {
+                call.complete(response);
+            } else {
+                call.completeExceptionally(MiddlewareRequestAdapterPipeline.unwrap(ex));
+            }
+
+            inFlight.remove(key, call);
+        });
+    }
+
+    /**
+     * The end of the budget of the given request, i.e. of its deadline or
+     * timeout, or {@code null} if it has neither.
+     */
+    private static Deadline budgetOf(MiddlewareRequest<?> request) {
+        // Includes the remaining time of the deadline, if any.
+        var timeout = request.attemptTimeout();
+        return timeout != null ? Deadline.after(timeout) : null;
+    }
+
+    /**
+     * Tells whether the shared call failed only because the budget of the
+     * request that sent it ran out, while the waiting request still has a
+     * longer one. It then sends the request again instead of failing with
+     * the timeout of another caller.
+     *
+     * @param shared The shared call.
+     * @param ex The exception the waiting request failed with.
+     * @param budget The budget of the waiting request, see
+     * {@link #budgetOf(MiddlewareRequest)}.
+     */
+    static boolean failedFromLeaderBudget(Call shared, Throwable ex, Deadline budget) {
+        if (shared.budget == null || !shared.isCompletedExceptionally()) {
+            return false;
+        }
+
+        if (budget != null && (budget.isExpired() || shared.budget.max(budget) == shared.budget)) {
+            return false;
+        }
+
+        // Only the failure of the shared call itself, not the waiting request timing out on its own.
+        var failure = MiddlewareRequestAdapterPipeline.unwrap(shared.handle((response, e) -> e).join());
+
+        if (failure != ex) {
+            return false;
+        }
+
+        if (ex instanceof MiddlewareException) {
+            return DEADLINE_EXCEEDED_ERROR_CODE.equals(((MiddlewareException) ex).getCode());
+        }
+
+        return ex instanceof ResourceAccessException && ex.getCause() instanceof SocketTimeoutException;
+    }
+
+    private static boolean isCoalescable(HttpMethod method) {
+        return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<T> await(CompletableFuture<ResponseEntity<?>> call, MiddlewareRequest<T> request) {
+        // Includes the remaining time of the deadline, if any.
+        var timeout = request.attemptTimeout();
+
+        try {
+            if (timeout == null) {
+                return (ResponseEntity<T>) call.join();
+            }
+
+            return (ResponseEntity<T>) call.get(toNanos(timeout), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            throw timedOut(request, timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for the response to " + request.expandUri() + ".",
+                    new InterruptedIOException());
+        } catch (ExecutionException | CompletionException ex) {
+            // Rethrow the original exception, e.g. the MiddlewareException of the error handler.
+            var cause = ex.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Same as {@link #await(CompletableFuture, MiddlewareRequest)}, but waits
+     * on the timer instead of a thread.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<ResponseEntity<T>> awaitAsync(CompletableFuture<ResponseEntity<?>> call, MiddlewareRequest<T> request) {
+        // Includes the remaining time of the deadline, if any.
+        var timeout = request.attemptTimeout();
+        var result = new CompletableFuture<ResponseEntity<T>>();
+
+        call.whenComplete((response, ex) -> {
+            if (ex == null) {
+                result.complete((ResponseEntity<T>) response);
+            } else {
+                result.completeExceptionally(MiddlewareRequestAdapterPipeline.unwrap(ex));
+            }
+        });
+
+        if (timeout != null && !result.isDone()) {
+            var timer = MiddlewareRequestExecutors.getScheduler().schedule(
+                    () -> result.completeExceptionally(timedOut(request, timeout)), toNanos(timeout), TimeUnit.NANOSECONDS
+            );
+
+            result.whenComplete((response, ex) -> timer.cancel(false));
+        }
+
+        return result;
+    }
+
+    private static RuntimeException timedOut(MiddlewareRequest<?> request, Duration timeout) {
+        var deadline = request.deadline();
+
+        if (deadline != null && deadline.isExpired()) {
+            return MiddlewareException.deadlineExceededException(
+                    "The deadline expired while waiting for the response to %s %s.", request.method(), request.expandUri()
+            );
+        }
+
+        // Signal timeouts the same way as the request itself, so they are handled alike.
+        return new ResourceAccessException(
+                "Request to " + request.expandUri() + " timed out after " + timeout.toMillis() + " ms.",
+                new SocketTimeoutException("Read timed out")
+        );
+    }
+
+    private static long toNanos(Duration timeout) {
+        try {
+            return timeout.toNanos();
+        } catch (ArithmeticException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A call to the remote service that is shared by identical requests.
+     */
+    static final class Call extends CompletableFuture<ResponseEntity<?>> {
+
+        /**
+         * The end of the budget of the request that sent the call, or
+         * {@code null} if it has none.
+         */
+        final Deadline budget;
+
+        Call(Deadline budget) {
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * Number of requests that were actually sent.
+     *
+     * @return
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * Number of requests that were answered by a call that was already in
+     * flight.
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Number of calls that are currently in flight.
+     *
+     * @return
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
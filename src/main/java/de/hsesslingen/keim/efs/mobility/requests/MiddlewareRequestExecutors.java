@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Holds the executor that is used by {@link MiddlewareRequest#goAsync()} if
+ * neither the request nor its {@link MiddlewareRequestTemplate} specify one.
+ * <p>
+ * On Java 21 and newer the default executor starts a new virtual thread per
+ * request. On older runtimes a bounded pool of daemon threads is used, whose
+ * queue holds at most {@link #DEFAULT_QUEUE_CAPACITY} tasks. Further tasks are
+ * rejected with a {@link java.util.concurrent.RejectedExecutionException}, so
+ * that asynchronous requests fail fast with
+ * {@code LOCAL_SATURATED} instead of piling up under load.
+ *
+ * @author ben
+ */
+public final class MiddlewareRequestExecutors {
+
+    private static final Logger logger = getLogger(MiddlewareRequestExecutors.class);
+
+    /**
+     * Number of platform threads used by the fallback executor, if virtual
+     * threads are not available.
+     */
+    public static final int DEFAULT_POOL_SIZE = 64;
+
+    /**
+     * Number of tasks the fallback executor queues while all its threads are
+     * busy.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static volatile Executor defaultExecutor;
+
+    private MiddlewareRequestExecutors() {
+    }
+
+    /**
+     * Returns the executor used for asynchronous requests that have no
+     * executor configured. The executor is created on first use.
+     *
+     * @return
+     */
+    public static Executor getDefault() {
+        var executor = defaultExecutor;
+
+        if (executor == null) {
+            synchronized (MiddlewareRequestExecutors.class) {
+                executor = defaultExecutor;
+
+                if (executor == null) {
+                    executor = newDefaultExecutor();
+                    defaultExecutor = executor;
+                }
+            }
+        }
+
+        return executor;
+    }
+
+    /**
+     * Replaces the executor used for asynchronous requests that have no
+     * executor configured. The previous executor is not shut down.
+     *
+     * @param executor
+     */
+    public static void setDefault(Executor executor) {
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Returns the single timer thread shared by this library, e.g. for the
+     * delays of hedges, token refreshes and batch windows. Tasks run on the
+     * timer thread itself, so they must be short and hand everything that
+     * blocks to an executor. Intended for internal use, it must not be shut
+     * down.
+     *
+     * @return
+     */
+    public static ScheduledExecutorService getScheduler() {
+        return SchedulerHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a new executor with virtual threads, if the runtime supports
+     * them, or a pool of {@link #DEFAULT_POOL_SIZE} daemon threads with a queue
+     * of {@link #DEFAULT_QUEUE_CAPACITY} tasks otherwise.
+     *
+     * @return
+     */
+    public static ExecutorService newDefaultExecutor() {
+        var virtual = tryCreateVirtualThreadExecutor();
+
+        if (virtual != null) {
+            return virtual;
+        }
+
+        var pool = new ThreadPoolExecutor(
+                DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY),
+                new DaemonThreadFactory("efs-request-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    private static ExecutorService tryCreateVirtualThreadExecutor() {
+        // Looked up reflectively, because this library is still compiled against Java 11.
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            logger.debug("Virtual threads are not available. Falling back to platform threads.", ex);
+            return null;
+        }
+    }
+
+    private static class SchedulerHolder {
+
+        static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            var scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("efs-scheduler-"));
+            // Cancelled timers, e.g. of hedges that were not needed, are removed right away.
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            var thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Interceptors wrap the sending of a {@link MiddlewareRequest}. Unlike
+ * {@link MiddlewareRequestAdapter}s, which are called once before a request is
+ * sent, interceptors can decide whether, when and how often the request is
+ * actually sent and can observe or replace its outcome.
+ * <p>
+ * Interceptors are called after the credentials were added and the request
+ * adapters were called. If an interceptor implements
+ * {@link org.springframework.core.Ordered}, interceptors with lower order
+ * values wrap those with higher values. The order values of the interceptors
+ * provided by this library are defined in this interface.
+ *
+ * @author ben
+ */
+public interface MiddlewareRequestInterceptor {
+
+    /**
+     * Intercepts the sending of the given request. To proceed with sending,
+     * call {@link MiddlewareRequestExecution#execute()}, which may be called
+     * several times or not at all.
+     *
+     * @param <T>
+     * @param request
+     * @param execution
+     * @return
+     */
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution);
+
+    /**
+     * Order of the {@link de.hsesslingen.keim.efs.mobility.tracing.TracingRequestAdapter}.
+     * Runs outermost, so the span of a request covers all its attempts.
+     */
+    public static final int TRACING_ORDER = -500;
+
+    /**
+     * Order of the {@link MiddlewareResponseCache}.
+     */
+    public static final int RESPONSE_CACHE_ORDER = -300;
+
+    /**
+     * Order of the {@link MiddlewareRequestCoalescer}. Runs after the cache,
+     * so only cache misses are coalesced.
+     */
+    public static final int COALESCING_ORDER = -200;
+
+    /**
+     * Order of the {@link CachingTokenAdapter}. Runs outside the retries, so
+     * a rejected token is replaced only once per request.
+     */
+    public static final int TOKEN_REFRESH_ORDER = -150;
+
+    /**
+     * Order of the {@link RetryPolicy}.
+     */
+    public static final int RETRY_ORDER = -100;
+
+    /**
+     * Order of the {@link HedgingPolicy}. Runs inside the retries, so each
+     * attempt may be hedged.
+     */
+    public static final int HEDGING_ORDER = 0;
+
+    /**
+     * Order of the {@link BulkheadRegistry}. Runs outside the circuit breakers,
+     * so requests waiting in a bulkhead do not count as in flight.
+     */
+    public static final int BULKHEAD_ORDER = 100;
+
+    /**
+     * Order of the {@link CircuitBreakerRegistry}. Runs close to the actual
+     * call, so each attempt of a request is recorded.
+     */
+    public static final int CIRCUIT_BREAKER_ORDER = 200;
+
+    /**
+     * Order of the {@link ConcurrencyLimiterRegistry}. Runs inside the circuit
+     * breakers, so only requests that actually reach the remote service count
+     * as in flight.
+     */
+    public static final int CONCURRENCY_LIMIT_ORDER = 300;
+
+    /**
+     * Order of the {@link MiddlewareRequestMetrics}. Runs innermost, so each
+     * attempt that actually reaches the remote service is timed on its own.
+     */
+    public static final int METRICS_ORDER = 400;
+}
@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.core.OrderComparator;
+
+/**
+ * An immutable list of {@link MiddlewareRequestInterceptor}s, sorted by
+ * {@link org.springframework.core.Ordered} once when it is built, so sending a
+ * request does not have to sort them again.
+ * <p>
+ * Adding or removing interceptors returns a new chain, like the
+ * {@link MiddlewareRequestAdapterPipeline}. The retry policy and the installed
+ * {@link MiddlewareRequestMetrics} are merged into the chain when a request is
+ * sent, see {@link #compile(MiddlewareRequestInterceptor, MiddlewareRequestInterceptor)}.
+ * The result is kept, so requests with the same retry policy and metrics
+ * share one array.
+ *
+ * @author ben
+ */
+public final class MiddlewareRequestInterceptorChain {
+
+    public static final MiddlewareRequestInterceptorChain EMPTY = new MiddlewareRequestInterceptorChain(new MiddlewareRequestInterceptor[0]);
+
+    private final MiddlewareRequestInterceptor[] interceptors;
+
+    /**
+     * The last result of {@link #compile}, replaced if it is called with
+     * other interceptors.
+     */
+    private volatile Compiled compiled;
+
+    private MiddlewareRequestInterceptorChain(MiddlewareRequestInterceptor[] interceptors) {
+        this.interceptors = interceptors;
+        this.compiled = new Compiled(null, null, interceptors);
+    }
+
+    /**
+     * Builds a chain of the given interceptors.
+     *
+     * @param interceptors
+     * @return
+     */
+    public static MiddlewareRequestInterceptorChain of(List<? extends MiddlewareRequestInterceptor> interceptors) {
+        if (interceptors == null || interceptors.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new MiddlewareRequestInterceptorChain(sorted(new ArrayList<>(interceptors)));
+    }
+
+    /**
+     * Returns a new chain with the given interceptor added. Interceptors with
+     * the same order keep the order in which they were added.
+     *
+     * @param interceptor
+     * @return
+     */
+    public MiddlewareRequestInterceptorChain with(MiddlewareRequestInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("Interceptor must not be null.");
+        }
+
+        var all = new ArrayList<>(Arrays.asList(interceptors));
+        all.add(interceptor);
+
+        return new MiddlewareRequestInterceptorChain(sorted(all));
+    }
+
+    /**
+     * Returns a new chain without the given interceptor.
+     *
+     * @param interceptor
+     * @return
+     */
+    public MiddlewareRequestInterceptorChain without(MiddlewareRequestInterceptor interceptor) {
+        var all = new ArrayList<>(Arrays.asList(interceptors));
+
+        if (!all.remove(interceptor)) {
+            return this;
+        }
+
+        return all.isEmpty() ? EMPTY : new MiddlewareRequestInterceptorChain(all.toArray(MiddlewareRequestInterceptor[]::new));
+    }
+
+    /**
+     * The interceptors in the order they are applied.
+     *
+     * @return
+     */
+    public List<MiddlewareRequestInterceptor> getInterceptors() {
+        return List.of(interceptors);
+    }
+
+    public boolean isEmpty() {
+        return interceptors.length == 0;
+    }
+
+    /**
+     * The interceptors of this chain together with the given ones, sorted.
+     * The returned array must not be modified.
+     *
+     * @param retryPolicy May be null.
+     * @param metrics May be null.
+     * @return
+     */
+    MiddlewareRequestInterceptor[] compile(MiddlewareRequestInterceptor retryPolicy, MiddlewareRequestInterceptor metrics) {
+        var last = compiled;
+
+        if (last.retryPolicy == retryPolicy && last.metrics == metrics) {
+            return last.chain;
+        }
+
+        var all = new ArrayList<MiddlewareRequestInterceptor>(interceptors.length + 2);
+        all.addAll(Arrays.asList(interceptors));
+
+        if (retryPolicy != null) {
+            all.add(retryPolicy);
+        }
+
+        if (metrics != null) {
+            all.add(metrics);
+        }
+
+        var chain = sorted(all);
+        compiled = new Compiled(retryPolicy, metrics, chain);
+
+        return chain;
+    }
+
+    /**
+     * Merges interceptors that are only used by a single request into the
+     * given compiled chain.
+     *
+     * @param chain
+     * @param own
+     * @return
+     */
+    static MiddlewareRequestInterceptor[] merge(MiddlewareRequestInterceptor[] chain, List<MiddlewareRequestInterceptor> own) {
+        var all = new ArrayList<MiddlewareRequestInterceptor>(chain.length + own.size());
+        all.addAll(Arrays.asList(chain));
+        all.addAll(own);
+
+        return sorted(all);
+    }
+
+    private static MiddlewareRequestInterceptor[] sorted(List<MiddlewareRequestInterceptor> interceptors) {
+        // Stable, so interceptors with the same order keep their order.
+        OrderComparator.sort(interceptors);
+        return interceptors.toArray(MiddlewareRequestInterceptor[]::new);
+    }
+
+    private static class Compiled {
+
+        final MiddlewareRequestInterceptor retryPolicy;
+        final MiddlewareRequestInterceptor metrics;
+        final MiddlewareRequestInterceptor[] chain;
+
+        Compiled(MiddlewareRequestInterceptor retryPolicy, MiddlewareRequestInterceptor metrics, MiddlewareRequestInterceptor[] chain) {
+            this.retryPolicy = retryPolicy;
+            this.metrics = metrics;
+            this.chain = chain;
+        }
+    }
+}
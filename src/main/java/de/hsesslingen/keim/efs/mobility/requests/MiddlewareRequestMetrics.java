@@ -0,0 +1,321 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.ErrorCodeRegistry;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Records a Micrometer timer with a percentile histogram for every attempt to
+ * send a {@link MiddlewareRequest}, together with the sizes of the request and
+ * response bodies.
+ * <p>
+ * The timer {@value #REQUESTS_METRIC} is tagged with
+ * <ul>
+ * <li>{@code remote}: the service id of the remote service or {@code NONE}
+ * if the request has none,</li>
+ * <li>{@code method}: the HTTP method,</li>
+ * <li>{@code status}: the status class, e.g. {@code 2xx}, {@code IO_ERROR} if
+ * no response was received or {@code NONE} if the request was not sent,</li>
+ * <li>{@code code}: the code of the {@link MiddlewareException}, if any, or
+ * {@code OTHER} if the code is not in the {@link ErrorCodeRegistry},</li>
+ * <li>{@code internal}: whether the request is sent to another service of
+ * the middleware, i.e. {@link MiddlewareRequest#sendsInternalHeaders()
+ * sends the internal headers}, or to a remote API outside of it.</li>
+ * </ul>
+ * Hosts and unknown codes are not used as tags, because they are not bounded,
+ * e.g. for remote APIs with a host per customer or errors with free-form codes.
+ * The body sizes are recorded as {@value #REQUEST_SIZE_METRIC} and
+ * {@value #RESPONSE_SIZE_METRIC}, tagged with {@code remote} and
+ * {@code method}, if they are known, i.e. if a {@code Content-Length} header
+ * is present or the request body is a string or byte array.
+ * <p>
+ * The metrics are installed for all requests by the auto configuration if a
+ * {@link MeterRegistry} is available. Otherwise requests are not affected at
+ * all. Reactive requests are not recorded, because they do not use
+ * interceptors.
+ *
+ * @author ben
+ */
+public class MiddlewareRequestMetrics implements MiddlewareRequestInterceptor, Ordered {
+
+    public static final String REQUESTS_METRIC = "efs.requests";
+    public static final String REQUEST_SIZE_METRIC = "efs.requests.request.size";
+    public static final String RESPONSE_SIZE_METRIC = "efs.requests.response.size";
+
+    private static final String NONE = "NONE";
+    private static final String OTHER = "OTHER";
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SizeKey, DistributionSummary[]> sizes = new ConcurrentHashMap<>();
+
+    public MiddlewareRequestMetrics(MeterRegistry registry) {
+        this.registry = Objects.requireNonNull(registry);
+    }
+
+    /**
+     * The metrics that are recorded for all requests, if any.
+     *
+     * @return
+     */
+    public static MiddlewareRequestMetrics getInstalled() {
+        return (MiddlewareRequestMetrics) MiddlewareRequest.installedMetrics;
+    }
+
+    /**
+     * Records the given metrics for all requests.
+     *
+     * @param metrics The metrics or {@code null} to stop recording.
+     */
+    public static void install(MiddlewareRequestMetrics metrics) {
+        MiddlewareRequest.installedMetrics = metrics;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public int getOrder() {
+        return METRICS_ORDER;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        long start = registry.config().clock().monotonicTime();
+
+        try {
+            var response = execution.execute();
+            record(request, start, statusClass(response.getStatusCodeValue()), NONE, response.getHeaders());
+            return response;
+        } catch (RemoteMiddlewareException ex) {
+            record(request, start, statusClass(ex.getStatus().value()), ex.getCode(), ex.getHeaders());
+            throw ex;
+        } catch (MiddlewareException ex) {
+            record(request, start, NONE, ex.getCode(), null);
+            throw ex;
+        } catch (ResourceAccessException ex) {
+            record(request, start, "IO_ERROR", NONE, null);
+            throw ex;
+        } catch (RuntimeException | Error ex) {
+            record(request, start, NONE, NONE, null);
+            throw ex;
+        }
+    }
+
+    private void record(MiddlewareRequest<?> request, long start, String status, String code, HttpHeaders responseHeaders) {
+        long duration = registry.config().clock().monotonicTime() - start;
+
+        var remote = Objects.requireNonNullElse(request.serviceId(), NONE);
+        var method = request.method() != null ? request.method().name() : NONE;
+
+        timers.computeIfAbsent(new TimerKey(remote, method, status, codeTag(code), request.sendsInternalHeaders()), this::timer)
+                .record(duration, TimeUnit.NANOSECONDS);
+
+        long requestBytes = requestBytes(request);
+        long responseBytes = responseHeaders != null ? responseHeaders.getContentLength() : -1;
+
+        if (requestBytes >= 0 || responseBytes >= 0) {
+            var summaries = sizes.computeIfAbsent(new SizeKey(remote, method), this::sizeSummaries);
+
+            if (requestBytes >= 0) {
+                summaries[0].record(requestBytes);
+            }
+
+            if (responseBytes >= 0) {
+                summaries[1].record(responseBytes);
+            }
+        }
+    }
+
+    private static String codeTag(String code) {
+        if (code == null || NONE.equals(code)) {
+            return NONE;
+        }
+
+        var registered = ErrorCodeRegistry.getDefault().get(code);
+        return registered != null ? registered.getCode() : OTHER;
+    }
+
+    private Timer timer(TimerKey key) {
+        return Timer.builder(REQUESTS_METRIC)
+                .description("Requests sent to remote services")
+                .tag("remote", key.remote)
+                .tag("method", key.method)
+                .tag("status", key.status)
+                .tag("code", key.code)
+                .tag("internal", Boolean.toString(key.internal))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private DistributionSummary[] sizeSummaries(SizeKey key) {
+        return new DistributionSummary[]{
+            size(REQUEST_SIZE_METRIC, "Size of the request bodies sent to remote services", key),
+            size(RESPONSE_SIZE_METRIC, "Size of the response bodies received from remote services", key)
+        };
+    }
+
+    private DistributionSummary size(String name, String description, SizeKey key) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("remote", key.remote)
+                .tag("method", key.method)
+                .register(registry);
+    }
+
+    private static long requestBytes(MiddlewareRequest<?> request) {
+        var headers = request.headers();
+
+        if (headers != null && headers.getContentLength() >= 0) {
+            return headers.getContentLength();
+        }
+
+        var body = request.body();
+
+        if (body instanceof byte[]) {
+            return ((byte[]) body).length;
+        }
+
+        if (body instanceof String) {
+            return utf8Length((String) body);
+        }
+
+        return body == null ? 0 : -1;
+    }
+
+    private static long utf8Length(String value) {
+        long length = 0;
+
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // Each half of a surrogate pair counts two of the four bytes.
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    private static String statusClass(int status) {
+        var series = HttpStatus.Series.resolve(status);
+        return series != null ? series.value() + "xx" : Integer.toString(status);
+    }
+
+    private static final class TimerKey {
+
+        final String remote;
+        final String method;
+        final String status;
+        final String code;
+        final boolean internal;
+
+        TimerKey(String remote, String method, String status, String code, boolean internal) {
+            this.remote = remote;
+            this.method = method;
+            this.status = status;
+            this.code = code;
+            this.internal = internal;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof TimerKey)) {
+                return false;
+            }
+
+            var other = (TimerKey) obj;
+            return internal == other.internal
+                    && remote.equals(other.remote)
+                    && method.equals(other.method)
+                    && status.equals(other.status)
+                    && code.equals(other.code);
+        }
+
+        @Override
+        public int hashCode() {
+            // By hand, as Objects.hash would box the flag and allocate an array per request.
+            int hash = remote.hashCode();
+            hash = 31 * hash + method.hashCode();
+            hash = 31 * hash + status.hashCode();
+            hash = 31 * hash + code.hashCode();
+            return 31 * hash + (internal ? 1 : 0);
+        }
+    }
+
+    private static final class SizeKey {
+
+        final String remote;
+        final String method;
+
+        SizeKey(String remote, String method) {
+            this.remote = remote;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof SizeKey)) {
+                return false;
+            }
+
+            var other = (SizeKey) obj;
+            return remote.equals(other.remote) && method.equals(other.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * remote.hashCode() + method.hashCode();
+        }
+    }
+}
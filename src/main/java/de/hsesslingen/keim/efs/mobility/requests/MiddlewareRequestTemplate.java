@@ -23,10 +23,15 @@
  */
 package de.hsesslingen.keim.efs.mobility.requests;
 
+import de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry;
+import de.hsesslingen.keim.efs.mobility.tracing.TracingRequestAdapter;
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import static org.springframework.http.HttpMethod.*;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
@@ -37,8 +42,12 @@ import org.springframework.web.client.RestTemplate;
  */
 public class MiddlewareRequestTemplate {
 
-    private RestTemplate restTemplate;
-    private List<MiddlewareRequestAdapter> requestAdapters;
+    private volatile RestTemplate restTemplate;
+    private volatile MiddlewareRequestAdapterPipeline requestAdapters = MiddlewareRequestAdapterPipeline.EMPTY;
+    private volatile Executor asyncExecutor;
+    private volatile RetryPolicy retryPolicy;
+    private volatile boolean sendInternalHeaders = true;
+    private volatile MiddlewareRequestInterceptorChain interceptors = MiddlewareRequestInterceptorChain.EMPTY;
 
     /**
      * This adds the given adapter to the list of request adapters.These
@@ -46,26 +55,217 @@ public class MiddlewareRequestTemplate {
      * change information.<p>
      * An adapter can even throw an exception to intercept the sending of the
      * request.
+     * <p>
+     * The adapters are called in the order of their
+     * {@link MiddlewareRequestAdapter#phase()}. Requests that were already
+     * created are not affected, so adapters can be added while requests are in
+     * flight.
      *
      * @param adapter
      * @return
      */
-    public MiddlewareRequestTemplate addRequestAdapter(MiddlewareRequestAdapter adapter) {
-        if (this.requestAdapters == null) {
-            this.requestAdapters = new ArrayList<>();
-        }
+    public synchronized MiddlewareRequestTemplate addRequestAdapter(MiddlewareRequestAdapter adapter) {
+        requestAdapters = requestAdapters.with(adapter);
+        return this;
+    }
 
-        requestAdapters.add(adapter);
+    /**
+     * Same as {@link #addRequestAdapter(MiddlewareRequestAdapter)}, but adds
+     * the adapter in the given phase instead of its own.
+     *
+     * @param phase
+     * @param adapter
+     * @return
+     */
+    public synchronized MiddlewareRequestTemplate addRequestAdapter(MiddlewareRequestAdapter.Phase phase, MiddlewareRequestAdapter adapter) {
+        requestAdapters = requestAdapters.with(phase, adapter);
+        return this;
+    }
+
+    public synchronized MiddlewareRequestTemplate removeRequestAdapter(MiddlewareRequestAdapter adapter) {
+        requestAdapters = requestAdapters.without(adapter);
+        return this;
+    }
+
+    public MiddlewareRequestAdapterPipeline getRequestAdapters() {
+        return requestAdapters;
+    }
+
+    /**
+     * Adds an interceptor that wraps the sending of all requests created by
+     * this template. Interceptors are applied in the order given by
+     * {@link org.springframework.core.Ordered}. Like adapters, they are sorted
+     * once when they are added, and requests that were already created are
+     * not affected.
+     *
+     * @param interceptor
+     * @return
+     */
+    public synchronized MiddlewareRequestTemplate addInterceptor(MiddlewareRequestInterceptor interceptor) {
+        interceptors = interceptors.with(interceptor);
+        return this;
+    }
 
+    public synchronized MiddlewareRequestTemplate removeInterceptor(MiddlewareRequestInterceptor interceptor) {
+        interceptors = interceptors.without(interceptor);
         return this;
     }
 
+    /**
+     * The interceptors in the order they are applied. The list can not be
+     * modified, use {@link #addInterceptor(MiddlewareRequestInterceptor)} and
+     * {@link #removeInterceptor(MiddlewareRequestInterceptor)} instead.
+     *
+     * @return
+     */
+    public List<MiddlewareRequestInterceptor> getInterceptors() {
+        return interceptors.getInterceptors();
+    }
+
+    /**
+     * Caches the responses of GET requests created by this template in the
+     * given cache. The same cache can be shared between multiple templates.
+     *
+     * @param cache
+     * @return
+     * @see MiddlewareResponseCache
+     */
+    public MiddlewareRequestTemplate enableResponseCache(MiddlewareResponseCache cache) {
+        return addInterceptor(cache);
+    }
+
+    /**
+     * Lets identical concurrent requests created by this template share a
+     * single call to the remote service.
+     *
+     * @param coalescer
+     * @return
+     * @see MiddlewareRequestCoalescer
+     */
+    public MiddlewareRequestTemplate enableCoalescing(MiddlewareRequestCoalescer coalescer) {
+        return addInterceptor(coalescer);
+    }
+
+    /**
+     * Same as {@link #enableCoalescing(MiddlewareRequestCoalescer)} with a
+     * new coalescer that is only used by this template.
+     *
+     * @return
+     */
+    public MiddlewareRequestTemplate enableCoalescing() {
+        return enableCoalescing(new MiddlewareRequestCoalescer());
+    }
+
+    /**
+     * Adds cached tokens to all internal requests created by this template and
+     * retries requests once if their token was rejected.
+     *
+     * @param adapter
+     * @return
+     * @see CachingTokenAdapter
+     */
+    public MiddlewareRequestTemplate enableTokenCache(CachingTokenAdapter adapter) {
+        addRequestAdapter(adapter);
+        return addInterceptor(adapter);
+    }
+
+    /**
+     * Propagates the W3C trace context to all requests created by this
+     * template and records a span for each of them.
+     *
+     * @param adapter
+     * @return
+     * @see TracingRequestAdapter
+     */
+    public MiddlewareRequestTemplate enableTracing(TracingRequestAdapter adapter) {
+        addRequestAdapter(adapter);
+        return addInterceptor(adapter);
+    }
+
+    /**
+     * Sends a second copy of slow requests created by this template and uses
+     * the first response.
+     *
+     * @param policy
+     * @return
+     * @see HedgingPolicy
+     */
+    public MiddlewareRequestTemplate enableHedging(HedgingPolicy policy) {
+        return addInterceptor(policy);
+    }
+
+    /**
+     * Isolates requests created by this template to different remote services
+     * from each other using the bulkheads of the given registry.
+     *
+     * @param registry
+     * @return
+     * @see BulkheadRegistry
+     */
+    public MiddlewareRequestTemplate enableBulkheads(BulkheadRegistry registry) {
+        return addInterceptor(registry);
+    }
+
+    /**
+     * Protects requests created by this template with the circuit breakers of
+     * the given registry.
+     *
+     * @param registry
+     * @return
+     * @see CircuitBreakerRegistry
+     */
+    public MiddlewareRequestTemplate enableCircuitBreakers(CircuitBreakerRegistry registry) {
+        return addInterceptor(registry);
+    }
+
+    /**
+     * Limits the number of concurrent requests created by this template per
+     * remote service using the adaptive limits of the given registry.
+     *
+     * @param registry
+     * @return
+     * @see ConcurrencyLimiterRegistry
+     */
+    public MiddlewareRequestTemplate enableConcurrencyLimits(ConcurrencyLimiterRegistry registry) {
+        return addInterceptor(registry);
+    }
+
+    /**
+     * Returns the rest template used by this request template. If none was
+     * set, a new one is created that uses the shared
+     * {@link PooledClientHttpRequestFactory#getDefault()} and the object mapper
+     * of {@link ObjectMapperRegistry#getDefault()}.
+     *
+     * @return
+     */
     public RestTemplate getRestTemplate() {
-        if (restTemplate == null) {
-            restTemplate = new RestTemplate();
+        var template = restTemplate;
+
+        if (template == null) {
+            synchronized (this) {
+                template = restTemplate;
+
+                if (template == null) {
+                    template = createRestTemplate();
+                    restTemplate = template;
+                }
+            }
+        }
+
+        return template;
+    }
+
+    private static RestTemplate createRestTemplate() {
+        var template = new RestTemplate(PooledClientHttpRequestFactory.getDefault());
+        var mapper = ObjectMapperRegistry.getDefault().getObjectMapper();
+
+        for (var converter : template.getMessageConverters()) {
+            if (converter instanceof MappingJackson2HttpMessageConverter) {
+                ((MappingJackson2HttpMessageConverter) converter).setObjectMapper(mapper);
+            }
         }
 
-        return restTemplate;
+        return template;
     }
 
     public MiddlewareRequestTemplate setRestTemplate(RestTemplate restTemplate) {
@@ -73,6 +273,58 @@ public class MiddlewareRequestTemplate {
         return this;
     }
 
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor that is used by {@link MiddlewareRequest#goAsync()}
+     * for all requests created by this template. If set to null, the default
+     * executor of {@link MiddlewareRequestExecutors} is used.
+     *
+     * @param asyncExecutor
+     * @return
+     */
+    public MiddlewareRequestTemplate setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy for retrying requests created by this template. If set
+     * to null, requests are not retried.
+     *
+     * @param retryPolicy
+     * @return
+     * @see RetryPolicy
+     */
+    public MiddlewareRequestTemplate setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public boolean isSendInternalHeaders() {
+        return sendInternalHeaders;
+    }
+
+    /**
+     * Sets whether requests created by this template send the headers meant
+     * for other services of the middleware, see
+     * {@link MiddlewareRequest#sendInternalHeaders(boolean)}. Enabled by
+     * default.
+     *
+     * @param sendInternalHeaders
+     * @return
+     */
+    public MiddlewareRequestTemplate setSendInternalHeaders(boolean sendInternalHeaders) {
+        this.sendInternalHeaders = sendInternalHeaders;
+        return this;
+    }
+
     public ResponseErrorHandler getErrorHandler() {
         return getRestTemplate().getErrorHandler();
     }
@@ -83,50 +335,80 @@ public class MiddlewareRequestTemplate {
     }
 
     public MiddlewareRequest<?> get(String uri) {
-        return new MiddlewareRequest<>(GET, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(GET, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> get(URI uri) {
-        return new MiddlewareRequest<>(GET, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(GET, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> post(String uri) {
-        return new MiddlewareRequest<>(POST, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(POST, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> post(URI uri) {
-        return new MiddlewareRequest<>(POST, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(POST, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> put(String uri) {
-        return new MiddlewareRequest<>(PUT, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(PUT, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> put(URI uri) {
-        return new MiddlewareRequest<>(PUT, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(PUT, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> delete(String uri) {
-        return new MiddlewareRequest<>(DELETE, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(DELETE, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> delete(URI uri) {
-        return new MiddlewareRequest<>(DELETE, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(DELETE, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> custom(HttpMethod method, String uri) {
-        return new MiddlewareRequest<>(method, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(method, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> custom(HttpMethod method, URI uri) {
-        return new MiddlewareRequest<>(method, uri, getRestTemplate()).requestAdapters(requestAdapters);
+        return configure(new MiddlewareRequest<>(method, uri, getRestTemplate()));
     }
 
     public MiddlewareRequest<?> method(HttpMethod method) {
-        return new MiddlewareRequest(getRestTemplate()).method(method);
+        return configure(new MiddlewareRequest<>(getRestTemplate())).method(method);
     }
 
     public MiddlewareRequest<?> createRequest() {
-        return new MiddlewareRequest(getRestTemplate());
+        return configure(new MiddlewareRequest<>(getRestTemplate()));
+    }
+
+    /**
+     * Sends the given request asynchronously on the executor set on the
+     * request, if any, otherwise on the executor of this template or, if none
+     * is set either, on the default executor of
+     * {@link MiddlewareRequestExecutors}.
+     *
+     * @param <T>
+     * @param request
+     * @return
+     * @see MiddlewareRequest#goAsync()
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> goAsync(MiddlewareRequest<T> request) {
+        var executor = request.ownAsyncExecutor();
+
+        if (executor == null) {
+            executor = asyncExecutor != null ? asyncExecutor : MiddlewareRequestExecutors.getDefault();
+        }
+
+        return request.goAsync(executor);
+    }
+
+    private <T> MiddlewareRequest<T> configure(MiddlewareRequest<T> request) {
+        return request
+                .requestAdapters(requestAdapters)
+                .interceptors(interceptors)
+                .retryPolicy(retryPolicy)
+                .asyncExecutor(asyncExecutor)
+                .sendInternalHeaders(sendInternalHeaders);
     }
 }
@@ -0,0 +1,742 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * An in-memory cache for the responses of outgoing GET requests. Enable it on
+ * a {@link MiddlewareRequestTemplate} using
+ * {@link MiddlewareRequestTemplate#enableResponseCache(MiddlewareResponseCache)}.
+ * <p>
+ * The cache holds at most {@link #setMaxEntries(int)} responses and evicts the
+ * least recently used ones first. How long a response is fresh is taken from
+ * the {@code Cache-Control} header of the response ({@code max-age},
+ * {@code no-cache}, {@code no-store}, {@code stale-while-revalidate} and
+ * {@code stale-if-error}). If the response contains none, the defaults of this
+ * cache are used.
+ * <p>
+ * Stale responses are revalidated using {@code If-None-Match} or
+ * {@code If-Modified-Since}, which are only set on a copy of the request of
+ * the caller. Within the stale-while-revalidate period the stale
+ * response is returned immediately while it is revalidated in the background.
+ * Within the stale-if-error period the stale response is returned if the
+ * remote service is unavailable.
+ * <p>
+ * The cache key contains all request headers, see {@link RequestKey}, so
+ * responses are never shared between users and responses that vary by a
+ * request header, as named in their {@code Vary} header, are kept apart.
+ * Responses with {@code Vary: *} are not cached. Cached response bodies are
+ * shared between all callers with the same key and must therefore not be
+ * modified.
+ *
+ * @author ben
+ */
+public class MiddlewareResponseCache implements AsyncMiddlewareRequestInterceptor, Ordered {
+
+    private static final Logger logger = getLogger(MiddlewareResponseCache.class);
+
+    /**
+     * The attribute that marks the requests of background revalidations. Its
+     * value is the revalidated entry.
+     */
+    private static final String REVALIDATION_ATTRIBUTE = MiddlewareResponseCache.class.getName() + ".revalidation";
+
+    /**
+     * The greatest lifetime of a response in seconds, 2^31 as recommended by
+     * RFC 9111. Greater values, also those of the defaults, are capped.
+     */
+    private static final long MAX_SECONDS = 2147483648L;
+
+    private int maxEntries = 1000;
+    private Duration defaultTimeToLive = Duration.ofSeconds(60);
+    private Duration staleWhileRevalidate = Duration.ofSeconds(30);
+    private Duration staleIfError = Duration.ofMinutes(10);
+    private Executor executor;
+
+    private final Map<RequestKey, CachedResponse> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RequestKey, CachedResponse> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    private final Set<RequestKey> revalidating = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of cached responses. Defaults to 1000.
+     *
+     * @param maxEntries
+     * @return
+     */
+    public MiddlewareResponseCache setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public Duration getDefaultTimeToLive() {
+        return defaultTimeToLive;
+    }
+
+    /**
+     * Sets how long responses without {@code max-age} are fresh. Defaults to
+     * 60 seconds.
+     *
+     * @param defaultTimeToLive
+     * @return
+     */
+    public MiddlewareResponseCache setDefaultTimeToLive(Duration defaultTimeToLive) {
+        this.defaultTimeToLive = defaultTimeToLive;
+        return this;
+    }
+
+    public Duration getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * Sets how long after expiry a response may be returned while it is
+     * revalidated in the background, if the response does not specify this
+     * itself. Defaults to 30 seconds.
+     *
+     * @param staleWhileRevalidate
+     * @return
+     */
+    public MiddlewareResponseCache setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        return this;
+    }
+
+    public Duration getStaleIfError() {
+        return staleIfError;
+    }
+
+    /**
+     * Sets how long after expiry a response may be returned if the remote
+     * service is unavailable, if the response does not specify this itself.
+     * Defaults to 10 minutes.
+     *
+     * @param staleIfError
+     * @return
+     */
+    public MiddlewareResponseCache setStaleIfError(Duration staleIfError) {
+        this.staleIfError = staleIfError;
+        return this;
+    }
+
+    /**
+     * Sets the executor for background revalidations. Defaults to the
+     * executor of {@link MiddlewareRequestExecutors}.
+     *
+     * @param executor
+     * @return
+     */
+    public MiddlewareResponseCache setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    @Override
+    public int getOrder() {
+        return RESPONSE_CACHE_ORDER;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (request.method() != HttpMethod.GET || request.isStreaming()) {
+            return execution.execute();
+        }
+
+        var key = RequestKey.of(request);
+        CachedResponse revalidated = request.attribute(REVALIDATION_ATTRIBUTE);
+
+        if (revalidated != null) {
+            // Background revalidations are copies already, keyed before their conditional headers are set.
+            addConditionalHeaders(request, revalidated);
+            return fetch(key, revalidated, request, execution);
+        }
+
+        var entry = get(key);
+        ResponseEntity<T> cached = lookup(key, entry, request);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        if (entry != null && entry.hasValidators()) {
+            var revalidation = revalidation(request, entry);
+            return fetch(key, entry, request, () -> revalidation.sendAfter(this));
+        }
+
+        return fetch(key, entry, request, execution);
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution) {
+        if (request.method() != HttpMethod.GET || request.isStreaming()) {
+            return execution.executeAsync();
+        }
+
+        var key = RequestKey.of(request);
+        CachedResponse revalidated = request.attribute(REVALIDATION_ATTRIBUTE);
+
+        if (revalidated != null) {
+            addConditionalHeaders(request, revalidated);
+            return fetchAsync(key, revalidated, request, execution);
+        }
+
+        var entry = get(key);
+        ResponseEntity<T> cached = lookup(key, entry, request);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        if (entry != null && entry.hasValidators()) {
+            var revalidation = revalidation(request, entry);
+            return fetchAsync(key, entry, request, () -> revalidation.sendAfterAsync(this));
+        }
+
+        return fetchAsync(key, entry, request, execution);
+    }
+
+    /**
+     * A copy of the request of the caller that revalidates the given entry,
+     * see {@link MiddlewareRequest#copyForResend()}. Only the copy gets the
+     * conditional headers, so the request of the caller is not changed, e.g.
+     * for the key of the {@link MiddlewareRequestCoalescer}, and never
+     * receives a {@code 304 Not Modified} itself. The copy continues the
+     * interceptor chain after this cache.
+     */
+    private <T> MiddlewareRequest<T> revalidation(MiddlewareRequest<T> request, CachedResponse entry) {
+        var copy = request.copyForResend();
+        addConditionalHeaders(copy, entry);
+        return copy;
+    }
+
+    /**
+     * Returns the cached response if it may be returned without asking the
+     * remote service, i.e. if it is fresh or within the
+     * stale-while-revalidate period, or {@code null} if it must be fetched.
+     */
+    private <T> ResponseEntity<T> lookup(RequestKey key, CachedResponse entry, MiddlewareRequest<T> request) {
+        long now = System.nanoTime();
+
+        if (entry != null && entry.isFresh(now)) {
+            hits.increment();
+            return entry.response();
+        }
+
+        if (entry != null && entry.isWithinStaleWhileRevalidate(now)) {
+            staleHits.increment();
+            revalidateInBackground(key, entry, request);
+            return entry.response();
+        }
+
+        misses.increment();
+
+        return null;
+    }
+
+    private <T> ResponseEntity<T> fetch(RequestKey key, CachedResponse entry, MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        ResponseEntity<T> response;
+
+        try {
+            response = execution.execute();
+        } catch (MiddlewareException | ResourceAccessException ex) {
+            return onFailure(key, entry, ex);
+        }
+
+        return onResponse(key, entry, response);
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> fetchAsync(RequestKey key, CachedResponse entry, MiddlewareRequest<T> request,
+            AsyncMiddlewareRequestExecution<T> execution) {
+        return execution.executeAsync().<ResponseEntity<T>>handle((response, ex) -> {
+            if (ex == null) {
+                return onResponse(key, entry, response);
+            }
+
+            var cause = MiddlewareRequestAdapterPipeline.unwrap(ex);
+
+            if (cause instanceof MiddlewareException || cause instanceof ResourceAccessException) {
+                return onFailure(key, entry, (RuntimeException) cause);
+            }
+
+            throw new CompletionException(cause);
+        });
+    }
+
+    /**
+     * Returns the stale response if the remote service is unavailable and the
+     * entry is within the stale-if-error period. Otherwise the given
+     * exception is thrown.
+     */
+    private <T> ResponseEntity<T> onFailure(RequestKey key, CachedResponse entry, RuntimeException ex) {
+        if (entry != null && isUnavailable(ex) && entry.isWithinStaleIfError(System.nanoTime())) {
+            logger.debug("Remote service unavailable. Serving stale response for {}.", key);
+            staleHits.increment();
+            return entry.response();
+        }
+
+        throw ex;
+    }
+
+    /**
+     * Stores the given response or, if it is {@code 304 Not Modified},
+     * refreshes the revalidated entry and returns its response instead.
+     */
+    private <T> ResponseEntity<T> onResponse(RequestKey key, CachedResponse entry, ResponseEntity<T> response) {
+        long now = System.nanoTime();
+
+        if (entry != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            revalidations.increment();
+            var refreshed = entry.refresh(response.getHeaders(), now);
+            put(key, refreshed);
+            return refreshed.response();
+        }
+
+        store(key, response, now);
+
+        return response;
+    }
+
+    /**
+     * Revalidates the entry using a copy of the request, see
+     * {@link MiddlewareRequest#copyForGet()}, which passes the interceptors on
+     * its own. The request of the caller has already been answered and does
+     * not outlive its call, e.g. its tracing span has ended, and its deadline
+     * and timeout are not meant for the revalidation.
+     */
+    private void revalidateInBackground(RequestKey key, CachedResponse entry, MiddlewareRequest<?> request) {
+        if (!revalidating.add(key)) {
+            // Already being revalidated.
+            return;
+        }
+
+        try {
+            var revalidation = request.copyForGet().attribute(REVALIDATION_ATTRIBUTE, entry);
+            var target = executor != null ? executor : MiddlewareRequestExecutors.getDefault();
+
+            target.execute(() -> {
+                try {
+                    revalidation.go();
+                } catch (RuntimeException ex) {
+                    logger.debug("Background revalidation of {} failed.", key, ex);
+                } finally {
+                    revalidating.remove(key);
+                }
+            });
+        } catch (RuntimeException ex) {
+            revalidating.remove(key);
+            logger.debug("Could not start background revalidation of {}.", key, ex);
+        }
+    }
+
+    private void addConditionalHeaders(MiddlewareRequest<?> request, CachedResponse entry) {
+        var headers = request.headers();
+
+        if (entry.etag != null && (headers == null || !headers.containsKey(HttpHeaders.IF_NONE_MATCH))) {
+            request.header(HttpHeaders.IF_NONE_MATCH, entry.etag);
+        } else if (entry.lastModified != null && (headers == null || !headers.containsKey(HttpHeaders.IF_MODIFIED_SINCE))) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    /**
+     * Tells whether the remote service could not be reached or responded
+     * with a 5xx status, or whether requests to it are rejected locally, e.g.
+     * by an open circuit breaker, like {@link CircuitBreakerRegistry} decides
+     * about failures.
+     */
+    private static boolean isUnavailable(RuntimeException ex) {
+        if (ex instanceof ResourceAccessException) {
+            return true;
+        }
+
+        if (ex instanceof RemoteMiddlewareException) {
+            return ((RemoteMiddlewareException) ex).getStatus().is5xxServerError();
+        }
+
+        return REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE.equals(((MiddlewareException) ex).getCode());
+    }
+
+    private void store(RequestKey key, ResponseEntity<?> response, long now) {
+        if (response.getStatusCode() != HttpStatus.OK) {
+            return;
+        }
+
+        var control = CacheControl.parse(response.getHeaders().getCacheControl());
+
+        if (control.noStore || !isKeyedByVary(response.getHeaders())) {
+            remove(key);
+            return;
+        }
+
+        put(key, new CachedResponse(response, now, control, this));
+    }
+
+    /**
+     * Tells whether the key tells apart all requests the response varies by.
+     */
+    private static boolean isKeyedByVary(HttpHeaders headers) {
+        for (var vary : headers.getVary()) {
+            for (var name : vary.split(",")) {
+                if (!name.isBlank() && !RequestKey.distinguishes(name)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private synchronized CachedResponse get(RequestKey key) {
+        var entry = entries.get(key);
+
+        if (entry != null && entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            evictions.increment();
+            return null;
+        }
+
+        return entry;
+    }
+
+    private synchronized void put(RequestKey key, CachedResponse entry) {
+        entries.put(key, entry);
+    }
+
+    private synchronized void remove(RequestKey key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns a snapshot of the counters of this cache.
+     *
+     * @return
+     */
+    public Stats getStats() {
+        int size;
+
+        synchronized (this) {
+            size = entries.size();
+        }
+
+        return new Stats(hits.sum(), staleHits.sum(), misses.sum(), revalidations.sum(), evictions.sum(), size);
+    }
+
+    /**
+     * A snapshot of the counters of a {@link MiddlewareResponseCache}.
+     */
+    public static class Stats {
+
+        private final long hits;
+        private final long staleHits;
+        private final long misses;
+        private final long revalidations;
+        private final long evictions;
+        private final int size;
+
+        Stats(long hits, long staleHits, long misses, long revalidations, long evictions, int size) {
+            this.hits = hits;
+            this.staleHits = staleHits;
+            this.misses = misses;
+            this.revalidations = revalidations;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        /**
+         * Number of requests answered with a fresh cached response.
+         *
+         * @return
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of requests answered with a stale cached response, either
+         * while revalidating or because the remote service was unavailable.
+         *
+         * @return
+         */
+        public long getStaleHits() {
+            return staleHits;
+        }
+
+        /**
+         * Number of requests that had to be sent to the remote service.
+         *
+         * @return
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Number of stale responses the remote service confirmed as still
+         * valid with 304 Not Modified.
+         *
+         * @return
+         */
+        public long getRevalidations() {
+            return revalidations;
+        }
+
+        /**
+         * Number of responses removed because the cache was full or they
+         * expired.
+         *
+         * @return
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", staleHits=" + staleHits + ", misses=" + misses
+                    + ", revalidations=" + revalidations + ", evictions=" + evictions + ", size=" + size;
+        }
+    }
+
+    private static class CachedResponse {
+
+        final ResponseEntity<?> response;
+        final String etag;
+        final String lastModified;
+        final long storedAt;
+        final long timeToLive;
+        final long staleWhileRevalidate;
+        final long staleIfError;
+
+        CachedResponse(ResponseEntity<?> response, long now, CacheControl control, MiddlewareResponseCache cache) {
+            this.response = response;
+            this.etag = response.getHeaders().getETag();
+            this.lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+            this.storedAt = now;
+            this.timeToLive = control.noCache ? 0 : nanos(control.maxAge != null ? control.maxAge : cache.defaultTimeToLive);
+            // no-cache responses must always be revalidated before they are used.
+            this.staleWhileRevalidate = control.noCache ? 0 : nanos(control.staleWhileRevalidate != null ? control.staleWhileRevalidate : cache.staleWhileRevalidate);
+            this.staleIfError = nanos(control.staleIfError != null ? control.staleIfError : cache.staleIfError);
+        }
+
+        private CachedResponse(CachedResponse previous, long now, long timeToLive) {
+            this.response = previous.response;
+            this.etag = previous.etag;
+            this.lastModified = previous.lastModified;
+            this.storedAt = now;
+            this.timeToLive = timeToLive;
+            this.staleWhileRevalidate = previous.staleWhileRevalidate;
+            this.staleIfError = previous.staleIfError;
+        }
+
+        /**
+         * Converts the value to nanoseconds, capped at {@link #MAX_SECONDS},
+         * so neither the conversion nor the sums of the lifetimes overflow.
+         */
+        private static long nanos(Duration value) {
+            if (value == null || value.isNegative()) {
+                return 0;
+            }
+
+            if (value.getSeconds() >= MAX_SECONDS) {
+                return MAX_SECONDS * 1_000_000_000L;
+            }
+
+            return value.toNanos();
+        }
+
+        private static long add(long a, long b) {
+            long sum = a + b;
+            // Both are positive, so an overflow makes the sum negative.
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        }
+
+        /**
+         * Creates a copy of this entry whose lifetime is renewed according to
+         * the headers of a 304 response.
+         */
+        CachedResponse refresh(HttpHeaders notModifiedHeaders, long now) {
+            var control = CacheControl.parse(notModifiedHeaders.getCacheControl());
+
+            if (control.noCache) {
+                return new CachedResponse(this, now, 0);
+            }
+
+            return new CachedResponse(this, now, control.maxAge != null ? nanos(control.maxAge) : timeToLive);
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        boolean isFresh(long now) {
+            return now - storedAt < timeToLive;
+        }
+
+        boolean isWithinStaleWhileRevalidate(long now) {
+            return now - storedAt < add(timeToLive, staleWhileRevalidate);
+        }
+
+        boolean isWithinStaleIfError(long now) {
+            return now - storedAt < add(timeToLive, Math.max(staleWhileRevalidate, staleIfError));
+        }
+
+        /**
+         * Entries with validators are kept for revalidation until they are
+         * evicted by size. All others are removed once they can no longer be
+         * served.
+         */
+        boolean isExpired(long now) {
+            return !hasValidators() && !isWithinStaleIfError(now);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> ResponseEntity<T> response() {
+            return (ResponseEntity<T>) response;
+        }
+    }
+
+    private static class CacheControl {
+
+        private static final CacheControl NONE = new CacheControl();
+
+        boolean noStore;
+        boolean noCache;
+        Duration maxAge;
+        Duration staleWhileRevalidate;
+        Duration staleIfError;
+
+        static CacheControl parse(String header) {
+            if (header == null || header.isBlank()) {
+                return NONE;
+            }
+
+            var control = new CacheControl();
+
+            for (var directive : header.split(",")) {
+                var parts = directive.trim().split("=", 2);
+                var name = parts[0].trim().toLowerCase();
+                var value = parts.length > 1 ? parseSeconds(parts[1]) : null;
+
+                switch (name) {
+                    case "no-store":
+                        control.noStore = true;
+                        break;
+                    case "no-cache":
+                        control.noCache = true;
+                        break;
+                    case "max-age":
+                        control.maxAge = value;
+                        break;
+                    case "stale-while-revalidate":
+                        control.staleWhileRevalidate = value;
+                        break;
+                    case "stale-if-error":
+                        control.staleIfError = value;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            return control;
+        }
+
+        private static Duration parseSeconds(String value) {
+            var trimmed = value.trim();
+
+            if (trimmed.startsWith("\"") && trimmed.endsWith("\"") && trimmed.length() >= 2) {
+                trimmed = trimmed.substring(1, trimmed.length() - 1);
+            }
+
+            if (trimmed.isEmpty()) {
+                return null;
+            }
+
+            for (int i = 0; i < trimmed.length(); i++) {
+                char c = trimmed.charAt(i);
+
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+            }
+
+            // Values with more digits than MAX_SECONDS are greater than it and would not fit into a long.
+            if (trimmed.length() > 10) {
+                return Duration.ofSeconds(MAX_SECONDS);
+            }
+
+            return Duration.ofSeconds(Math.min(Long.parseLong(trimmed), MAX_SECONDS));
+        }
+    }
+}
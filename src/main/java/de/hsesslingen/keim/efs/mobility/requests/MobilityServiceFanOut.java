@@ -0,0 +1,243 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Sends one request to each of a collection of {@link MobilityService}s in
+ * parallel and collects the results under a single deadline. Services that
+ * did not respond in time or failed are reported with a
+ * {@link MiddlewareError}, so the results of the other services can still be
+ * used.
+ * <p>
+ * Example:
+ * <pre>
+ * var result = MobilityServiceFanOut.of(services, service -&gt; template
+ *         .get(service.getServiceUrl() + "/options")
+ *         .expect(new ParameterizedTypeReference&lt;List&lt;Option&gt;&gt;() {}))
+ *         .deadline(Duration.ofSeconds(3))
+ *         .go();
+ * </pre>
+ *
+ * @author ben
+ * @param <T>
+ */
+public class MobilityServiceFanOut<T> {
+
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(10);
+
+    private final Collection<MobilityService> services;
+    private final Function<MobilityService, MiddlewareRequest<T>> requestFactory;
+    private Duration deadline = DEFAULT_DEADLINE;
+    private Executor executor;
+
+    private MobilityServiceFanOut(Collection<MobilityService> services, Function<MobilityService, MiddlewareRequest<T>> requestFactory) {
+        this.services = services;
+        this.requestFactory = requestFactory;
+    }
+
+    /**
+     * Creates a new fan-out that sends the requests created by the given
+     * factory to each of the given services.
+     *
+     * @param <T>
+     * @param services
+     * @param requestFactory
+     * @return
+     */
+    public static <T> MobilityServiceFanOut<T> of(Collection<MobilityService> services, Function<MobilityService, MiddlewareRequest<T>> requestFactory) {
+        return new MobilityServiceFanOut<>(services, requestFactory);
+    }
+
+    /**
+     * Sets the time after which all requests that did not yet complete are
+     * cancelled. Requests that are still queued are not sent anymore, those
+     * in flight are aborted if the request factory supports it, like the
+     * {@link PooledClientHttpRequestFactory}. Requests without their own
+     * timeout also get this deadline as timeout, so their threads are not
+     * blocked for longer with other factories.
+     *
+     * @param deadline
+     * @return
+     */
+    public MobilityServiceFanOut<T> deadline(Duration deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Sets the executor on which the requests are sent. If none is set, the
+     * async executor of each request is used.
+     *
+     * @param executor
+     * @return
+     */
+    public MobilityServiceFanOut<T> executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sends all requests and waits until all of them completed or the
+     * deadline is reached, whichever comes first.
+     *
+     * @return
+     */
+    public FanOutResult<T> go() {
+        long start = System.nanoTime();
+        long deadlineNanos = start + deadline.toNanos();
+
+        var calls = new ArrayList<Call<T>>(services.size());
+
+        for (var service : services) {
+            calls.add(start(service));
+        }
+
+        awaitAll(calls, deadlineNanos);
+
+        var results = new ArrayList<FanOutResult.ServiceResult<T>>(calls.size());
+
+        for (var call : calls) {
+            results.add(call.toResult());
+        }
+
+        return new FanOutResult<>(results, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private Call<T> start(MobilityService service) {
+        var call = new Call<T>(service, System.nanoTime());
+
+        try {
+            var request = requestFactory.apply(service);
+
+            if (request.timeout() == null) {
+                request.timeout(deadline);
+            }
+
+            if (request.serviceId() == null) {
+                request.serviceId(service.getId());
+            }
+
+            // Keep the future of the request itself, cancelling a derived one would not reach the request.
+            call.future = executor != null ? request.goAsync(executor) : request.goAsync();
+            call.future.whenComplete((response, ex) -> call.endNanos = System.nanoTime());
+        } catch (RuntimeException ex) {
+            call.future = CompletableFuture.failedFuture(ex);
+            call.endNanos = System.nanoTime();
+        }
+
+        return call;
+    }
+
+    private void awaitAll(List<Call<T>> calls, long deadlineNanos) {
+        var all = CompletableFuture.allOf(calls.stream().map(c -> c.future).toArray(CompletableFuture[]::new));
+
+        try {
+            all.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            // Failures and timeouts are evaluated per call.
+        }
+
+        for (var call : calls) {
+            if (!call.future.isDone()) {
+                call.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Converts a failure of a single request to a {@link MiddlewareError}.
+     *
+     * @param ex
+     * @return
+     */
+    static MiddlewareError toError(Throwable ex) {
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+
+        if (ex instanceof MiddlewareException) {
+            return ((MiddlewareException) ex).toError();
+        }
+
+        if (ex instanceof ResourceAccessException) {
+            return MiddlewareError.remoteServiceUnavailable("A required remote service is unavailable: %s", ex.getMessage());
+        }
+
+        return MiddlewareError.remoteServiceRequestFailed("A request to a remote service failed: %s", ex.getMessage());
+    }
+
+    private static class Call<T> {
+
+        final MobilityService service;
+        final long startNanos;
+        volatile long endNanos;
+        CompletableFuture<ResponseEntity<T>> future;
+
+        Call(MobilityService service, long startNanos) {
+            this.service = service;
+            this.startNanos = startNanos;
+        }
+
+        FanOutResult.ServiceResult<T> toResult() {
+            if (future.isCancelled()) {
+                var duration = Duration.ofNanos(System.nanoTime() - startNanos);
+                var error = MiddlewareError.remoteServiceUnavailable(
+                        "The service %s did not respond within %d ms.", service.getId(), duration.toMillis()
+                );
+
+                return new FanOutResult.ServiceResult<>(service, null, error, duration, true);
+            }
+
+            // The future may complete before the callback that records the end ran.
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            var duration = Duration.ofNanos(end - startNanos);
+
+            try {
+                return new FanOutResult.ServiceResult<>(service, future.join(), null, duration, false);
+            } catch (CancellationException | CompletionException ex) {
+                return new FanOutResult.ServiceResult<>(service, null, toError(ex), duration, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.HttpClientProperties;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpMethod;
+import org.slf4j.Logger;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A request factory based on a pooling Apache HttpClient with limits for the
+ * number of connections, connect and read timeouts, a capped keep-alive
+ * duration and background eviction of idle connections.
+ * <p>
+ * Timeouts set on a {@link MiddlewareRequest} using
+ * {@link MiddlewareRequest#timeout(Duration)} override the default timeouts
+ * for that single request. Requests can be aborted from other threads, see
+ * {@link HedgingPolicy}.
+ *
+ * @author ben
+ */
+public class PooledClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private static final Logger logger = getLogger(PooledClientHttpRequestFactory.class);
+
+    private static volatile PooledClientHttpRequestFactory defaultFactory;
+
+    private final RequestConfig defaultRequestConfig;
+
+    /**
+     * Whether this factory was created by {@link #getDefault()} and is
+     * therefore not managed by anyone else.
+     */
+    private boolean createdAsDefault;
+
+    public PooledClientHttpRequestFactory(HttpClientProperties properties) {
+        this(properties, createDefaultRequestConfig(properties));
+    }
+
+    private PooledClientHttpRequestFactory(HttpClientProperties properties, RequestConfig defaultRequestConfig) {
+        super(createHttpClient(properties, defaultRequestConfig));
+        this.defaultRequestConfig = defaultRequestConfig;
+    }
+
+    /**
+     * Returns the factory that is used by {@link MiddlewareRequestTemplate}s
+     * which create their own rest template. If not set otherwise, a factory
+     * with default settings is created on first use.
+     *
+     * @return
+     */
+    public static PooledClientHttpRequestFactory getDefault() {
+        var factory = defaultFactory;
+
+        if (factory == null) {
+            synchronized (PooledClientHttpRequestFactory.class) {
+                factory = defaultFactory;
+
+                if (factory == null) {
+                    factory = new PooledClientHttpRequestFactory(new HttpClientProperties());
+                    factory.createdAsDefault = true;
+                    defaultFactory = factory;
+                }
+            }
+        }
+
+        return factory;
+    }
+
+    /**
+     * Replaces the factory used by {@link MiddlewareRequestTemplate}s which
+     * create their own rest template. A previous default that was created by
+     * {@link #getDefault()} is destroyed, factories set by others are left to
+     * their owners.
+     *
+     * @param factory
+     */
+    public static void setDefault(PooledClientHttpRequestFactory factory) {
+        PooledClientHttpRequestFactory previous;
+
+        synchronized (PooledClientHttpRequestFactory.class) {
+            previous = defaultFactory;
+            defaultFactory = factory;
+        }
+
+        if (previous != null && previous != factory && previous.createdAsDefault) {
+            try {
+                previous.destroy();
+            } catch (Exception ex) {
+                logger.warn("Could not close the replaced default request factory.", ex);
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying client. If this factory is the default, the
+     * default is reset, so that templates created afterwards do not use a
+     * closed connection pool.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        synchronized (PooledClientHttpRequestFactory.class) {
+            if (defaultFactory == this) {
+                defaultFactory = null;
+            }
+        }
+
+        super.destroy();
+    }
+
+    @Override
+    protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+        var request = MiddlewareRequest.current();
+
+        var attemptTimeout = request != null ? request.attemptTimeout() : null;
+
+        if (attemptTimeout == null) {
+            return null;
+        }
+
+        int timeout = toMillis(attemptTimeout);
+
+        var context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.copy(defaultRequestConfig)
+                .setSocketTimeout(timeout)
+                .setConnectTimeout(bounded(timeout, defaultRequestConfig.getConnectTimeout()))
+                .setConnectionRequestTimeout(bounded(timeout, defaultRequestConfig.getConnectionRequestTimeout()))
+                .build());
+
+        return context;
+    }
+
+    @Override
+    protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+        var request = super.createHttpUriRequest(httpMethod, uri);
+        var handle = AbortHandle.current();
+
+        if (handle != null) {
+            handle.register(request::abort);
+        }
+
+        return request;
+    }
+
+    private static RequestConfig createDefaultRequestConfig(HttpClientProperties properties) {
+        return RequestConfig.custom()
+                .setConnectTimeout(toMillis(properties.getConnectTimeout()))
+                .setSocketTimeout(toMillis(properties.getReadTimeout()))
+                .setConnectionRequestTimeout(toMillis(properties.getConnectionRequestTimeout()))
+                .build();
+    }
+
+    private static org.apache.http.client.HttpClient createHttpClient(HttpClientProperties properties, RequestConfig requestConfig) {
+        var connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(toMillis(properties.getValidateAfterInactivity()));
+
+        long maxKeepAlive = properties.getKeepAlive().toMillis();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, maxKeepAlive) : maxKeepAlive;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(properties.getIdleEviction().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static int bounded(int timeout, int defaultTimeout) {
+        // Zero or negative values mean infinite or system default timeouts.
+        return defaultTimeout > 0 ? Math.min(timeout, defaultTimeout) : timeout;
+    }
+
+    private static int toMillis(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis());
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.handler.ErrorBody;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A non-blocking variant of {@link MiddlewareRequest} that is sent using
+ * Springs {@link WebClient} instead of a
+ * {@link org.springframework.web.client.RestTemplate}. Instances are
+ * usually created by a {@link ReactiveMiddlewareRequestTemplate}.
+ * <p>
+ * Credentials, request adapters and the internal flag are handled exactly like
+ * in {@link MiddlewareRequest}. The credentials are added and the adapters are
+ * called once the publisher returned by {@link #mono()} or
+ * {@link #flux(Class)} is subscribed, on the subscribing thread, and only
+ * once, even if it is subscribed again. The request is sent once all
+ * {@link AsyncMiddlewareRequestAdapter}s have completed, without blocking.
+ * Error responses are converted to
+ * {@link de.hsesslingen.keim.efs.mobility.exception.MiddlewareException}s,
+ * which are emitted as error signal. Timeouts and connection errors are
+ * emitted as {@link ResourceAccessException}s, like the
+ * {@link org.springframework.web.client.RestTemplate} throws them.
+ *
+ * @author ben
+ * @param <T>
+ */
+public class ReactiveMiddlewareRequest<T> extends MiddlewareRequest<T> {
+
+    private WebClient webClient;
+    private BiFunction<String, HttpStatus, MiddlewareError> errorParser;
+
+    public ReactiveMiddlewareRequest(HttpMethod method, String uri, WebClient webClient) {
+        super(method, uri, null);
+        this.webClient = webClient;
+    }
+
+    public ReactiveMiddlewareRequest(HttpMethod method, URI uri, WebClient webClient) {
+        super(method, uri, null);
+        this.webClient = webClient;
+    }
+
+    public ReactiveMiddlewareRequest(WebClient webClient) {
+        super(null);
+        this.webClient = webClient;
+    }
+
+    public ReactiveMiddlewareRequest<T> webClient(WebClient webClient) {
+        this.webClient = webClient;
+        return this;
+    }
+
+    /**
+     * Sets the function that converts the body and status of an error
+     * response to a {@link MiddlewareError}.
+     *
+     * @param errorParser
+     * @return
+     */
+    public ReactiveMiddlewareRequest<T> errorParser(BiFunction<String, HttpStatus, MiddlewareError> errorParser) {
+        this.errorParser = errorParser;
+        return this;
+    }
+
+    /**
+     * Sends this request and emits the response entity.
+     *
+     * @return
+     */
+    public Mono<ResponseEntity<T>> mono() {
+        return Mono.defer(() -> {
+            var pending = beforeSendAsync();
+            var send = Mono.defer(() -> withTimeout(toEntity(retrieve())
+                    .onErrorMap(ReactiveMiddlewareRequest::isConnectionError, this::connectionFailed)));
+
+            // Wait for asynchronous adapters without blocking.
+            return pending != null ? Mono.fromCompletionStage(pending).then(send) : send;
+        });
+    }
+
+    private Mono<ResponseEntity<T>> toEntity(WebClient.ResponseSpec spec) {
+        var typeReference = responseTypeReference();
+
+        if (typeReference != null) {
+            return spec.toEntity(typeReference);
+        }
+
+        var typeClass = responseTypeClass();
+
+        if (typeClass != null) {
+            return spec.toEntity(typeClass);
+        }
+
+        @SuppressWarnings("unchecked")
+        var bodiless = (Mono<ResponseEntity<T>>) (Mono<?>) spec.toBodilessEntity();
+        return bodiless;
+    }
+
+    private Mono<ResponseEntity<T>> withTimeout(Mono<ResponseEntity<T>> mono) {
+        var timeout = attemptTimeout();
+
+        if (timeout == null) {
+            return mono;
+        }
+
+        return mono.timeout(timeout, Mono.error(() -> timedOut(timeout)));
+    }
+
+    /**
+     * Signals timeouts the same way as the blocking variant, so they are
+     * handled alike, e.g. by the {@link RetryPolicy}.
+     */
+    private ResourceAccessException timedOut(Duration timeout) {
+        return new ResourceAccessException(
+                "Request to " + expandUri() + " timed out after " + timeout.toMillis() + " ms.",
+                new SocketTimeoutException("Read timed out")
+        );
+    }
+
+    /**
+     * Whether the given error shows that the remote service could not be
+     * reached, e.g. because the connection was refused or reset.
+     */
+    private static boolean isConnectionError(Throwable ex) {
+        return ex instanceof WebClientRequestException || ex instanceof IOException;
+    }
+
+    /**
+     * Converts the given connection error to a
+     * {@link ResourceAccessException}, as thrown by the
+     * {@link org.springframework.web.client.RestTemplate} for blocking
+     * requests.
+     */
+    private ResourceAccessException connectionFailed(Throwable ex) {
+        var cause = ex instanceof WebClientRequestException && ex.getCause() != null ? ex.getCause() : ex;
+        var io = cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+
+        return new ResourceAccessException(
+                "I/O error on " + method() + " request for \"" + expandUri() + "\": " + cause.getMessage(), io
+        );
+    }
+
+    /**
+     * Sends this request and emits the response body, if any.
+     *
+     * @return
+     */
+    public Mono<T> bodyToMono() {
+        return mono().flatMap(entity -> Mono.justOrEmpty(entity.getBody()));
+    }
+
+    /**
+     * Sends this request and emits the elements of the response body, which is
+     * expected to be a JSON array or a stream of elements. The elements are
+     * emitted as soon as they are decoded.
+     *
+     * @param <E>
+     * @param elementClass
+     * @return
+     */
+    public <E> Flux<E> flux(Class<E> elementClass) {
+        return flux(() -> retrieve().bodyToFlux(elementClass));
+    }
+
+    /**
+     * Sends this request and emits the elements of the response body.
+     *
+     * @param <E>
+     * @param elementTypeReference
+     * @return
+     * @see #flux(Class)
+     */
+    public <E> Flux<E> flux(ParameterizedTypeReference<E> elementTypeReference) {
+        return flux(() -> retrieve().bodyToFlux(elementTypeReference));
+    }
+
+    private <E> Flux<E> flux(Supplier<Flux<E>> body) {
+        return Flux.defer(() -> {
+            var pending = beforeSendAsync();
+            var send = Flux.defer(() -> withTimeout(body.get()
+                    .onErrorMap(ReactiveMiddlewareRequest::isConnectionError, this::connectionFailed)));
+
+            return pending != null ? Mono.fromCompletionStage(pending).thenMany(send) : send;
+        });
+    }
+
+    private <E> Flux<E> withTimeout(Flux<E> flux) {
+        var timeout = attemptTimeout();
+
+        if (timeout == null) {
+            return flux;
+        }
+
+        return flux.timeout(timeout, Flux.defer(() -> Flux.error(timedOut(timeout))));
+    }
+
+    private WebClient.ResponseSpec retrieve() {
+        if (webClient == null) {
+            throw new IllegalStateException("No WebClient was set for this request.");
+        }
+
+        var entity = buildEntity();
+        var body = entity.getBody();
+
+        var bodySpec = webClient
+                .method(method())
+                .uri(expandUri())
+                .headers(h -> h.addAll(entity.getHeaders()));
+
+        WebClient.RequestHeadersSpec<?> spec = body != null ? bodySpec.bodyValue(body) : bodySpec;
+
+        return spec.retrieve().onStatus(HttpStatus::isError, this::toException);
+    }
+
+    private Mono<? extends Throwable> toException(ClientResponse response) {
+        var status = response.statusCode();
+        var parser = errorParser != null ? errorParser : ReactiveMiddlewareRequestTemplate.DEFAULT_ERROR_PARSER;
+
+        return readErrorBody(response)
+                .map(body -> new RemoteMiddlewareException(parser.apply(body, status), status, response.headers().asHttpHeaders()));
+    }
+
+    /**
+     * Reads at most {@link ErrorBody#MAX_BYTES} bytes of an error body, like
+     * the {@link de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareErrorResponseHandler}
+     * does for blocking requests. The rest of the body is not received.
+     */
+    private static Mono<String> readErrorBody(ClientResponse response) {
+        return Mono.defer(() -> {
+            var body = new ByteArrayOutputStream();
+            var truncated = new boolean[1];
+
+            return response.bodyToFlux(DataBuffer.class)
+                    .doOnNext(buffer -> {
+                        try {
+                            int length = Math.min(buffer.readableByteCount(), ErrorBody.MAX_BYTES - body.size());
+                            var bytes = new byte[length];
+                            buffer.read(bytes);
+                            body.write(bytes, 0, length);
+                            truncated[0] |= buffer.readableByteCount() > 0;
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .takeUntil(buffer -> body.size() >= ErrorBody.MAX_BYTES)
+                    .then(Mono.fromSupplier(() -> ErrorBody.decode(body.toByteArray(), body.size(), truncated[0])));
+        });
+    }
+
+    /**
+     * Sends this request and blocks until the response is received. Prefer
+     * {@link #mono()} to benefit from non-blocking IO.
+     *
+     * @return
+     */
+    @Override
+    public ResponseEntity<T> go() {
+        return mono().block();
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<T>> goAsync() {
+        return mono().toFuture();
+    }
+
+    /**
+     * Sends this request without blocking. The executor is not needed for
+     * reactive requests and therefore ignored.
+     *
+     * @param executor
+     * @return
+     */
+    @Override
+    public CompletableFuture<ResponseEntity<T>> goAsync(Executor executor) {
+        return goAsync();
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> timeout(Duration timeout) {
+        return (ReactiveMiddlewareRequest<T>) super.timeout(timeout);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> deadline(Deadline deadline) {
+        return (ReactiveMiddlewareRequest<T>) super.deadline(deadline);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> serviceId(String serviceId) {
+        return (ReactiveMiddlewareRequest<T>) super.serviceId(serviceId);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> requestAdapters(List<MiddlewareRequestAdapter> adapters) {
+        return (ReactiveMiddlewareRequest<T>) super.requestAdapters(adapters);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> requestAdapters(MiddlewareRequestAdapterPipeline adapters) {
+        return (ReactiveMiddlewareRequest<T>) super.requestAdapters(adapters);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> attribute(String name, Object value) {
+        return (ReactiveMiddlewareRequest<T>) super.attribute(name, value);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> token(String token) {
+        return (ReactiveMiddlewareRequest<T>) super.token(token);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> userIdAndSecret(String userId, String secret) {
+        return (ReactiveMiddlewareRequest<T>) super.userIdAndSecret(userId, secret);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> userId(String userId) {
+        return (ReactiveMiddlewareRequest<T>) super.userId(userId);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> secret(String secret) {
+        return (ReactiveMiddlewareRequest<T>) super.secret(secret);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> callRequestAdapters() {
+        return (ReactiveMiddlewareRequest<T>) super.callRequestAdapters();
+    }
+
+    @Override
+    public <R> ReactiveMiddlewareRequest<R> expect(ParameterizedTypeReference<R> responseTypeReference) {
+        return (ReactiveMiddlewareRequest<R>) super.expect(responseTypeReference);
+    }
+
+    @Override
+    public <R> ReactiveMiddlewareRequest<R> expect(Class<R> responseTypeClass) {
+        return (ReactiveMiddlewareRequest<R>) super.expect(responseTypeClass);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> uriVariables(Map<String, ?> uriVariables) {
+        return (ReactiveMiddlewareRequest<T>) super.uriVariables(uriVariables);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> uriVariables(Object... uriVariables) {
+        return (ReactiveMiddlewareRequest<T>) super.uriVariables(uriVariables);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> query(MultiValueMap<String, String> params) {
+        return (ReactiveMiddlewareRequest<T>) super.query(params);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> query(String key, Object... values) {
+        return (ReactiveMiddlewareRequest<T>) super.query(key, values);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> query(String key, Object value) {
+        return (ReactiveMiddlewareRequest<T>) super.query(key, value);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> query(String query) {
+        return (ReactiveMiddlewareRequest<T>) super.query(query);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> contentType(String contentType) {
+        return (ReactiveMiddlewareRequest<T>) super.contentType(contentType);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> header(String key, String value) {
+        return (ReactiveMiddlewareRequest<T>) super.header(key, value);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> headers(String key, List<? extends String> values) {
+        return (ReactiveMiddlewareRequest<T>) super.headers(key, values);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> headers(Map<String, String> headersToAdd) {
+        return (ReactiveMiddlewareRequest<T>) super.headers(headersToAdd);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> body(Object body) {
+        return (ReactiveMiddlewareRequest<T>) super.body(body);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> entity(HttpEntity entity) {
+        return (ReactiveMiddlewareRequest<T>) super.entity(entity);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> uri(URI uri) {
+        return (ReactiveMiddlewareRequest<T>) super.uri(uri);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> uri(String uri) {
+        return (ReactiveMiddlewareRequest<T>) super.uri(uri);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> method(HttpMethod method) {
+        return (ReactiveMiddlewareRequest<T>) super.method(method);
+    }
+
+    @Override
+    public ReactiveMiddlewareRequest<T> toInternal() {
+        return (ReactiveMiddlewareRequest<T>) super.toInternal();
+    }
+
+}
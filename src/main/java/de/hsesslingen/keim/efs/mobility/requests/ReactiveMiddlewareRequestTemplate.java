@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.ObjectMapperRegistry;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.handler.MiddlewareErrorResponseHandler;
+import de.hsesslingen.keim.efs.mobility.tracing.TracingRequestAdapter;
+import java.net.URI;
+import java.util.function.BiFunction;
+import org.springframework.http.HttpMethod;
+import static org.springframework.http.HttpMethod.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * The non-blocking counterpart of {@link MiddlewareRequestTemplate}. Creates
+ * {@link ReactiveMiddlewareRequest}s that are sent using Springs
+ * {@link WebClient}, which by default runs on Reactor Netty. This way a few
+ * event loop threads can serve a large number of concurrent requests.
+ * <p>
+ * Error responses are converted the same way as by
+ * {@link MiddlewareErrorResponseHandler}. A different conversion, e.g. for
+ * remote APIs with their own error format, can be set using
+ * {@link #setErrorParser(BiFunction)}.
+ *
+ * @author ben
+ */
+public class ReactiveMiddlewareRequestTemplate {
+
+    static final BiFunction<String, HttpStatus, MiddlewareError> DEFAULT_ERROR_PARSER = MiddlewareErrorResponseHandler::parseErrorBody;
+
+    private volatile WebClient webClient;
+    private volatile MiddlewareRequestAdapterPipeline requestAdapters = MiddlewareRequestAdapterPipeline.EMPTY;
+    private volatile BiFunction<String, HttpStatus, MiddlewareError> errorParser = DEFAULT_ERROR_PARSER;
+
+    public ReactiveMiddlewareRequestTemplate() {
+    }
+
+    public ReactiveMiddlewareRequestTemplate(WebClient webClient) {
+        this.webClient = webClient;
+    }
+
+    /**
+     * This adds the given adapter to the list of request adapters. These
+     * adapters are called before a request is sent off to be able to add or
+     * change information.
+     *
+     * @param adapter
+     * @return
+     * @see MiddlewareRequestTemplate#addRequestAdapter(MiddlewareRequestAdapter)
+     */
+    public synchronized ReactiveMiddlewareRequestTemplate addRequestAdapter(MiddlewareRequestAdapter adapter) {
+        requestAdapters = requestAdapters.with(adapter);
+        return this;
+    }
+
+    /**
+     * Same as {@link #addRequestAdapter(MiddlewareRequestAdapter)}, but adds
+     * the adapter in the given phase instead of its own.
+     *
+     * @param phase
+     * @param adapter
+     * @return
+     */
+    public synchronized ReactiveMiddlewareRequestTemplate addRequestAdapter(MiddlewareRequestAdapter.Phase phase, MiddlewareRequestAdapter adapter) {
+        requestAdapters = requestAdapters.with(phase, adapter);
+        return this;
+    }
+
+    public synchronized ReactiveMiddlewareRequestTemplate removeRequestAdapter(MiddlewareRequestAdapter adapter) {
+        requestAdapters = requestAdapters.without(adapter);
+        return this;
+    }
+
+    /**
+     * Propagates the W3C trace context to all requests created by this
+     * template. No spans are recorded for reactive requests.
+     *
+     * @param adapter
+     * @return
+     */
+    public ReactiveMiddlewareRequestTemplate enableTracing(TracingRequestAdapter adapter) {
+        return addRequestAdapter(adapter);
+    }
+
+    public MiddlewareRequestAdapterPipeline getRequestAdapters() {
+        return requestAdapters;
+    }
+
+    /**
+     * Returns the web client used by this template. If none was set, a new one
+     * is created that uses the object mapper of
+     * {@link ObjectMapperRegistry#getDefault()}.
+     *
+     * @return
+     */
+    public WebClient getWebClient() {
+        var client = webClient;
+
+        if (client == null) {
+            synchronized (this) {
+                client = webClient;
+
+                if (client == null) {
+                    client = createWebClient();
+                    webClient = client;
+                }
+            }
+        }
+
+        return client;
+    }
+
+    private static WebClient createWebClient() {
+        var mapper = ObjectMapperRegistry.getDefault().getObjectMapper();
+
+        return WebClient.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(mapper));
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(mapper));
+                })
+                .build();
+    }
+
+    public ReactiveMiddlewareRequestTemplate setWebClient(WebClient webClient) {
+        this.webClient = webClient;
+        return this;
+    }
+
+    public BiFunction<String, HttpStatus, MiddlewareError> getErrorParser() {
+        return errorParser;
+    }
+
+    /**
+     * Sets the function that converts the body and status of error responses
+     * to {@link MiddlewareError}s.
+     *
+     * @param errorParser
+     * @return
+     */
+    public ReactiveMiddlewareRequestTemplate setErrorParser(BiFunction<String, HttpStatus, MiddlewareError> errorParser) {
+        this.errorParser = errorParser != null ? errorParser : DEFAULT_ERROR_PARSER;
+        return this;
+    }
+
+    public ReactiveMiddlewareRequest<?> get(String uri) {
+        return configure(new ReactiveMiddlewareRequest<>(GET, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> get(URI uri) {
+        return configure(new ReactiveMiddlewareRequest<>(GET, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> post(String uri) {
+        return configure(new ReactiveMiddlewareRequest<>(POST, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> post(URI uri) {
+        return configure(new ReactiveMiddlewareRequest<>(POST, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> put(String uri) {
+        return configure(new ReactiveMiddlewareRequest<>(PUT, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> put(URI uri) {
+        return configure(new ReactiveMiddlewareRequest<>(PUT, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> delete(String uri) {
+        return configure(new ReactiveMiddlewareRequest<>(DELETE, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> delete(URI uri) {
+        return configure(new ReactiveMiddlewareRequest<>(DELETE, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> custom(HttpMethod method, String uri) {
+        return configure(new ReactiveMiddlewareRequest<>(method, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> custom(HttpMethod method, URI uri) {
+        return configure(new ReactiveMiddlewareRequest<>(method, uri, getWebClient()));
+    }
+
+    public ReactiveMiddlewareRequest<?> method(HttpMethod method) {
+        return configure(new ReactiveMiddlewareRequest<>(getWebClient())).method(method);
+    }
+
+    public ReactiveMiddlewareRequest<?> createRequest() {
+        return configure(new ReactiveMiddlewareRequest<>(getWebClient()));
+    }
+
+    private <T> ReactiveMiddlewareRequest<T> configure(ReactiveMiddlewareRequest<T> request) {
+        return request.requestAdapters(requestAdapters).errorParser(errorParser);
+    }
+}
@@ -24,10 +24,11 @@
 package de.hsesslingen.keim.efs.mobility.requests;
 
 import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.handler.ErrorBody;
+import de.hsesslingen.keim.efs.mobility.exception.handler.ErrorLogPolicy;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Map;
-import java.util.Scanner;
 import org.slf4j.Logger;
 import static org.slf4j.LoggerFactory.getLogger;
 import org.springframework.http.HttpStatus;
@@ -36,6 +37,15 @@ import org.springframework.lang.Nullable;
 import org.springframework.web.client.ResponseErrorHandler;
 
 /**
+ * Base class for request templates that talk to the API of a remote service
+ * outside of the middleware. Circuit breakers, concurrency limits, bulkheads
+ * and tracing are opt-in, e.g. using
+ * {@link #enableCircuitBreakers(CircuitBreakerRegistry)} with
+ * {@link CircuitBreakerRegistry#getDefault()}.
+ * <p>
+ * The headers meant for services of the middleware, i.e. the deadline and the
+ * trace context, are not sent to remote APIs, see
+ * {@link #setSendInternalHeaders(boolean)}.
  *
  * @author ben
  */
@@ -44,6 +54,8 @@ public abstract class RemoteApiRequestTemplate extends MiddlewareRequestTemplate
     private static final Logger logger = getLogger(RemoteApiRequestTemplate.class);
 
     public RemoteApiRequestTemplate() {
+        setSendInternalHeaders(false);
+
         // Set anonymous ResponseErrorHandler.
         super.setErrorHandler(new ResponseErrorHandler() {
 
@@ -57,35 +69,64 @@ public abstract class RemoteApiRequestTemplate extends MiddlewareRequestTemplate
             public final void handleError(ClientHttpResponse response) throws IOException {
                 HttpStatus httpStatus = response.getStatusCode();
 
-                String responseBody = null;
+                ErrorBody body = null;
+                MiddlewareError error = null;
 
-                try ( var scanner = new Scanner(response.getBody(), Charset.forName("UTF-8").name())) {
-                    responseBody = scanner.useDelimiter("\\A").next();
-                } catch (Exception ex) {
-                    // Simply catch and do nothing. responseBody will be null.
+                try {
+                    body = ErrorBody.read(response.getBody());
+                    // parseError is used inside error handler within constructor. This might lead to a leaking this-reference.
+                    error = parseError(body, httpStatus, response);
+                } catch (IOException ex) {
+                    // Simply catch and do nothing. error will be null.
                 }
 
-                // parseError is used inside error handler within constructor. This might lead to a leaking this-reference.
-                var error = parseError(responseBody, httpStatus, response);
-
                 if (error == null) {
                     Map<String, Object> details = null;
 
-                    if (responseBody != null) {
-                        details = Map.of("Remote Error Message", responseBody);
+                    if (body != null && !body.isEmpty()) {
+                        details = Map.of("Remote Error Message", body.asString());
                     }
 
                     // Fallback.
                     error = MiddlewareError.unknown(details, "An unknown error occured.");
                 }
 
-                logger.error("Error Response: {}", responseBody);
+                ErrorLogPolicy.getDefault().logResponse(logger, error, httpStatus);
 
-                throw error.toException();
+                throw new RemoteMiddlewareException(error, httpStatus, response.getHeaders());
             }
         });
     }
 
-    protected abstract MiddlewareError parseError(@Nullable String responseBody, HttpStatus statusCode, ClientHttpResponse response);
+    /**
+     * Parses the body of an error response. The default implementation
+     * decodes the body as string and calls
+     * {@link #parseError(String, HttpStatus, ClientHttpResponse)}. Override
+     * this method to parse the body without creating a string first, e.g.
+     * using {@link ErrorBody#parse(com.fasterxml.jackson.databind.ObjectReader)}.
+     *
+     * @param body The body, read up to {@link ErrorBody#MAX_BYTES} bytes.
+     * @param statusCode
+     * @param response
+     * @return The error or null, if the body could not be parsed.
+     */
+    protected MiddlewareError parseError(ErrorBody body, HttpStatus statusCode, ClientHttpResponse response) {
+        return parseError(body.isEmpty() ? null : body.asString(), statusCode, response);
+    }
+
+    /**
+     * Parses the body of an error response, decoded as string. Either this
+     * method or {@link #parseError(ErrorBody, HttpStatus, ClientHttpResponse)}
+     * should be overridden. The default implementation returns null.
+     *
+     * @param responseBody The body, truncated to {@link ErrorBody#MAX_BYTES}
+     * bytes, or null if it was empty.
+     * @param statusCode
+     * @param response
+     * @return The error or null, if the body could not be parsed.
+     */
+    protected MiddlewareError parseError(@Nullable String responseBody, HttpStatus statusCode, ClientHttpResponse response) {
+        return null;
+    }
 
 }
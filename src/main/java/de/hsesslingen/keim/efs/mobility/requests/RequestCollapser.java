@@ -0,0 +1,396 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.tracing.TraceContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Collects single lookups that are submitted within a short window and sends
+ * them as one request to a batch endpoint of a remote service. Each caller
+ * receives its own future, which is completed with its part of the batch
+ * response.
+ * <p>
+ * A batch is sent once the window elapsed after the first lookup was
+ * submitted or once it reached the maximum batch size, whichever comes
+ * first. Lookups of the same key within one batch share a single entry of the
+ * batch.
+ * <p>
+ * The batch request is sent with the latest {@link Deadline} of the
+ * submitters, or none if one of them had none, and the trace context of the
+ * first submitter that had one. Each submitter's future fails with
+ * {@code DEADLINE_EXCEEDED} once its own deadline expired, even if the batch
+ * is still running for the others.
+ * <p>
+ * Example:
+ * <pre>
+ * var collapser = RequestCollapser.&lt;String, List&lt;Booking&gt;, Booking&gt;of(
+ *         ids -&gt; template.get(serviceUrl + "/bookings")
+ *                 .query("ids", String.join(",", ids))
+ *                 .expect(new ParameterizedTypeReference&lt;List&lt;Booking&gt;&gt;() {}),
+ *         (bookings, result) -&gt; bookings.forEach(b -&gt; result.complete(b.getId(), b))
+ * );
+ *
+ * CompletableFuture&lt;Booking&gt; booking = collapser.submit(bookingId);
+ * </pre>
+ *
+ * @author ben
+ * @param <K> The type of the keys that are looked up.
+ * @param <R> The type of the response body of the batch endpoint.
+ * @param <V> The type of the result of a single lookup.
+ */
+public class RequestCollapser<K, R, V> {
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(10);
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    private final Function<List<K>, MiddlewareRequest<R>> batchRequestFactory;
+    private final BiConsumer<R, BatchResult<K, V>> resultSplitter;
+    private Duration window = DEFAULT_WINDOW;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private Executor executor;
+
+    private Batch<K, V> pending;
+
+    private RequestCollapser(Function<List<K>, MiddlewareRequest<R>> batchRequestFactory, BiConsumer<R, BatchResult<K, V>> resultSplitter) {
+        this.batchRequestFactory = batchRequestFactory;
+        this.resultSplitter = resultSplitter;
+    }
+
+    /**
+     * Creates a new collapser.
+     *
+     * @param <K>
+     * @param <R>
+     * @param <V>
+     * @param batchRequestFactory Creates the batch request for the given keys.
+     * @param resultSplitter Distributes the body of the batch response to the
+     * single lookups using {@link BatchResult#complete(Object, Object)} and
+     * {@link BatchResult#fail(Object, MiddlewareError)}.
+     * @return
+     */
+    public static <K, R, V> RequestCollapser<K, R, V> of(
+            Function<List<K>, MiddlewareRequest<R>> batchRequestFactory,
+            BiConsumer<R, BatchResult<K, V>> resultSplitter
+    ) {
+        return new RequestCollapser<>(batchRequestFactory, resultSplitter);
+    }
+
+    /**
+     * Sets how long lookups are collected, starting with the first lookup of
+     * a batch. Defaults to 10 ms.
+     *
+     * @param window
+     * @return
+     */
+    public RequestCollapser<K, R, V> window(Duration window) {
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of distinct keys in a batch. Defaults to 50.
+     *
+     * @param maxBatchSize
+     * @return
+     */
+    public RequestCollapser<K, R, V> maxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets the executor on which batch requests are sent. If none is set, the
+     * async executor of each batch request is used. Batches whose window
+     * elapsed are created on this executor as well, or on the default
+     * executor of {@link MiddlewareRequestExecutors} if none is set.
+     *
+     * @param executor
+     * @return
+     */
+    public RequestCollapser<K, R, V> executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Submits a lookup of the given key. The returned future is completed
+     * with the result for this key, or exceptionally with a
+     * {@link MiddlewareException} if the batch request or the lookup of this
+     * key failed, or if the deadline of the calling thread expired first.
+     *
+     * @param key
+     * @return
+     */
+    public CompletableFuture<V> submit(K key) {
+        var deadline = Deadline.current();
+        var trace = TraceContext.current();
+        Batch<K, V> full = null;
+        CompletableFuture<V> future;
+
+        synchronized (this) {
+            if (pending == null) {
+                var batch = new Batch<K, V>();
+                pending = batch;
+                batch.timer = MiddlewareRequestExecutors.getScheduler().schedule(() -> handOff(batch), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+
+            future = pending.futures.computeIfAbsent(key, k -> new CompletableFuture<>());
+            pending.join(deadline, trace);
+
+            if (pending.futures.size() >= maxBatchSize) {
+                full = pending;
+                pending = null;
+            }
+        }
+
+        if (full != null) {
+            full.timer.cancel(false);
+            send(full);
+        }
+
+        return deadline != null ? withDeadline(future, deadline) : future;
+    }
+
+    /**
+     * A future for a single submitter, which fails once its deadline expired.
+     * The shared future of the key is not failed, as other submitters of the
+     * same key may have a later deadline.
+     */
+    private static <V> CompletableFuture<V> withDeadline(CompletableFuture<V> shared, Deadline deadline) {
+        var own = new CompletableFuture<V>();
+
+        var timer = MiddlewareRequestExecutors.getScheduler().schedule(
+                () -> own.completeExceptionally(MiddlewareException.deadlineExceededException(
+                        "The deadline expired before the batch response was received."
+                )),
+                deadline.remaining().toNanos(), TimeUnit.NANOSECONDS
+        );
+
+        shared.whenComplete((value, ex) -> {
+            timer.cancel(false);
+
+            if (ex != null) {
+                own.completeExceptionally(ex);
+            } else {
+                own.complete(value);
+            }
+        });
+
+        return own;
+    }
+
+    /**
+     * Flushes the batch whose window elapsed on an executor. The timer thread
+     * is shared and must not run the request factory or the request
+     * adapters.
+     */
+    private void handOff(Batch<K, V> batch) {
+        var target = executor != null ? executor : MiddlewareRequestExecutors.getDefault();
+
+        try {
+            target.execute(() -> flush(batch));
+        } catch (RejectedExecutionException ex) {
+            synchronized (this) {
+                if (pending != batch) {
+                    return;
+                }
+
+                pending = null;
+            }
+
+            batch.failAll(MiddlewareException.localSaturatedException("The executor for batch requests is saturated."));
+        }
+    }
+
+    private void flush(Batch<K, V> batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                // Already sent because it was full.
+                return;
+            }
+
+            pending = null;
+        }
+
+        send(batch);
+    }
+
+    private void send(Batch<K, V> batch) {
+        var keys = new ArrayList<K>(batch.futures.keySet());
+        CompletableFuture<ResponseEntity<R>> response;
+
+        // The request takes both from the thread it is created and sent on, which is an executor thread or the last submitter.
+        var previousDeadline = Deadline.setCurrent(batch.deadline);
+        var previousTrace = TraceContext.setCurrent(batch.trace);
+
+        try {
+            var request = batchRequestFactory.apply(Collections.unmodifiableList(keys));
+            response = executor != null ? request.goAsync(executor) : request.goAsync();
+        } catch (RuntimeException ex) {
+            response = CompletableFuture.failedFuture(ex);
+        } finally {
+            Deadline.setCurrent(previousDeadline);
+            TraceContext.setCurrent(previousTrace);
+        }
+
+        response.whenComplete((entity, ex) -> {
+            if (ex != null) {
+                batch.failAll(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                return;
+            }
+
+            var result = new BatchResult<K, V>(keys, batch.futures);
+
+            try {
+                resultSplitter.accept(entity.getBody(), result);
+            } catch (RuntimeException splitterEx) {
+                batch.failAll(splitterEx);
+                return;
+            }
+
+            result.failMissing();
+        });
+    }
+
+    /**
+     * Lookups that are sent together.
+     */
+    private static class Batch<K, V> {
+
+        final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        ScheduledFuture<?> timer;
+        Deadline deadline;
+        boolean unbounded;
+        TraceContext trace;
+
+        /**
+         * Takes the deadline and trace context of a submitter into account.
+         * The batch gets the latest deadline, so a submitter with a short one
+         * does not fail the lookups of the others. Called while holding the
+         * lock of the collapser.
+         */
+        void join(Deadline submitterDeadline, TraceContext submitterTrace) {
+            if (submitterDeadline == null) {
+                unbounded = true;
+                deadline = null;
+            } else if (!unbounded) {
+                deadline = submitterDeadline.max(deadline);
+            }
+
+            if (trace == null) {
+                trace = submitterTrace;
+            }
+        }
+
+        void failAll(Throwable ex) {
+            for (var future : futures.values()) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * The results of a batch request, passed to the result splitter to
+     * complete the single lookups.
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public static class BatchResult<K, V> {
+
+        private final List<K> keys;
+        private final Map<K, CompletableFuture<V>> futures;
+
+        BatchResult(List<K> keys, Map<K, CompletableFuture<V>> futures) {
+            this.keys = Collections.unmodifiableList(keys);
+            this.futures = futures;
+        }
+
+        /**
+         * The keys that were requested in this batch.
+         *
+         * @return
+         */
+        public List<K> getKeys() {
+            return keys;
+        }
+
+        /**
+         * Completes the lookup of the given key. Keys that were not requested
+         * are ignored.
+         *
+         * @param key
+         * @param value
+         */
+        public void complete(K key, V value) {
+            var future = futures.get(key);
+
+            if (future != null) {
+                future.complete(value);
+            }
+        }
+
+        /**
+         * Fails the lookup of the given key with the given error. Keys that
+         * were not requested are ignored.
+         *
+         * @param key
+         * @param error
+         */
+        public void fail(K key, MiddlewareError error) {
+            var future = futures.get(key);
+
+            if (future != null) {
+                future.completeExceptionally(error.toException());
+            }
+        }
+
+        void failMissing() {
+            for (var entry : futures.entrySet()) {
+                if (!entry.getValue().isDone()) {
+                    entry.getValue().completeExceptionally(MiddlewareError.remoteServiceRequestFailed(
+                            "The batch response contained no result for %s.", entry.getKey()
+                    ).toException());
+                }
+            }
+        }
+    }
+}
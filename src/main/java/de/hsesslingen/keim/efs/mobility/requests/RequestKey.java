@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.tracing.TraceContext;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Identifies requests that are interchangeable, i.e. that would produce the
+ * same response. Two requests are considered equal, if they have the same
+ * method, URI, expected response type and the same headers, including those
+ * of the entity set using {@link MiddlewareRequest#entity(org.springframework.http.HttpEntity)}.
+ * Only the headers in {@link #IGNORED_HEADERS}, which differ for every
+ * request, are not part of the key.
+ * <p>
+ * Because all credentials, e.g. tokens, {@code Authorization} and
+ * {@code Cookie} headers, are part of the key, responses are never shared
+ * between different users.
+ *
+ * @author ben
+ */
+public final class RequestKey {
+
+    /**
+     * The headers whose values are not part of the key, in lower case. They
+     * are set for each request anew and do not affect the response.
+     */
+    public static final Set<String> IGNORED_HEADERS = Set.of(
+            MiddlewareRequest.DEADLINE_HEADER, TraceContext.TRACEPARENT_HEADER, TraceContext.TRACESTATE_HEADER
+    );
+
+    private final HttpMethod method;
+    private final URI uri;
+    private final Type responseType;
+    private final Map<String, List<String>> headers;
+    private final int hash;
+
+    private RequestKey(HttpMethod method, URI uri, Type responseType, Map<String, List<String>> headers) {
+        this.method = method;
+        this.uri = uri;
+        this.responseType = responseType;
+        this.headers = headers;
+
+        int h = Objects.hashCode(method);
+        h = 31 * h + Objects.hashCode(uri);
+        h = 31 * h + Objects.hashCode(responseType);
+        this.hash = 31 * h + headers.hashCode();
+    }
+
+    /**
+     * Creates the key of the given request. Must be called after the
+     * credentials were added to the headers of the request, i.e. from within
+     * a {@link MiddlewareRequestInterceptor}.
+     *
+     * @param request
+     * @return
+     */
+    public static RequestKey of(MiddlewareRequest<?> request) {
+        Type responseType = null;
+
+        if (request.responseTypeReference() != null) {
+            responseType = request.responseTypeReference().getType();
+        } else if (request.responseTypeClass() != null) {
+            responseType = request.responseTypeClass();
+        }
+
+        var headers = new TreeMap<String, List<String>>();
+        var entity = request.entity();
+
+        // In the same order as they are merged when the request is sent.
+        if (entity != null) {
+            addHeaders(headers, entity.getHeaders());
+        }
+
+        addHeaders(headers, request.headers());
+
+        if (request.contentType() != null) {
+            headers.put("content-type", List.of(request.contentType()));
+        }
+
+        return new RequestKey(request.method(), request.expandUri(), responseType, headers.isEmpty() ? Collections.emptyMap() : headers);
+    }
+
+    private static void addHeaders(Map<String, List<String>> target, HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+
+        headers.forEach((name, values) -> {
+            var lowerCase = name.toLowerCase(Locale.ROOT);
+
+            if (values == null || IGNORED_HEADERS.contains(lowerCase)) {
+                return;
+            }
+
+            // Copied, as the request may still change its headers, e.g. when a token is replaced.
+            target.merge(lowerCase, new ArrayList<>(values), (previous, added) -> {
+                var merged = new ArrayList<String>(previous.size() + added.size());
+                merged.addAll(previous);
+                merged.addAll(added);
+                return merged;
+            });
+        });
+    }
+
+    /**
+     * Tells whether responses that vary by the given request header, as
+     * named in their {@code Vary} header, can be told apart by their keys.
+     * This is the case for all headers except {@code *} and the
+     * {@link #IGNORED_HEADERS}.
+     *
+     * @param header
+     * @return
+     */
+    public static boolean distinguishes(String header) {
+        var name = header.trim().toLowerCase(Locale.ROOT);
+        return !name.equals("*") && !IGNORED_HEADERS.contains(name);
+    }
+
+    public HttpMethod getMethod() {
+        return method;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof RequestKey)) {
+            return false;
+        }
+
+        var other = (RequestKey) obj;
+
+        return hash == other.hash
+                && method == other.method
+                && Objects.equals(uri, other.uri)
+                && Objects.equals(responseType, other.responseType)
+                && headers.equals(other.headers);
+    }
+
+    /**
+     * Does not contain the header values, to keep credentials out of logs.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return method + " " + uri;
+    }
+}
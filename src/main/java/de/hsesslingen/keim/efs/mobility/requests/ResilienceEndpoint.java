@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+/**
+ * Actuator endpoint {@code resilience} that shows the state of the circuit
+ * breakers, concurrency limits and bulkheads of the remote services:
+ * <ul>
+ * <li>{@code /resilience}: all of them,</li>
+ * <li>{@code /resilience/{kind}}: those of one kind, i.e.
+ * {@value #CIRCUIT_BREAKERS}, {@value #CONCURRENCY_LIMITS} or
+ * {@value #BULKHEADS},</li>
+ * <li>{@code /resilience/{kind}/{name}}: the one of a single remote
+ * service.</li>
+ * </ul>
+ *
+ * @author ben
+ */
+@Endpoint(id = "resilience")
+public class ResilienceEndpoint {
+
+    public static final String CIRCUIT_BREAKERS = "circuitbreakers";
+    public static final String CONCURRENCY_LIMITS = "concurrencylimits";
+    public static final String BULKHEADS = "bulkheads";
+
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final ConcurrencyLimiterRegistry concurrencyLimits;
+    private final BulkheadRegistry bulkheads;
+
+    public ResilienceEndpoint(CircuitBreakerRegistry circuitBreakers, ConcurrencyLimiterRegistry concurrencyLimits, BulkheadRegistry bulkheads) {
+        this.circuitBreakers = circuitBreakers;
+        this.concurrencyLimits = concurrencyLimits;
+        this.bulkheads = bulkheads;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, ?>> resilience() {
+        var result = new LinkedHashMap<String, Map<String, ?>>();
+        result.put(CIRCUIT_BREAKERS, circuitBreakers.getSnapshots());
+        result.put(CONCURRENCY_LIMITS, concurrencyLimits.getSnapshots());
+        result.put(BULKHEADS, bulkheads.getSnapshots());
+
+        return result;
+    }
+
+    @ReadOperation
+    public Map<String, ?> resilience(@Selector String kind) {
+        switch (kind) {
+            case CIRCUIT_BREAKERS:
+                return circuitBreakers.getSnapshots();
+            case CONCURRENCY_LIMITS:
+                return concurrencyLimits.getSnapshots();
+            case BULKHEADS:
+                return bulkheads.getSnapshots();
+            default:
+                // Returning null lets the endpoint respond with 404.
+                return null;
+        }
+    }
+
+    @ReadOperation
+    public Object resilience(@Selector String kind, @Selector String name) {
+        var snapshots = resilience(kind);
+        return snapshots != null ? snapshots.get(name) : null;
+    }
+}
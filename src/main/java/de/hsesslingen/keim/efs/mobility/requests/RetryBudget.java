@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of retries to a ratio of the number of requests, so
+ * retries can not multiply the load on a remote service that is already
+ * struggling.
+ * <p>
+ * Each request deposits {@code ratio} tokens, each retry withdraws one token.
+ * The balance is capped at {@code reserve} tokens, which is also the initial
+ * balance and allows short bursts of retries after a period of low traffic.
+ * <p>
+ * The {@link HedgingPolicy} uses the same mechanism to cap the number of
+ * hedged requests.
+ *
+ * @author ben
+ */
+public class RetryBudget {
+
+    /**
+     * Tokens are counted in thousandths to support fractional ratios.
+     */
+    private static final long SCALE = 1000;
+
+    private static volatile RetryBudget defaultBudget;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    /**
+     * Creates a new budget.
+     *
+     * @param ratio The maximum ratio of retries to requests, e.g. 0.1 for one
+     * retry per ten requests.
+     * @param reserve The maximum number of retries that can be saved up.
+     */
+    public RetryBudget(double ratio, int reserve) {
+        if (ratio < 0 || reserve < 0) {
+            throw new IllegalArgumentException("Ratio and reserve of a retry budget must not be negative.");
+        }
+
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = Math.max(reserve, 1) * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * Returns the budget that is shared by all {@link RetryPolicy}s that do
+     * not have their own. It allows one retry per ten requests with a reserve
+     * of ten retries.
+     *
+     * @return
+     */
+    public static RetryBudget getDefault() {
+        var budget = defaultBudget;
+
+        if (budget == null) {
+            synchronized (RetryBudget.class) {
+                budget = defaultBudget;
+
+                if (budget == null) {
+                    budget = new RetryBudget(0.1, 10);
+                    defaultBudget = budget;
+                }
+            }
+        }
+
+        return budget;
+    }
+
+    /**
+     * Replaces the budget that is shared by all {@link RetryPolicy}s that do
+     * not have their own.
+     *
+     * @param budget
+     */
+    public static void setDefault(RetryBudget budget) {
+        defaultBudget = budget;
+    }
+
+    /**
+     * Records a request.
+     */
+    public void deposit() {
+        balance.accumulateAndGet(deposit, (current, add) -> Math.min(capacity, current + add));
+    }
+
+    /**
+     * Withdraws one token for a retry, if available.
+     *
+     * @return Whether the retry may be made.
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+
+            if (current < SCALE) {
+                return false;
+            }
+
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The number of retries that can currently be made.
+     *
+     * @return
+     */
+    public long getAvailable() {
+        return balance.get() / SCALE;
+    }
+}
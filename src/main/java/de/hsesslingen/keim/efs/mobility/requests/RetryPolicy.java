@@ -0,0 +1,478 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Retries requests that failed for transient reasons, i.e. because the remote
+ * service could not be reached or responded with 429, 502, 503 or 504. Set it
+ * on a {@link MiddlewareRequestTemplate} using
+ * {@link MiddlewareRequestTemplate#setRetryPolicy(RetryPolicy)} or on a single
+ * request using {@link MiddlewareRequest#retryPolicy(RetryPolicy)}.
+ * <p>
+ * By default only idempotent methods are retried. The delay between attempts
+ * is taken from the {@code Retry-After} header of the response, if present,
+ * and otherwise calculated using exponential backoff with decorrelated jitter.
+ * All retries are subject to a {@link RetryBudget}.
+ * <p>
+ * Retries only resend the request. Credentials and request adapters are not
+ * applied again. If the request has a timeout, no retry is made that would
+ * start after the timeout elapsed, counted from the first attempt.
+ * <p>
+ * Synchronous requests wait for the backoff on the calling thread. Requests
+ * sent with {@link MiddlewareRequest#goAsync()} do not block an executor
+ * thread while waiting: the next attempt is started by
+ * {@link MiddlewareRequestExecutors#getScheduler()} once the delay elapsed
+ * and handed to the executor again. Either way, the retries only pass the
+ * interceptors after this policy, see
+ * {@link MiddlewareRequestInterceptor#RETRY_ORDER}.
+ * <p>
+ * The settings may be changed while requests are sent. Each request uses the
+ * settings that were current when it started.
+ *
+ * @author ben
+ */
+public class RetryPolicy implements AsyncMiddlewareRequestInterceptor, Ordered {
+
+    private static final Logger logger = getLogger(RetryPolicy.class);
+
+    private volatile int maxAttempts = 3;
+    private volatile Duration baseDelay = Duration.ofMillis(100);
+    private volatile Duration maxDelay = Duration.ofSeconds(5);
+    private volatile Duration maxRetryAfter = Duration.ofSeconds(10);
+    private volatile Set<HttpMethod> methods = Collections.unmodifiableSet(EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE));
+    private volatile RetryBudget budget;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of attempts, including the first one. Defaults
+     * to 3.
+     *
+     * @param maxAttempts
+     * @return
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public Duration getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * Sets the minimum delay between two attempts. Defaults to 100 ms.
+     *
+     * @param baseDelay
+     * @return
+     */
+    public RetryPolicy setBaseDelay(Duration baseDelay) {
+        this.baseDelay = baseDelay;
+        return this;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the maximum delay between two attempts, if the delay is not given
+     * by a {@code Retry-After} header. Defaults to 5 seconds.
+     *
+     * @param maxDelay
+     * @return
+     */
+    public RetryPolicy setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    public Duration getMaxRetryAfter() {
+        return maxRetryAfter;
+    }
+
+    /**
+     * Sets the maximum delay requested by a {@code Retry-After} header that
+     * is waited for. If a remote service asks for a longer delay, the request
+     * is not retried. Defaults to 10 seconds.
+     *
+     * @param maxRetryAfter
+     * @return
+     */
+    public RetryPolicy setMaxRetryAfter(Duration maxRetryAfter) {
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    public Set<HttpMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Sets the methods of the requests that are retried. Defaults to the
+     * idempotent methods GET, HEAD, OPTIONS, PUT and DELETE.
+     *
+     * @param methods
+     * @return
+     */
+    public RetryPolicy setMethods(Set<HttpMethod> methods) {
+        this.methods = Collections.unmodifiableSet(EnumSet.copyOf(methods));
+        return this;
+    }
+
+    public RetryBudget getBudget() {
+        return budget != null ? budget : RetryBudget.getDefault();
+    }
+
+    /**
+     * Sets the budget of this policy. If none is set, the shared
+     * {@link RetryBudget#getDefault()} is used.
+     *
+     * @param budget
+     * @return
+     */
+    public RetryPolicy setBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * The total number of retries made by this policy.
+     *
+     * @return
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * The number of retries that were not made because the budget was
+     * exhausted.
+     *
+     * @return
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    @Override
+    public int getOrder() {
+        return RETRY_ORDER;
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        if (!appliesTo(request)) {
+            return execution.execute();
+        }
+
+        var attempts = start(request);
+
+        while (true) {
+            try {
+                return execution.execute();
+            } catch (RuntimeException ex) {
+                long delay = attempts.nextDelay(ex);
+
+                if (delay < 0 || !sleep(delay)) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution) {
+        if (!appliesTo(request)) {
+            return execution.executeAsync();
+        }
+
+        var result = new CompletableFuture<ResponseEntity<T>>();
+        attemptAsync(execution, start(request), result);
+
+        return result;
+    }
+
+    private <T> void attemptAsync(AsyncMiddlewareRequestExecution<T> execution, Attempts attempts, CompletableFuture<ResponseEntity<T>> result) {
+        CompletableFuture<ResponseEntity<T>> attempt;
+
+        try {
+            attempt = execution.executeAsync();
+        } catch (Throwable ex) {
+            attempt = CompletableFuture.failedFuture(ex);
+        }
+
+        attempt.whenComplete((response, ex) -> {
+            if (ex == null) {
+                result.complete(response);
+                return;
+            }
+
+            var cause = MiddlewareRequestAdapterPipeline.unwrap(ex);
+            long delay = cause instanceof RuntimeException ? attempts.nextDelay((RuntimeException) cause) : -1;
+
+            if (delay < 0) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            try {
+                // Only starts the attempt, which is handed to the executor once it reaches a synchronous interceptor.
+                MiddlewareRequestExecutors.getScheduler().schedule(
+                        () -> attemptAsync(execution, attempts, result), delay, TimeUnit.NANOSECONDS
+                );
+            } catch (RejectedExecutionException rejected) {
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * Whether requests like the given one are retried at all. Streamed
+     * requests are not, because elements of their responses might already
+     * have been consumed.
+     *
+     * @param request
+     * @return
+     */
+    boolean appliesTo(MiddlewareRequest<?> request) {
+        return methods.contains(request.method()) && !request.isStreaming();
+    }
+
+    /**
+     * Starts counting the attempts of the given request, using the current
+     * settings of this policy.
+     *
+     * @param request
+     * @return
+     */
+    Attempts start(MiddlewareRequest<?> request) {
+        return new Attempts(request);
+    }
+
+    /**
+     * The attempts of a single request. Decides whether and when the next
+     * attempt is made.
+     */
+    final class Attempts {
+
+        private final MiddlewareRequest<?> request;
+        private final RetryBudget budget;
+        private final int maxAttempts;
+        private final long baseDelay;
+        private final long maxDelay;
+        private final Duration maxRetryAfter;
+        private final long start = System.nanoTime();
+
+        private int attempt = 1;
+        private long previousDelay;
+
+        private Attempts(MiddlewareRequest<?> request) {
+            this.request = request;
+            this.budget = getBudget();
+            this.maxAttempts = RetryPolicy.this.maxAttempts;
+            this.baseDelay = RetryPolicy.this.baseDelay.toNanos();
+            this.maxDelay = RetryPolicy.this.maxDelay.toNanos();
+            this.maxRetryAfter = RetryPolicy.this.maxRetryAfter;
+            this.previousDelay = baseDelay;
+
+            budget.deposit();
+        }
+
+        /**
+         * Decides about a retry after the current attempt failed with the
+         * given exception. If a retry is made, it is counted and withdrawn
+         * from the budget.
+         *
+         * @param ex
+         * @return The delay before the next attempt in nanoseconds or -1 if
+         * the request must not be retried.
+         */
+        long nextDelay(RuntimeException ex) {
+            if (attempt >= maxAttempts || !isRetryable(ex)) {
+                return -1;
+            }
+
+            long delay = retryAfter(ex, maxRetryAfter);
+
+            if (delay == Long.MAX_VALUE) {
+                logger.debug("Not retrying {} {}, remote service asked to wait longer than {} ms.", request.method(), request.expandUri(), maxRetryAfter.toMillis());
+                return -1;
+            }
+
+            if (delay < 0) {
+                previousDelay = jitter(baseDelay, maxDelay, previousDelay);
+                delay = previousDelay;
+            }
+
+            var timeout = request.timeout();
+
+            if (timeout != null && System.nanoTime() + delay - start >= timeout.toNanos()) {
+                return -1;
+            }
+
+            var deadline = request.deadline();
+
+            if (deadline != null && delay >= deadline.remaining().toNanos()) {
+                return -1;
+            }
+
+            if (!budget.tryWithdraw()) {
+                budgetExhausted.increment();
+                logger.debug("Not retrying {} {}, retry budget exhausted.", request.method(), request.expandUri());
+                return -1;
+            }
+
+            retries.increment();
+            logger.debug("Retrying {} {} in {} ms after attempt {} failed: {}", request.method(), request.expandUri(), delay / 1_000_000, attempt, ex.getMessage());
+            ++attempt;
+
+            return delay;
+        }
+    }
+
+    /**
+     * Calculates the next delay using decorrelated jitter, i.e. a random value
+     * between the base delay and three times the previous delay, capped at the
+     * maximum delay. All values are in nanoseconds.
+     */
+    static long jitter(long baseDelay, long maxDelay, long previousDelay) {
+        long upper = Math.max(baseDelay + 1, Math.min(maxDelay, previousDelay * 3));
+
+        return Math.min(maxDelay, ThreadLocalRandom.current().nextLong(baseDelay, upper));
+    }
+
+    /**
+     * Tells whether the given exception is caused by a transient failure.
+     *
+     * @param ex
+     * @return
+     */
+    public static boolean isRetryable(Throwable ex) {
+        if (ex instanceof ResourceAccessException) {
+            return true;
+        }
+
+        if (ex instanceof RemoteMiddlewareException) {
+            var remote = (RemoteMiddlewareException) ex;
+            var status = remote.getStatus();
+
+            if (DEADLINE_EXCEEDED_ERROR_CODE.equals(remote.getCode())) {
+                // The budget of the original caller is used up, another attempt would fail as well.
+                return false;
+            }
+
+            return status == HttpStatus.TOO_MANY_REQUESTS
+                    || status == HttpStatus.BAD_GATEWAY
+                    || status == HttpStatus.SERVICE_UNAVAILABLE
+                    || status == HttpStatus.GATEWAY_TIMEOUT;
+        }
+
+        // Other exceptions were raised locally, e.g. by an open circuit breaker.
+        return false;
+    }
+
+    /**
+     * Returns the delay requested by the {@code Retry-After} header of the
+     * error response in nanoseconds, -1 if there is none or
+     * {@link Long#MAX_VALUE} if it is longer than the given maximum. The
+     * delay is compared before it is converted, so huge values do not
+     * overflow.
+     */
+    static long retryAfter(RuntimeException ex, Duration maxRetryAfter) {
+        if (!(ex instanceof RemoteMiddlewareException)) {
+            return -1;
+        }
+
+        var headers = ((RemoteMiddlewareException) ex).getHeaders();
+        var value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+
+        var trimmed = value.trim();
+
+        if (isDigits(trimmed)) {
+            // Too many digits for a long is longer than any maximum.
+            long seconds = trimmed.length() > 18 ? Long.MAX_VALUE : Long.parseLong(trimmed);
+            return seconds > maxRetryAfter.toSeconds() ? Long.MAX_VALUE : Duration.ofSeconds(seconds).toNanos();
+        }
+
+        // Not delta-seconds, try HTTP date.
+        try {
+            long millis = Math.max(0, headers.getFirstDate(HttpHeaders.RETRY_AFTER) - System.currentTimeMillis());
+            return millis > maxRetryAfter.toMillis() ? Long.MAX_VALUE : Duration.ofMillis(millis).toNanos();
+        } catch (IllegalArgumentException ex1) {
+            return -1;
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return !value.isEmpty();
+    }
+
+    private static boolean sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
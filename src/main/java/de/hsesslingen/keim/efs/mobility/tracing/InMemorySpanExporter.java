@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the most recently ended spans in memory, e.g. to inspect them in a
+ * debugger or an actuator endpoint. Older spans are dropped once the capacity
+ * is reached, so memory usage stays bounded.
+ *
+ * @author ben
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final Span[] spans;
+    private int next;
+    private int size;
+    private long exported;
+
+    public InMemorySpanExporter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InMemorySpanExporter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+
+        this.spans = new Span[capacity];
+    }
+
+    @Override
+    public synchronized void export(Span span) {
+        spans[next] = span;
+        next = (next + 1) % spans.length;
+        size = Math.min(size + 1, spans.length);
+        ++exported;
+    }
+
+    /**
+     * The retained spans, oldest first.
+     *
+     * @return
+     */
+    public synchronized List<Span> getSpans() {
+        var result = new ArrayList<Span>(size);
+        int first = (next - size + spans.length) % spans.length;
+
+        for (int i = 0; i < size; ++i) {
+            result.add(spans[(first + i) % spans.length]);
+        }
+
+        return result;
+    }
+
+    /**
+     * The retained spans of the given trace, oldest first.
+     *
+     * @param traceId
+     * @return
+     */
+    public List<Span> getSpans(String traceId) {
+        var result = getSpans();
+        result.removeIf(span -> !span.getTraceId().equals(traceId));
+        return result;
+    }
+
+    /**
+     * @return The number of spans exported so far, including dropped ones.
+     */
+    public synchronized long getExportedCount() {
+        return exported;
+    }
+
+    public int getCapacity() {
+        return spans.length;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(spans, null);
+        next = 0;
+        size = 0;
+    }
+}
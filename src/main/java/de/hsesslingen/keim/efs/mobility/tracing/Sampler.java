@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a new trace is recorded. The decision is made once, at the
+ * head of the trace, and is propagated with the trace context, so all
+ * services record either the complete trace or nothing of it. Requests that
+ * carry a {@code traceparent} therefore keep the decision of the caller and
+ * are not passed to the sampler.
+ *
+ * @author ben
+ */
+@FunctionalInterface
+public interface Sampler {
+
+    /**
+     * Decides whether a new trace is recorded.
+     *
+     * @param name The name of the root span.
+     * @return
+     */
+    public boolean shouldSample(String name);
+
+    /**
+     * A sampler that records all traces.
+     *
+     * @return
+     */
+    public static Sampler always() {
+        return name -> true;
+    }
+
+    /**
+     * A sampler that records no traces.
+     *
+     * @return
+     */
+    public static Sampler never() {
+        return name -> false;
+    }
+
+    /**
+     * A sampler that records the given fraction of all traces.
+     *
+     * @param probability Between 0 and 1.
+     * @return
+     */
+    public static Sampler probability(double probability) {
+        if (probability <= 0) {
+            return never();
+        }
+
+        if (probability >= 1) {
+            return always();
+        }
+
+        return name -> ThreadLocalRandom.current().nextDouble() < probability;
+    }
+
+    /**
+     * A sampler that records at most the given number of traces per second,
+     * evenly spaced, regardless of the load.
+     *
+     * @param tracesPerSecond
+     * @return
+     */
+    public static Sampler rateLimited(double tracesPerSecond) {
+        if (tracesPerSecond <= 0) {
+            return never();
+        }
+
+        long intervalNanos = (long) (1_000_000_000L / tracesPerSecond);
+        var next = new AtomicLong(System.nanoTime());
+
+        return name -> {
+            long now = System.nanoTime();
+            long allowed = next.get();
+
+            // Only one of the threads that see an elapsed interval wins.
+            return now - allowed >= 0 && next.compareAndSet(allowed, now + intervalNanos);
+        };
+    }
+
+    /**
+     * A sampler that records a trace only if both this and the given sampler
+     * do. The other sampler is only asked if this one agrees, so e.g.
+     * {@code probability(0.1).and(rateLimited(10))} records 10 % of all
+     * traces, but at most 10 per second.
+     *
+     * @param other
+     * @return
+     */
+    public default Sampler and(Sampler other) {
+        return name -> shouldSample(name) && other.shouldSample(name);
+    }
+}
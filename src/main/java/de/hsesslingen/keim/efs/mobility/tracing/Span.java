@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed operation within a trace, e.g. the handling of an incoming request
+ * or a request sent to another service. Spans are created by the
+ * {@link Tracer} and passed to its {@link SpanExporter} when they end.
+ * <p>
+ * Only spans of sampled traces are recorded. For all others the tracer hands
+ * out {@link #NOOP}, whose methods do nothing, so instrumented code does not
+ * have to check the sampling decision itself.
+ *
+ * @author ben
+ */
+public class Span implements AutoCloseable {
+
+    public enum Kind {
+        /**
+         * Handling of an incoming request.
+         */
+        SERVER,
+        /**
+         * A request sent to another service.
+         */
+        CLIENT,
+        /**
+         * An operation within this service.
+         */
+        INTERNAL
+    }
+
+    /**
+     * The span handed out for traces that are not sampled.
+     */
+    public static final Span NOOP = new Span();
+
+    private final SpanExporter exporter;
+    private final TraceContext context;
+    private final String parentSpanId;
+    private final String name;
+    private final Kind kind;
+    private final long startEpochMicros;
+    private final long startNanos;
+
+    private Map<String, String> attributes;
+    private boolean error;
+    private volatile long durationNanos = -1;
+
+    private Span() {
+        this.exporter = null;
+        this.context = null;
+        this.parentSpanId = null;
+        this.name = null;
+        this.kind = null;
+        this.startEpochMicros = 0;
+        this.startNanos = 0;
+    }
+
+    Span(SpanExporter exporter, TraceContext context, String parentSpanId, String name, Kind kind) {
+        this.exporter = exporter;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.startEpochMicros = System.currentTimeMillis() * 1000;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Whether this span is recorded, i.e. is not {@link #NOOP}. Can be used
+     * to skip computing expensive attributes.
+     *
+     * @return
+     */
+    public boolean isRecording() {
+        return this != NOOP;
+    }
+
+    /**
+     * Sets an attribute of this span, e.g. the HTTP status.
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public synchronized Span setAttribute(String key, Object value) {
+        if (this != NOOP && value != null) {
+            if (attributes == null) {
+                attributes = new LinkedHashMap<>(8);
+            }
+
+            attributes.put(key, value.toString());
+        }
+
+        return this;
+    }
+
+    /**
+     * Marks this span as failed.
+     *
+     * @param ex The cause, which is recorded as attributes.
+     * @return
+     */
+    public synchronized Span recordError(Throwable ex) {
+        if (this != NOOP) {
+            error = true;
+
+            if (ex != null) {
+                setAttribute("error.type", ex.getClass().getName());
+                setAttribute("error.message", ex.getMessage());
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Marks this span as failed without a cause, e.g. because of an error
+     * response.
+     *
+     * @return
+     */
+    public synchronized Span markError() {
+        if (this != NOOP) {
+            error = true;
+        }
+
+        return this;
+    }
+
+    /**
+     * Ends this span and passes it to the exporter. Calling this method more
+     * than once has no effect.
+     */
+    public void end() {
+        if (this == NOOP) {
+            return;
+        }
+
+        synchronized (this) {
+            if (durationNanos >= 0) {
+                return;
+            }
+
+            durationNanos = System.nanoTime() - startNanos;
+        }
+
+        exporter.export(this);
+    }
+
+    /**
+     * Same as {@link #end()}, to be used in try-with-resources blocks.
+     */
+    @Override
+    public void close() {
+        end();
+    }
+
+    /**
+     * The context of this span, which is propagated to requests sent within
+     * it.
+     *
+     * @return The context or {@code null} for {@link #NOOP}.
+     */
+    public TraceContext getContext() {
+        return context;
+    }
+
+    public String getTraceId() {
+        return context != null ? context.getTraceId() : null;
+    }
+
+    public String getSpanId() {
+        return context != null ? context.getSpanId() : null;
+    }
+
+    /**
+     * @return The ID of the parent span or {@code null} if this span is the
+     * root of its trace.
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The wall clock time this span started at, in microseconds since
+     * the epoch.
+     */
+    public long getStartEpochMicros() {
+        return startEpochMicros;
+    }
+
+    /**
+     * @return The duration of this span or {@code -1} if it has not ended yet.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public synchronized boolean isError() {
+        return error;
+    }
+
+    public synchronized Map<String, String> getAttributes() {
+        return attributes != null ? Collections.unmodifiableMap(new LinkedHashMap<>(attributes)) : Map.of();
+    }
+
+    @Override
+    public String toString() {
+        if (this == NOOP) {
+            return "Span[NOOP]";
+        }
+
+        return "Span[" + kind + " " + name + ", trace " + getTraceId() + ", span " + getSpanId()
+                + ", parent " + parentSpanId + ", " + durationNanos / 1000 + "us" + (isError() ? ", error" : "") + "]";
+    }
+}
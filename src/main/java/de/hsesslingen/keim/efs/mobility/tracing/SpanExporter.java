@@ -0,0 +1,50 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+/**
+ * Receives the spans of sampled traces once they ended, e.g. to send them to
+ * a tracing backend. Exporters are called on the thread that ended the span,
+ * so they should not block; exporters that send spans over the network should
+ * buffer them and send them in batches on their own thread.
+ * <p>
+ * If a bean of this type is present, the auto configuration uses it,
+ * otherwise spans are only kept by an {@link InMemorySpanExporter} if one is
+ * configured, or not recorded at all.
+ *
+ * @author ben
+ */
+@FunctionalInterface
+public interface SpanExporter {
+
+    /**
+     * Drops all spans. Tracers with this exporter do not create spans at all,
+     * they only propagate the trace context.
+     */
+    public static final SpanExporter NONE = span -> {
+    };
+
+    public void export(Span span);
+
+}
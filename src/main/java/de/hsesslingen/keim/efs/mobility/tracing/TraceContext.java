@@ -0,0 +1,247 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The identity of a span as propagated in the W3C {@code traceparent} and
+ * {@code tracestate} headers (see https://www.w3.org/TR/trace-context/). The
+ * context of the span that is currently active on a thread is bound to it by
+ * the {@link TracingFilter} and the {@link Tracer}, so that outgoing requests
+ * can continue the trace.
+ * <p>
+ * Contexts are immutable. The {@code tracestate} of the caller is passed on
+ * unchanged.
+ *
+ * @author ben
+ */
+public final class TraceContext {
+
+    public static final String TRACEPARENT_HEADER = "traceparent";
+    public static final String TRACESTATE_HEADER = "tracestate";
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+    private static final String INVALID_SPAN_ID = "0000000000000000";
+
+    private final String traceId;
+    private final String spanId;
+    private final boolean sampled;
+    private final String traceState;
+
+    private TraceContext(String traceId, String spanId, boolean sampled, String traceState) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+        this.traceState = traceState;
+    }
+
+    /**
+     * Starts a new trace.
+     *
+     * @param sampled Whether the spans of the trace are recorded.
+     * @return
+     */
+    public static TraceContext newRoot(boolean sampled) {
+        var random = ThreadLocalRandom.current();
+        long high;
+        long low;
+
+        do {
+            high = random.nextLong();
+            low = random.nextLong();
+        } while (high == 0 && low == 0);
+
+        return new TraceContext(hex(high) + hex(low), newSpanId(), sampled, null);
+    }
+
+    /**
+     * Parses the W3C headers of an incoming request.
+     *
+     * @param traceparent
+     * @param tracestate
+     * @return The context or {@code null} if the {@code traceparent} is
+     * missing or invalid, in which case a new trace should be started.
+     */
+    public static TraceContext fromHeaders(String traceparent, String tracestate) {
+        // version "-" trace-id "-" parent-id "-" trace-flags, later versions may append fields.
+        if (traceparent == null || traceparent.length() < 55) {
+            return null;
+        }
+
+        var value = traceparent.trim();
+
+        if (value.length() < 55
+                || value.charAt(2) != '-' || value.charAt(35) != '-' || value.charAt(52) != '-'
+                || (value.length() > 55 && value.charAt(55) != '-')
+                || value.startsWith("ff")
+                || !isHex(value, 0, 2) || !isHex(value, 3, 35) || !isHex(value, 36, 52) || !isHex(value, 53, 55)) {
+            return null;
+        }
+
+        // Version 00 must not carry additional fields.
+        if (value.startsWith("00") && value.length() != 55) {
+            return null;
+        }
+
+        var traceId = value.substring(3, 35);
+        var spanId = value.substring(36, 52);
+
+        if (traceId.equals(INVALID_TRACE_ID) || spanId.equals(INVALID_SPAN_ID)) {
+            return null;
+        }
+
+        boolean sampled = (Character.digit(value.charAt(54), 16) & 1) != 0;
+        var state = tracestate == null || tracestate.isBlank() ? null : tracestate.trim();
+
+        return new TraceContext(traceId, spanId, sampled, state);
+    }
+
+    /**
+     * The context bound to the current thread, usually the one of the span of
+     * the incoming request that is being handled.
+     *
+     * @return The context or {@code null} if there is none.
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the given context to the current thread.
+     *
+     * @param context The context or {@code null} to remove it.
+     * @return The previously bound context, which should be restored
+     * afterwards.
+     */
+    public static TraceContext setCurrent(TraceContext context) {
+        var previous = CURRENT.get();
+
+        if (context != null) {
+            CURRENT.set(context);
+        } else {
+            CURRENT.remove();
+        }
+
+        return previous;
+    }
+
+    /**
+     * A context for a child span in the same trace, with the same sampling
+     * decision.
+     *
+     * @return
+     */
+    public TraceContext newChild() {
+        return new TraceContext(traceId, newSpanId(), sampled, traceState);
+    }
+
+    /**
+     * A context for a child span in the same trace, with the given sampling
+     * decision.
+     *
+     * @param sampled
+     * @return
+     */
+    public TraceContext newChild(boolean sampled) {
+        return new TraceContext(traceId, newSpanId(), sampled, traceState);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * The {@code tracestate} of the caller.
+     *
+     * @return The value or {@code null} if none was sent.
+     */
+    public String getTraceState() {
+        return traceState;
+    }
+
+    /**
+     * The value of the {@link #TRACEPARENT_HEADER} for requests sent in this
+     * context.
+     *
+     * @return
+     */
+    public String toTraceparent() {
+        return new StringBuilder(55)
+                .append("00-").append(traceId)
+                .append('-').append(spanId)
+                .append(sampled ? "-01" : "-00")
+                .toString();
+    }
+
+    @Override
+    public String toString() {
+        return toTraceparent();
+    }
+
+    private static String newSpanId() {
+        var random = ThreadLocalRandom.current();
+        long id;
+
+        do {
+            id = random.nextLong();
+        } while (id == 0);
+
+        return hex(id);
+    }
+
+    private static String hex(long value) {
+        var chars = new char[16];
+
+        for (int i = 15; i >= 0; --i) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+
+        return new String(chars);
+    }
+
+    private static boolean isHex(String value, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            char c = value.charAt(i);
+
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import java.util.Objects;
+
+/**
+ * Creates the spans of this service and decides which traces are recorded.
+ * The {@link TracingFilter} starts a span for each incoming request, which
+ * either continues the trace of the caller or starts a new one, and the
+ * {@link TracingRequestAdapter} starts a span for each request sent to
+ * another service.
+ * <p>
+ * New traces are sampled by the {@link Sampler}, by default 10 % of all
+ * traces, but at most 10 per second. The spans of sampled traces are passed to
+ * the {@link SpanExporter}. Without an exporter, which is the default, no spans
+ * are created and only the trace context is propagated. Traces that are not
+ * sampled are still propagated, so that the services further down keep the
+ * decision, but no spans are created for them.
+ * <p>
+ * The default tracer is configured by the auto configuration using the
+ * properties prefixed with {@code efs.tracing}.
+ *
+ * @author ben
+ */
+public class Tracer {
+
+    private static volatile Tracer defaultTracer;
+
+    private volatile boolean enabled = true;
+    private volatile Sampler sampler;
+    private volatile SpanExporter exporter;
+
+    public Tracer() {
+        this(Sampler.probability(0.1).and(Sampler.rateLimited(10)), SpanExporter.NONE);
+    }
+
+    public Tracer(Sampler sampler, SpanExporter exporter) {
+        this.sampler = Objects.requireNonNull(sampler);
+        this.exporter = Objects.requireNonNull(exporter);
+    }
+
+    /**
+     * The tracer used by the {@link TracingFilter} and the request templates.
+     * If none has been set, a tracer with the default settings is created.
+     *
+     * @return
+     */
+    public static Tracer getDefault() {
+        var tracer = defaultTracer;
+
+        if (tracer == null) {
+            synchronized (Tracer.class) {
+                tracer = defaultTracer;
+
+                if (tracer == null) {
+                    tracer = new Tracer();
+                    defaultTracer = tracer;
+                }
+            }
+        }
+
+        return tracer;
+    }
+
+    public static void setDefault(Tracer tracer) {
+        defaultTracer = tracer;
+    }
+
+    /**
+     * Removes the given tracer if it is the default, so that it no longer
+     * passes spans to the exporter of an application context that was closed.
+     *
+     * @param tracer
+     */
+    public static void clearDefault(Tracer tracer) {
+        synchronized (Tracer.class) {
+            if (defaultTracer == tracer) {
+                defaultTracer = null;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Disables or enables tracing. A disabled tracer neither propagates trace
+     * contexts nor creates spans.
+     *
+     * @param enabled
+     * @return
+     */
+    public Tracer setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    public Tracer setSampler(Sampler sampler) {
+        this.sampler = Objects.requireNonNull(sampler);
+        return this;
+    }
+
+    public SpanExporter getExporter() {
+        return exporter;
+    }
+
+    public Tracer setExporter(SpanExporter exporter) {
+        this.exporter = Objects.requireNonNull(exporter);
+        return this;
+    }
+
+    /**
+     * The context for a new span. Continues the trace of the given parent
+     * context, keeping its sampling decision, or starts a new trace if there
+     * is no parent, asking the {@link Sampler} whether it is recorded.
+     *
+     * @param parent The parent context or {@code null}.
+     * @param name The name of the new span.
+     * @return
+     */
+    public TraceContext newContext(TraceContext parent, String name) {
+        return newContext(parent, name, true);
+    }
+
+    /**
+     * The context for a new span, like
+     * {@link #newContext(TraceContext, String)}. If the parent comes from a
+     * caller that is not trusted, its decision to record the trace is checked
+     * by the {@link Sampler} as well, so that callers cannot bypass it.
+     * Traces that the caller does not record are not recorded either.
+     *
+     * @param parent The parent context or {@code null}.
+     * @param name The name of the new span.
+     * @param trusted Whether the sampling decision of the parent is kept.
+     * @return
+     */
+    public TraceContext newContext(TraceContext parent, String name, boolean trusted) {
+        if (parent == null) {
+            return TraceContext.newRoot(sampler.shouldSample(name));
+        }
+
+        if (!trusted && parent.isSampled()) {
+            return parent.newChild(sampler.shouldSample(name));
+        }
+
+        return parent.newChild();
+    }
+
+    /**
+     * Starts a span with the given context, which has been created by
+     * {@link #newContext(TraceContext, String)}.
+     *
+     * @param name
+     * @param kind
+     * @param context
+     * @param parent The parent context or {@code null} if the span is the root
+     * of its trace.
+     * @return The span or {@link Span#NOOP} if the trace is not sampled or
+     * there is no exporter.
+     */
+    public Span startSpan(String name, Span.Kind kind, TraceContext context, TraceContext parent) {
+        if (!enabled || !context.isSampled() || exporter == SpanExporter.NONE) {
+            return Span.NOOP;
+        }
+
+        return new Span(exporter, context, parent != null ? parent.getSpanId() : null, name, kind);
+    }
+
+    /**
+     * Starts a child span of the context bound to the current thread. Does not
+     * start a new trace if there is none.
+     *
+     * @param name
+     * @param kind
+     * @return The span or {@link Span#NOOP} if there is no context or the
+     * trace is not sampled.
+     */
+    public Span startSpan(String name, Span.Kind kind) {
+        var parent = TraceContext.current();
+
+        if (!enabled || parent == null || !parent.isSampled()) {
+            return Span.NOOP;
+        }
+
+        return startSpan(name, kind, parent.newChild(), parent);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import de.hsesslingen.keim.efs.mobility.config.TracingProperties;
+import static de.hsesslingen.keim.efs.mobility.tracing.TraceContext.TRACEPARENT_HEADER;
+import static de.hsesslingen.keim.efs.mobility.tracing.TraceContext.TRACESTATE_HEADER;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Reads the W3C {@code traceparent} and {@code tracestate} headers of incoming
+ * requests, starts a {@link Span.Kind#SERVER} span for the handling of the
+ * request and binds its {@link TraceContext} to the handling thread, so that
+ * outgoing {@link de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest}s
+ * continue the trace.
+ * <p>
+ * Requests without a valid {@code traceparent} start a new trace, which is
+ * recorded if the {@link Sampler} of the {@link Tracer} decides so. The same
+ * applies to recorded traces of callers that are not listed in
+ * {@code efs.tracing.trusted-addresses}, so that callers cannot bypass the
+ * sampler. For traces that are not recorded only the context is bound, no
+ * span is created.
+ * <p>
+ * Registered by the auto configuration if {@code efs.tracing.filter-enabled}
+ * is true.
+ *
+ * @author ben
+ */
+public class TracingFilter extends OncePerRequestFilter implements Ordered {
+
+    private final Tracer tracer;
+    private final TracingProperties properties;
+
+    public TracingFilter(Tracer tracer, TracingProperties properties) {
+        this.tracer = tracer;
+        this.properties = properties;
+    }
+
+    @Override
+    public int getOrder() {
+        // Before the deadline filter, so that rejected requests are traced as well.
+        return Ordered.HIGHEST_PRECEDENCE + 5;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        if (!tracer.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        var parent = TraceContext.fromHeaders(request.getHeader(TRACEPARENT_HEADER), request.getHeader(TRACESTATE_HEADER));
+        var context = tracer.newContext(parent, request.getRequestURI(), isTrusted(request));
+        var span = context.isSampled()
+                ? tracer.startSpan(request.getMethod() + " " + request.getRequestURI(), Span.Kind.SERVER, context, parent)
+                : Span.NOOP;
+
+        var previous = TraceContext.setCurrent(context);
+
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException | Error ex) {
+            span.recordError(ex);
+            throw ex;
+        } finally {
+            TraceContext.setCurrent(previous);
+
+            if (span.isRecording()) {
+                span.setAttribute("http.method", request.getMethod());
+                span.setAttribute("http.target", request.getRequestURI());
+                span.setAttribute("http.status_code", response.getStatus());
+
+                if (response.getStatus() >= 500) {
+                    span.markError();
+                }
+
+                span.end();
+            }
+        }
+    }
+
+    private boolean isTrusted(HttpServletRequest request) {
+        var trusted = properties.getTrustedAddresses();
+        return trusted != null && trusted.contains(request.getRemoteAddr());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.requests.AsyncMiddlewareRequestExecution;
+import de.hsesslingen.keim.efs.mobility.requests.AsyncMiddlewareRequestInterceptor;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestAdapter;
+import de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestExecution;
+import de.hsesslingen.keim.efs.mobility.requests.ReactiveMiddlewareRequest;
+import static de.hsesslingen.keim.efs.mobility.tracing.TraceContext.TRACEPARENT_HEADER;
+import static de.hsesslingen.keim.efs.mobility.tracing.TraceContext.TRACESTATE_HEADER;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.springframework.core.Ordered;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Propagates the trace context of the calling thread to outgoing requests in
+ * the W3C {@code traceparent} and {@code tracestate} headers and records a
+ * {@link Span.Kind#CLIENT} span around the sending of each request, covering
+ * all its attempts.
+ * <p>
+ * The context is taken when the request adapters are called, i.e. on the
+ * calling thread, so requests sent using
+ * {@link MiddlewareRequest#goAsync()} are traced as well. If the calling
+ * thread has no context, e.g. in scheduled jobs, a new trace is started. The
+ * span itself is only started once the request is sent, so requests that fail
+ * before, e.g. in another adapter, do not leave unfinished spans behind.
+ * <p>
+ * This class is both a {@link MiddlewareRequestAdapter} and a
+ * {@link de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestInterceptor}
+ * and has to be registered as both, which
+ * {@link de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestTemplate#enableTracing(TracingRequestAdapter)}
+ * does. Reactive requests do not use interceptors, so only the headers are
+ * added to them.
+ *
+ * @author ben
+ */
+public class TracingRequestAdapter implements MiddlewareRequestAdapter, AsyncMiddlewareRequestInterceptor, Ordered {
+
+    private static final String CONTEXT_ATTRIBUTE = TracingRequestAdapter.class.getName() + ".context";
+    private static final String PARENT_ATTRIBUTE = TracingRequestAdapter.class.getName() + ".parent";
+
+    private final Tracer tracer;
+
+    public TracingRequestAdapter(Tracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer);
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    @Override
+    public Phase phase() {
+        return Phase.TRACING;
+    }
+
+    @Override
+    public int getOrder() {
+        return TRACING_ORDER;
+    }
+
+    @Override
+    public void adapt(MiddlewareRequest<?> request) {
+        if (!tracer.isEnabled()) {
+            return;
+        }
+
+        var parent = TraceContext.current();
+        var method = request.method() != null ? request.method().name() : "REQUEST";
+        var context = tracer.newContext(parent, method);
+
+        // Remote APIs outside of the middleware do not get the trace context, the span is recorded anyway.
+        if (request.sendsInternalHeaders()) {
+            request.header(TRACEPARENT_HEADER, context.toTraceparent());
+
+            if (context.getTraceState() != null) {
+                request.header(TRACESTATE_HEADER, context.getTraceState());
+            }
+        }
+
+        if (context.isSampled() && !(request instanceof ReactiveMiddlewareRequest)) {
+            request.attribute(CONTEXT_ATTRIBUTE, context);
+            request.attribute(PARENT_ATTRIBUTE, parent);
+        }
+    }
+
+    @Override
+    public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+        TraceContext context = request.attribute(CONTEXT_ATTRIBUTE);
+
+        if (context == null) {
+            return execution.execute();
+        }
+
+        var span = startSpan(request, context);
+
+        try {
+            var response = execution.execute();
+            span.setAttribute("http.status_code", response.getStatusCodeValue());
+            return response;
+        } catch (RuntimeException | Error ex) {
+            recordError(span, ex);
+            throw ex;
+        } finally {
+            span.end();
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution) {
+        TraceContext context = request.attribute(CONTEXT_ATTRIBUTE);
+
+        if (context == null) {
+            return execution.executeAsync();
+        }
+
+        var span = startSpan(request, context);
+        CompletableFuture<ResponseEntity<T>> result;
+
+        try {
+            result = execution.executeAsync();
+        } catch (RuntimeException | Error ex) {
+            recordError(span, ex);
+            span.end();
+            throw ex;
+        }
+
+        return result.whenComplete((response, ex) -> {
+            if (ex == null) {
+                span.setAttribute("http.status_code", response.getStatusCodeValue());
+            } else {
+                recordError(span, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+
+            span.end();
+        });
+    }
+
+    private Span startSpan(MiddlewareRequest<?> request, TraceContext context) {
+        var method = request.method() != null ? request.method().name() : "REQUEST";
+        var remote = request.remoteId();
+        var span = tracer.startSpan(remote != null ? method + " " + remote : method, Span.Kind.CLIENT, context, request.attribute(PARENT_ATTRIBUTE));
+
+        span.setAttribute("http.method", request.method());
+        span.setAttribute("peer.service", request.remoteId());
+        // Only the path, as query parameters may carry personal data.
+        span.setAttribute("http.target", request.expandUri().getRawPath());
+
+        return span;
+    }
+
+    private static void recordError(Span span, Throwable ex) {
+        if (ex instanceof RemoteMiddlewareException) {
+            span.setAttribute("http.status_code", ((RemoteMiddlewareException) ex).getStatus().value());
+        }
+
+        if (ex instanceof MiddlewareException) {
+            span.setAttribute("efs.code", ((MiddlewareException) ex).getCode());
+        }
+
+        span.recordError(ex);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.config;
+
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Tests the caching of readers and writers by the
+ * {@link ObjectMapperRegistry}, the settings of its mappers and the handling
+ * of its default instance.
+ *
+ * @author ben
+ */
+class ObjectMapperRegistryTest {
+
+    private final ObjectMapperRegistry registry = new ObjectMapperRegistry(
+            ObjectMapperRegistry.createObjectMapper(Jackson2ObjectMapperBuilder.json(), false)
+    );
+
+    @Test
+    void readersAndWritersAreCachedPerType() {
+        assertSame(registry.reader(Item.class), registry.reader(Item.class));
+        assertSame(registry.writer(Item.class), registry.writer(Item.class));
+
+        var first = new ParameterizedTypeReference<List<Item>>() {
+        };
+        var second = new ParameterizedTypeReference<List<Item>>() {
+        };
+
+        assertSame(registry.reader(first.getType()), registry.reader(second.getType()));
+        assertNotSame(registry.reader(Item.class), registry.reader(first.getType()));
+    }
+
+    @Test
+    void readersOfGenericTypesReadElementTypes() throws Exception {
+        List<Item> items = registry.reader(new ParameterizedTypeReference<List<Item>>() {
+        }.getType()).readValue("[{\"name\":\"a\"},{\"name\":\"b\"}]");
+
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(1).name);
+    }
+
+    @Test
+    void unknownPropertiesAndEmptyBeansAreTolerated() throws Exception {
+        Item item = registry.reader(Item.class).readValue("{\"name\":\"a\",\"addedLater\":true}");
+        assertEquals("a", item.name);
+
+        assertEquals("{}", registry.writer(Empty.class).writeValueAsString(new Empty()));
+    }
+
+    @Test
+    void defaultIsClearedOnlyByItsOwner() {
+        var first = ObjectMapperRegistry.getDefault();
+        assertSame(first, ObjectMapperRegistry.getDefault());
+
+        ObjectMapperRegistry.clearDefault(registry);
+        assertSame(first, ObjectMapperRegistry.getDefault());
+
+        ObjectMapperRegistry.clearDefault(first);
+        assertNotSame(first, ObjectMapperRegistry.getDefault());
+    }
+
+    static class Item {
+
+        public String name;
+    }
+
+    static class Empty {
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.*;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import static org.springframework.http.HttpStatus.*;
+
+/**
+ * Tests the mapping of error codes to response statuses by the
+ * {@link ErrorCodeRegistry} and the registration of custom codes.
+ *
+ * @author ben
+ */
+class ErrorCodeRegistryTest {
+
+    private final ErrorCodeRegistry registry = new ErrorCodeRegistry();
+
+    @Test
+    void builtInCodesKeepTheirStatus() {
+        assertEquals(UNAUTHORIZED, registry.statusOf(TOKEN_INVALID_ERROR_CODE, null));
+        assertEquals(UNAUTHORIZED, registry.statusOf(REMOTE_AUTHENTICATION_FAILED_ERROR_CODE, null));
+        assertEquals(BAD_GATEWAY, registry.statusOf(REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE, null));
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf(REMOTE_SERVICE_REQUEST_FAILED_ERROR_CODE, null));
+        assertEquals(NOT_IMPLEMENTED, registry.statusOf(BOOKING_ACTION_NOT_SUPPORTED_ERROR_CODE, null));
+        assertEquals(GATEWAY_TIMEOUT, registry.statusOf(DEADLINE_EXCEEDED_ERROR_CODE, null));
+        assertEquals(SERVICE_UNAVAILABLE, registry.statusOf(LOCAL_SATURATED_ERROR_CODE, null));
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf(UNKNOWN_ERROR_CODE, null));
+    }
+
+    @Test
+    void statusCodesMapToTheirStatus() {
+        assertEquals(NOT_FOUND, registry.statusOf("404", null));
+        assertEquals(CONFLICT, registry.statusOf("409", null));
+
+        // Relayed unavailability of a remote service, as before the registry.
+        assertEquals(BAD_GATEWAY, registry.statusOf("503", null));
+
+        // Not registered, but still a known status value.
+        assertEquals(NOT_FOUND, registry.statusOf("0404", null));
+    }
+
+    @Test
+    void unknownCodesFallBack() {
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf("VEHICLE_NOT_FOUND", INTERNAL_SERVER_ERROR));
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf("999", INTERNAL_SERVER_ERROR));
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf("4040000000404", INTERNAL_SERVER_ERROR));
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf("", INTERNAL_SERVER_ERROR));
+        assertEquals(INTERNAL_SERVER_ERROR, registry.statusOf(null, INTERNAL_SERVER_ERROR));
+        assertNull(registry.get("VEHICLE_NOT_FOUND"));
+    }
+
+    @Test
+    void customCodesCanBeRegisteredAndReplaced() {
+        var notFound = new ErrorCode("VEHICLE_NOT_FOUND", NOT_FOUND, "The vehicle was not found.");
+        registry.register(notFound);
+
+        assertSame(notFound, registry.get("VEHICLE_NOT_FOUND"));
+        assertEquals(NOT_FOUND, registry.statusOf("VEHICLE_NOT_FOUND", INTERNAL_SERVER_ERROR));
+        assertTrue(registry.isExpected("VEHICLE_NOT_FOUND"));
+
+        registry.register(new ErrorCode("VEHICLE_NOT_FOUND", HttpStatus.GONE, "The vehicle is gone.", false));
+
+        assertEquals(GONE, registry.statusOf("VEHICLE_NOT_FOUND", INTERNAL_SERVER_ERROR));
+        assertFalse(registry.isExpected("VEHICLE_NOT_FOUND"));
+    }
+
+    @Test
+    void codesCreateErrorsAndExceptions() {
+        var code = new ErrorCode("VEHICLE_NOT_FOUND", NOT_FOUND, "The vehicle was not found.");
+
+        var error = code.toError();
+        assertEquals("VEHICLE_NOT_FOUND", error.getCode());
+        assertEquals("The vehicle was not found.", error.getMessage());
+
+        var ex = code.toException("No vehicle with id %s.", 42);
+        assertEquals("VEHICLE_NOT_FOUND", ex.getCode());
+        assertEquals("No vehicle with id 42.", ex.getMessage());
+    }
+
+    @Test
+    void expectedErrorsTakeTheirCodesFromTheRegistry() {
+        var custom = new ErrorCode("VEHICLE_LOCKED", HttpStatus.INTERNAL_SERVER_ERROR, "Locked.", true);
+        var expected = new ExpectedErrors();
+
+        ErrorCodeRegistry.setDefault(registry);
+
+        try {
+            assertFalse(expected.isExpected("VEHICLE_LOCKED"));
+
+            registry.register(custom);
+            assertTrue(expected.isExpected("VEHICLE_LOCKED"));
+            assertTrue(expected.isExpected(DEADLINE_EXCEEDED_ERROR_CODE));
+            assertFalse(expected.isExpected(REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE));
+        } finally {
+            ErrorCodeRegistry.clearDefault(registry);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import de.hsesslingen.keim.efs.mobility.config.ExceptionProperties;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.TOKEN_INVALID_ERROR_CODE;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Tests which exceptions are created without a stack trace once the stackless
+ * mode of {@link ExpectedErrors} is enabled, and that their messages are
+ * formatted lazily.
+ *
+ * @author ben
+ */
+class ExpectedErrorsTest {
+
+    private final ExpectedErrors expected = new ExpectedErrors();
+
+    @AfterEach
+    void clear() {
+        ExpectedErrors.clearDefault(expected);
+    }
+
+    @Test
+    void stackTracesAreFilledInByDefault() {
+        ExpectedErrors.setDefault(expected);
+
+        var first = MiddlewareException.tokenInvalidException();
+
+        assertTrue(first.getStackTrace().length > 0);
+        assertNotSame(first, MiddlewareException.tokenInvalidException());
+    }
+
+    @Test
+    void expectedErrorsAreStacklessOnceEnabled() {
+        ExpectedErrors.setDefault(expected.setStackless(true));
+
+        assertEquals(0, MiddlewareException.tokenInvalidException("Token of %s expired.", "alice").getStackTrace().length);
+        assertEquals(0, MiddlewareException.deadlineExceededException("Too late.").getStackTrace().length);
+        assertEquals(0, new HttpException(HttpStatus.NOT_FOUND, "Not found.").getStackTrace().length);
+
+        // Failures of the infrastructure keep their stack trace.
+        assertTrue(MiddlewareException.remoteServiceUnavailableException("Down.").getStackTrace().length > 0);
+        assertTrue(MiddlewareException.unknownException("Bug.").getStackTrace().length > 0);
+        assertTrue(new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, "Bug.").getStackTrace().length > 0);
+    }
+
+    @Test
+    void configuredCodesAreExpected() {
+        var properties = new ExceptionProperties();
+        properties.setStacklessExpectedErrors(true);
+        properties.setExpectedCodes(List.of("VEHICLE_NOT_FOUND"));
+
+        ExpectedErrors.setDefault(expected.setProperties(properties));
+
+        assertTrue(expected.isExpected("VEHICLE_NOT_FOUND"));
+        assertTrue(expected.isExpected("404"));
+        assertFalse(expected.isExpected("502"));
+        assertEquals(0, new MiddlewareException("VEHICLE_NOT_FOUND", "No vehicle.").getStackTrace().length);
+    }
+
+    @Test
+    void sharedInstancesAreImmutable() {
+        ExpectedErrors.setDefault(expected.setStackless(true));
+
+        var shared = MiddlewareException.tokenInvalidException();
+        assertSame(shared, MiddlewareException.tokenInvalidException());
+        assertEquals(TOKEN_INVALID_ERROR_CODE, shared.getCode());
+
+        shared.addSuppressed(new IllegalStateException());
+        shared.setStackTrace(new Throwable().getStackTrace());
+
+        assertEquals(0, shared.getSuppressed().length);
+        assertEquals(0, shared.getStackTrace().length);
+    }
+
+    @Test
+    void messagesAreFormattedOnFirstUse() throws Exception {
+        var formatted = new AtomicInteger();
+        var variable = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "alice";
+            }
+        };
+
+        var ex = MiddlewareException.tokenInvalidException("Token of %s expired.", variable);
+        assertEquals(0, formatted.get());
+
+        assertEquals("Token of alice expired.", ex.getMessage());
+        assertEquals("Token of alice expired.", ex.getMessage());
+        assertEquals(1, formatted.get());
+
+        // The variables are not serialized, but the formatted message is.
+        var lazy = MiddlewareException.tokenInvalidException("Token of %s expired.", "bob");
+        assertEquals("Token of bob expired.", deserialize(serialize(lazy)).getMessage());
+    }
+
+    private static byte[] serialize(Object value) throws Exception {
+        var bytes = new ByteArrayOutputStream();
+
+        try ( var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static MiddlewareException deserialize(byte[] bytes) throws Exception {
+        try ( var in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (MiddlewareException) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the JSON written by the {@link MiddlewareErrorModule} with that of
+ * the bean serializer and reads errors of different shapes with it.
+ *
+ * @author ben
+ */
+class MiddlewareErrorModuleTest {
+
+    private final ObjectMapper beanMapper = new ObjectMapper();
+    private final ObjectMapper moduleMapper = new ObjectMapper().registerModule(new MiddlewareErrorModule());
+
+    private final List<MiddlewareError> errors = List.of(
+            MiddlewareError.tokenInvalid(),
+            MiddlewareError.deadlineExceeded(),
+            new MiddlewareError(MiddlewareError.TOKEN_INVALID_ERROR_CODE, "Token of alice expired."),
+            new MiddlewareError(404, "Not \"here\" \u2013 gr\u00fc\u00df dich\n"),
+            new MiddlewareError("VEHICLE_LOCKED", Map.of("vehicle", 42), "Locked."),
+            new MiddlewareError("Only a message."),
+            new MiddlewareError()
+    );
+
+    @Test
+    void errorsAreWrittenLikeByTheBeanSerializer() throws Exception {
+        for (var error : errors) {
+            assertEquals(beanMapper.writeValueAsString(error), moduleMapper.writeValueAsString(error));
+            assertArrayEquals(beanMapper.writeValueAsBytes(error), moduleMapper.writeValueAsBytes(error));
+        }
+    }
+
+    @Test
+    void prettyPrintedErrorsAreWrittenLikeByTheBeanSerializer() throws Exception {
+        var prettyBean = beanMapper.copy().enable(SerializationFeature.INDENT_OUTPUT);
+        var prettyModule = moduleMapper.copy().enable(SerializationFeature.INDENT_OUTPUT);
+
+        for (var error : errors) {
+            assertEquals(prettyBean.writeValueAsString(error), prettyModule.writeValueAsString(error));
+        }
+    }
+
+    @Test
+    void errorsOfRegisteredCodesAreEncodedOnce() throws Exception {
+        var json = ErrorCode.TOKEN_INVALID.getJson();
+
+        assertSame(json, ErrorCode.TOKEN_INVALID.getJson());
+        assertEquals(beanMapper.writeValueAsString(MiddlewareError.tokenInvalid()), json.getValue());
+    }
+
+    @Test
+    void errorsAreReadLikeByTheBeanDeserializer() throws Exception {
+        for (var error : errors) {
+            assertEquals(error, moduleMapper.readValue(beanMapper.writeValueAsString(error), MiddlewareError.class));
+        }
+    }
+
+    @Test
+    void extendedAndLooseErrorsAreRead() throws Exception {
+        var extended = moduleMapper.readValue(
+                "{\"code\":404,\"traceId\":{\"id\":[1,2]},\"message\":\"Not found.\",\"details\":{\"id\":\"7\"}}",
+                MiddlewareError.class
+        );
+
+        assertEquals("404", extended.getCode());
+        assertEquals("Not found.", extended.getMessage());
+        assertEquals(Map.of("id", "7"), extended.getDetails());
+
+        assertEquals(new MiddlewareError("Plain text."), moduleMapper.readValue("\"Plain text.\"", MiddlewareError.class));
+        assertEquals(new MiddlewareError(), moduleMapper.readValue("{\"message\":null,\"details\":null}", MiddlewareError.class));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Tests that {@link ErrorBody} reads at most {@link ErrorBody#MAX_BYTES}
+ * bytes and how the {@link MiddlewareErrorResponseHandler} parses such
+ * bodies.
+ *
+ * @author ben
+ */
+class ErrorBodyTest {
+
+    @Test
+    void shortBodiesAreReadCompletely() throws Exception {
+        var body = ErrorBody.read(stream("Not found."));
+
+        assertEquals(10, body.length());
+        assertFalse(body.isTruncated());
+        assertEquals("Not found.", body.asString());
+    }
+
+    @Test
+    void bodiesOfExactlyMaxBytesAreNotTruncated() throws Exception {
+        var body = ErrorBody.read(stream("a".repeat(ErrorBody.MAX_BYTES)));
+
+        assertEquals(ErrorBody.MAX_BYTES, body.length());
+        assertFalse(body.isTruncated());
+    }
+
+    @Test
+    void longBodiesAreTruncatedWithoutReadingTheRest() throws Exception {
+        var in = new EndlessStream();
+        var body = ErrorBody.read(in);
+
+        assertEquals(ErrorBody.MAX_BYTES, body.length());
+        assertTrue(body.isTruncated());
+        assertTrue(body.asString().endsWith("x..."));
+        assertEquals(ErrorBody.MAX_BYTES + 1, in.read);
+    }
+
+    @Test
+    void missingBodiesAreEmpty() throws Exception {
+        assertTrue(ErrorBody.read(null).isEmpty());
+        assertTrue(ErrorBody.read(stream("")).isEmpty());
+    }
+
+    @Test
+    void middlewareErrorsAreParsedFromTheBuffer() throws Exception {
+        var error = MiddlewareErrorResponseHandler.parseErrorBody(
+                stream("{\"message\":\"Gone.\",\"code\":\"BOOKING_GONE\"}"), HttpStatus.GONE
+        );
+
+        assertEquals("BOOKING_GONE", error.getCode());
+        assertEquals("Gone.", error.getMessage());
+    }
+
+    @Test
+    void otherBodiesFallBackToStatusAndRawBody() throws Exception {
+        var error = MiddlewareErrorResponseHandler.parseErrorBody(stream("<html>Bad gateway</html>"), HttpStatus.BAD_GATEWAY);
+
+        assertEquals("502", error.getCode());
+        assertEquals("<html>Bad gateway</html>", error.getMessage());
+
+        var empty = MiddlewareErrorResponseHandler.parseErrorBody(stream(""), HttpStatus.BAD_GATEWAY);
+
+        assertEquals("502", empty.getCode());
+        assertEquals(HttpStatus.BAD_GATEWAY.getReasonPhrase(), empty.getMessage());
+    }
+
+    @Test
+    void truncatedJsonFallsBackToTruncatedRawBody() throws Exception {
+        var json = "{\"message\":\"" + "x".repeat(ErrorBody.MAX_BYTES) + "\",\"code\":\"LONG\"}";
+        var error = MiddlewareErrorResponseHandler.parseErrorBody(stream(json), HttpStatus.INTERNAL_SERVER_ERROR);
+
+        assertEquals("500", error.getCode());
+        assertEquals(ErrorBody.MAX_BYTES + 3, error.getMessage().length());
+        assertTrue(error.getMessage().endsWith("..."));
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns one byte per call and never ends, counting the bytes read.
+     */
+    private static class EndlessStream extends InputStream {
+
+        int read;
+
+        @Override
+        public int read() {
+            ++read;
+            return 'x';
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+
+            buffer[offset] = (byte) read();
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.exception.handler;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import de.hsesslingen.keim.efs.mobility.config.ErrorLoggingProperties;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Logs errors through an {@link ErrorLogPolicy} into a Logback list appender
+ * and checks which of them are written, at which level and with or without
+ * stack trace.
+ *
+ * @author ben
+ */
+class ErrorLogPolicyTest {
+
+    private final ErrorLoggingProperties properties = new ErrorLoggingProperties();
+    private final ErrorLogPolicy policy = new ErrorLogPolicy(properties);
+
+    private final Logger target = (Logger) LoggerFactory.getLogger(ErrorLogPolicyTest.class.getName() + ".handler");
+    private final Logger summaryLogger = (Logger) LoggerFactory.getLogger(ErrorLogPolicy.class);
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+    private final ListAppender<ILoggingEvent> summaries = new ListAppender<>();
+
+    ErrorLogPolicyTest() {
+        events.start();
+        summaries.start();
+        target.addAppender(events);
+        target.setLevel(Level.INFO);
+        summaryLogger.addAppender(summaries);
+    }
+
+    @AfterEach
+    void detach() {
+        policy.close();
+        target.detachAppender(events);
+        summaryLogger.detachAppender(summaries);
+    }
+
+    @Test
+    void repeatedErrorsAreLimitedAndSummarized() {
+        properties.setMaxPerSecond(2);
+
+        for (int i = 0; i < 10; ++i) {
+            policy.logHandled(target, MiddlewareException.tokenInvalidException("Invalid."), "TOKEN_INVALID", HttpStatus.UNAUTHORIZED);
+        }
+
+        policy.logHandled(target, MiddlewareException.tokenInvalidException("Invalid."), "OTHER_CODE", HttpStatus.UNAUTHORIZED);
+        assertEquals(3, events.list.size());
+
+        policy.close();
+
+        assertEquals(1, summaries.list.size());
+        var summary = summaries.list.get(0).getFormattedMessage();
+        assertTrue(summary.startsWith("TOKEN_INVALID (MiddlewareException) x 10 in last 60 s, 8 of them"), summary);
+    }
+
+    @Test
+    void onlyUnexpectedServerErrorsAreLoggedWithStackTrace() {
+        policy.logHandled(target, new IllegalStateException("Bug."), "UNKNOWN_ERROR", HttpStatus.INTERNAL_SERVER_ERROR);
+        policy.logHandled(target, MiddlewareException.tokenInvalidException("Invalid."), "TOKEN_INVALID", HttpStatus.UNAUTHORIZED);
+        policy.logHandled(target, MiddlewareException.deadlineExceededException("Too late."), "DEADLINE_EXCEEDED", HttpStatus.GATEWAY_TIMEOUT);
+
+        assertEquals(3, events.list.size());
+
+        assertEquals(Level.ERROR, events.list.get(0).getLevel());
+        assertNotNull(events.list.get(0).getThrowableProxy());
+
+        assertEquals(Level.WARN, events.list.get(1).getLevel());
+        assertNull(events.list.get(1).getThrowableProxy());
+
+        assertEquals(Level.ERROR, events.list.get(2).getLevel());
+        assertNull(events.list.get(2).getThrowableProxy());
+    }
+
+    @Test
+    void levelsCanBeChangedPerCodeAndClass() {
+        properties.setLevels(Map.of("TOKEN_INVALID", LogLevel.DEBUG, "MiddlewareError", LogLevel.INFO));
+
+        policy.logHandled(target, MiddlewareException.tokenInvalidException("Invalid."), "TOKEN_INVALID", HttpStatus.UNAUTHORIZED);
+        assertTrue(events.list.isEmpty());
+
+        policy.logResponse(target, new MiddlewareError("REMOTE_SERVICE_UNAVAILABLE", "Down."), HttpStatus.BAD_GATEWAY);
+
+        assertEquals(1, events.list.size());
+        assertEquals(Level.INFO, events.list.get(0).getLevel());
+        assertEquals("Error Response: REMOTE_SERVICE_UNAVAILABLE Down.", events.list.get(0).getFormattedMessage());
+    }
+}
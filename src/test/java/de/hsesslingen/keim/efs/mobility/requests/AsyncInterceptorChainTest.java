@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.tracing.InMemorySpanExporter;
+import de.hsesslingen.keim.efs.mobility.tracing.Sampler;
+import de.hsesslingen.keim.efs.mobility.tracing.Span;
+import de.hsesslingen.keim.efs.mobility.tracing.Tracer;
+import de.hsesslingen.keim.efs.mobility.tracing.TracingRequestAdapter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Sends requests whose first two attempts fail with an I/O error through a
+ * template with tracing and a {@link RetryPolicy}, using
+ * {@link MiddlewareRequest#go()} and {@link MiddlewareRequest#goAsync()}, and
+ * checks that both pass the interceptors alike.
+ *
+ * @author ben
+ */
+class AsyncInterceptorChainTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final FailingRequestFactory factory = new FailingRequestFactory(2);
+    private final InMemorySpanExporter exporter = new InMemorySpanExporter();
+    private final CountingInterceptor outer = new CountingInterceptor();
+
+    private final RetryPolicy policy = new RetryPolicy()
+            .setBaseDelay(Duration.ofMillis(1))
+            .setMaxDelay(Duration.ofMillis(1))
+            .setBudget(new RetryBudget(1, 10));
+
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate()
+            .setRestTemplate(new RestTemplate(factory))
+            .setRetryPolicy(policy)
+            .enableTracing(new TracingRequestAdapter(new Tracer(Sampler.always(), exporter)))
+            .addInterceptor(outer);
+
+    @Test
+    void syncAndAsyncRequestsAreRetriedAlike() throws Exception {
+        var sync = template.get(URL).expect(String.class).go();
+        var syncSpans = structure(exporter.getSpans());
+
+        assertEquals("ok", sync.getBody());
+        assertEquals(3, factory.attempts.get());
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(1, outer.passes.get(), "Retries must not pass the interceptors before the retry policy.");
+
+        factory.reset();
+        exporter.clear();
+        outer.passes.set(0);
+
+        var async = template.get(URL).expect(String.class).goAsync().get(30, SECONDS);
+        var asyncSpans = structure(exporter.getSpans());
+
+        assertEquals("ok", async.getBody());
+        assertEquals(3, factory.attempts.get());
+        assertEquals(4, policy.getRetryCount());
+        assertEquals(1, outer.passes.get(), "Retries must not pass the interceptors before the retry policy.");
+
+        assertEquals(List.of("CLIENT GET localhost 200 root"), syncSpans);
+        assertEquals(syncSpans, asyncSpans);
+    }
+
+    @Test
+    void asyncRequestFailsWithLastErrorOnceAttemptsAreUsedUp() {
+        policy.setMaxAttempts(2);
+
+        var future = template.get(URL).expect(String.class).goAsync();
+        var ex = assertThrows(Exception.class, () -> future.get(30, SECONDS));
+
+        assertTrue(ex.getCause() instanceof ResourceAccessException, "Unexpected cause: " + ex.getCause());
+        assertEquals(2, factory.attempts.get());
+        assertEquals(1, outer.passes.get());
+        assertEquals(1, exporter.getSpans().size());
+        assertTrue(exporter.getSpans().get(0).isError());
+    }
+
+    /**
+     * Describes the spans by kind, name, status and whether they are roots,
+     * leaving out IDs and times.
+     */
+    private static List<String> structure(List<Span> spans) {
+        return spans.stream()
+                .map(span -> span.getKind() + " " + span.getName() + " " + span.getAttributes().get("http.status_code")
+                + (span.getParentSpanId() == null ? " root" : " child"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Counts how often requests pass it, synchronously or not. Runs before the
+     * retry policy, like the cache or the coalescer.
+     */
+    private static class CountingInterceptor implements AsyncMiddlewareRequestInterceptor, Ordered {
+
+        final AtomicInteger passes = new AtomicInteger();
+
+        @Override
+        public int getOrder() {
+            return TOKEN_REFRESH_ORDER;
+        }
+
+        @Override
+        public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+            passes.incrementAndGet();
+            return execution.execute();
+        }
+
+        @Override
+        public <T> CompletableFuture<ResponseEntity<T>> interceptAsync(MiddlewareRequest<T> request, AsyncMiddlewareRequestExecution<T> execution) {
+            passes.incrementAndGet();
+            return execution.executeAsync();
+        }
+    }
+
+    private static class FailingRequestFactory implements ClientHttpRequestFactory {
+
+        final AtomicInteger attempts = new AtomicInteger();
+
+        private final int failures;
+
+        FailingRequestFactory(int failures) {
+            this.failures = failures;
+        }
+
+        void reset() {
+            attempts.set(0);
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+            boolean fail = attempts.incrementAndGet() <= failures;
+
+            return new AbstractClientHttpRequest() {
+                @Override
+                protected OutputStream getBodyInternal(HttpHeaders headers) {
+                    return new ByteArrayOutputStream();
+                }
+
+                @Override
+                protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+                    if (fail) {
+                        throw new IOException("Connection reset");
+                    }
+
+                    return new OkResponse();
+                }
+
+                @Override
+                public String getMethodValue() {
+                    return method.name();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            };
+        }
+    }
+
+    private static class OkResponse implements ClientHttpResponse {
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            var headers = new HttpHeaders();
+            headers.setContentType(MediaType.TEXT_PLAIN);
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream("ok".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
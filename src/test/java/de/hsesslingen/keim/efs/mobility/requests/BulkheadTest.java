@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.BulkheadProperties;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Tests the rejection and release of permits by {@link Bulkhead} and the
+ * {@link BulkheadRegistry}.
+ *
+ * @author ben
+ */
+class BulkheadTest {
+
+    private static Bulkhead createBulkhead(int maxConcurrentCalls, int maxQueuedCalls, Duration maxWait) {
+        var settings = new BulkheadProperties.Settings();
+        settings.setMaxConcurrentCalls(maxConcurrentCalls);
+        settings.setMaxQueuedCalls(maxQueuedCalls);
+        settings.setMaxWait(maxWait);
+
+        return new Bulkhead("remote", settings);
+    }
+
+    private static BulkheadRegistry createRegistry() {
+        var properties = new BulkheadProperties();
+        properties.getDefaults().setMaxConcurrentCalls(1);
+        properties.getDefaults().setMaxQueuedCalls(0);
+
+        return new BulkheadRegistry(properties);
+    }
+
+    private static MiddlewareRequest<String> createRequest() {
+        return new MiddlewareRequestTemplate().get("http://localhost/test").expect(String.class).serviceId("remote");
+    }
+
+    @Test
+    void rejectsRightAwayIfQueueIsFull() {
+        var bulkhead = createBulkhead(1, 0, Duration.ofSeconds(30));
+
+        assertTrue(bulkhead.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(bulkhead.tryAcquire());
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos(), "Must not wait without a queue.");
+
+        var snapshot = bulkhead.getSnapshot();
+        assertEquals(1, snapshot.getActiveCalls());
+        assertEquals(1, snapshot.getRejectedCalls());
+
+        bulkhead.release();
+
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.getSnapshot().getRejectedCalls());
+    }
+
+    @Test
+    void rejectsAfterMaxWaitInQueue() {
+        var bulkhead = createBulkhead(1, 1, Duration.ofMillis(50));
+
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+
+        var snapshot = bulkhead.getSnapshot();
+        assertEquals(0, snapshot.getQueuedCalls());
+        assertEquals(1, snapshot.getRejectedCalls());
+        assertTrue(snapshot.getMaxQueueWaitMillis() >= 40, "Waited only " + snapshot.getMaxQueueWaitMillis() + " ms.");
+    }
+
+    @Test
+    void releaseHandsPermitToQueuedCall() throws Exception {
+        var bulkhead = createBulkhead(1, 1, Duration.ofSeconds(30));
+
+        assertTrue(bulkhead.tryAcquire());
+
+        var queued = CompletableFuture.supplyAsync(bulkhead::tryAcquire);
+
+        while (bulkhead.getSnapshot().getQueuedCalls() == 0) {
+            Thread.sleep(1);
+        }
+
+        // The queue holds a single call.
+        assertFalse(bulkhead.tryAcquire());
+
+        bulkhead.release();
+
+        assertTrue(queued.get(30, TimeUnit.SECONDS));
+        assertEquals(1, bulkhead.getSnapshot().getActiveCalls());
+        assertEquals(0, bulkhead.getSnapshot().getQueuedCalls());
+    }
+
+    @Test
+    void registryRejectsWhileBulkheadIsFull() {
+        var registry = createRegistry();
+        var request = createRequest();
+
+        var response = registry.intercept(request, () -> {
+            var ex = assertThrows(MiddlewareException.class, () -> registry.intercept(request, () -> ResponseEntity.ok("inner")));
+            assertEquals(REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE, ex.getCode());
+
+            return ResponseEntity.ok("outer");
+        });
+
+        assertEquals("outer", response.getBody());
+        assertEquals(0, registry.getBulkhead("remote").getSnapshot().getActiveCalls());
+        assertEquals(1, registry.getBulkhead("remote").getSnapshot().getRejectedCalls());
+    }
+
+    @Test
+    void registryReleasesPermitIfRequestFails() {
+        var registry = createRegistry();
+        var request = createRequest();
+
+        assertThrows(IllegalStateException.class, () -> registry.intercept(request, () -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        assertEquals(0, registry.getBulkhead("remote").getSnapshot().getActiveCalls());
+        assertEquals("ok", registry.intercept(request, () -> ResponseEntity.ok("ok")).getBody());
+    }
+
+    @Test
+    void waitsAtMostForGivenTime() {
+        var bulkhead = createBulkhead(1, 1, Duration.ofSeconds(30));
+
+        assertTrue(bulkhead.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(bulkhead.tryAcquire(Duration.ofMillis(50).toNanos()));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos(), "Must not wait for the max wait of the bulkhead.");
+        assertEquals(1, bulkhead.getSnapshot().getRejectedCalls());
+    }
+
+    @Test
+    void registryFailsWithDeadlineExceededIfDeadlineExpiresInQueue() {
+        var properties = new BulkheadProperties();
+        properties.getDefaults().setMaxConcurrentCalls(1);
+        properties.getDefaults().setMaxQueuedCalls(1);
+        properties.getDefaults().setMaxWait(Duration.ofSeconds(30));
+
+        var registry = new BulkheadRegistry(properties);
+        var request = createRequest().deadline(Deadline.after(Duration.ofMillis(50)));
+
+        var response = registry.intercept(createRequest(), () -> {
+            long start = System.nanoTime();
+            var ex = assertThrows(MiddlewareException.class, () -> registry.intercept(request, () -> ResponseEntity.ok("inner")));
+
+            assertEquals(DEADLINE_EXCEEDED_ERROR_CODE, ex.getCode());
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos(), "Must not wait past the deadline.");
+
+            return ResponseEntity.ok("outer");
+        });
+
+        assertEquals("outer", response.getBody());
+        assertEquals(0, registry.getBulkhead("remote").getSnapshot().getActiveCalls());
+    }
+
+    @Test
+    void leastRecentlyUsedBulkheadsAreRemoved() throws Exception {
+        var properties = new BulkheadProperties();
+        properties.setMaxBulkheads(2);
+        var registry = new BulkheadRegistry(properties);
+
+        var first = registry.getBulkhead("first");
+        registry.getBulkhead("second");
+
+        Thread.sleep(1);
+        assertTrue(first.tryAcquire());
+        first.release();
+
+        registry.getBulkhead("third");
+
+        assertEquals(Set.of("first", "third"), registry.getSnapshots().keySet());
+        assertSame(first, registry.getBulkhead("first"));
+    }
+}
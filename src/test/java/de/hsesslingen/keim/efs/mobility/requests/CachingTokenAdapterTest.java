@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.TOKEN_INVALID_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.requests.CachingTokenAdapter.Token;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest.TOKEN_HEADER;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Tests the refreshing, invalidation and eviction of tokens by the
+ * {@link CachingTokenAdapter}, using a token source that numbers its tokens.
+ *
+ * @author ben
+ */
+class CachingTokenAdapterTest {
+
+    private final AtomicInteger counter = new AtomicInteger();
+    private volatile Duration validFor;
+
+    private final CachingTokenAdapter cache = new CachingTokenAdapter((serviceId, userId) -> {
+        var value = "token-" + counter.incrementAndGet();
+        return CompletableFuture.completedFuture(validFor != null ? Token.of(value, validFor) : new Token(value, null));
+    });
+
+    @AfterEach
+    void clear() {
+        cache.invalidateAll();
+    }
+
+    @Test
+    void refreshesTokenBeforeItExpires() throws Exception {
+        validFor = Duration.ofSeconds(2);
+        cache.setRefreshAhead(Duration.ofMillis(500));
+
+        assertEquals("token-1", adapt(createRequest()));
+        assertEquals("token-1", adapt(createRequest()));
+        assertEquals(1, cache.getHitCount());
+
+        // Refreshed 1.5 seconds after it was fetched, while it is still valid.
+        await(() -> cache.getFetchCount() == 2);
+
+        assertEquals("token-2", adapt(createRequest()));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void retriesOnceWithNewTokenIfTokenIsRejected() throws Exception {
+        var request = createRequest();
+        assertEquals("token-1", adapt(request));
+
+        var sent = new ArrayList<String>();
+
+        var response = cache.intercept(request, () -> {
+            sent.add(request.headers().getFirst(TOKEN_HEADER));
+
+            if (sent.size() == 1) {
+                throw tokenInvalid();
+            }
+
+            return ResponseEntity.ok("ok");
+        });
+
+        assertEquals("ok", response.getBody());
+        assertEquals(List.of("token-1", "token-2"), sent);
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(2, cache.getFetchCount());
+
+        assertEquals("token-2", adapt(createRequest()));
+    }
+
+    @Test
+    void doesNotRetryTwice() throws Exception {
+        var request = createRequest();
+        adapt(request);
+
+        var attempts = new AtomicInteger();
+
+        assertThrows(RemoteMiddlewareException.class, () -> cache.intercept(request, () -> {
+            attempts.incrementAndGet();
+            throw tokenInvalid();
+        }));
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    void doesNotRetryWithTokensItDidNotIssue() {
+        var request = createRequest().header(TOKEN_HEADER, "own");
+
+        assertThrows(RemoteMiddlewareException.class, () -> cache.intercept(request, () -> {
+            throw tokenInvalid();
+        }));
+
+        assertEquals(0, cache.getInvalidationCount());
+        assertEquals(0, cache.getFetchCount());
+    }
+
+    @Test
+    void evictsIdleTokens() throws Exception {
+        cache.setIdleTimeout(Duration.ofMillis(50));
+
+        assertEquals("token-1", adapt(createRequest()));
+        assertEquals(1, cache.getSize());
+
+        await(() -> cache.getSize() == 0);
+
+        assertEquals("token-2", adapt(createRequest()));
+    }
+
+    private static MiddlewareRequest<String> createRequest() {
+        return new MiddlewareRequestTemplate().get("http://localhost/test").expect(String.class).serviceId("remote").toInternal();
+    }
+
+    private String adapt(MiddlewareRequest<?> request) throws Exception {
+        var adapter = cache.adaptAsync(request).toCompletableFuture().get(30, SECONDS);
+
+        if (adapter != null) {
+            adapter.adapt(request);
+        }
+
+        return request.headers().getFirst(TOKEN_HEADER);
+    }
+
+    private static RemoteMiddlewareException tokenInvalid() {
+        return new RemoteMiddlewareException(new MiddlewareError(TOKEN_INVALID_ERROR_CODE, "invalid"), HttpStatus.UNAUTHORIZED, null);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + SECONDS.toNanos(30);
+
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < end, "Condition not met in time.");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.CircuitBreakerProperties;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.requests.CircuitBreaker.State;
+import java.time.Duration;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Drives a {@link CircuitBreaker} through its states by reporting the
+ * outcomes of calls directly, without sending requests.
+ *
+ * @author ben
+ */
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(2).toNanos();
+
+    private final CircuitBreakerProperties properties = new CircuitBreakerProperties();
+
+    CircuitBreakerTest() {
+        properties.setSlidingWindowSize(10);
+        properties.setMinimumNumberOfCalls(4);
+        properties.setFailureRateThreshold(50);
+        properties.setSlowCallRateThreshold(100);
+        properties.setSlowCallDuration(Duration.ofSeconds(1));
+        properties.setWaitDurationInOpenState(Duration.ofMinutes(1));
+        properties.setPermittedCallsInHalfOpenState(2);
+    }
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker("test", () -> properties);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean failure, long duration) {
+        long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, permit);
+        breaker.onResult(permit, duration, failure);
+    }
+
+    private static void open(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+    }
+
+    @Test
+    void opensOnceTheFailureRateReachesTheThreshold() {
+        var breaker = breaker();
+
+        call(breaker, false, FAST);
+        call(breaker, true, FAST);
+        call(breaker, false, FAST);
+        assertEquals(State.CLOSED, breaker.getSnapshot().getState());
+
+        call(breaker, true, FAST);
+        assertEquals(State.OPEN, breaker.getSnapshot().getState());
+
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquire());
+        assertEquals(1, breaker.getSnapshot().getNotPermittedCalls());
+    }
+
+    @Test
+    void staysClosedBeforeTheMinimumNumberOfCalls() {
+        var breaker = breaker();
+
+        for (int i = 0; i < 3; i++) {
+            call(breaker, true, FAST);
+        }
+
+        var snapshot = breaker.getSnapshot();
+        assertEquals(State.CLOSED, snapshot.getState());
+        assertEquals(100f, snapshot.getFailureRate());
+        assertEquals(3, snapshot.getBufferedCalls());
+    }
+
+    @Test
+    void opensOnceTheSlowCallRateReachesTheThreshold() {
+        properties.setSlowCallRateThreshold(50);
+        var breaker = breaker();
+
+        call(breaker, false, FAST);
+        call(breaker, false, SLOW);
+        call(breaker, false, FAST);
+        assertEquals(State.CLOSED, breaker.getSnapshot().getState());
+
+        call(breaker, false, SLOW);
+        assertEquals(State.OPEN, breaker.getSnapshot().getState());
+    }
+
+    @Test
+    void oldCallsLeaveTheSlidingWindow() {
+        properties.setSlidingWindowSize(4);
+        var breaker = breaker();
+
+        call(breaker, true, FAST);
+
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+
+        var snapshot = breaker.getSnapshot();
+        assertEquals(State.CLOSED, snapshot.getState());
+        assertEquals(0f, snapshot.getFailureRate());
+        assertEquals(4, snapshot.getBufferedCalls());
+    }
+
+    @Test
+    void halfOpenClosesAfterSuccessfulTrials() {
+        properties.setWaitDurationInOpenState(Duration.ZERO);
+        var breaker = breaker();
+        open(breaker);
+
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, first);
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, second);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquire(), "Only the permitted trial calls may pass.");
+        assertEquals(State.HALF_OPEN, breaker.getSnapshot().getState());
+
+        breaker.onResult(first, FAST, false);
+        assertEquals(State.HALF_OPEN, breaker.getSnapshot().getState());
+
+        breaker.onResult(second, FAST, false);
+        assertEquals(State.CLOSED, breaker.getSnapshot().getState());
+        assertEquals(0, breaker.getSnapshot().getBufferedCalls());
+    }
+
+    @Test
+    void halfOpenOpensAgainAfterFailedTrials() {
+        properties.setWaitDurationInOpenState(Duration.ZERO);
+        var breaker = breaker();
+        open(breaker);
+
+        // Permitted again, as the breaker turns half-open right away.
+        properties.setWaitDurationInOpenState(Duration.ofMinutes(1));
+        call(breaker, true, FAST);
+        call(breaker, false, FAST);
+
+        assertEquals(State.OPEN, breaker.getSnapshot().getState());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquire());
+    }
+
+    @Test
+    void releasedTrialsCanBeMadeAgain() {
+        properties.setWaitDurationInOpenState(Duration.ZERO);
+        properties.setPermittedCallsInHalfOpenState(1);
+        var breaker = breaker();
+        open(breaker);
+
+        long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, permit);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquire());
+
+        breaker.release(permit);
+
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquire());
+    }
+
+    @Test
+    void resultsOfCallsPermittedInAnotherStateAreIgnored() {
+        var breaker = breaker();
+        long early = breaker.tryAcquire();
+
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+
+        assertEquals(State.OPEN, breaker.getSnapshot().getState());
+
+        breaker.onResult(early, FAST, false);
+
+        assertEquals(State.OPEN, breaker.getSnapshot().getState());
+        assertEquals(4, breaker.getSnapshot().getBufferedCalls());
+    }
+
+    @Test
+    void unavailableRemoteApisCountAsFailures() {
+        var unavailable = new RemoteMiddlewareException(MiddlewareError.remoteServiceUnavailable(), HttpStatus.SERVICE_UNAVAILABLE, null);
+        var deadline = new RemoteMiddlewareException(MiddlewareError.deadlineExceeded(), HttpStatus.GATEWAY_TIMEOUT, null);
+        var badRequest = new RemoteMiddlewareException(MiddlewareError.unknown("Bad request."), HttpStatus.BAD_REQUEST, null);
+
+        var remoteApi = new MiddlewareRequest<>().sendInternalHeaders(false);
+        var internalJobToRemoteApi = new MiddlewareRequest<>().sendInternalHeaders(false).toInternal();
+        var middleware = new MiddlewareRequest<>();
+
+        assertTrue(CircuitBreakerRegistry.isFailure(remoteApi, unavailable));
+        assertTrue(CircuitBreakerRegistry.isFailure(remoteApi, deadline));
+        assertFalse(CircuitBreakerRegistry.isFailure(remoteApi, badRequest));
+
+        // Sent for an internal reason, but still to a remote API.
+        assertTrue(CircuitBreakerRegistry.isFailure(internalJobToRemoteApi, unavailable));
+        assertTrue(CircuitBreakerRegistry.isFailure(internalJobToRemoteApi, deadline));
+
+        // Relayed by another service of the middleware, which itself works.
+        assertFalse(CircuitBreakerRegistry.isFailure(middleware, unavailable));
+        assertFalse(CircuitBreakerRegistry.isFailure(middleware, deadline));
+    }
+
+    @Test
+    void leastRecentlyUsedBreakersAreRemoved() throws Exception {
+        properties.setMaxBreakers(2);
+        var registry = new CircuitBreakerRegistry(properties);
+
+        var first = registry.getBreaker("first");
+        registry.getBreaker("second");
+
+        Thread.sleep(1);
+        first.tryAcquire();
+
+        registry.getBreaker("third");
+
+        assertEquals(Set.of("first", "third"), registry.getSnapshots().keySet());
+        assertSame(first, registry.getBreaker("first"));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.ConcurrencyLimitProperties;
+import java.time.Duration;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the AIMD adjustments of a {@link ConcurrencyLimit} and the bound of
+ * the {@link ConcurrencyLimiterRegistry}.
+ *
+ * @author ben
+ */
+class ConcurrencyLimitTest {
+
+    private static final long FAST = Duration.ofMillis(1).toNanos();
+
+    private final ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+
+    ConcurrencyLimitTest() {
+        properties.setInitialLimit(4);
+        properties.setMinLimit(1);
+        properties.setMaxLimit(6);
+        properties.setBackoffRatio(0.5);
+        properties.setLatencyTolerance(2.0);
+    }
+
+    private ConcurrencyLimit createLimit() {
+        return new ConcurrencyLimit("remote", () -> properties);
+    }
+
+    @Test
+    void rejectsRequestsBeyondTheLimit() {
+        var limit = createLimit();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+
+        assertFalse(limit.tryAcquire());
+        assertEquals(4, limit.getSnapshot().getInFlight());
+        assertEquals(1, limit.getSnapshot().getRejected());
+
+        limit.release();
+
+        assertTrue(limit.tryAcquire());
+        assertEquals(4, limit.getSnapshot().getLimit(), "Releasing must not adjust the limit.");
+    }
+
+    @Test
+    void increasesByOneWhileHalfOfTheLimitIsInUse() {
+        var limit = createLimit();
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        limit.onSuccess(FAST);
+
+        assertEquals(5, limit.getSnapshot().getLimit());
+
+        // One request in flight out of five is not enough to grow.
+        limit.onSuccess(FAST);
+
+        assertEquals(5, limit.getSnapshot().getLimit());
+    }
+
+    @Test
+    void increasesUpToTheMaximum() {
+        var limit = createLimit();
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 4; j++) {
+                limit.tryAcquire();
+            }
+
+            for (int j = 0; j < 4; j++) {
+                limit.onSuccess(FAST);
+            }
+        }
+
+        assertEquals(6, limit.getSnapshot().getLimit());
+    }
+
+    @Test
+    void decreasesMultiplicativelyOnFailureDownToTheMinimum() {
+        var limit = createLimit();
+
+        // Without a measured latency there is no round trip to wait for.
+        limit.tryAcquire();
+        limit.onFailure();
+        assertEquals(2, limit.getSnapshot().getLimit());
+
+        limit.tryAcquire();
+        limit.onFailure();
+        assertEquals(1, limit.getSnapshot().getLimit());
+
+        limit.tryAcquire();
+        limit.onFailure();
+        assertEquals(1, limit.getSnapshot().getLimit());
+        assertEquals(0, limit.getSnapshot().getInFlight());
+    }
+
+    @Test
+    void decreasesOncePerRoundTrip() throws InterruptedException {
+        var limit = createLimit();
+        long latency = Duration.ofMillis(50).toNanos();
+
+        limit.tryAcquire();
+        limit.onSuccess(latency);
+
+        // Requests that were in flight together fail together.
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+
+        for (int i = 0; i < 3; i++) {
+            limit.onFailure();
+        }
+
+        assertEquals(2, limit.getSnapshot().getLimit());
+
+        Thread.sleep(Duration.ofNanos(latency * 2).toMillis());
+
+        limit.tryAcquire();
+        limit.onFailure();
+
+        assertEquals(1, limit.getSnapshot().getLimit());
+    }
+
+    @Test
+    void decreasesIfLatencyRises() {
+        var limit = createLimit();
+
+        limit.tryAcquire();
+        limit.onSuccess(FAST);
+        assertEquals(4, limit.getSnapshot().getLimit());
+
+        // The smoothed latency exceeds twice the lowest one with the second slow response.
+        for (int i = 0; i < 2; i++) {
+            limit.tryAcquire();
+            limit.onSuccess(10 * FAST);
+        }
+
+        assertEquals(2, limit.getSnapshot().getLimit());
+        assertEquals(1, limit.getSnapshot().getMinLatencyMillis());
+    }
+
+    @Test
+    void leastRecentlyUsedLimitsAreRemoved() throws Exception {
+        properties.setMaxLimits(2);
+        var registry = new ConcurrencyLimiterRegistry(properties);
+
+        var first = registry.getLimit("first");
+        registry.getLimit("second");
+
+        Thread.sleep(1);
+        first.tryAcquire();
+        first.release();
+
+        registry.getLimit("third");
+
+        assertEquals(Set.of("first", "third"), registry.getSnapshots().keySet());
+        assertSame(first, registry.getLimit("first"));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.DeadlineProperties;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequest.DEADLINE_HEADER;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Passes incoming requests with a {@link MiddlewareRequest#DEADLINE_HEADER}
+ * through the {@link DeadlineFilter} and checks the deadline that the
+ * {@link MiddlewareRequest}s sent while handling them forward.
+ *
+ * @author ben
+ */
+class DeadlineFilterTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final DeadlineProperties properties = new DeadlineProperties();
+    private final RecordingRequestFactory factory = new RecordingRequestFactory();
+    private final RestTemplate restTemplate = new RestTemplate(factory);
+
+    @Test
+    void deadlineOfIncomingRequestIsForwardedByOutgoingRequests() throws Exception {
+        var response = handle(incoming("5000"), () -> new MiddlewareRequest<>(HttpMethod.GET, URL, restTemplate).go());
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertNull(Deadline.current());
+
+        long forwarded = Long.parseLong(factory.sent.poll().getFirst(DEADLINE_HEADER));
+        assertTrue(forwarded <= 5000 && forwarded > 4000, "Forwarded " + forwarded + " ms.");
+    }
+
+    @Test
+    void externalRequestsDoNotForwardTheDeadline() throws Exception {
+        handle(incoming("5000"), () -> new MiddlewareRequest<>(HttpMethod.GET, URL, restTemplate).sendInternalHeaders(false).go());
+
+        assertNull(factory.sent.poll().getFirst(DEADLINE_HEADER));
+    }
+
+    @Test
+    void expiredDeadlinesAreRejected() throws Exception {
+        properties.setMinBudget(null);
+
+        var response = handle(incoming("-1"), () -> fail("Expired requests must not be handled."));
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT.value(), response.getStatus());
+        assertTrue(response.getContentAsString().contains(DEADLINE_EXCEEDED_ERROR_CODE));
+    }
+
+    @Test
+    void deadlinesAreLimitedToTheConfiguredBudgets() throws Exception {
+        properties.setMaxBudget(Duration.ofSeconds(1));
+
+        var seen = new AtomicReference<Deadline>();
+        handle(incoming("0"), () -> seen.set(Deadline.current()));
+
+        // Raised to the minimum budget of 100 ms instead of being rejected.
+        assertTrue(seen.get().remaining().toMillis() <= 100);
+
+        handle(incoming("60000"), () -> seen.set(Deadline.current()));
+        assertTrue(seen.get().remaining().toMillis() <= 1000);
+
+        properties.setDefaultBudget(Duration.ofSeconds(10));
+        handle(incoming(null), () -> seen.set(Deadline.current()));
+        assertTrue(seen.get().remaining().toMillis() <= 1000);
+    }
+
+    @Test
+    void headersOfUntrustedCallersAndInvalidHeadersAreIgnored() throws Exception {
+        var seen = new AtomicReference<Deadline>(Deadline.after(Duration.ZERO));
+
+        handle(incoming("not a number"), () -> seen.set(Deadline.current()));
+        assertNull(seen.get());
+
+        properties.setTrustedAddresses(List.of("10.0.0.1"));
+        seen.set(Deadline.after(Duration.ZERO));
+
+        handle(incoming("5000"), () -> seen.set(Deadline.current()));
+        assertNull(seen.get());
+    }
+
+    @Test
+    void requestsWithExpiredDeadlineAreNotSent() {
+        var request = new MiddlewareRequest<>(HttpMethod.GET, URL, restTemplate).deadline(Deadline.after(Duration.ofMillis(-1)));
+
+        var ex = assertThrows(MiddlewareException.class, request::go);
+
+        assertEquals(DEADLINE_EXCEEDED_ERROR_CODE, ex.getCode());
+        assertTrue(factory.sent.isEmpty());
+    }
+
+    private static MockHttpServletRequest incoming(String deadline) {
+        var request = new MockHttpServletRequest("GET", "/bookings");
+        request.setRemoteAddr("127.0.0.1");
+
+        if (deadline != null) {
+            request.addHeader(DEADLINE_HEADER, deadline);
+        }
+
+        return request;
+    }
+
+    private MockHttpServletResponse handle(MockHttpServletRequest request, Runnable handler) throws Exception {
+        var response = new MockHttpServletResponse();
+        new DeadlineFilter(properties).doFilter(request, response, (req, res) -> handler.run());
+        return response;
+    }
+
+    private static class RecordingRequestFactory implements ClientHttpRequestFactory {
+
+        final Queue<HttpHeaders> sent = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+            return new AbstractClientHttpRequest() {
+                @Override
+                protected OutputStream getBodyInternal(HttpHeaders headers) {
+                    return new ByteArrayOutputStream();
+                }
+
+                @Override
+                protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+                    sent.add(headers);
+                    return new OkResponse();
+                }
+
+                @Override
+                public String getMethodValue() {
+                    return method.name();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            };
+        }
+    }
+
+    private static class OkResponse implements ClientHttpResponse {
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.tracing.TraceContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Sends requests through a {@link MiddlewareRequestTemplate} with a
+ * {@link HedgingPolicy}, whose rest template stalls the second HTTP request
+ * until it is aborted or released and answers all others with
+ * {@code 200 ok}.
+ *
+ * @author ben
+ */
+class HedgingPolicyTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final StallingRequestFactory factory = new StallingRequestFactory(2, true);
+    private final RetryBudget budget = new RetryBudget(0.1, 1);
+    private final HedgingPolicy policy = new HedgingPolicy()
+            .setMinSamples(1)
+            .setWindowSize(1)
+            .setMinDelay(Duration.ofMillis(20))
+            .setBudget(budget);
+
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate()
+            .setRestTemplate(new RestTemplate(factory))
+            .addRequestAdapter(request -> request.header("x-base", "1"))
+            .enableHedging(policy);
+
+    @AfterEach
+    void unbind() {
+        TraceContext.setCurrent(null);
+        factory.release.countDown();
+    }
+
+    @Test
+    void hedgeWinsAgainstStalledPrimary() {
+        // Records the latency after which the next request is hedged.
+        assertEquals("ok", template.get(URL).expect(String.class).go().getBody());
+        assertEquals(1, budget.getAvailable());
+
+        var trace = TraceContext.newRoot(true);
+        TraceContext.setCurrent(trace);
+        var deadline = Deadline.after(Duration.ofSeconds(30));
+
+        var response = template.get(URL).expect(String.class).deadline(deadline).go();
+
+        assertEquals("ok", response.getBody());
+        assertTrue(factory.aborted.get(), "The stalled primary must be aborted.");
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+        assertEquals(0, budget.getAvailable(), "The hedge must be withdrawn from the budget.");
+
+        assertEquals(3, factory.sent.size());
+        var primary = factory.sent.get(1);
+        var hedge = factory.sent.get(2);
+
+        assertNotSame(primary.request, hedge.request, "The hedge must be sent from a copy of the request.");
+        assertNotSame(Thread.currentThread(), hedge.thread);
+        assertSame(trace, hedge.trace);
+        assertSame(deadline, hedge.deadline);
+        assertEquals(List.of("1"), hedge.headers.get("x-base"));
+        assertNotNull(hedge.headers.getFirst(MiddlewareRequest.DEADLINE_HEADER));
+    }
+
+    @Test
+    void hedgeWinsWithoutAbortingRequestFactory() {
+        var stalling = new StallingRequestFactory(2, false);
+        var nonAborting = new MiddlewareRequestTemplate()
+                .setRestTemplate(new RestTemplate(stalling))
+                .enableHedging(policy);
+
+        try {
+            assertEquals("ok", nonAborting.get(URL).expect(String.class).go().getBody());
+
+            // Returns with the response of the hedge, while the primary is still stalled.
+            assertEquals("ok", nonAborting.get(URL).expect(String.class).go().getBody());
+
+            assertEquals(1, policy.getHedgeWinCount());
+            assertFalse(stalling.aborted.get());
+        } finally {
+            stalling.release.countDown();
+        }
+    }
+
+    @Test
+    void latenciesOfLeastRecentlyUsedRemotesAreRemoved() {
+        policy.setMaxRemotes(2);
+
+        for (var host : List.of("first", "second", "third")) {
+            var request = template.get("http://" + host + "/test").expect(String.class);
+            policy.intercept(request, () -> null);
+        }
+
+        assertEquals(2, policy.getRemoteCount());
+    }
+
+    @Test
+    void noHedgeIsSentWithoutBudget() throws Exception {
+        assertEquals("ok", template.get(URL).expect(String.class).go().getBody());
+        assertTrue(budget.tryWithdraw());
+
+        var sending = new Thread(() -> template.get(URL).expect(String.class).go());
+        sending.setDaemon(true);
+        sending.start();
+
+        // Give the hedge time to be started, if it were.
+        sending.join(500);
+
+        assertEquals(0, policy.getHedgeCount());
+        assertEquals(1, policy.getBudgetExhaustedCount());
+        assertEquals(2, factory.sent.size());
+
+        factory.release.countDown();
+        sending.join(SECONDS.toMillis(30));
+    }
+
+    private static class Sent {
+
+        final MiddlewareRequest<?> request = MiddlewareRequest.current();
+        final Thread thread = Thread.currentThread();
+        final TraceContext trace = TraceContext.current();
+        final Deadline deadline = Deadline.current();
+        volatile HttpHeaders headers;
+    }
+
+    private static class StallingRequestFactory implements ClientHttpRequestFactory {
+
+        final List<Sent> sent = new CopyOnWriteArrayList<>();
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        private final int stalled;
+        private final boolean abortable;
+        private final AtomicInteger count = new AtomicInteger();
+
+        StallingRequestFactory(int stalled, boolean abortable) {
+            this.stalled = stalled;
+            this.abortable = abortable;
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+            var record = new Sent();
+            boolean stall = count.incrementAndGet() == stalled;
+            var handle = AbortHandle.current();
+
+            sent.add(record);
+
+            if (stall && abortable && handle != null) {
+                handle.register(() -> {
+                    aborted.set(true);
+                    release.countDown();
+                });
+            }
+
+            return new AbstractClientHttpRequest() {
+                @Override
+                protected OutputStream getBodyInternal(HttpHeaders headers) {
+                    return new ByteArrayOutputStream();
+                }
+
+                @Override
+                protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+                    record.headers = headers;
+
+                    if (stall) {
+                        try {
+                            release.await(30, SECONDS);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        if (aborted.get()) {
+                            throw new IOException("Aborted.");
+                        }
+                    }
+
+                    return new OkResponse();
+                }
+
+                @Override
+                public String getMethodValue() {
+                    return method.name();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            };
+        }
+    }
+
+    private static class OkResponse implements ClientHttpResponse {
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            var headers = new HttpHeaders();
+            headers.setContentType(MediaType.TEXT_PLAIN);
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream("ok".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Tests how requests that wait for a call of the
+ * {@link MiddlewareRequestCoalescer} that is already in flight complete. The
+ * leading call is blocked until the test releases it.
+ *
+ * @author ben
+ */
+class MiddlewareRequestCoalescerTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final MiddlewareRequestCoalescer coalescer = new MiddlewareRequestCoalescer();
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseLeader() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void followerReceivesExceptionOfLeader() throws Exception {
+        var failure = new RemoteMiddlewareException(new MiddlewareError("503", "unavailable"), HttpStatus.SERVICE_UNAVAILABLE, null);
+
+        var leader = CompletableFuture.supplyAsync(() -> coalescer.intercept(createRequest(), () -> {
+            started.countDown();
+            awaitRelease();
+            throw failure;
+        }), executor);
+
+        assertTrue(started.await(30, SECONDS));
+
+        var follower = CompletableFuture.supplyAsync(() -> coalescer.intercept(createRequest(), this::notSent), executor);
+
+        awaitCoalesced();
+        release.countDown();
+
+        var leaderEx = assertThrows(ExecutionException.class, () -> leader.get(30, SECONDS));
+        var followerEx = assertThrows(ExecutionException.class, () -> follower.get(30, SECONDS));
+
+        assertSame(failure, leaderEx.getCause());
+        assertSame(failure, followerEx.getCause());
+        assertEquals(1, coalescer.getSentCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    void followerTimesOutAtItsOwnDeadline() throws Exception {
+        var leader = startLeader();
+        var request = createRequest().deadline(Deadline.after(Duration.ofMillis(100)));
+
+        long start = System.nanoTime();
+        var ex = assertThrows(MiddlewareException.class, () -> coalescer.intercept(request, this::notSent));
+        long waited = System.nanoTime() - start;
+
+        assertEquals(DEADLINE_EXCEEDED_ERROR_CODE, ex.getCode());
+        assertTrue(waited >= Duration.ofMillis(90).toNanos(), "Waited only " + waited / 1_000_000 + " ms.");
+        assertFalse(leader.isDone(), "The leading call must continue.");
+
+        release.countDown();
+
+        assertEquals("ok", leader.get(30, SECONDS).getBody());
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    void followerWithoutDeadlineTimesOutAfterItsTimeout() throws Exception {
+        var leader = startLeader();
+        var request = createRequest().timeout(Duration.ofMillis(100));
+
+        var ex = assertThrows(ResourceAccessException.class, () -> coalescer.intercept(request, this::notSent));
+
+        assertTrue(ex.getCause() instanceof SocketTimeoutException);
+        assertFalse(leader.isDone(), "The leading call must continue.");
+
+        release.countDown();
+
+        assertEquals("ok", leader.get(30, SECONDS).getBody());
+    }
+
+    @Test
+    void followerReceivesResponseOfLeader() throws Exception {
+        var leader = startLeader();
+
+        var follower = CompletableFuture.supplyAsync(() -> coalescer.intercept(createRequest(), this::notSent), executor);
+
+        awaitCoalesced();
+        release.countDown();
+
+        assertSame(leader.get(30, SECONDS), follower.get(30, SECONDS));
+        assertEquals(1, coalescer.getSentCount());
+    }
+
+    @Test
+    void followerWithLongerBudgetResendsAfterLeaderTimedOut() throws Exception {
+        var timeout = new ResourceAccessException("Read timed out", new SocketTimeoutException("Read timed out"));
+
+        var leader = CompletableFuture.supplyAsync(() -> coalescer.intercept(createRequest().timeout(Duration.ofSeconds(1)), () -> {
+            started.countDown();
+            awaitRelease();
+            throw timeout;
+        }), executor);
+
+        assertTrue(started.await(30, SECONDS));
+
+        var request = createRequest().timeout(Duration.ofSeconds(30));
+        var follower = CompletableFuture.supplyAsync(() -> coalescer.intercept(request, () -> ResponseEntity.ok("again")), executor);
+
+        awaitCoalesced();
+        release.countDown();
+
+        var leaderEx = assertThrows(ExecutionException.class, () -> leader.get(30, SECONDS));
+
+        assertSame(timeout, leaderEx.getCause());
+        assertEquals("again", follower.get(30, SECONDS).getBody());
+        assertEquals(2, coalescer.getSentCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    void followerWithShorterBudgetReceivesDeadlineExceededOfLeader() throws Exception {
+        var expired = MiddlewareException.deadlineExceededException("expired");
+
+        var leader = CompletableFuture.supplyAsync(() -> coalescer.intercept(createRequest().deadline(Deadline.after(Duration.ofSeconds(60))), () -> {
+            started.countDown();
+            awaitRelease();
+            throw expired;
+        }), executor);
+
+        assertTrue(started.await(30, SECONDS));
+
+        var request = createRequest().deadline(Deadline.after(Duration.ofSeconds(30)));
+        var follower = CompletableFuture.supplyAsync(() -> coalescer.intercept(request, this::notSent), executor);
+
+        awaitCoalesced();
+        release.countDown();
+
+        var followerEx = assertThrows(ExecutionException.class, () -> follower.get(30, SECONDS));
+
+        assertSame(expired, followerEx.getCause());
+        assertEquals(1, coalescer.getSentCount());
+    }
+
+    private CompletableFuture<ResponseEntity<String>> startLeader() throws InterruptedException {
+        var leader = CompletableFuture.supplyAsync(() -> coalescer.intercept(createRequest(), () -> {
+            started.countDown();
+            awaitRelease();
+            return ResponseEntity.ok("ok");
+        }), executor);
+
+        assertTrue(started.await(30, SECONDS));
+        return leader;
+    }
+
+    private MiddlewareRequest<String> createRequest() {
+        return template.get(URL).expect(String.class);
+    }
+
+    private ResponseEntity<String> notSent() {
+        throw new AssertionError("The follower must not be sent.");
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(30, SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitCoalesced() throws InterruptedException {
+        long end = System.nanoTime() + SECONDS.toNanos(30);
+
+        while (coalescer.getCoalescedCount() == 0) {
+            assertTrue(System.nanoTime() < end, "The follower did not join the call in time.");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestMetrics.REQUESTS_METRIC;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestMetrics.REQUEST_SIZE_METRIC;
+import static de.hsesslingen.keim.efs.mobility.requests.MiddlewareRequestMetrics.RESPONSE_SIZE_METRIC;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Passes requests through the {@link MiddlewareRequestMetrics} with
+ * executions that respond or fail in different ways and checks the tags and
+ * sizes that are recorded.
+ *
+ * @author ben
+ */
+class MiddlewareRequestMetricsTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MiddlewareRequestMetrics metrics = new MiddlewareRequestMetrics(registry);
+
+    @Test
+    void successfulRequestsAreRecordedWithSizes() {
+        var request = createRequest().serviceId("sharing").body("gr\u00fc\u00df");
+        metrics.intercept(request, () -> ResponseEntity.ok().contentLength(5).body("hello"));
+
+        var timer = registry.get(REQUESTS_METRIC)
+                .tag("remote", "sharing")
+                .tag("method", "POST")
+                .tag("status", "2xx")
+                .tag("code", "NONE")
+                .tag("internal", "true")
+                .timer();
+
+        assertEquals(1, timer.count());
+
+        // Two of the characters take two bytes in UTF-8.
+        assertEquals(6, registry.get(REQUEST_SIZE_METRIC).tag("remote", "sharing").summary().totalAmount());
+        assertEquals(5, registry.get(RESPONSE_SIZE_METRIC).tag("remote", "sharing").summary().totalAmount());
+    }
+
+    @Test
+    void failuresAreTaggedWithStatusAndCode() {
+        var remote = new RemoteMiddlewareException(
+                new MiddlewareError(DEADLINE_EXCEEDED_ERROR_CODE, "Too late."), HttpStatus.GATEWAY_TIMEOUT, null
+        );
+        assertSame(remote, assertThrows(RemoteMiddlewareException.class, () -> metrics.intercept(createRequest(), () -> {
+            throw remote;
+        })));
+
+        var local = MiddlewareException.localSaturatedException("Busy.");
+        assertSame(local, assertThrows(MiddlewareException.class, () -> metrics.intercept(createRequest(), () -> {
+            throw local;
+        })));
+
+        var io = new ResourceAccessException("Connection refused", new IOException("Connection refused"));
+        assertSame(io, assertThrows(ResourceAccessException.class, () -> metrics.intercept(createRequest(), () -> {
+            throw io;
+        })));
+
+        assertEquals(1, count("5xx", DEADLINE_EXCEEDED_ERROR_CODE));
+        assertEquals(1, count("NONE", local.getCode()));
+        assertEquals(1, count("IO_ERROR", "NONE"));
+    }
+
+    @Test
+    void unknownCodesAreNotUsedAsTags() {
+        var remote = new RemoteMiddlewareException(
+                new MiddlewareError("CUSTOMER_4711_FAILED", "Failed."), HttpStatus.BAD_REQUEST, null
+        );
+
+        assertThrows(RemoteMiddlewareException.class, () -> metrics.intercept(createRequest(), () -> {
+            throw remote;
+        }));
+
+        assertEquals(1, count("4xx", "OTHER"));
+        assertNull(registry.find(REQUESTS_METRIC).tag("code", "CUSTOMER_4711_FAILED").timer());
+    }
+
+    @Test
+    void installedMetricsRecordAllRequests() {
+        var refusing = new RestTemplate((uri, method) -> {
+            throw new IOException("Connection refused");
+        });
+
+        MiddlewareRequestMetrics.install(metrics);
+
+        try {
+            assertSame(metrics, MiddlewareRequestMetrics.getInstalled());
+            assertThrows(ResourceAccessException.class, () -> new MiddlewareRequest<>(HttpMethod.GET, URL, refusing).go());
+        } finally {
+            MiddlewareRequestMetrics.install(null);
+        }
+
+        assertEquals(1, count("IO_ERROR", "NONE"));
+    }
+
+    private long count(String status, String code) {
+        var timer = registry.find(REQUESTS_METRIC).tag("status", status).tag("code", code).timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private static MiddlewareRequest<String> createRequest() {
+        return new MiddlewareRequest<>(HttpMethod.POST, URL, null).expect(String.class);
+    }
+}
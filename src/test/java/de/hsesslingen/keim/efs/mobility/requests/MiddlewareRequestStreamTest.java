@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Streams response bodies of different shapes using
+ * {@link MiddlewareRequest#stream(Class, java.util.function.Consumer)}, with a
+ * rest template that answers every request with the same body.
+ *
+ * @author ben
+ */
+class MiddlewareRequestStreamTest {
+
+    private static final String URL = "http://localhost/test";
+
+    @Test
+    void elementsOfArrayArePassedInOrder() {
+        var items = new ArrayList<Item>();
+        var response = createRequest("[{\"id\":1},{\"id\":2},{\"id\":3}]").stream(Item.class, items::add);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(List.of(1, 2, 3), ids(items));
+    }
+
+    @Test
+    void newlineDelimitedValuesAndSingleValuesAreStreamed() {
+        var items = new ArrayList<Item>();
+
+        createRequest("{\"id\":1}\n{\"id\":2}\n").stream(Item.class, items::add);
+        assertEquals(List.of(1, 2), ids(items));
+
+        items.clear();
+        createRequest("{\"id\":7}").stream(Item.class, items::add);
+        assertEquals(List.of(7), ids(items));
+
+        items.clear();
+        createRequest("").stream(Item.class, items::add);
+        assertTrue(items.isEmpty());
+    }
+
+    @Test
+    void genericElementTypesAreStreamed() {
+        var lists = new ArrayList<List<Integer>>();
+        createRequest("[[1,2],[3]]").stream(new ParameterizedTypeReference<List<Integer>>() {
+        }, lists::add);
+
+        assertEquals(List.of(List.of(1, 2), List.of(3)), lists);
+    }
+
+    @Test
+    void malformedBodiesDoNotLookLikeNetworkFailures() {
+        var items = new ArrayList<Item>();
+        var request = createRequest("[{\"id\":1},{\"id\":");
+
+        var ex = assertThrows(RestClientException.class, () -> request.stream(Item.class, items::add));
+
+        assertFalse(ex instanceof ResourceAccessException);
+        assertEquals(List.of(1), ids(items));
+    }
+
+    @Test
+    void interceptorsSeeThatRequestIsStreamed() {
+        var interceptor = new StreamingFlagInterceptor();
+
+        createRequest("[]").interceptor(interceptor).stream(Item.class, item -> {
+        });
+        assertTrue(interceptor.streaming);
+
+        createRequest("[]").expect(String.class).interceptor(interceptor).go();
+        assertFalse(interceptor.streaming);
+    }
+
+    private static List<Integer> ids(List<Item> items) {
+        var ids = new ArrayList<Integer>();
+
+        for (var item : items) {
+            ids.add(item.id);
+        }
+
+        return ids;
+    }
+
+    private static MiddlewareRequest<?> createRequest(String body) {
+        return new MiddlewareRequest<>(HttpMethod.GET, URL, new RestTemplate(new FixedResponseFactory(body)));
+    }
+
+    static class Item {
+
+        public int id;
+    }
+
+    private static class StreamingFlagInterceptor implements MiddlewareRequestInterceptor {
+
+        volatile boolean streaming;
+
+        @Override
+        public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+            streaming = request.isStreaming();
+            return execution.execute();
+        }
+    }
+
+    private static class FixedResponseFactory implements ClientHttpRequestFactory {
+
+        private final String body;
+
+        FixedResponseFactory(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+            return new AbstractClientHttpRequest() {
+                @Override
+                protected OutputStream getBodyInternal(HttpHeaders headers) {
+                    return new ByteArrayOutputStream();
+                }
+
+                @Override
+                protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+                    return new JsonResponse(body);
+                }
+
+                @Override
+                public String getMethodValue() {
+                    return method.name();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            };
+        }
+    }
+
+    private static class JsonResponse implements ClientHttpResponse {
+
+        private final String body;
+
+        JsonResponse(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            var headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Sends requests through a {@link MiddlewareRequestTemplate} whose rest
+ * template answers every request with {@code 200 ok} and records the headers
+ * that were sent.
+ *
+ * @author ben
+ */
+class MiddlewareRequestTemplateTest {
+
+    private static final String URL = "http://localhost/test";
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 200;
+
+    private final RecordingRequestFactory factory = new RecordingRequestFactory();
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate().setRestTemplate(new RestTemplate(factory));
+
+    @Test
+    void adaptersCanBeAddedAndRemovedWhileRequestsAreSent() throws Exception {
+        var baseCalls = new AtomicInteger();
+
+        template.addRequestAdapter(request -> {
+            baseCalls.incrementAndGet();
+            request.header("x-base", "1");
+        });
+
+        var stop = new AtomicBoolean();
+        var pool = Executors.newFixedThreadPool(THREADS + 1);
+
+        try {
+            var churn = pool.submit(() -> {
+                while (!stop.get()) {
+                    MiddlewareRequestAdapter adapter = request -> request.header("x-churn", "1");
+                    template.addRequestAdapter(adapter);
+                    template.removeRequestAdapter(adapter);
+                }
+            });
+
+            var senders = new ArrayList<Future<?>>();
+
+            for (int t = 0; t < THREADS; t++) {
+                boolean async = t % 2 == 0;
+
+                senders.add(pool.submit(() -> {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        var request = template.get(URL).expect(String.class);
+                        var response = async ? request.goAsync().get(30, SECONDS) : request.go();
+                        assertEquals("ok", response.getBody());
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (var sender : senders) {
+                sender.get(60, SECONDS);
+            }
+
+            stop.set(true);
+            churn.get(30, SECONDS);
+        } finally {
+            stop.set(true);
+            pool.shutdownNow();
+        }
+
+        int total = THREADS * REQUESTS_PER_THREAD;
+
+        assertEquals(total, baseCalls.get());
+        assertEquals(total, factory.sent.size());
+
+        for (var headers : factory.sent) {
+            assertEquals(List.of("1"), headers.get("x-base"));
+
+            var churned = headers.get("x-churn");
+            assertTrue(churned == null || churned.size() == 1, "Adapters must be called at most once per request.");
+        }
+
+        assertEquals(1, template.getRequestAdapters().getAdapters().size());
+    }
+
+    @Test
+    void concurrentCallersGetTheSameRestTemplate() throws Exception {
+        var lazy = new MiddlewareRequestTemplate();
+        var start = new CountDownLatch(1);
+        var pool = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            var results = new ArrayList<Future<RestTemplate>>();
+
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return lazy.getRestTemplate();
+                }));
+            }
+
+            start.countDown();
+
+            var first = results.get(0).get(30, SECONDS);
+            assertNotNull(first);
+
+            for (var result : results) {
+                assertSame(first, result.get(30, SECONDS));
+            }
+
+            assertSame(first, lazy.getRestTemplate());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void asyncAdaptersCompleteBeforeTheRequestIsSent() throws Exception {
+        template.addRequestAdapter(new TokenAdapter(CompletableFuture.supplyAsync(
+                () -> request -> request.header("x-token", "secret"),
+                CompletableFuture.delayedExecutor(50, MILLISECONDS)
+        )));
+
+        assertEquals("ok", template.get(URL).expect(String.class).goAsync().get(30, SECONDS).getBody());
+        assertEquals("ok", template.get(URL).expect(String.class).go().getBody());
+
+        assertEquals(2, factory.sent.size());
+
+        for (var headers : factory.sent) {
+            assertEquals(List.of("secret"), headers.get("x-token"));
+        }
+    }
+
+    @Test
+    void failedAsyncAdaptersFailTheRequest() {
+        var failure = new IllegalStateException("No token.");
+        template.addRequestAdapter(new TokenAdapter(CompletableFuture.failedFuture(failure)));
+
+        var future = template.get(URL).expect(String.class).goAsync();
+        var ex = assertThrows(ExecutionException.class, () -> future.get(30, SECONDS));
+
+        assertSame(failure, ex.getCause());
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> template.get(URL).expect(String.class).go()));
+        assertTrue(factory.sent.isEmpty());
+    }
+
+    @Test
+    void executorOfRequestTakesPrecedenceOverExecutorOfTemplate() throws Exception {
+        var templateRuns = new AtomicInteger();
+        var requestRuns = new AtomicInteger();
+
+        template.setAsyncExecutor(task -> {
+            templateRuns.incrementAndGet();
+            task.run();
+        });
+
+        var request = template.get(URL).expect(String.class).asyncExecutor(task -> {
+            requestRuns.incrementAndGet();
+            task.run();
+        });
+
+        assertEquals("ok", template.goAsync(request).get(30, SECONDS).getBody());
+        assertTrue(requestRuns.get() > 0);
+        assertEquals(0, templateRuns.get());
+
+        // Requests without an executor of their own are sent on the one of the template.
+        var plain = new MiddlewareRequest<>(HttpMethod.GET, URL, template.getRestTemplate()).expect(String.class);
+
+        assertEquals("ok", template.goAsync(plain).get(30, SECONDS).getBody());
+        assertTrue(templateRuns.get() > 0);
+    }
+
+    private static class TokenAdapter implements AsyncMiddlewareRequestAdapter {
+
+        private final CompletableFuture<MiddlewareRequestAdapter> result;
+
+        TokenAdapter(CompletableFuture<MiddlewareRequestAdapter> result) {
+            this.result = result;
+        }
+
+        @Override
+        public CompletionStage<MiddlewareRequestAdapter> adaptAsync(MiddlewareRequest<?> request) {
+            return result;
+        }
+
+        @Override
+        public Phase phase() {
+            return Phase.AUTH;
+        }
+    }
+
+    private static class RecordingRequestFactory implements ClientHttpRequestFactory {
+
+        final Queue<HttpHeaders> sent = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+            return new AbstractClientHttpRequest() {
+                @Override
+                protected OutputStream getBodyInternal(HttpHeaders headers) {
+                    return new ByteArrayOutputStream();
+                }
+
+                @Override
+                protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+                    sent.add(headers);
+                    return new OkResponse();
+                }
+
+                @Override
+                public String getMethodValue() {
+                    return method.name();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            };
+        }
+    }
+
+    private static class OkResponse implements ClientHttpResponse {
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            var headers = new HttpHeaders();
+            headers.setContentType(MediaType.TEXT_PLAIN);
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream("ok".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
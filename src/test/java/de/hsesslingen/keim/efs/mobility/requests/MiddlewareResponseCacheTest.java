@@ -0,0 +1,285 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Tests the revalidation, the stale-if-error handling and the {@code Vary}
+ * handling of the {@link MiddlewareResponseCache}. Background revalidations
+ * run on the calling thread.
+ *
+ * @author ben
+ */
+class MiddlewareResponseCacheTest {
+
+    private static final String URL = "http://localhost/test";
+    private static final String ETAG = "\"v1\"";
+
+    private final StubRequestFactory factory = new StubRequestFactory();
+    private final MiddlewareResponseCache cache = new MiddlewareResponseCache().setExecutor(Runnable::run);
+
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate()
+            .setRestTemplate(new RestTemplate(factory))
+            .enableResponseCache(cache);
+
+    @Test
+    void staleResponseIsRevalidatedUsingCopyOfRequest() {
+        factory.respond(HttpStatus.OK, "max-age=0, stale-while-revalidate=0", "v1");
+        factory.respond(HttpStatus.NOT_MODIFIED, "max-age=60", null);
+
+        assertEquals("v1", createRequest().go().getBody());
+
+        var request = createRequest();
+        var response = request.go();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("v1", response.getBody());
+        assertNull(factory.sent.get(0).getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals(ETAG, factory.sent.get(1).getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertTrue(request.headers() == null || !request.headers().containsKey(HttpHeaders.IF_NONE_MATCH),
+                "The request of the caller must not be changed.");
+
+        // Fresh again after the 304.
+        assertEquals("v1", createRequest().go().getBody());
+        assertEquals(2, factory.sent.size());
+
+        var stats = cache.getStats();
+        assertEquals(1, stats.getRevalidations());
+        assertEquals(1, stats.getHits());
+    }
+
+    @Test
+    void backgroundRevalidationRefreshesEntryOfCaller() {
+        factory.respond(HttpStatus.OK, "max-age=0, stale-while-revalidate=60", "v1");
+        factory.respond(HttpStatus.NOT_MODIFIED, "max-age=60", null);
+
+        assertEquals("v1", createRequest().go().getBody());
+        assertEquals("v1", createRequest().go().getBody());
+
+        assertEquals(2, factory.sent.size());
+        assertEquals(ETAG, factory.sent.get(1).getFirst(HttpHeaders.IF_NONE_MATCH));
+
+        assertEquals("v1", createRequest().go().getBody());
+        assertEquals(2, factory.sent.size(), "The revalidated entry must be found with the key of the caller.");
+
+        var stats = cache.getStats();
+        assertEquals(1, stats.getStaleHits());
+        assertEquals(1, stats.getRevalidations());
+        assertEquals(1, stats.getHits());
+    }
+
+    @Test
+    void staleResponseIsServedIfRemoteServiceRespondsWithServerError() {
+        cache.intercept(createRequest(), () -> ok("max-age=0, stale-while-revalidate=0, stale-if-error=60", "v1"));
+
+        var stale = cache.intercept(createRequest(), () -> {
+            throw remoteError(HttpStatus.BAD_GATEWAY, "UPSTREAM_FAILED");
+        });
+
+        assertEquals("v1", stale.getBody());
+
+        var notFound = remoteError(HttpStatus.NOT_FOUND, "503");
+        var ex = assertThrows(RemoteMiddlewareException.class, () -> cache.intercept(createRequest(), () -> {
+            throw notFound;
+        }));
+
+        assertSame(notFound, ex, "Only the status tells whether the remote service is unavailable, not the code.");
+    }
+
+    @Test
+    void responsesVaryingByRequestHeaderAreKeptApart() {
+        var sent = new AtomicInteger();
+
+        cache.intercept(createRequest().header(HttpHeaders.ACCEPT_LANGUAGE, "de"), () -> {
+            sent.incrementAndGet();
+            return vary(HttpHeaders.ACCEPT_LANGUAGE, "de");
+        });
+
+        var en = cache.intercept(createRequest().header(HttpHeaders.ACCEPT_LANGUAGE, "en"), () -> {
+            sent.incrementAndGet();
+            return vary(HttpHeaders.ACCEPT_LANGUAGE, "en");
+        });
+
+        var de = cache.intercept(createRequest().header(HttpHeaders.ACCEPT_LANGUAGE, "de"), this::notSent);
+
+        assertEquals("en", en.getBody());
+        assertEquals("de", de.getBody());
+        assertEquals(2, sent.get());
+    }
+
+    @Test
+    void responsesVaryingByAnythingAreNotCached() {
+        var sent = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            cache.intercept(createRequest(), () -> {
+                sent.incrementAndGet();
+                return vary("*", "any");
+            });
+        }
+
+        assertEquals(2, sent.get());
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    private MiddlewareRequest<String> createRequest() {
+        return template.get(URL).expect(String.class);
+    }
+
+    private ResponseEntity<String> notSent() {
+        throw new AssertionError("The response must be taken from the cache.");
+    }
+
+    private static ResponseEntity<String> ok(String cacheControl, String body) {
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, cacheControl).body(body);
+    }
+
+    private static ResponseEntity<String> vary(String vary, String body) {
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, "max-age=60").header(HttpHeaders.VARY, vary).body(body);
+    }
+
+    private static RemoteMiddlewareException remoteError(HttpStatus status, String code) {
+        return new RemoteMiddlewareException(new MiddlewareError(code, status.getReasonPhrase()), status, null);
+    }
+
+    /**
+     * Answers the HTTP requests with the queued responses and records their
+     * headers.
+     */
+    private static class StubRequestFactory implements ClientHttpRequestFactory {
+
+        final List<HttpHeaders> sent = new CopyOnWriteArrayList<>();
+
+        private final Queue<StubResponse> responses = new ConcurrentLinkedQueue<>();
+
+        void respond(HttpStatus status, String cacheControl, String body) {
+            var headers = new HttpHeaders();
+            headers.setETag(ETAG);
+            headers.setCacheControl(cacheControl);
+
+            if (body != null) {
+                headers.setContentType(MediaType.TEXT_PLAIN);
+            }
+
+            responses.add(new StubResponse(status, headers, body));
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+            return new AbstractClientHttpRequest() {
+                @Override
+                protected OutputStream getBodyInternal(HttpHeaders headers) {
+                    return new ByteArrayOutputStream();
+                }
+
+                @Override
+                protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+                    sent.add(headers);
+
+                    var response = responses.poll();
+                    assertNotNull(response, "Unexpected request.");
+
+                    return response;
+                }
+
+                @Override
+                public String getMethodValue() {
+                    return method.name();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+            };
+        }
+    }
+
+    private static class StubResponse implements ClientHttpResponse {
+
+        private final HttpStatus status;
+        private final HttpHeaders headers;
+        private final String body;
+
+        StubResponse(HttpStatus status, HttpHeaders headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return status.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return status.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import de.hsesslingen.keim.efs.mobility.service.MobilityService;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Tests how a {@link MobilityServiceFanOut} collects partial results and
+ * stops the requests that did not complete before its deadline. The requests
+ * are answered by interceptors instead of remote services.
+ *
+ * @author ben
+ */
+class MobilityServiceFanOutTest {
+
+    private static final Duration DEADLINE = Duration.ofMillis(200);
+
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void resultsOfServicesThatRespondedAreKept() {
+        var services = List.of(service("fast"), service("failing"), service("slow"));
+
+        var result = MobilityServiceFanOut.<String>of(services, service -> request(service, () -> {
+            switch (service.getId()) {
+                case "fast":
+                    return "fast";
+                case "failing":
+                    throw new RemoteMiddlewareException(MiddlewareError.remoteServiceUnavailable(), HttpStatus.SERVICE_UNAVAILABLE, null);
+                default:
+                    awaitRelease();
+                    return "slow";
+            }
+        })).deadline(DEADLINE).executor(executor).go();
+
+        assertFalse(result.isComplete());
+        assertEquals(List.of("fast"), result.getBodies());
+        assertEquals(List.of("failing", "slow"), List.copyOf(result.getErrors().keySet()));
+
+        var failing = result.getResults().get(1);
+        var slow = result.getResults().get(2);
+
+        assertFalse(failing.isTimedOut());
+        assertEquals(MiddlewareError.REMOTE_SERVICE_UNAVAILABLE_ERROR_CODE, failing.getError().getCode());
+        assertTrue(slow.isTimedOut());
+        assertTrue(result.getDuration().compareTo(DEADLINE) >= 0);
+    }
+
+    @Test
+    void queuedRequestsAreNotSentAfterTheDeadline() throws Exception {
+        var single = Executors.newSingleThreadExecutor();
+        var sent = new AtomicInteger();
+
+        try {
+            var result = MobilityServiceFanOut.<String>of(List.of(service("blocking"), service("queued")), service -> request(service, () -> {
+                sent.incrementAndGet();
+                awaitRelease();
+                return service.getId();
+            })).deadline(DEADLINE).executor(single).go();
+
+            assertTrue(result.getResults().get(0).isTimedOut());
+            assertTrue(result.getResults().get(1).isTimedOut());
+        } finally {
+            release.countDown();
+            single.shutdown();
+            assertTrue(single.awaitTermination(30, SECONDS));
+        }
+
+        assertEquals(1, sent.get(), "The queued request must not be sent once it was cancelled.");
+    }
+
+    @Test
+    void requestsInFlightAreAbortedAtTheDeadline() throws Exception {
+        var aborted = new CountDownLatch(1);
+
+        var result = MobilityServiceFanOut.<String>of(List.of(service("slow")), service -> request(service, () -> {
+            // Like a request factory that supports aborting.
+            AbortHandle.current().register(aborted::countDown);
+            awaitRelease();
+            return "slow";
+        })).deadline(DEADLINE).executor(executor).go();
+
+        assertTrue(result.getResults().get(0).isTimedOut());
+        assertTrue(aborted.await(30, SECONDS), "The request in flight was not aborted.");
+    }
+
+    private MiddlewareRequest<String> request(MobilityService service, Supplier<String> body) {
+        return template.get("http://localhost/" + service.getId()).expect(String.class).interceptor(new Answer(body));
+    }
+
+    private static MobilityService service(String id) {
+        return new MobilityService().setId(id);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(30, SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Answers requests instead of the remote service.
+     */
+    private static class Answer implements MiddlewareRequestInterceptor {
+
+        private final Supplier<String> body;
+
+        Answer(Supplier<String> body) {
+            this.body = body;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+            return (ResponseEntity<T>) ResponseEntity.ok(body.get());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.config.HttpClientProperties;
+import java.net.URI;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.*;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Tests how the {@link PooledClientHttpRequestFactory} applies the timeouts of
+ * single requests and how its default instance is replaced. Requests are not
+ * sent, the factory stops them once their request config was created.
+ *
+ * @author ben
+ */
+class PooledClientHttpRequestFactoryTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final CapturingFactory factory = new CapturingFactory(new HttpClientProperties());
+
+    @AfterEach
+    void destroy() throws Exception {
+        factory.destroy();
+        PooledClientHttpRequestFactory.setDefault(null);
+    }
+
+    @Test
+    void requestsWithoutTimeoutUseTheDefaults() {
+        send(new MiddlewareRequest<>(HttpMethod.GET, URL, new RestTemplate(factory)));
+
+        assertTrue(factory.sent);
+        assertNull(factory.context);
+    }
+
+    @Test
+    void timeoutOfRequestOverridesTheDefaults() {
+        send(new MiddlewareRequest<>(HttpMethod.GET, URL, new RestTemplate(factory)).timeout(Duration.ofSeconds(2)));
+
+        var config = requestConfig();
+        assertEquals(2000, config.getSocketTimeout());
+        assertEquals(2000, config.getConnectTimeout());
+        assertEquals(2000, config.getConnectionRequestTimeout());
+    }
+
+    @Test
+    void timeoutOfRequestDoesNotExtendConnectTimeouts() {
+        send(new MiddlewareRequest<>(HttpMethod.GET, URL, new RestTemplate(factory)).timeout(Duration.ofSeconds(60)));
+
+        var config = requestConfig();
+        assertEquals(60000, config.getSocketTimeout());
+        assertEquals(5000, config.getConnectTimeout());
+        assertEquals(5000, config.getConnectionRequestTimeout());
+    }
+
+    @Test
+    void destroyedDefaultIsReplacedOnNextUse() throws Exception {
+        var custom = new PooledClientHttpRequestFactory(new HttpClientProperties());
+        PooledClientHttpRequestFactory.setDefault(custom);
+        assertSame(custom, PooledClientHttpRequestFactory.getDefault());
+
+        custom.destroy();
+
+        var created = PooledClientHttpRequestFactory.getDefault();
+        assertNotSame(custom, created);
+        assertSame(created, PooledClientHttpRequestFactory.getDefault());
+    }
+
+    private static void send(MiddlewareRequest<?> request) {
+        assertThrows(NotSentException.class, request::go);
+    }
+
+    private RequestConfig requestConfig() {
+        assertTrue(factory.sent);
+        assertNotNull(factory.context);
+        return ((HttpClientContext) factory.context).getRequestConfig();
+    }
+
+    private static class CapturingFactory extends PooledClientHttpRequestFactory {
+
+        volatile boolean sent;
+        volatile HttpContext context;
+
+        CapturingFactory(HttpClientProperties properties) {
+            super(properties);
+        }
+
+        @Override
+        protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+            context = super.createHttpContext(httpMethod, uri);
+            sent = true;
+            throw new NotSentException();
+        }
+    }
+
+    private static class NotSentException extends RuntimeException {
+    }
+}
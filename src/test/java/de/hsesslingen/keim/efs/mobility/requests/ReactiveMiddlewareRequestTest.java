@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests when the {@link ReactiveMiddlewareRequest} calls its adapters and how
+ * it signals timeouts and connection errors, using a {@link WebClient} with a
+ * stubbed exchange function instead of a server.
+ *
+ * @author ben
+ */
+class ReactiveMiddlewareRequestTest {
+
+    private static final String URL = "http://localhost/test";
+
+    @Test
+    void adaptersAreCalledOnSubscription() {
+        var adapted = new AtomicInteger();
+        var request = createRequest(r -> Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+        request.requestAdapters(List.of(r -> adapted.incrementAndGet()));
+
+        var mono = request.mono();
+        assertEquals(0, adapted.get());
+
+        assertEquals(HttpStatus.OK, mono.block().getStatusCode());
+        assertEquals(1, adapted.get());
+
+        // Subscribing again sends the request again, but does not adapt it twice.
+        mono.block();
+        assertEquals(1, adapted.get());
+    }
+
+    @Test
+    void fluxSignalsTimeoutLikeMono() {
+        var fluxRequest = createRequest(r -> Mono.never());
+        fluxRequest.timeout(Duration.ofMillis(50));
+
+        var ex = assertThrows(ResourceAccessException.class, () -> fluxRequest.flux(String.class).blockLast());
+        assertTrue(ex.getCause() instanceof SocketTimeoutException);
+
+        var monoRequest = createRequest(r -> Mono.never());
+        monoRequest.timeout(Duration.ofMillis(50));
+
+        ex = assertThrows(ResourceAccessException.class, () -> monoRequest.mono().block());
+        assertTrue(ex.getCause() instanceof SocketTimeoutException);
+    }
+
+    @Test
+    void connectionErrorsAreSignalledAsResourceAccessException() {
+        var refused = new ConnectException("Connection refused");
+        var request = createRequest(r -> Mono.error(
+                new WebClientRequestException(refused, HttpMethod.GET, URI.create(URL), HttpHeaders.EMPTY)
+        ));
+
+        var ex = assertThrows(ResourceAccessException.class, () -> request.mono().block());
+        assertSame(refused, ex.getCause());
+
+        var fluxRequest = createRequest(r -> Mono.error(refused));
+
+        ex = assertThrows(ResourceAccessException.class, () -> fluxRequest.flux(String.class).blockLast());
+        assertSame(refused, ex.getCause());
+    }
+
+    private static ReactiveMiddlewareRequest<Void> createRequest(ExchangeFunction exchange) {
+        return new ReactiveMiddlewareRequest<>(HttpMethod.GET, URL, WebClient.builder().exchangeFunction(exchange).build());
+    }
+}
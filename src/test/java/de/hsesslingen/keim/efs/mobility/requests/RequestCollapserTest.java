@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import static de.hsesslingen.keim.efs.mobility.exception.MiddlewareError.DEADLINE_EXCEEDED_ERROR_CODE;
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.function.Function;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Tests how the {@link RequestCollapser} batches lookups and completes the
+ * futures of the single lookups. The batch requests are answered by an
+ * interceptor, which returns the upper case keys joined by commas.
+ *
+ * @author ben
+ */
+class RequestCollapserTest {
+
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> factoryThreads = Collections.synchronizedList(new ArrayList<>());
+    private final List<Deadline> batchDeadlines = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void lookupsWithinTheWindowAreSentAsOneBatch() throws Exception {
+        var collapser = collapser(keys -> String.join(",", upperCase(keys))).window(Duration.ofMillis(50));
+
+        var a = collapser.submit("a");
+        var b = collapser.submit("b");
+        var again = collapser.submit("a");
+
+        assertEquals("A", a.get(30, SECONDS));
+        assertEquals("B", b.get(30, SECONDS));
+        assertEquals("A", again.get(30, SECONDS));
+        assertEquals(List.of(List.of("a", "b")), batches);
+    }
+
+    @Test
+    void fullBatchesAreSentWithoutWaitingForTheWindow() throws Exception {
+        var collapser = collapser(keys -> String.join(",", upperCase(keys))).window(Duration.ofSeconds(30)).maxBatchSize(2);
+
+        var a = collapser.submit("a");
+        var b = collapser.submit("b");
+
+        assertEquals("A", a.get(10, SECONDS));
+        assertEquals("B", b.get(10, SECONDS));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void lookupsWithoutResultFail() throws Exception {
+        var collapser = collapser(keys -> "A");
+
+        var a = collapser.submit("a");
+        var b = collapser.submit("b");
+
+        assertEquals("A", a.get(30, SECONDS));
+
+        var ex = assertThrows(ExecutionException.class, () -> b.get(30, SECONDS));
+        assertTrue(ex.getCause() instanceof MiddlewareException);
+    }
+
+    @Test
+    void expiredSubmitterDoesNotFailTheOthers() throws Exception {
+        release = new CountDownLatch(1);
+        var collapser = collapser(keys -> String.join(",", upperCase(keys))).window(Duration.ofMillis(50));
+
+        var previous = Deadline.setCurrent(Deadline.after(Duration.ofMillis(100)));
+        var shortLived = collapser.submit("a");
+        Deadline.setCurrent(previous);
+
+        var unbounded = collapser.submit("b");
+
+        var ex = assertThrows(ExecutionException.class, () -> shortLived.get(30, SECONDS));
+        assertEquals(DEADLINE_EXCEEDED_ERROR_CODE, ((MiddlewareException) ex.getCause()).getCode());
+        assertFalse(unbounded.isDone());
+
+        release.countDown();
+
+        assertEquals("B", unbounded.get(30, SECONDS));
+        assertNull(batchDeadlines.get(0), "The batch must not get the deadline of a single submitter.");
+    }
+
+    @Test
+    void batchIsSentWithTheLatestDeadline() throws Exception {
+        var collapser = collapser(keys -> String.join(",", upperCase(keys))).window(Duration.ofMillis(50));
+        var later = Deadline.after(Duration.ofSeconds(60));
+
+        var previous = Deadline.setCurrent(Deadline.after(Duration.ofSeconds(30)));
+        var a = collapser.submit("a");
+        Deadline.setCurrent(later);
+        var b = collapser.submit("b");
+        Deadline.setCurrent(previous);
+
+        a.get(30, SECONDS);
+        b.get(30, SECONDS);
+
+        assertSame(later, batchDeadlines.get(0));
+    }
+
+    @Test
+    void batchesAreNotCreatedOnTheSharedTimer() throws Exception {
+        var collapser = collapser(keys -> String.join(",", upperCase(keys))).window(Duration.ofMillis(10));
+
+        assertEquals("A", collapser.submit("a").get(30, SECONDS));
+
+        assertFalse(factoryThreads.get(0).startsWith("efs-scheduler-"), "Created on " + factoryThreads.get(0));
+    }
+
+    private RequestCollapser<String, String, String> collapser(Function<List<String>, String> endpoint) {
+        return RequestCollapser.<String, String, String>of(keys -> {
+            batches.add(List.copyOf(keys));
+            factoryThreads.add(Thread.currentThread().getName());
+
+            return template.get("http://localhost/batch").expect(String.class).interceptor(new Answer(request -> {
+                batchDeadlines.add(request.deadline());
+                awaitRelease();
+                return endpoint.apply(keys);
+            }));
+        }, (body, result) -> {
+            for (var value : body.split(",")) {
+                result.complete(value.toLowerCase(), value);
+            }
+        }).executor(executor);
+    }
+
+    private static List<String> upperCase(List<String> keys) {
+        var values = new ArrayList<String>(keys.size());
+
+        for (var key : keys) {
+            values.add(key.toUpperCase());
+        }
+
+        return values;
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(30, SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Answers requests instead of the remote service.
+     */
+    private static class Answer implements MiddlewareRequestInterceptor {
+
+        private final Function<MiddlewareRequest<?>, String> body;
+
+        Answer(Function<MiddlewareRequest<?>, String> body) {
+            this.body = body;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> intercept(MiddlewareRequest<T> request, MiddlewareRequestExecution<T> execution) {
+            return (ResponseEntity<T>) ResponseEntity.ok(body.apply(request));
+        }
+    }
+}
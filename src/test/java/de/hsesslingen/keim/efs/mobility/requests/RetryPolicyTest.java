@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.requests;
+
+import de.hsesslingen.keim.efs.mobility.exception.MiddlewareError;
+import de.hsesslingen.keim.efs.mobility.exception.RemoteMiddlewareException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Tests the backoff and the retry decisions of {@link RetryPolicy} without
+ * sending requests.
+ *
+ * @author ben
+ */
+class RetryPolicyTest {
+
+    private static final String URL = "http://localhost/test";
+
+    private final MiddlewareRequestTemplate template = new MiddlewareRequestTemplate();
+
+    @Test
+    void jitterStaysBetweenBaseAndThreeTimesPreviousDelay() {
+        long base = 100;
+        long max = 5_000;
+        long previous = base;
+
+        for (int i = 0; i < 10_000; i++) {
+            long delay = RetryPolicy.jitter(base, max, previous);
+
+            assertTrue(delay >= base, "Delay must not be shorter than the base delay: " + delay);
+            assertTrue(delay <= Math.max(base + 1, Math.min(max, previous * 3)), "Delay must not exceed three times the previous one: " + delay);
+            assertTrue(delay <= max, "Delay must not exceed the maximum: " + delay);
+
+            previous = delay;
+        }
+    }
+
+    @Test
+    void jitterIsCappedForHugePreviousDelays() {
+        long max = Duration.ofSeconds(5).toNanos();
+
+        assertTrue(RetryPolicy.jitter(1, max, Long.MAX_VALUE / 3) <= max);
+        assertEquals(1, RetryPolicy.jitter(1, 1, 1));
+    }
+
+    @Test
+    void retryAfterIsUsedUpToTheMaximum() {
+        var max = Duration.ofSeconds(10);
+
+        assertEquals(Duration.ofSeconds(3).toNanos(), RetryPolicy.retryAfter(unavailable("3"), max));
+        assertEquals(Duration.ofSeconds(10).toNanos(), RetryPolicy.retryAfter(unavailable(" 10 "), max));
+        assertEquals(Long.MAX_VALUE, RetryPolicy.retryAfter(unavailable("11"), max));
+        assertEquals(Long.MAX_VALUE, RetryPolicy.retryAfter(unavailable("99999999999999999999999"), max));
+        assertEquals(-1, RetryPolicy.retryAfter(unavailable(null), max));
+        assertEquals(-1, RetryPolicy.retryAfter(unavailable("soon"), max));
+
+        var later = ZonedDateTime.now().plusHours(1);
+        var headers = new HttpHeaders();
+        headers.setZonedDateTime(HttpHeaders.RETRY_AFTER, later);
+
+        assertEquals(Long.MAX_VALUE, RetryPolicy.retryAfter(unavailable(headers), max));
+    }
+
+    @Test
+    void noRetryIfRemoteServiceAsksToWaitTooLong() {
+        var budget = new RetryBudget(1, 10);
+        var policy = new RetryPolicy()
+                .setMaxRetryAfter(Duration.ofSeconds(1))
+                .setBudget(budget);
+
+        var attempts = policy.start(template.get(URL));
+
+        assertEquals(-1, attempts.nextDelay(unavailable("2")));
+        assertEquals(0, policy.getRetryCount());
+        assertEquals(10, budget.getAvailable(), "Nothing must be withdrawn for a retry that is not made.");
+
+        assertEquals(Duration.ofSeconds(1).toNanos(), attempts.nextDelay(unavailable("1")));
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @Test
+    void noRetryIfBudgetIsExhausted() {
+        // Starts with a reserve of one retry, each request adds a tenth.
+        var budget = new RetryBudget(0.1, 1);
+        var policy = new RetryPolicy()
+                .setMaxAttempts(5)
+                .setBaseDelay(Duration.ofMillis(1))
+                .setMaxDelay(Duration.ofMillis(1))
+                .setBudget(budget);
+
+        var attempts = policy.start(template.get(URL));
+
+        assertTrue(attempts.nextDelay(unavailable(null)) >= 0);
+        assertEquals(-1, attempts.nextDelay(unavailable(null)));
+        assertEquals(1, policy.getRetryCount());
+        assertEquals(1, policy.getBudgetExhaustedCount());
+
+        // Ten further requests earn another retry.
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+
+        assertTrue(attempts.nextDelay(unavailable(null)) >= 0);
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    void noRetryAfterMaxAttempts() {
+        var policy = new RetryPolicy()
+                .setMaxAttempts(2)
+                .setBudget(new RetryBudget(1, 10));
+
+        var attempts = policy.start(template.get(URL));
+
+        assertTrue(attempts.nextDelay(unavailable(null)) >= 0);
+        assertEquals(-1, attempts.nextDelay(unavailable(null)));
+        assertEquals(0, policy.getBudgetExhaustedCount());
+    }
+
+    @Test
+    void settingsAreTakenWhenRequestStarts() {
+        var policy = new RetryPolicy()
+                .setMaxAttempts(2)
+                .setBudget(new RetryBudget(1, 10));
+
+        var attempts = policy.start(template.get(URL));
+        policy.setMaxAttempts(1);
+
+        assertTrue(attempts.nextDelay(unavailable(null)) >= 0);
+        assertEquals(-1, policy.start(template.get(URL)).nextDelay(unavailable(null)));
+    }
+
+    private static RemoteMiddlewareException unavailable(String retryAfter) {
+        var headers = new HttpHeaders();
+
+        if (retryAfter != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+        }
+
+        return unavailable(headers);
+    }
+
+    private static RemoteMiddlewareException unavailable(HttpHeaders headers) {
+        var error = new MiddlewareError("503", "Service Unavailable");
+        return new RemoteMiddlewareException(error, HttpStatus.SERVICE_UNAVAILABLE, headers);
+    }
+}
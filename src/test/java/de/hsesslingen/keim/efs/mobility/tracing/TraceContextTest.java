@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2021 Hochschule Esslingen
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE. 
+ */
+package de.hsesslingen.keim.efs.mobility.tracing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the parsing of W3C {@code traceparent} headers by
+ * {@link TraceContext} and the sampling decisions of the {@link Sampler}s and
+ * the {@link Tracer}.
+ *
+ * @author ben
+ */
+class TraceContextTest {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String SPAN_ID = "00f067aa0ba902b7";
+    private static final String TRACEPARENT = "00-" + TRACE_ID + "-" + SPAN_ID + "-01";
+
+    @Test
+    void validHeadersAreParsedAndPassedOn() {
+        var context = TraceContext.fromHeaders(" " + TRACEPARENT + " ", " congo=t61rcWkgMzE ");
+
+        assertEquals(TRACE_ID, context.getTraceId());
+        assertEquals(SPAN_ID, context.getSpanId());
+        assertTrue(context.isSampled());
+        assertEquals("congo=t61rcWkgMzE", context.getTraceState());
+        assertEquals(TRACEPARENT, context.toTraceparent());
+
+        var child = context.newChild();
+        assertEquals(TRACE_ID, child.getTraceId());
+        assertNotEquals(SPAN_ID, child.getSpanId());
+        assertEquals(context.getTraceState(), child.getTraceState());
+    }
+
+    @Test
+    void onlyTheLowestFlagTellsWhetherTheTraceIsSampled() {
+        assertFalse(TraceContext.fromHeaders("00-" + TRACE_ID + "-" + SPAN_ID + "-00", null).isSampled());
+        assertFalse(TraceContext.fromHeaders("00-" + TRACE_ID + "-" + SPAN_ID + "-02", null).isSampled());
+        assertTrue(TraceContext.fromHeaders("00-" + TRACE_ID + "-" + SPAN_ID + "-03", null).isSampled());
+    }
+
+    @Test
+    void invalidHeadersAreRejected() {
+        assertNull(TraceContext.fromHeaders(null, null));
+        assertNull(TraceContext.fromHeaders("", null));
+        assertNull(TraceContext.fromHeaders(TRACEPARENT.substring(1), null));
+        assertNull(TraceContext.fromHeaders(TRACEPARENT.toUpperCase(), null));
+        assertNull(TraceContext.fromHeaders(TRACEPARENT.replace('-', '_'), null));
+        assertNull(TraceContext.fromHeaders("ff" + TRACEPARENT.substring(2), null));
+        assertNull(TraceContext.fromHeaders(TRACEPARENT + "-extra", null));
+        assertNull(TraceContext.fromHeaders("00-00000000000000000000000000000000-" + SPAN_ID + "-01", null));
+        assertNull(TraceContext.fromHeaders("00-" + TRACE_ID + "-0000000000000000-01", null));
+    }
+
+    @Test
+    void laterVersionsMayAppendFields() {
+        var context = TraceContext.fromHeaders("01-" + TRACE_ID + "-" + SPAN_ID + "-01-future", null);
+
+        assertEquals(TRACE_ID, context.getTraceId());
+        assertTrue(context.isSampled());
+
+        // Sent in the version this service knows.
+        assertEquals(TRACEPARENT, context.toTraceparent());
+    }
+
+    @Test
+    void newRootsHaveValidIds() {
+        var root = TraceContext.newRoot(false);
+
+        assertFalse(root.isSampled());
+        assertNull(root.getTraceState());
+        assertEquals(root.getTraceId(), TraceContext.fromHeaders(root.toTraceparent(), null).getTraceId());
+    }
+
+    @Test
+    void samplersDecideAtTheHeadOfTheTrace() {
+        assertFalse(Sampler.probability(0).shouldSample("a"));
+        assertTrue(Sampler.probability(1).shouldSample("a"));
+
+        var rateLimited = Sampler.rateLimited(0.001);
+        assertTrue(rateLimited.shouldSample("a"));
+        assertFalse(rateLimited.shouldSample("a"));
+
+        var asked = new AtomicInteger();
+        Sampler counting = name -> asked.incrementAndGet() > 0;
+
+        assertFalse(Sampler.never().and(counting).shouldSample("a"));
+        assertEquals(0, asked.get());
+        assertTrue(Sampler.always().and(counting).shouldSample("a"));
+        assertEquals(1, asked.get());
+    }
+
+    @Test
+    void tracerKeepsTheDecisionOfTrustedCallers() {
+        var tracer = new Tracer(Sampler.never(), new InMemorySpanExporter());
+        var sampled = TraceContext.fromHeaders(TRACEPARENT, null);
+        var unsampled = TraceContext.fromHeaders("00-" + TRACE_ID + "-" + SPAN_ID + "-00", null);
+
+        assertFalse(tracer.newContext(null, "root").isSampled());
+        assertTrue(tracer.newContext(sampled, "child").isSampled());
+        assertEquals(TRACE_ID, tracer.newContext(sampled, "child").getTraceId());
+
+        // Untrusted callers cannot force the trace to be recorded.
+        assertFalse(tracer.newContext(sampled, "child", false).isSampled());
+        assertFalse(new Tracer(Sampler.always(), new InMemorySpanExporter()).newContext(unsampled, "child", false).isSampled());
+    }
+}